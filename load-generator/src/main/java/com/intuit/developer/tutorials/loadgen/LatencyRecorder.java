@@ -0,0 +1,71 @@
+package com.intuit.developer.tutorials.loadgen;
+
+import java.util.Arrays;
+
+/**
+ * Latencies and errors of the requests to one endpoint. Percentiles are exact, computed
+ * from all the recorded latencies once the run is over.
+ */
+final class LatencyRecorder {
+
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+	private long[] latencies = new long[1024];
+	private int count;
+	private int errors;
+
+	/**
+	 * @param latencyNanos from the intended start of the request to the end of its response
+	 * @param error
+	 */
+	synchronized void record(long latencyNanos, boolean error) {
+		if (count == latencies.length) {
+			latencies = Arrays.copyOf(latencies, count * 2);
+		}
+		latencies[count++] = latencyNanos;
+		if (error) {
+			errors++;
+		}
+	}
+
+	static String header() {
+		StringBuilder header = new StringBuilder(String.format("%-12s %8s %8s %8s %10s", "endpoint", "rate/s", "count", "errors", "achieved/s"));
+		for (double percentile : PERCENTILES) {
+			header.append(String.format(" %9s", "p" + format(percentile)));
+		}
+		return header.append(String.format(" %9s", "max")).append("   (latencies in ms)").toString();
+	}
+
+	/**
+	 * @param endpoint
+	 * @param rate intended requests per second
+	 * @param seconds length of the measured period
+	 * @return a line of the report, aligned with {@link #header()}
+	 */
+	synchronized String summary(String endpoint, double rate, double seconds) {
+		long[] sorted = Arrays.copyOf(latencies, count);
+		Arrays.sort(sorted);
+		StringBuilder line = new StringBuilder(String.format("%-12s %8s %8d %8d %10.2f", endpoint, format(rate), count, errors, count / seconds));
+		for (double percentile : PERCENTILES) {
+			line.append(String.format(" %9.1f", millis(percentile(sorted, percentile))));
+		}
+		return line.append(String.format(" %9.1f", millis(count == 0 ? 0 : sorted[count - 1]))).toString();
+	}
+
+	// nearest-rank percentile
+	private static long percentile(long[] sorted, double percentile) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+		return sorted[Math.max(0, rank - 1)];
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+
+	private static String format(double value) {
+		return value == Math.rint(value) ? Long.toString((long) value) : Double.toString(value);
+	}
+}
@@ -0,0 +1,206 @@
+package com.intuit.developer.tutorials.loadgen;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.http.client.CookieStore;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.client.LaxRedirectStrategy;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Drives endpoints of the app at fixed arrival rates and reports their latency percentiles.
+ *
+ * The load is open: requests are started on schedule whether or not the previous ones
+ * have completed, and latency is measured from the time a request was scheduled to
+ * start, so a slow app is not hidden by the generator waiting on it (coordinated omission).
+ *
+ * Each session connects to QuickBooks through /connectToQuickbooks, which against the QBO
+ * stub server completes without a browser, and requests are spread over the sessions.
+ *
+ * Options:
+ * --app &lt;url&gt; of the app, default http://localhost:8080
+ * --rates &lt;endpoint=requests per second,...&gt;, default /invoice=2,/bill=2,/jobs=1,/reports=5
+ * --duration &lt;seconds&gt; measured, default 60
+ * --warmup &lt;seconds&gt; run before measuring, default 10
+ * --sessions &lt;n&gt; connected sessions, default 4
+ * --concurrency &lt;n&gt; maximum requests in flight, default 200
+ */
+public final class LoadGenerator {
+
+	private static final String CONNECT_PATH = "/connectToQuickbooks";
+
+	private String app = "http://localhost:8080";
+	private final Map<String, Double> rates = new LinkedHashMap<String, Double>();
+	private int durationSeconds = 60;
+	private int warmupSeconds = 10;
+	private int sessions = 4;
+	private int concurrency = 200;
+
+	private CloseableHttpClient client;
+	// cookies of each session, shared by the concurrent requests of the session (BasicCookieStore is synchronized)
+	private final List<CookieStore> sessionCookies = new ArrayList<CookieStore>();
+
+	public static void main(String[] args) throws Exception {
+		LoadGenerator generator = new LoadGenerator();
+		generator.parse(args);
+		generator.run();
+	}
+
+	private void parse(String[] args) {
+		String rateSpec = "/invoice=2,/bill=2,/jobs=1,/reports=5";
+		for (int i = 0; i < args.length; i++) {
+			if (i + 1 == args.length) {
+				throw new IllegalArgumentException("Missing value of " + args[i]);
+			}
+			String value = args[++i];
+			switch (args[i - 1]) {
+			case "--app":
+				app = value.endsWith("/") ? value.substring(0, value.length() - 1) : value;
+				break;
+			case "--rates":
+				rateSpec = value;
+				break;
+			case "--duration":
+				durationSeconds = Integer.parseInt(value);
+				break;
+			case "--warmup":
+				warmupSeconds = Integer.parseInt(value);
+				break;
+			case "--sessions":
+				sessions = Integer.parseInt(value);
+				break;
+			case "--concurrency":
+				concurrency = Integer.parseInt(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+			}
+		}
+		for (String rate : rateSpec.split(",")) {
+			String[] parts = rate.split("=");
+			if (parts.length != 2 || Double.parseDouble(parts[1]) <= 0) {
+				throw new IllegalArgumentException("Expected <endpoint>=<requests per second> in " + rate);
+			}
+			String endpoint = parts[0].trim();
+			rates.put(endpoint.startsWith("/") ? endpoint : "/" + endpoint, Double.valueOf(parts[1]));
+		}
+	}
+
+	private void run() throws IOException, InterruptedException {
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(5000)
+				.setSocketTimeout(120000)
+				.build();
+		client = HttpClients.custom()
+				.setMaxConnTotal(concurrency)
+				.setMaxConnPerRoute(concurrency)
+				.setDefaultRequestConfig(requestConfig)
+				// the OAuth2 flow redirects to the stub and back to the app
+				.setRedirectStrategy(new LaxRedirectStrategy())
+				.build();
+		try {
+			connect();
+			Map<String, LatencyRecorder> recorders = load();
+			double seconds = durationSeconds;
+			System.out.println();
+			System.out.println(LatencyRecorder.header());
+			for (Map.Entry<String, Double> rate : rates.entrySet()) {
+				System.out.println(recorders.get(rate.getKey()).summary(rate.getKey(), rate.getValue(), seconds));
+			}
+		} finally {
+			client.close();
+		}
+	}
+
+	// connects each session, each one with its own cookies and so its own app session
+	private void connect() throws IOException {
+		for (int i = 0; i < sessions; i++) {
+			CookieStore cookies = new BasicCookieStore();
+			try (CloseableHttpResponse response = client.execute(new HttpGet(app + CONNECT_PATH), contextOf(cookies))) {
+				EntityUtils.consume(response.getEntity());
+				int status = response.getStatusLine().getStatusCode();
+				if (status != 200) {
+					throw new IOException("Connecting session " + (i + 1) + " failed with status " + status);
+				}
+			}
+			sessionCookies.add(cookies);
+		}
+		System.out.println("connected " + sessions + " session(s) to " + app);
+	}
+
+	private Map<String, LatencyRecorder> load() throws InterruptedException {
+		ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+		long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+		long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+		long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+		Map<String, LatencyRecorder> recorders = new LinkedHashMap<String, LatencyRecorder>();
+		List<Thread> schedulers = new ArrayList<Thread>();
+		for (Map.Entry<String, Double> rate : rates.entrySet()) {
+			String endpoint = rate.getKey();
+			LatencyRecorder recorder = new LatencyRecorder();
+			recorders.put(endpoint, recorder);
+			long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate.getValue());
+			Thread scheduler = new Thread(() -> {
+				int sent = 0;
+				for (long intended = start; intended < end; intended += intervalNanos) {
+					for (long wait; (wait = intended - System.nanoTime()) > 0;) {
+						LockSupport.parkNanos(wait);
+					}
+					long scheduled = intended;
+					CookieStore cookies = sessionCookies.get(sent++ % sessionCookies.size());
+					workers.execute(() -> request(endpoint, cookies, scheduled, scheduled >= measureFrom ? recorder : null));
+				}
+			}, "load " + endpoint);
+			schedulers.add(scheduler);
+		}
+		System.out.println("warming up for " + warmupSeconds + "s, then measuring for " + durationSeconds + "s at " + rates);
+		schedulers.forEach(Thread::start);
+		for (Thread scheduler : schedulers) {
+			scheduler.join();
+		}
+		workers.shutdown();
+		if (!workers.awaitTermination(2, TimeUnit.MINUTES)) {
+			System.out.println("some requests were still in flight after 2 minutes");
+			workers.shutdownNow();
+		}
+		return recorders;
+	}
+
+	// recorder is null for warmup requests
+	private void request(String endpoint, CookieStore cookies, long intendedStartNanos, LatencyRecorder recorder) {
+		boolean error;
+		try (CloseableHttpResponse response = client.execute(new HttpGet(app + endpoint), contextOf(cookies))) {
+			String body = response.getEntity() == null ? "" : EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+			// the app answers QBO failures with 200 and a {"response": ...} message
+			error = response.getStatusLine().getStatusCode() != 200 || body.startsWith("{\"response\"");
+		} catch (IOException e) {
+			error = true;
+		}
+		if (recorder != null) {
+			recorder.record(System.nanoTime() - intendedStartNanos, error);
+		}
+	}
+
+	// HttpClient mutates the context of every request it executes, a context is not shared between requests
+	private static HttpClientContext contextOf(CookieStore cookies) {
+		HttpClientContext context = HttpClientContext.create();
+		context.setCookieStore(cookies);
+		return context;
+	}
+}
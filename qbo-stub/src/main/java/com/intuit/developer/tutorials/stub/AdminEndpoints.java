@@ -0,0 +1,78 @@
+package com.intuit.developer.tutorials.stub;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * Control of the stub while it runs:
+ *
+ * /stub/settings shows the settings, and changes those given as parameters, e.g.
+ * /stub/settings?fault.429=0.05&amp;latency.query=fixed:500
+ * /stub/stats shows the calls served by operation and status
+ * /stub/reset drops all companies, tokens and stats
+ */
+final class AdminEndpoints implements HttpHandler {
+
+	static final String PATH = "/stub/";
+
+	private final StubSettings settings;
+	private final StubStats stats;
+	private final OAuthEndpoints oauth;
+	private final CompanyEndpoints companies;
+
+	AdminEndpoints(StubSettings settings, StubStats stats, OAuthEndpoints oauth, CompanyEndpoints companies) {
+		this.settings = settings;
+		this.stats = stats;
+		this.oauth = oauth;
+		this.companies = companies;
+	}
+
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+		try {
+			switch (exchange.getRequestURI().getPath().substring(PATH.length())) {
+			case "settings":
+				updateSettings(exchange);
+				break;
+			case "stats":
+				Exchanges.sendJson(exchange, 200, stats.toJson());
+				break;
+			case "reset":
+				companies.reset();
+				oauth.reset();
+				stats.reset();
+				Exchanges.sendJson(exchange, 200, new JSONObject().put("reset", true));
+				break;
+			default:
+				Exchanges.send(exchange, 404, "text/plain", "Not Found");
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void updateSettings(HttpExchange exchange) throws IOException {
+		Map<String, String> params = Exchanges.queryParams(exchange);
+		if ("POST".equals(exchange.getRequestMethod())) {
+			params.putAll(Exchanges.decodeParams(Exchanges.readBody(exchange)));
+		}
+		for (Map.Entry<String, String> param : params.entrySet()) {
+			if (param.getKey().equals("port") || param.getKey().equals("threads")) {
+				Exchanges.send(exchange, 400, "text/plain", param.getKey() + " can only be set on startup");
+				return;
+			}
+			try {
+				settings.set(param.getKey(), param.getValue());
+			} catch (IllegalArgumentException e) {
+				Exchanges.send(exchange, 400, "text/plain", e.getMessage());
+				return;
+			}
+		}
+		Exchanges.sendJson(exchange, 200, new JSONObject(settings.values()));
+	}
+}
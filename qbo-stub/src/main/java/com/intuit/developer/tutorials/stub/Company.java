@@ -0,0 +1,461 @@
+package com.intuit.developer.tutorials.stub;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * In-memory entities of one realm. Entities are stored in the JSON form QBO returns them
+ * in and copied on the way in and out, all access is synchronized on the company.
+ *
+ * Beyond storing what it is given, the company assigns ids, sync tokens and metadata,
+ * totals transactions, checks names are unique and references exist, applies payments to
+ * the balance of the invoices and bills they link to, and tracks the quantity on hand of
+ * inventory items sold by invoices.
+ */
+final class Company {
+
+	private static final Map<String, String> TYPE_NAMES = new HashMap<String, String>();
+
+	// reference fields checked on write, and the type they refer to
+	private static final Map<String, String> REFERENCES = new HashMap<String, String>();
+
+	// types whose name must be unique, and the field holding it
+	private static final Map<String, String> UNIQUE_NAMES = new HashMap<String, String>();
+
+	static {
+		for (String name : new String[] { "Account", "Bill", "BillPayment", "Class", "CompanyInfo", "CreditMemo",
+				"Customer", "Department", "Deposit", "Employee", "Estimate", "Invoice", "Item", "JournalEntry",
+				"Payment", "Purchase", "SalesReceipt", "TaxCode", "Term", "Vendor", "VendorCredit" }) {
+			TYPE_NAMES.put(name.toLowerCase(), name);
+		}
+		REFERENCES.put("CustomerRef", "customer");
+		REFERENCES.put("VendorRef", "vendor");
+		REFERENCES.put("ItemRef", "item");
+		for (String account : new String[] { "AccountRef", "APAccountRef", "ARAccountRef", "IncomeAccountRef",
+				"ExpenseAccountRef", "AssetAccountRef", "DepositToAccountRef", "BankAccountRef", "DiscountAccountRef" }) {
+			REFERENCES.put(account, "account");
+		}
+		UNIQUE_NAMES.put("account", "Name");
+		UNIQUE_NAMES.put("item", "Name");
+		UNIQUE_NAMES.put("customer", "DisplayName");
+		UNIQUE_NAMES.put("vendor", "DisplayName");
+		UNIQUE_NAMES.put("employee", "DisplayName");
+	}
+
+	private final String realmId;
+	private final Map<String, TreeMap<Long, JSONObject>> entities = new HashMap<String, TreeMap<Long, JSONObject>>();
+	private long nextId = 1;
+
+	Company(String realmId, int number) {
+		this.realmId = realmId;
+		JSONObject companyInfo = new JSONObject()
+				.put("CompanyName", "Sandbox Company_US_" + number)
+				.put("LegalName", "Sandbox Company_US_" + number)
+				.put("Country", "US")
+				.put("FiscalYearStartMonth", "January")
+				.put("CompanyStartDate", LocalDate.now().withDayOfYear(1).toString())
+				.put("Email", new JSONObject().put("Address", "noreply@quickbooks.com"))
+				.put("SupportedLanguages", "en");
+		stamp(companyInfo, "1", 0);
+		table("companyinfo").put(1L, companyInfo);
+	}
+
+	/**
+	 * @param type entity type as in the request path
+	 * @return the type name QBO uses as the element name
+	 */
+	static String typeName(String type) {
+		String name = TYPE_NAMES.get(type.toLowerCase());
+		return name != null ? name : Character.toUpperCase(type.charAt(0)) + type.substring(1);
+	}
+
+	synchronized JSONObject create(String type, JSONObject entity) throws StubFault {
+		type = type.toLowerCase();
+		entity = copy(entity);
+		checkUniqueName(type, entity, null);
+		checkReferences(entity);
+		long id = nextId++;
+		stamp(entity, Long.toString(id), 0);
+		total(type, entity);
+		switch (type) {
+		case "invoice":
+			entity.put("Balance", entity.opt("TotalAmt"));
+			if (!entity.has("DocNumber")) {
+				entity.put("DocNumber", Long.toString(1000 + id));
+			}
+			sellInventory(entity);
+			break;
+		case "bill":
+			entity.put("Balance", entity.opt("TotalAmt"));
+			break;
+		case "payment":
+			applyPayment(entity, "invoice");
+			break;
+		case "billpayment":
+			applyPayment(entity, "bill");
+			break;
+		case "account":
+			entity.put("FullyQualifiedName", entity.optString("Name"));
+			entity.put("CurrentBalance", 0);
+			entity.put("Active", true);
+			break;
+		case "item":
+		case "customer":
+		case "vendor":
+			entity.put("Active", true);
+			break;
+		default:
+		}
+		if (isTransaction(entity) && !entity.has("TxnDate")) {
+			entity.put("TxnDate", LocalDate.now().toString());
+		}
+		table(type).put(id, entity);
+		return copy(entity);
+	}
+
+	synchronized JSONObject update(String type, JSONObject changes) throws StubFault {
+		type = type.toLowerCase();
+		JSONObject current = existing(type, changes);
+		JSONObject entity = changes.optBoolean("sparse") ? merge(copy(current), changes) : copy(changes);
+		checkUniqueName(type, entity, current.getString("Id"));
+		checkReferences(entity);
+		stamp(entity, current.getString("Id"), Integer.parseInt(current.getString("SyncToken")) + 1);
+		entity.getJSONObject("MetaData").put("CreateTime", current.getJSONObject("MetaData").get("CreateTime"));
+		total(type, entity);
+		table(type).put(Long.valueOf(current.getString("Id")), entity);
+		return copy(entity);
+	}
+
+	synchronized JSONObject delete(String type, JSONObject entity) throws StubFault {
+		type = type.toLowerCase();
+		JSONObject current = existing(type, entity);
+		table(type).remove(Long.valueOf(current.getString("Id")));
+		return new JSONObject().put("status", "Deleted").put("domain", "QBO").put("Id", current.getString("Id"));
+	}
+
+	synchronized JSONObject voidEntity(String type, JSONObject entity) throws StubFault {
+		type = type.toLowerCase();
+		JSONObject current = existing(type, entity);
+		current.put("TotalAmt", 0).put("PrivateNote", "Voided");
+		if (current.has("Balance")) {
+			current.put("Balance", 0);
+		}
+		stamp(current, current.getString("Id"), Integer.parseInt(current.getString("SyncToken")) + 1);
+		return copy(current);
+	}
+
+	synchronized JSONObject read(String type, String id) throws StubFault {
+		JSONObject entity = find(type.toLowerCase(), id);
+		if (entity == null) {
+			throw StubFault.notFound(typeName(type), id);
+		}
+		return copy(entity);
+	}
+
+	/**
+	 * @param sql
+	 * @return the QueryResponse element
+	 * @throws StubFault
+	 */
+	synchronized JSONObject query(String sql) throws StubFault {
+		StubQuery query = StubQuery.parse(sql);
+		List<JSONObject> results = query.select(table(query.getEntity().toLowerCase()).values());
+		JSONObject response = new JSONObject();
+		if (query.isCount()) {
+			return response.put("totalCount", results.size());
+		}
+		if (!results.isEmpty()) {
+			JSONArray array = new JSONArray();
+			for (JSONObject result : results) {
+				array.put(copy(result));
+			}
+			response.put(typeName(query.getEntity()), array)
+					.put("startPosition", query.getStartPosition())
+					.put("maxResults", results.size());
+		}
+		return response;
+	}
+
+	/**
+	 * Marks a transaction as emailed
+	 *
+	 * @param type
+	 * @param id
+	 * @param sendTo address to send it to, or null for its BillEmail
+	 * @return
+	 * @throws StubFault
+	 */
+	synchronized JSONObject send(String type, String id, String sendTo) throws StubFault {
+		JSONObject entity = find(type.toLowerCase(), id);
+		if (entity == null) {
+			throw StubFault.notFound(typeName(type), id);
+		}
+		if (sendTo != null) {
+			entity.put("BillEmail", new JSONObject().put("Address", sendTo));
+		} else if (!entity.has("BillEmail")) {
+			throw StubFault.validation("6140", "Missing email address", "Email address is required to send " + typeName(type) + " " + id);
+		}
+		entity.put("EmailStatus", "EmailSent");
+		entity.put("DeliveryInfo", new JSONObject().put("DeliveryType", "Email").put("DeliveryTime", Payloads.now()));
+		stamp(entity, id, Integer.parseInt(entity.getString("SyncToken")) + 1);
+		return copy(entity);
+	}
+
+	/**
+	 * Profit and loss style report of the invoices and bills in the period, whatever
+	 * report is asked for
+	 *
+	 * @param name report name
+	 * @param params query parameters of the request
+	 * @return
+	 */
+	synchronized JSONObject report(String name, Map<String, String> params) {
+		String start = params.getOrDefault("start_date", LocalDate.now().withDayOfYear(1).toString());
+		String end = params.getOrDefault("end_date", LocalDate.now().toString());
+		JSONObject header = new JSONObject()
+				.put("Time", Payloads.now())
+				.put("ReportName", name)
+				.put("ReportBasis", params.getOrDefault("accounting_method", "Accrual"))
+				.put("StartPeriod", start)
+				.put("EndPeriod", end)
+				.put("SummarizeColumnsBy", params.getOrDefault("summarize_column_by", "Total"))
+				.put("Currency", "USD")
+				.put("Option", new JSONArray().put(new JSONObject().put("Name", "NoReportData").put("Value", "false")));
+		JSONObject columns = new JSONObject().put("Column", new JSONArray()
+				.put(new JSONObject().put("ColTitle", "").put("ColType", "Account"))
+				.put(new JSONObject().put("ColTitle", "Total").put("ColType", "Money")));
+
+		Map<String, BigDecimal> income = totalsBy("CustomerRef", table("invoice").values(), start, end);
+		Map<String, BigDecimal> expenses = totalsBy("VendorRef", table("bill").values(), start, end);
+		JSONArray rows = new JSONArray()
+				.put(section("Income", income))
+				.put(section("Expenses", expenses));
+		rows.put(new JSONObject()
+				.put("Summary", colData("Net Income", sum(income).subtract(sum(expenses))))
+				.put("type", "Section")
+				.put("group", "NetIncome"));
+		return new JSONObject().put("Header", header).put("Columns", columns).put("Rows", new JSONObject().put("Row", rows));
+	}
+
+	// totals of the transactions in the period by the name of the customer or vendor
+	private static Map<String, BigDecimal> totalsBy(String refField, Collection<JSONObject> transactions, String start, String end) {
+		Map<String, BigDecimal> totals = new LinkedHashMap<String, BigDecimal>();
+		for (JSONObject transaction : transactions) {
+			String date = transaction.optString("TxnDate");
+			if (date.compareTo(start) < 0 || date.compareTo(end) > 0) {
+				continue;
+			}
+			JSONObject ref = transaction.optJSONObject(refField);
+			String name = ref == null ? "Not Specified" : ref.optString("name", ref.optString("value"));
+			totals.merge(name, amount(transaction.opt("TotalAmt")), BigDecimal::add);
+		}
+		return totals;
+	}
+
+	private static BigDecimal sum(Map<String, BigDecimal> totals) {
+		return totals.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+	}
+
+	private static JSONObject section(String group, Map<String, BigDecimal> totals) {
+		JSONArray rows = new JSONArray();
+		for (Map.Entry<String, BigDecimal> total : totals.entrySet()) {
+			rows.put(colData(total.getKey(), total.getValue()).put("type", "Data"));
+		}
+		return new JSONObject()
+				.put("Header", colData(group, null))
+				.put("Rows", new JSONObject().put("Row", rows))
+				.put("Summary", colData("Total " + group, sum(totals)))
+				.put("type", "Section")
+				.put("group", group);
+	}
+
+	private static JSONObject colData(String label, BigDecimal amount) {
+		return new JSONObject().put("ColData", new JSONArray()
+				.put(new JSONObject().put("value", label))
+				.put(new JSONObject().put("value", amount == null ? "" : amount.setScale(2, RoundingMode.HALF_UP).toPlainString())));
+	}
+
+	private TreeMap<Long, JSONObject> table(String type) {
+		return entities.computeIfAbsent(type, t -> new TreeMap<Long, JSONObject>());
+	}
+
+	private JSONObject find(String type, String id) {
+		try {
+			return table(type).get(Long.valueOf(id));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private JSONObject existing(String type, JSONObject entity) throws StubFault {
+		String id = entity.optString("Id", null);
+		if (id == null) {
+			throw StubFault.validation("2020", "Required param missing, need to supply the required value for the API",
+					"Required parameter Id is missing in the request");
+		}
+		JSONObject current = find(type, id);
+		if (current == null) {
+			throw StubFault.notFound(typeName(type), id);
+		}
+		String syncToken = entity.optString("SyncToken", null);
+		if (syncToken != null && !syncToken.equals(current.getString("SyncToken"))) {
+			throw StubFault.validation("5010", "Stale Object Error", "Stale Object Error : You and " + realmId
+					+ " were working on this at the same time. " + typeName(type) + " " + id + " is at SyncToken "
+					+ current.getString("SyncToken") + ", not " + syncToken);
+		}
+		return current;
+	}
+
+	private void checkUniqueName(String type, JSONObject entity, String id) throws StubFault {
+		String field = UNIQUE_NAMES.get(type);
+		if (field == null || !entity.has(field)) {
+			return;
+		}
+		String name = entity.getString(field);
+		for (JSONObject other : table(type).values()) {
+			if (name.equalsIgnoreCase(other.optString(field)) && !other.getString("Id").equals(id)) {
+				throw StubFault.validation("6240", "Duplicate Name Exists Error",
+						"The name supplied already exists. : Id=" + other.getString("Id"));
+			}
+		}
+	}
+
+	private void checkReferences(Object value) throws StubFault {
+		if (value instanceof JSONArray) {
+			JSONArray array = (JSONArray) value;
+			for (int i = 0; i < array.length(); i++) {
+				checkReferences(array.get(i));
+			}
+		} else if (value instanceof JSONObject) {
+			JSONObject object = (JSONObject) value;
+			for (Object key : object.keySet()) {
+				String type = REFERENCES.get(key);
+				Object child = object.get((String) key);
+				if (type != null && child instanceof JSONObject) {
+					String id = ((JSONObject) child).optString("value", null);
+					if (id != null && find(type, id) == null) {
+						throw StubFault.validation("2500", "Invalid Reference Id",
+								"Invalid Reference Id : " + typeName(type) + " assigned is not found : " + id);
+					}
+				} else {
+					checkReferences(child);
+				}
+			}
+		}
+	}
+
+	private void sellInventory(JSONObject invoice) {
+		for (JSONObject detail : lineDetails(invoice, "SalesItemLineDetail")) {
+			JSONObject itemRef = detail.optJSONObject("ItemRef");
+			JSONObject item = itemRef == null ? null : find("item", itemRef.optString("value"));
+			if (item != null && item.optBoolean("TrackQtyOnHand")) {
+				BigDecimal qty = detail.has("Qty") ? amount(detail.get("Qty")) : BigDecimal.ONE;
+				item.put("QtyOnHand", amount(item.opt("QtyOnHand")).subtract(qty));
+				stamp(item, item.getString("Id"), Integer.parseInt(item.getString("SyncToken")) + 1);
+			}
+		}
+	}
+
+	private void applyPayment(JSONObject payment, String paidType) {
+		JSONArray lines = payment.optJSONArray("Line");
+		for (int i = 0; lines != null && i < lines.length(); i++) {
+			JSONObject line = lines.optJSONObject(i);
+			JSONArray linked = line == null ? null : line.optJSONArray("LinkedTxn");
+			for (int j = 0; linked != null && j < linked.length(); j++) {
+				JSONObject txn = linked.optJSONObject(j);
+				JSONObject paid = txn == null ? null : find(paidType, txn.optString("TxnId"));
+				if (paid != null) {
+					paid.put("Balance", amount(paid.opt("Balance")).subtract(amount(line.opt("Amount"))).max(BigDecimal.ZERO));
+				}
+			}
+		}
+	}
+
+	private static List<JSONObject> lineDetails(JSONObject entity, String detailName) {
+		List<JSONObject> details = new ArrayList<JSONObject>();
+		JSONArray lines = entity.optJSONArray("Line");
+		for (int i = 0; lines != null && i < lines.length(); i++) {
+			JSONObject line = lines.optJSONObject(i);
+			if (line != null && line.optJSONObject(detailName) != null) {
+				details.add(line.getJSONObject(detailName));
+			}
+		}
+		return details;
+	}
+
+	/**
+	 * Totals the lines of a transaction, as QBO does whatever total it was sent. Payments
+	 * keep the amount they were given, journal entries total their debits.
+	 */
+	private static void total(String type, JSONObject entity) {
+		JSONArray lines = entity.optJSONArray("Line");
+		if (lines == null || (entity.has("TotalAmt") && (type.equals("payment") || type.equals("billpayment")))) {
+			return;
+		}
+		BigDecimal total = BigDecimal.ZERO;
+		for (int i = 0; i < lines.length(); i++) {
+			JSONObject line = lines.optJSONObject(i);
+			if (line == null || "SubTotalLineDetail".equals(line.optString("DetailType"))) {
+				continue;
+			}
+			BigDecimal amount = amount(line.opt("Amount"));
+			if ("DiscountLineDetail".equals(line.optString("DetailType"))) {
+				total = total.subtract(amount);
+			} else if (!type.equals("journalentry") || "Debit".equalsIgnoreCase(
+					String.valueOf(StubQuery.field(line, "JournalEntryLineDetail.PostingType")))) {
+				total = total.add(amount);
+			}
+		}
+		entity.put("TotalAmt", total);
+	}
+
+	private static boolean isTransaction(JSONObject entity) {
+		return entity.has("Line");
+	}
+
+	private static void stamp(JSONObject entity, String id, int syncToken) {
+		String now = Payloads.now();
+		JSONObject metaData = entity.optJSONObject("MetaData");
+		if (metaData == null || !metaData.has("CreateTime")) {
+			metaData = new JSONObject().put("CreateTime", now);
+		}
+		entity.put("Id", id)
+				.put("SyncToken", Integer.toString(syncToken))
+				.put("MetaData", metaData.put("LastUpdatedTime", now))
+				.put("domain", "QBO")
+				.put("sparse", false);
+	}
+
+	private static JSONObject merge(JSONObject target, JSONObject changes) {
+		for (Object key : changes.keySet()) {
+			target.put((String) key, changes.get((String) key));
+		}
+		return target;
+	}
+
+	private static BigDecimal amount(Object value) {
+		if (value == null) {
+			return BigDecimal.ZERO;
+		}
+		try {
+			return new BigDecimal(value.toString());
+		} catch (NumberFormatException e) {
+			return BigDecimal.ZERO;
+		}
+	}
+
+	private static JSONObject copy(JSONObject entity) {
+		return new JSONObject(entity.toString());
+	}
+}
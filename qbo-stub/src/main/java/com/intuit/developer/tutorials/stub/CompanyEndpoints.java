@@ -0,0 +1,274 @@
+package com.intuit.developer.tutorials.stub;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.intuit.developer.tutorials.stub.StubSettings.Operation;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * The QBO v3 company endpoints under /v3/company/{realmId}: reads, writes (create, update,
+ * delete and void), send, query, batch and reports.
+ *
+ * Each call is checked in the order QBO does it: bearer token, then the throttle of the
+ * realm, then an injected fault may replace it, then it waits the latency of its operation
+ * before being served from the in-memory {@link Company} of the realm.
+ */
+final class CompanyEndpoints implements HttpHandler {
+
+	static final String PATH = "/v3/company/";
+
+	private static final int MAX_BATCH_ITEMS = 30;
+
+	private final StubSettings settings;
+	private final StubStats stats;
+	private final OAuthEndpoints oauth;
+	private final Map<String, Company> companies = new ConcurrentHashMap<String, Company>();
+	private final Map<String, Throttle> throttles = new ConcurrentHashMap<String, Throttle>();
+
+	CompanyEndpoints(StubSettings settings, StubStats stats, OAuthEndpoints oauth) {
+		this.settings = settings;
+		this.stats = stats;
+		this.oauth = oauth;
+	}
+
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+		try {
+			exchange.getResponseHeaders().set("intuit_tid", UUID.randomUUID().toString());
+			String[] path = exchange.getRequestURI().getPath().substring(PATH.length()).split("/");
+			Operation operation = path.length < 2 ? null : operationOf(exchange.getRequestMethod(), path);
+			if (operation == null) {
+				Exchanges.send(exchange, 404, "text/plain", "Not Found");
+				stats.record("unknown", 404);
+				return;
+			}
+			int status = serve(exchange, operation, path);
+			stats.record(operation.name().toLowerCase(), status);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	// path is {realmId}/{entity or query, batch, reports}/...
+	private static Operation operationOf(String method, String[] path) {
+		String resource = path[1].toLowerCase();
+		if (resource.equals("query")) {
+			return Operation.QUERY;
+		}
+		if (resource.equals("batch") && method.equals("POST")) {
+			return Operation.BATCH;
+		}
+		if (resource.equals("reports") && path.length == 3 && method.equals("GET")) {
+			return Operation.REPORT;
+		}
+		if (method.equals("GET") && path.length == 3) {
+			return Operation.READ;
+		}
+		if (method.equals("POST") && (path.length == 2 || (path.length == 4 && path[3].equals("send")))) {
+			return Operation.WRITE;
+		}
+		return null;
+	}
+
+	private int serve(HttpExchange exchange, Operation operation, String[] path) throws IOException {
+		if (!isAuthorized(exchange)) {
+			return unauthorized(exchange);
+		}
+		Throttle throttle = throttles.computeIfAbsent(path[0], realmId -> new Throttle());
+		long retryAfterSeconds = throttle.acquire(settings);
+		if (retryAfterSeconds > 0) {
+			return throttled(exchange, retryAfterSeconds);
+		}
+		try {
+			int fault = settings.drawFault(ThreadLocalRandom.current());
+			switch (fault) {
+			case 401:
+				return unauthorized(exchange);
+			case 429:
+				return throttled(exchange, 1);
+			case 500:
+				return fault(exchange, new StubFault(500, "SystemFault", "10000", "An application error has occurred while processing your request",
+						"System Failure Error: injected by the QBO stub"));
+			case 503:
+				Exchanges.send(exchange, 503, "text/plain", "Service Unavailable");
+				return 503;
+			default:
+			}
+			settings.latencyOf(operation).delay();
+			Company company = companies.computeIfAbsent(path[0], realmId -> new Company(realmId, companies.size() + 1));
+			JSONObject response;
+			try {
+				response = execute(exchange, operation, path, company);
+			} catch (StubFault e) {
+				return fault(exchange, e);
+			}
+			Exchanges.sendJson(exchange, 200, response);
+			return 200;
+		} finally {
+			throttle.release();
+		}
+	}
+
+	private JSONObject execute(HttpExchange exchange, Operation operation, String[] path, Company company) throws IOException, StubFault {
+		Map<String, String> params = Exchanges.queryParams(exchange);
+		switch (operation) {
+		case QUERY:
+			String sql = "POST".equals(exchange.getRequestMethod()) ? Exchanges.readBody(exchange) : params.get("query");
+			if (sql == null || sql.trim().isEmpty()) {
+				throw StubFault.validation("4000", "Error parsing query", "QueryParserError: the query is empty");
+			}
+			return Payloads.response("QueryResponse", company.query(sql));
+		case BATCH:
+			return batch(company, Payloads.parse(Exchanges.readBody(exchange)));
+		case REPORT:
+			// reports are returned at the root of the response, without time
+			return company.report(path[2], params);
+		case READ:
+			return Payloads.response(Company.typeName(path[1]), company.read(path[1], path[2]));
+		default:
+			if (path.length == 4) {
+				return Payloads.response(Company.typeName(path[1]), company.send(path[1], path[2], params.get("sendTo")));
+			}
+			JSONObject entity = Payloads.unwrap(Payloads.parse(Exchanges.readBody(exchange)), Company.typeName(path[1]));
+			return write(company, path[1], params.get("operation"), params.get("include"), entity);
+		}
+	}
+
+	private static JSONObject write(Company company, String type, String operation, String include, JSONObject entity) throws StubFault {
+		String name = Company.typeName(type);
+		if ("delete".equalsIgnoreCase(operation)) {
+			return Payloads.response(name, company.delete(type, entity));
+		}
+		if ("void".equalsIgnoreCase(operation) || "void".equalsIgnoreCase(include)) {
+			return Payloads.response(name, company.voidEntity(type, entity));
+		}
+		if (entity.has("Id")) {
+			return Payloads.response(name, company.update(type, entity));
+		}
+		return Payloads.response(name, company.create(type, entity));
+	}
+
+	private static JSONObject batch(Company company, JSONObject request) throws StubFault {
+		JSONArray items = Payloads.unwrap(request, "IntuitBatchRequest").optJSONArray("BatchItemRequest");
+		if (items == null || items.length() == 0) {
+			throw StubFault.validation("2020", "Required param missing, need to supply the required value for the API",
+					"Required parameter BatchItemRequest is missing in the request");
+		}
+		if (items.length() > MAX_BATCH_ITEMS) {
+			throw StubFault.validation("1040", "An application error has occurred while processing your request",
+					"Batch size " + items.length() + " exceeds the maximum of " + MAX_BATCH_ITEMS);
+		}
+		JSONArray responses = new JSONArray();
+		for (int i = 0; i < items.length(); i++) {
+			JSONObject item = items.getJSONObject(i);
+			JSONObject response = new JSONObject().put("bId", item.optString("bId"));
+			try {
+				if (item.has("Query")) {
+					response.put("QueryResponse", company.query(item.getString("Query")));
+				} else {
+					String type = entityKey(item);
+					response.put(type, write(company, type, item.optString("operation"), item.optString("optionsData"),
+							item.getJSONObject(type)).get(type));
+				}
+			} catch (StubFault e) {
+				response.put("Fault", e.toJson());
+			}
+			responses.put(response);
+		}
+		return Payloads.response("BatchItemResponse", responses);
+	}
+
+	// the element of a batch item holding its entity
+	private static String entityKey(JSONObject item) throws StubFault {
+		for (Object key : item.keySet()) {
+			if (item.opt((String) key) instanceof JSONObject) {
+				return (String) key;
+			}
+		}
+		throw StubFault.validation("2020", "Required param missing, need to supply the required value for the API",
+				"Batch item " + item.optString("bId") + " has no entity");
+	}
+
+	private boolean isAuthorized(HttpExchange exchange) {
+		String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+		if (authorization == null || !authorization.startsWith("Bearer ")) {
+			return false;
+		}
+		return !settings.isStrictAuth() || oauth.isValid(authorization.substring("Bearer ".length()).trim());
+	}
+
+	private static int unauthorized(HttpExchange exchange) throws IOException {
+		exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer realm=\"Intuit\"");
+		return fault(exchange, new StubFault(401, "AUTHENTICATION", "3200", "message=AuthenticationFailed; errorCode=003200; statusCode=401",
+				"Token expired or revoked"));
+	}
+
+	private static int throttled(HttpExchange exchange, long retryAfterSeconds) throws IOException {
+		exchange.getResponseHeaders().set("Retry-After", Long.toString(retryAfterSeconds));
+		return fault(exchange, new StubFault(429, "ThrottleExceeded", "3001", "message=ThrottleExceeded; errorCode=003001; statusCode=429",
+				"The request limit was reached"));
+	}
+
+	private static int fault(HttpExchange exchange, StubFault fault) throws IOException {
+		Exchanges.sendJson(exchange, fault.getStatus(), Payloads.faultResponse(fault));
+		return fault.getStatus();
+	}
+
+	/**
+	 * Drops all companies and throttle windows
+	 */
+	void reset() {
+		companies.clear();
+		throttles.clear();
+	}
+
+	/**
+	 * Limits of one realm: concurrent calls, and calls per minute in a fixed window
+	 */
+	private static final class Throttle {
+
+		private static final long WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+		private long windowStart = System.currentTimeMillis();
+		private int calls;
+		private int inFlight;
+
+		/**
+		 * Counts the call in if it is within the limits, it must then be released
+		 *
+		 * @param settings
+		 * @return 0 if the call may proceed, otherwise the seconds to wait before retrying
+		 */
+		synchronized long acquire(StubSettings settings) {
+			long now = System.currentTimeMillis();
+			if (now - windowStart >= WINDOW_MILLIS) {
+				windowStart = now;
+				calls = 0;
+			}
+			int perMinute = settings.intValue("throttle.requestsPerMinute");
+			if (perMinute > 0 && calls >= perMinute) {
+				return Math.max(1, TimeUnit.MILLISECONDS.toSeconds(windowStart + WINDOW_MILLIS - now));
+			}
+			int maxConcurrent = settings.intValue("throttle.maxConcurrent");
+			if (maxConcurrent > 0 && inFlight >= maxConcurrent) {
+				return 1;
+			}
+			calls++;
+			inFlight++;
+			return 0;
+		}
+
+		synchronized void release() {
+			inFlight--;
+		}
+	}
+}
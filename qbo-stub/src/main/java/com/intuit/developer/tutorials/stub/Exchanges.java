@@ -0,0 +1,101 @@
+package com.intuit.developer.tutorials.stub;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Reading requests and writing responses of the JDK HTTP server
+ */
+final class Exchanges {
+
+	static final String JSON = "application/json;charset=UTF-8";
+
+	private Exchanges() {
+	}
+
+	/**
+	 * @param exchange
+	 * @return parameters of the query string, decoded
+	 */
+	static Map<String, String> queryParams(HttpExchange exchange) {
+		return decodeParams(exchange.getRequestURI().getRawQuery());
+	}
+
+	/**
+	 * @param encoded query string or form body, may be null
+	 * @return
+	 */
+	static Map<String, String> decodeParams(String encoded) {
+		Map<String, String> params = new LinkedHashMap<String, String>();
+		if (encoded == null || encoded.isEmpty()) {
+			return params;
+		}
+		for (String pair : encoded.split("&")) {
+			int equals = pair.indexOf('=');
+			String name = equals < 0 ? pair : pair.substring(0, equals);
+			String value = equals < 0 ? "" : pair.substring(equals + 1);
+			params.put(decode(name), decode(value));
+		}
+		return params;
+	}
+
+	private static String decode(String value) {
+		try {
+			return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @param exchange
+	 * @return body of the request, gunzipped if it was sent compressed
+	 * @throws IOException
+	 */
+	static String readBody(HttpExchange exchange) throws IOException {
+		InputStream in = exchange.getRequestBody();
+		if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+			in = new GZIPInputStream(in);
+		}
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		for (int read; (read = in.read(buffer)) > 0;) {
+			body.write(buffer, 0, read);
+		}
+		return new String(body.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	static void sendJson(HttpExchange exchange, int status, JSONObject body) throws IOException {
+		send(exchange, status, JSON, body.toString());
+	}
+
+	static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		if (contentType != null) {
+			exchange.getResponseHeaders().set("Content-Type", contentType);
+		}
+		exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+		if (bytes.length > 0) {
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(bytes);
+			}
+		}
+	}
+
+	static void redirect(HttpExchange exchange, String location) throws IOException {
+		exchange.getResponseHeaders().set("Location", location);
+		exchange.sendResponseHeaders(302, -1);
+	}
+}
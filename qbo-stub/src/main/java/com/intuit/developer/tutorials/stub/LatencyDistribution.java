@@ -0,0 +1,109 @@
+package com.intuit.developer.tutorials.stub;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Distribution of the latency added to a stubbed call, parsed from a spec such as
+ * lognormal:80:0.5. Values are in milliseconds:
+ *
+ * fixed:&lt;ms&gt;, uniform:&lt;min&gt;:&lt;max&gt;, normal:&lt;mean&gt;:&lt;stddev&gt;,
+ * lognormal:&lt;median&gt;:&lt;sigma&gt;, exponential:&lt;mean&gt;
+ */
+public final class LatencyDistribution {
+
+	private enum Kind {
+		FIXED, UNIFORM, NORMAL, LOGNORMAL, EXPONENTIAL
+	}
+
+	private final String spec;
+	private final Kind kind;
+	private final double a;
+	private final double b;
+
+	private LatencyDistribution(String spec, Kind kind, double a, double b) {
+		this.spec = spec;
+		this.kind = kind;
+		this.a = a;
+		this.b = b;
+	}
+
+	/**
+	 * @param spec
+	 * @return
+	 * @throws IllegalArgumentException if the spec is not valid
+	 */
+	public static LatencyDistribution parse(String spec) {
+		String[] parts = spec.trim().split(":");
+		Kind kind = null;
+		for (Kind candidate : Kind.values()) {
+			if (candidate.name().equalsIgnoreCase(parts[0].trim())) {
+				kind = candidate;
+			}
+		}
+		if (kind == null) {
+			throw new IllegalArgumentException("Unknown latency distribution " + spec);
+		}
+		int arguments = kind == Kind.FIXED || kind == Kind.EXPONENTIAL ? 1 : 2;
+		if (parts.length != arguments + 1) {
+			throw new IllegalArgumentException("Expected " + arguments + " argument(s) in latency " + spec);
+		}
+		double a;
+		double b;
+		try {
+			a = Double.parseDouble(parts[1].trim());
+			b = arguments == 2 ? Double.parseDouble(parts[2].trim()) : 0;
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid number in latency " + spec, e);
+		}
+		if (a < 0 || b < 0) {
+			throw new IllegalArgumentException("Negative argument in latency " + spec);
+		}
+		return new LatencyDistribution(spec.trim(), kind, a, b);
+	}
+
+	/**
+	 * @param random
+	 * @return latency in milliseconds, never negative
+	 */
+	public long sample(Random random) {
+		double millis;
+		switch (kind) {
+		case UNIFORM:
+			millis = a + random.nextDouble() * (b - a);
+			break;
+		case NORMAL:
+			millis = a + random.nextGaussian() * b;
+			break;
+		case LOGNORMAL:
+			millis = a * Math.exp(random.nextGaussian() * b);
+			break;
+		case EXPONENTIAL:
+			millis = -a * Math.log(1 - random.nextDouble());
+			break;
+		default:
+			millis = a;
+		}
+		return Math.max(0, Math.round(millis));
+	}
+
+	/**
+	 * Sleeps for a sampled latency
+	 *
+	 * @return the latency slept, in milliseconds
+	 */
+	public long delay() {
+		long millis = sample(ThreadLocalRandom.current());
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return millis;
+	}
+
+	@Override
+	public String toString() {
+		return spec;
+	}
+}
@@ -0,0 +1,187 @@
+package com.intuit.developer.tutorials.stub;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * The Intuit OAuth2 endpoints the app uses: authorization, which redirects straight back
+ * with a code for one of the stub realms, the bearer token endpoint (authorization_code
+ * and refresh_token grants) and token revocation
+ */
+final class OAuthEndpoints implements HttpHandler {
+
+	static final String AUTHORIZATION_PATH = "/connect/oauth2";
+	static final String BEARER_TOKEN_PATH = "/oauth2/v1/tokens/bearer";
+	static final String REVOKE_TOKEN_PATH = "/oauth2/v1/tokens/revoke";
+
+	private static final long REALM_BASE = 9130356000000001L;
+	private static final long REFRESH_TOKEN_SECONDS = 8726400;
+
+	private final StubSettings settings;
+	private final StubStats stats;
+	private final AtomicInteger authorizations = new AtomicInteger();
+
+	// code -> realm, access token -> grant, refresh token -> realm
+	private final Map<String, String> codes = new ConcurrentHashMap<String, String>();
+	private final Map<String, Grant> accessTokens = new ConcurrentHashMap<String, Grant>();
+	private final Map<String, String> refreshTokens = new ConcurrentHashMap<String, String>();
+
+	OAuthEndpoints(StubSettings settings, StubStats stats) {
+		this.settings = settings;
+		this.stats = stats;
+	}
+
+	/**
+	 * @param accessToken
+	 * @return whether the token was issued by this server and has neither expired nor been revoked
+	 */
+	boolean isValid(String accessToken) {
+		Grant grant = accessTokens.get(accessToken);
+		if (grant == null) {
+			return false;
+		}
+		if (grant.expiresAtMillis < System.currentTimeMillis()) {
+			accessTokens.remove(accessToken);
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+		try {
+			String path = exchange.getRequestURI().getPath();
+			int status;
+			if (path.equals(AUTHORIZATION_PATH)) {
+				status = authorize(exchange);
+			} else {
+				settings.latencyOf(StubSettings.Operation.OAUTH).delay();
+				if (path.equals(BEARER_TOKEN_PATH) && "POST".equals(exchange.getRequestMethod())) {
+					status = token(exchange);
+				} else if (path.equals(REVOKE_TOKEN_PATH) && "POST".equals(exchange.getRequestMethod())) {
+					status = revoke(exchange);
+				} else {
+					status = 404;
+					Exchanges.send(exchange, status, null, "");
+				}
+			}
+			stats.record("oauth", status);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private int authorize(HttpExchange exchange) throws IOException {
+		Map<String, String> params = Exchanges.queryParams(exchange);
+		String redirectUri = params.get("redirect_uri");
+		if (redirectUri == null || !"code".equals(params.get("response_type"))) {
+			Exchanges.send(exchange, 400, "text/plain", "redirect_uri and response_type=code are required");
+			return 400;
+		}
+		int realms = Math.max(1, settings.intValue("oauth.realms"));
+		String realmId = Long.toString(REALM_BASE + authorizations.getAndIncrement() % realms);
+		String code = "AB" + UUID.randomUUID().toString().replace("-", "");
+		codes.put(code, realmId);
+		StringBuilder location = new StringBuilder(redirectUri)
+				.append(redirectUri.indexOf('?') < 0 ? '?' : '&')
+				.append("code=").append(code)
+				.append("&realmId=").append(realmId);
+		if (params.containsKey("state")) {
+			location.append("&state=").append(java.net.URLEncoder.encode(params.get("state"), "UTF-8"));
+		}
+		Exchanges.redirect(exchange, location.toString());
+		return 302;
+	}
+
+	private int token(HttpExchange exchange) throws IOException {
+		String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+		if (authorization == null || !authorization.startsWith("Basic ")) {
+			return error(exchange, 401, "invalid_client");
+		}
+		Map<String, String> form = Exchanges.decodeParams(Exchanges.readBody(exchange));
+		String realmId;
+		String refreshToken;
+		if ("authorization_code".equals(form.get("grant_type"))) {
+			// codes can only be used once
+			realmId = form.get("code") == null ? null : codes.remove(form.get("code"));
+			refreshToken = "RT1-" + UUID.randomUUID();
+		} else if ("refresh_token".equals(form.get("grant_type"))) {
+			refreshToken = form.get("refresh_token");
+			realmId = refreshToken == null ? null : refreshTokens.get(refreshToken);
+		} else {
+			return error(exchange, 400, "unsupported_grant_type");
+		}
+		if (realmId == null) {
+			return error(exchange, 400, "invalid_grant");
+		}
+		long expiresIn = settings.intValue("oauth.accessTokenSeconds");
+		String accessToken = "stub." + UUID.randomUUID() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong());
+		accessTokens.put(accessToken, new Grant(refreshToken, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(expiresIn)));
+		refreshTokens.put(refreshToken, realmId);
+		Exchanges.sendJson(exchange, 200, new JSONObject()
+				.put("token_type", "bearer")
+				.put("access_token", accessToken)
+				.put("refresh_token", refreshToken)
+				.put("expires_in", expiresIn)
+				.put("x_refresh_token_expires_in", REFRESH_TOKEN_SECONDS));
+		return 200;
+	}
+
+	private int revoke(HttpExchange exchange) throws IOException {
+		String token = revokedToken(Exchanges.readBody(exchange));
+		if (token == null) {
+			return error(exchange, 400, "invalid_request");
+		}
+		if (refreshTokens.remove(token) != null) {
+			accessTokens.values().removeIf(grant -> grant.refreshToken.equals(token));
+		} else {
+			accessTokens.remove(token);
+		}
+		Exchanges.send(exchange, 200, null, "");
+		return 200;
+	}
+
+	private static String revokedToken(String body) {
+		try {
+			return new JSONObject(body).optString("token", null);
+		} catch (JSONException e) {
+			return null;
+		}
+	}
+
+	private static int error(HttpExchange exchange, int status, String error) throws IOException {
+		Exchanges.sendJson(exchange, status, new JSONObject().put("error", error));
+		return status;
+	}
+
+	/**
+	 * Clears all codes and tokens
+	 */
+	void reset() {
+		codes.clear();
+		accessTokens.clear();
+		refreshTokens.clear();
+	}
+
+	private static final class Grant {
+
+		private final String refreshToken;
+		private final long expiresAtMillis;
+
+		Grant(String refreshToken, long expiresAtMillis) {
+			this.refreshToken = refreshToken;
+			this.expiresAtMillis = expiresAtMillis;
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package com.intuit.developer.tutorials.stub;
+
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.XML;
+
+/**
+ * Request bodies sent by the SDK, in XML (its default request format) or JSON, read into
+ * the JSON form QBO responds with
+ */
+final class Payloads {
+
+	// elements that are lists in the JSON form even when XML has a single one
+	private static final Set<String> LIST_ELEMENTS = new HashSet<String>(Arrays.asList(
+			"Line", "LinkedTxn", "CustomField", "TaxLine", "BatchItemRequest"));
+
+	// elements whose XML text is a number but that are strings in the JSON form
+	private static final Set<String> STRING_ELEMENTS = new HashSet<String>(Arrays.asList(
+			"Id", "SyncToken", "DocNumber", "value", "bId", "TxnId", "DefinitionId", "AcctNum", "CheckNum"));
+
+	private Payloads() {
+	}
+
+	/**
+	 * @param body
+	 * @return the body in the JSON form
+	 * @throws StubFault if it cannot be parsed
+	 */
+	static JSONObject parse(String body) throws StubFault {
+		String trimmed = body.trim();
+		try {
+			if (trimmed.startsWith("<")) {
+				return (JSONObject) normalize(XML.toJSONObject(trimmed), null);
+			}
+			return new JSONObject(trimmed);
+		} catch (JSONException e) {
+			throw StubFault.validation("2020", "Request has invalid or unsupported property", "Cannot parse the request: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @param body parsed request body
+	 * @param type entity type of the request path
+	 * @return the entity, without the root element named after its type if it has one
+	 */
+	static JSONObject unwrap(JSONObject body, String type) {
+		if (body.length() == 1) {
+			String key = (String) body.keys().next();
+			if (key.equalsIgnoreCase(type) && body.opt(key) instanceof JSONObject) {
+				return body.getJSONObject(key);
+			}
+		}
+		return body;
+	}
+
+	private static Object normalize(Object value, String name) {
+		if (value instanceof JSONArray) {
+			JSONArray array = (JSONArray) value;
+			JSONArray normalized = new JSONArray();
+			for (int i = 0; i < array.length(); i++) {
+				normalized.put(normalize(array.get(i), name));
+			}
+			return normalized;
+		}
+		if (value instanceof JSONObject) {
+			JSONObject object = (JSONObject) value;
+			if (name != null && name.endsWith("Ref")) {
+				// <CustomerRef name="Amy">58</CustomerRef>
+				JSONObject ref = new JSONObject().put("value", String.valueOf(object.opt("content")));
+				if (object.has("name")) {
+					ref.put("name", String.valueOf(object.get("name")));
+				}
+				return ref;
+			}
+			JSONObject normalized = new JSONObject();
+			for (Object element : object.keySet()) {
+				String key = (String) element;
+				if (key.startsWith("xmlns")) {
+					continue;
+				}
+				String local = key.substring(key.indexOf(':') + 1);
+				Object child = normalize(object.get(key), local);
+				if (LIST_ELEMENTS.contains(local) && !(child instanceof JSONArray)) {
+					child = new JSONArray().put(child);
+				}
+				normalized.put(local, child);
+			}
+			return normalized;
+		}
+		if (name != null && name.endsWith("Ref")) {
+			return new JSONObject().put("value", String.valueOf(value));
+		}
+		if (name != null && STRING_ELEMENTS.contains(name)) {
+			return String.valueOf(value);
+		}
+		return value;
+	}
+
+	/**
+	 * @param fault
+	 * @return response of a failed call
+	 */
+	static JSONObject faultResponse(StubFault fault) {
+		return new JSONObject().put("Fault", fault.toJson()).put("time", now());
+	}
+
+	/**
+	 * @param name element name, e.g. Invoice or QueryResponse
+	 * @param value
+	 * @return response of a successful call
+	 */
+	static JSONObject response(String name, Object value) {
+		return new JSONObject().put(name, value).put("time", now());
+	}
+
+	static String now() {
+		return OffsetDateTime.now().truncatedTo(ChronoUnit.MILLIS).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+	}
+}
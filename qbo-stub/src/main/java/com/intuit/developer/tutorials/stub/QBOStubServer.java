@@ -0,0 +1,69 @@
+package com.intuit.developer.tutorials.stub;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for the QBO v3 company endpoints and the Intuit OAuth2 endpoints, to run
+ * the app against without a sandbox company, e.g. under load.
+ *
+ * Arguments are settings as key=value, or .properties files of settings, see
+ * {@link StubSettings} for the keys. Point the app at it with
+ *
+ * IntuitAccountingAPIHost=http://localhost:9090
+ * OAuth2Host=http://localhost:9090
+ */
+public final class QBOStubServer {
+
+	private QBOStubServer() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		StubSettings settings = new StubSettings();
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			if (equals > 0) {
+				settings.set(arg.substring(0, equals), arg.substring(equals + 1));
+			} else {
+				Properties properties = new Properties();
+				try (InputStream in = new FileInputStream(arg)) {
+					properties.load(in);
+				}
+				for (String key : properties.stringPropertyNames()) {
+					settings.set(key, properties.getProperty(key));
+				}
+			}
+		}
+
+		StubStats stats = new StubStats();
+		OAuthEndpoints oauth = new OAuthEndpoints(settings, stats);
+		CompanyEndpoints companies = new CompanyEndpoints(settings, stats, oauth);
+		AdminEndpoints admin = new AdminEndpoints(settings, stats, oauth, companies);
+
+		int port = settings.intValue("port");
+		HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.createContext(CompanyEndpoints.PATH, companies);
+		server.createContext(OAuthEndpoints.AUTHORIZATION_PATH, oauth);
+		server.createContext("/oauth2/v1/tokens/", oauth);
+		server.createContext(AdminEndpoints.PATH, admin);
+		ExecutorService executor = Executors.newFixedThreadPool(settings.intValue("threads"));
+		server.setExecutor(executor);
+		server.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			server.stop(1);
+			executor.shutdown();
+		}));
+
+		System.out.println("QBO stub listening on port " + port + " with " + settings.values());
+		System.out.println("Run the app with:");
+		System.out.println("  IntuitAccountingAPIHost=http://localhost:" + port);
+		System.out.println("  OAuth2Host=http://localhost:" + port);
+	}
+}
@@ -0,0 +1,57 @@
+package com.intuit.developer.tutorials.stub;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Error returned by QBO as a Fault, e.g. a validation error or a stale object
+ */
+final class StubFault extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int status;
+	private final String type;
+	private final String code;
+	private final String detail;
+
+	/**
+	 * @param status HTTP status
+	 * @param type fault type, e.g. ValidationFault
+	 * @param code QBO error code
+	 * @param message
+	 * @param detail
+	 */
+	StubFault(int status, String type, String code, String message, String detail) {
+		super(message);
+		this.status = status;
+		this.type = type;
+		this.code = code;
+		this.detail = detail;
+	}
+
+	static StubFault validation(String code, String message, String detail) {
+		return new StubFault(400, "ValidationFault", code, message, detail);
+	}
+
+	static StubFault notFound(String type, String id) {
+		return validation("610", "Object Not Found", "Object Not Found : " + type + " " + id + " does not exist");
+	}
+
+	int getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the Fault element of the response
+	 */
+	JSONObject toJson() {
+		JSONObject error = new JSONObject()
+				.put("Message", getMessage())
+				.put("Detail", detail)
+				.put("code", code);
+		return new JSONObject()
+				.put("Error", new JSONArray().put(error))
+				.put("type", type);
+	}
+}
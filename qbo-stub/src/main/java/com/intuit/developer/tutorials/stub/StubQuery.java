@@ -0,0 +1,256 @@
+package com.intuit.developer.tutorials.stub;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.json.JSONObject;
+
+/**
+ * The subset of the QBO query language the stub answers: select * or count(*) from an
+ * entity, conditions joined by and (=, !=, &lt;, &lt;=, &gt;, &gt;=, like, in), orderby,
+ * startposition and maxresults
+ */
+final class StubQuery {
+
+	private static final Pattern QUERY = Pattern.compile(
+			"^\\s*select\\s+(.+?)\\s+from\\s+(\\w+)(?:\\s+where\\s+(.+?))?(?:\\s+order\\s*by\\s+([\\w.]+)(?:\\s+(asc|desc))?)?"
+					+ "(?:\\s+startposition\\s+(\\d+))?(?:\\s+maxresults\\s+(\\d+))?\\s*;?\\s*$",
+			Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+	private static final Pattern CONDITION = Pattern.compile(
+			"^([\\w.]+)\\s*(<=|>=|!=|=|<|>|like\\b|in\\b)\\s*(.+)$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+	private static final int MAX_RESULTS = 1000;
+
+	private final String entity;
+	private final boolean count;
+	private final List<Condition> conditions = new ArrayList<Condition>();
+	private String orderBy;
+	private boolean descending;
+	private int startPosition = 1;
+	private int maxResults = 100;
+
+	private StubQuery(String entity, boolean count) {
+		this.entity = entity;
+		this.count = count;
+	}
+
+	/**
+	 * @param sql
+	 * @return
+	 * @throws StubFault if the query cannot be parsed
+	 */
+	static StubQuery parse(String sql) throws StubFault {
+		Matcher matcher = QUERY.matcher(sql);
+		if (!matcher.matches()) {
+			throw parseError(sql, "expected select ... from <entity>");
+		}
+		StubQuery query = new StubQuery(matcher.group(2), matcher.group(1).trim().equalsIgnoreCase("count(*)"));
+		if (matcher.group(3) != null) {
+			for (String condition : splitConditions(matcher.group(3))) {
+				query.conditions.add(Condition.parse(sql, condition));
+			}
+		}
+		query.orderBy = matcher.group(4);
+		query.descending = "desc".equalsIgnoreCase(matcher.group(5));
+		if (matcher.group(6) != null) {
+			query.startPosition = Math.max(1, Integer.parseInt(matcher.group(6)));
+		}
+		if (matcher.group(7) != null) {
+			query.maxResults = Integer.parseInt(matcher.group(7));
+			if (query.maxResults > MAX_RESULTS) {
+				throw parseError(sql, "maxresults is at most " + MAX_RESULTS);
+			}
+		}
+		return query;
+	}
+
+	private static StubFault parseError(String sql, String reason) {
+		return new StubFault(400, "QueryParserError", "4000", "Error parsing query", "QueryParserError: " + reason + " in " + sql);
+	}
+
+	// splits on and, except within quotes
+	private static List<String> splitConditions(String where) {
+		List<String> conditions = new ArrayList<String>();
+		boolean quoted = false;
+		int start = 0;
+		for (int i = 0; i < where.length(); i++) {
+			char c = where.charAt(i);
+			if (c == '\'') {
+				quoted = !quoted;
+			} else if (!quoted && i > start && where.regionMatches(true, i, " and ", 0, 5)) {
+				conditions.add(where.substring(start, i).trim());
+				start = i + 5;
+				i += 4;
+			}
+		}
+		conditions.add(where.substring(start).trim());
+		return conditions;
+	}
+
+	String getEntity() {
+		return entity;
+	}
+
+	boolean isCount() {
+		return count;
+	}
+
+	int getStartPosition() {
+		return startPosition;
+	}
+
+	/**
+	 * @param entities all entities of the queried type, in creation order
+	 * @return the matching entities, sorted and paged
+	 */
+	List<JSONObject> select(Collection<JSONObject> entities) {
+		List<JSONObject> matches = new ArrayList<JSONObject>();
+		for (JSONObject candidate : entities) {
+			if (matches(candidate)) {
+				matches.add(candidate);
+			}
+		}
+		if (orderBy != null) {
+			Comparator<JSONObject> order = (a, b) -> compare(field(a, orderBy), field(b, orderBy));
+			matches.sort(descending ? order.reversed() : order);
+		}
+		if (count) {
+			return matches;
+		}
+		int from = Math.min(startPosition - 1, matches.size());
+		int to = Math.min(from + maxResults, matches.size());
+		return new ArrayList<JSONObject>(matches.subList(from, to));
+	}
+
+	private boolean matches(JSONObject candidate) {
+		for (Condition condition : conditions) {
+			if (!condition.matches(field(candidate, condition.field))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param entity
+	 * @param path field name, or dotted path such as MetaData.CreateTime
+	 * @return the value, the value of a reference, or null
+	 */
+	static Object field(JSONObject entity, String path) {
+		Object value = entity;
+		for (String name : path.split("\\.")) {
+			if (!(value instanceof JSONObject)) {
+				return null;
+			}
+			JSONObject object = (JSONObject) value;
+			value = null;
+			for (Object key : object.keySet()) {
+				if (((String) key).equalsIgnoreCase(name)) {
+					value = object.get((String) key);
+				}
+			}
+		}
+		if (value instanceof JSONObject && ((JSONObject) value).has("value")) {
+			return ((JSONObject) value).get("value");
+		}
+		return value;
+	}
+
+	static int compare(Object a, Object b) {
+		if (a == null || b == null) {
+			return a == null ? (b == null ? 0 : -1) : 1;
+		}
+		Double x = number(a);
+		Double y = number(b);
+		if (x != null && y != null) {
+			return Double.compare(x, y);
+		}
+		return a.toString().compareToIgnoreCase(b.toString());
+	}
+
+	private static Double number(Object value) {
+		if (value instanceof Number) {
+			return ((Number) value).doubleValue();
+		}
+		try {
+			return Double.valueOf(value.toString());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static final class Condition {
+
+		private final String field;
+		private final String operator;
+		private final List<String> values;
+		private final Pattern like;
+
+		private Condition(String field, String operator, List<String> values) {
+			this.field = field;
+			this.operator = operator;
+			this.values = values;
+			this.like = operator.equals("like") ? Pattern.compile(
+					Pattern.quote(values.get(0)).replace("%", "\\E.*\\Q"), Pattern.CASE_INSENSITIVE | Pattern.DOTALL) : null;
+		}
+
+		static Condition parse(String sql, String condition) throws StubFault {
+			Matcher matcher = CONDITION.matcher(condition);
+			if (!matcher.matches()) {
+				throw parseError(sql, "invalid condition " + condition);
+			}
+			String operator = matcher.group(2).toLowerCase();
+			String operand = matcher.group(3).trim();
+			List<String> values = new ArrayList<String>();
+			if (operator.equals("in")) {
+				if (!operand.startsWith("(") || !operand.endsWith(")")) {
+					throw parseError(sql, "expected a list after in");
+				}
+				for (String value : operand.substring(1, operand.length() - 1).split(",")) {
+					values.add(literal(value.trim()));
+				}
+			} else {
+				values.add(literal(operand));
+			}
+			return new Condition(matcher.group(1), operator, values);
+		}
+
+		private static String literal(String value) {
+			if (value.length() >= 2 && value.startsWith("'") && value.endsWith("'")) {
+				return value.substring(1, value.length() - 1).replace("\\'", "'");
+			}
+			return value;
+		}
+
+		boolean matches(Object value) {
+			switch (operator) {
+			case "=":
+				return value != null && compare(value, values.get(0)) == 0;
+			case "!=":
+				return value == null || compare(value, values.get(0)) != 0;
+			case "<":
+				return value != null && compare(value, values.get(0)) < 0;
+			case "<=":
+				return value != null && compare(value, values.get(0)) <= 0;
+			case ">":
+				return value != null && compare(value, values.get(0)) > 0;
+			case ">=":
+				return value != null && compare(value, values.get(0)) >= 0;
+			case "like":
+				return value != null && like.matcher(value.toString()).matches();
+			default:
+				for (String candidate : values) {
+					if (value != null && compare(value, candidate) == 0) {
+						return true;
+					}
+				}
+				return false;
+			}
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package com.intuit.developer.tutorials.stub;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Settings of the stub server. All of them except port and threads can be changed while it
+ * runs, through /stub/settings.
+ *
+ * latency.&lt;operation&gt; is the {@link LatencyDistribution} of an operation, fault.&lt;status&gt;
+ * the probability that a company call fails with that status instead of being served.
+ * The throttle.* limits are the ones QBO applies to each realm, 0 to disable them.
+ */
+public final class StubSettings {
+
+	/**
+	 * Kinds of calls with their own latency
+	 */
+	public enum Operation {
+		READ, WRITE, QUERY, BATCH, REPORT, OAUTH
+	}
+
+	// statuses whose injection can be configured, in the order they are drawn
+	static final int[] FAULT_STATUSES = { 401, 429, 500, 503 };
+
+	private static final Map<String, String> DEFAULTS = new LinkedHashMap<String, String>();
+
+	static {
+		DEFAULTS.put("port", "9090");
+		DEFAULTS.put("threads", "200");
+		DEFAULTS.put("latency.read", "lognormal:60:0.4");
+		DEFAULTS.put("latency.write", "lognormal:150:0.4");
+		DEFAULTS.put("latency.query", "lognormal:90:0.5");
+		DEFAULTS.put("latency.batch", "lognormal:250:0.4");
+		DEFAULTS.put("latency.report", "lognormal:400:0.6");
+		DEFAULTS.put("latency.oauth", "lognormal:40:0.3");
+		DEFAULTS.put("fault.401", "0");
+		DEFAULTS.put("fault.429", "0");
+		DEFAULTS.put("fault.500", "0");
+		DEFAULTS.put("fault.503", "0");
+		DEFAULTS.put("throttle.requestsPerMinute", "500");
+		DEFAULTS.put("throttle.maxConcurrent", "10");
+		// strict: only tokens issued by this server are accepted, lenient: any bearer token
+		DEFAULTS.put("auth", "strict");
+		DEFAULTS.put("oauth.realms", "4");
+		DEFAULTS.put("oauth.accessTokenSeconds", "3600");
+	}
+
+	private final Map<String, String> values = new LinkedHashMap<String, String>();
+	private final Map<Operation, LatencyDistribution> latencies = new ConcurrentHashMap<Operation, LatencyDistribution>();
+	private final Map<Integer, Double> faultRates = new ConcurrentHashMap<Integer, Double>();
+	private final Map<String, Integer> ints = new ConcurrentHashMap<String, Integer>();
+	private volatile boolean strictAuth;
+
+	public StubSettings() {
+		DEFAULTS.forEach(this::set);
+	}
+
+	/**
+	 * @param key
+	 * @param value
+	 * @throws IllegalArgumentException if the setting does not exist or the value is not valid
+	 */
+	public synchronized void set(String key, String value) {
+		key = key.trim();
+		value = value.trim();
+		if (!DEFAULTS.containsKey(key)) {
+			throw new IllegalArgumentException("Unknown setting " + key);
+		}
+		if (key.startsWith("latency.")) {
+			latencies.put(Operation.valueOf(key.substring("latency.".length()).toUpperCase()), LatencyDistribution.parse(value));
+		} else if (key.startsWith("fault.")) {
+			double rate = Double.parseDouble(value);
+			if (rate < 0 || rate > 1) {
+				throw new IllegalArgumentException(key + " must be between 0 and 1");
+			}
+			faultRates.put(Integer.valueOf(key.substring("fault.".length())), rate);
+		} else if (key.equals("auth")) {
+			if (!value.equals("strict") && !value.equals("lenient")) {
+				throw new IllegalArgumentException("auth must be strict or lenient");
+			}
+			strictAuth = value.equals("strict");
+		} else {
+			int number = Integer.parseInt(value);
+			if (number < 0) {
+				throw new IllegalArgumentException(key + " must not be negative");
+			}
+			ints.put(key, number);
+		}
+		values.put(key, value);
+	}
+
+	public LatencyDistribution latencyOf(Operation operation) {
+		return latencies.get(operation);
+	}
+
+	/**
+	 * @param random
+	 * @return status of the fault to inject, 0 for none
+	 */
+	public int drawFault(Random random) {
+		double draw = random.nextDouble();
+		double cumulative = 0;
+		for (int status : FAULT_STATUSES) {
+			cumulative += faultRates.get(status);
+			if (draw < cumulative) {
+				return status;
+			}
+		}
+		return 0;
+	}
+
+	public boolean isStrictAuth() {
+		return strictAuth;
+	}
+
+	/**
+	 * @param key a numeric setting
+	 * @return
+	 */
+	public int intValue(String key) {
+		return ints.get(key);
+	}
+
+	/**
+	 * @return current value of every setting
+	 */
+	public synchronized Map<String, String> values() {
+		return Collections.unmodifiableMap(new LinkedHashMap<String, String>(values));
+	}
+}
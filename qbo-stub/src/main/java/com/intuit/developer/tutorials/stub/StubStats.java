@@ -0,0 +1,45 @@
+package com.intuit.developer.tutorials.stub;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONObject;
+
+/**
+ * Number of calls served by the stub, by operation and response status
+ */
+final class StubStats {
+
+	private final Map<String, Map<Integer, LongAdder>> counts = new ConcurrentHashMap<String, Map<Integer, LongAdder>>();
+
+	/**
+	 * @param operation e.g. query or oauth
+	 * @param status HTTP status of the response
+	 */
+	void record(String operation, int status) {
+		counts.computeIfAbsent(operation, key -> new ConcurrentHashMap<Integer, LongAdder>())
+				.computeIfAbsent(status, key -> new LongAdder())
+				.increment();
+	}
+
+	/**
+	 * @return counts as {"query": {"200": 12, "429": 1}, ...}
+	 */
+	JSONObject toJson() {
+		JSONObject json = new JSONObject();
+		for (Map.Entry<String, Map<Integer, LongAdder>> operation : new TreeMap<String, Map<Integer, LongAdder>>(counts).entrySet()) {
+			JSONObject statuses = new JSONObject();
+			for (Map.Entry<Integer, LongAdder> status : new TreeMap<Integer, LongAdder>(operation.getValue()).entrySet()) {
+				statuses.put(status.getKey().toString(), status.getValue().sum());
+			}
+			json.put(operation.getKey(), statuses);
+		}
+		return json;
+	}
+
+	void reset() {
+		counts.clear();
+	}
+}
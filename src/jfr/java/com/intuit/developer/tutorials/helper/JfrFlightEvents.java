@@ -0,0 +1,212 @@
+package com.intuit.developer.tutorials.helper;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * The {@link FlightEvents} as JFR events, loaded by reflection when the jfr source set is
+ * on the class path
+ */
+final class JfrFlightEvents extends FlightEvents {
+
+	@Override
+	FlightEvents.WorkflowStep workflowStep() {
+		WorkflowStep event = new WorkflowStep();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	FlightEvents.QBOCallAttempt qboCallAttempt() {
+		QBOCallAttempt event = new QBOCallAttempt();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	FlightEvents.AccountLookup accountLookup() {
+		AccountLookup event = new AccountLookup();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	FlightEvents.ReportExecution reportExecution() {
+		ReportExecution event = new ReportExecution();
+		event.begin();
+		return event;
+	}
+
+	@Name("com.intuit.developer.tutorials.WorkflowStep")
+	@Label("Workflow Step")
+	@Category({ "QBO", "Workflow" })
+	@Description("A step of a controller workflow")
+	@Threshold("10 ms")
+	@StackTrace(false)
+	static final class WorkflowStep extends jdk.jfr.Event implements FlightEvents.WorkflowStep {
+		@Label("Workflow")
+		String workflow;
+
+		@Label("Step")
+		String step;
+
+		@Label("Realm")
+		String realm;
+
+		@Label("Entity Type")
+		String entityType;
+
+		@Label("Payload Size")
+		@DataAmount
+		long payloadSize;
+
+		@Label("Outcome")
+		String outcome;
+
+		@Override
+		public boolean finish() {
+			end();
+			return shouldCommit();
+		}
+
+		@Override
+		public void record(String workflow, String step, String realm, String entityType, long payloadSize, String outcome) {
+			this.workflow = workflow;
+			this.step = step;
+			this.realm = realm;
+			this.entityType = entityType;
+			this.payloadSize = payloadSize;
+			this.outcome = outcome;
+			commit();
+		}
+	}
+
+	@Name("com.intuit.developer.tutorials.QBOCallAttempt")
+	@Label("QBO Call Attempt")
+	@Category({ "QBO", "Calls" })
+	@Description("An attempt of a DataService or ReportService call, after the throttling waits")
+	@Threshold("10 ms")
+	@StackTrace(false)
+	static final class QBOCallAttempt extends jdk.jfr.Event implements FlightEvents.QBOCallAttempt {
+		@Label("Realm")
+		String realm;
+
+		@Label("Operation")
+		String operation;
+
+		@Label("Entity Type")
+		String entityType;
+
+		@Label("Payload Size")
+		@DataAmount
+		long payloadSize;
+
+		@Label("Outcome")
+		String outcome;
+
+		@Override
+		public boolean finish() {
+			end();
+			return shouldCommit();
+		}
+
+		@Override
+		public void record(String realm, String operation, String entityType, long payloadSize, String outcome) {
+			this.realm = realm;
+			this.operation = operation;
+			this.entityType = entityType;
+			this.payloadSize = payloadSize;
+			this.outcome = outcome;
+			commit();
+		}
+	}
+
+	@Name("com.intuit.developer.tutorials.AccountLookup")
+	@Label("Account Lookup")
+	@Category({ "QBO", "Accounts" })
+	@Description("Lookup of a reference account through the account cache")
+	@Threshold("10 ms")
+	@StackTrace(false)
+	static final class AccountLookup extends jdk.jfr.Event implements FlightEvents.AccountLookup {
+		@Label("Realm")
+		String realm;
+
+		@Label("Account Type")
+		String accountType;
+
+		@Label("Account Sub Type")
+		String accountSubType;
+
+		@Label("Payload Size")
+		@DataAmount
+		long payloadSize;
+
+		@Label("Outcome")
+		String outcome;
+
+		@Override
+		public boolean finish() {
+			end();
+			return shouldCommit();
+		}
+
+		@Override
+		public void record(String realm, String accountType, String accountSubType, long payloadSize, String outcome) {
+			this.realm = realm;
+			this.accountType = accountType;
+			this.accountSubType = accountSubType;
+			this.payloadSize = payloadSize;
+			this.outcome = outcome;
+			commit();
+		}
+	}
+
+	@Name("com.intuit.developer.tutorials.ReportExecution")
+	@Label("Report Execution")
+	@Category({ "QBO", "Reports" })
+	@Description("Execution of a report by QBO, or its lookup in the report cache")
+	@Threshold("10 ms")
+	@StackTrace(false)
+	static final class ReportExecution extends jdk.jfr.Event implements FlightEvents.ReportExecution {
+		@Label("Realm")
+		String realm;
+
+		@Label("Report")
+		String report;
+
+		@Label("Start Date")
+		String startDate;
+
+		@Label("End Date")
+		String endDate;
+
+		@Label("Payload Size")
+		@DataAmount
+		long payloadSize;
+
+		@Label("Outcome")
+		String outcome;
+
+		@Override
+		public boolean finish() {
+			end();
+			return shouldCommit();
+		}
+
+		@Override
+		public void record(String realm, String report, String startDate, String endDate, long payloadSize, String outcome) {
+			this.realm = realm;
+			this.report = report;
+			this.startDate = startDate;
+			this.endDate = endDate;
+			this.payloadSize = payloadSize;
+			this.outcome = outcome;
+			commit();
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package com.intuit.developer.tutorials.controller;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.intuit.ipp.data.Account;
+import com.intuit.ipp.data.Bill;
+import com.intuit.ipp.data.JournalEntry;
+import com.intuit.ipp.data.Vendor;
+import com.intuit.ipp.exception.FMSException;
+
+/**
+ * Building of the request entities by the controllers, from accounts and vendors that
+ * have already been looked up
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityBuilderBenchmark {
+
+	private AccountingController accountingController;
+	private BillController billController;
+	private Account bankAccount;
+	private Account creditCardAccount;
+	private Account liabilityAccount;
+	private Account expenseAccount;
+	private Vendor vendor;
+
+	@Setup
+	public void setUp() {
+		accountingController = new AccountingController();
+		billController = new BillController();
+		bankAccount = account("35", "Checking");
+		creditCardAccount = account("41", "Mastercard");
+		liabilityAccount = account("33", "Accounts Payable (A/P)");
+		expenseAccount = account("7", "Advertising");
+		vendor = new Vendor();
+		vendor.setId("56");
+		vendor.setDisplayName("Bob's Burger Joint");
+	}
+
+	@Benchmark
+	public JournalEntry getJournalEntryFields() throws FMSException {
+		return accountingController.getJournalEntryFields(bankAccount, creditCardAccount, vendor);
+	}
+
+	@Benchmark
+	public Bill getBillFields() {
+		return billController.getBillFields(vendor, liabilityAccount, expenseAccount);
+	}
+
+	private static Account account(String id, String name) {
+		Account account = new Account();
+		account.setId(id);
+		account.setName(name);
+		return account;
+	}
+}
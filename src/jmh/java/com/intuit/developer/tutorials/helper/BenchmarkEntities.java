@@ -0,0 +1,218 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import com.intuit.ipp.data.AccountBasedExpenseLineDetail;
+import com.intuit.ipp.data.ColData;
+import com.intuit.ipp.data.Column;
+import com.intuit.ipp.data.Columns;
+import com.intuit.ipp.data.Header;
+import com.intuit.ipp.data.Invoice;
+import com.intuit.ipp.data.Line;
+import com.intuit.ipp.data.LineDetailTypeEnum;
+import com.intuit.ipp.data.LinkedTxn;
+import com.intuit.ipp.data.Payment;
+import com.intuit.ipp.data.ReferenceType;
+import com.intuit.ipp.data.Report;
+import com.intuit.ipp.data.ReportHeader;
+import com.intuit.ipp.data.Row;
+import com.intuit.ipp.data.RowTypeEnum;
+import com.intuit.ipp.data.Rows;
+import com.intuit.ipp.data.SalesItemLineDetail;
+import com.intuit.ipp.data.Summary;
+import com.intuit.ipp.data.TxnTypeEnum;
+import com.intuit.ipp.data.VendorCredit;
+
+/**
+ * Entities and payloads shaped like the ones the controllers send to and receive from QBO,
+ * built once in the setup of the benchmarks
+ */
+public final class BenchmarkEntities {
+
+	private BenchmarkEntities() {
+	}
+
+	/**
+	 * @param lines number of sales item lines
+	 * @return
+	 */
+	public static Invoice invoice(int lines) {
+		Invoice invoice = new Invoice();
+		invoice.setId("130");
+		invoice.setCustomerRef(ref("58", "Sonnenschein Family Store"));
+		List<Line> invoiceLines = new ArrayList<Line>();
+		for (int i = 0; i < lines; i++) {
+			Line line = line(i, "12.75");
+			line.setDetailType(LineDetailTypeEnum.SALES_ITEM_LINE_DETAIL);
+			line.setDescription("Fountain Pump " + i);
+			SalesItemLineDetail detail = new SalesItemLineDetail();
+			detail.setItemRef(ref("11", "Pump"));
+			detail.setQty(BigDecimal.ONE);
+			line.setSalesItemLineDetail(detail);
+			invoiceLines.add(line);
+		}
+		invoice.setLine(invoiceLines);
+		invoice.setTotalAmt(new BigDecimal("12.75").multiply(BigDecimal.valueOf(lines)));
+		return invoice;
+	}
+
+	/**
+	 * @param lines number of invoices paid
+	 * @return
+	 */
+	public static Payment payment(int lines) {
+		Payment payment = new Payment();
+		payment.setId("131");
+		payment.setCustomerRef(ref("58", "Sonnenschein Family Store"));
+		List<Line> paymentLines = new ArrayList<Line>();
+		for (int i = 0; i < lines; i++) {
+			Line line = line(i, "12.75");
+			List<LinkedTxn> linkedTxns = new ArrayList<LinkedTxn>();
+			LinkedTxn linkedTxn = new LinkedTxn();
+			linkedTxn.setTxnId(Integer.toString(130 - i));
+			linkedTxn.setTxnType(TxnTypeEnum.INVOICE.value());
+			linkedTxns.add(linkedTxn);
+			line.setLinkedTxn(linkedTxns);
+			paymentLines.add(line);
+		}
+		payment.setLine(paymentLines);
+		payment.setTotalAmt(new BigDecimal("12.75").multiply(BigDecimal.valueOf(lines)));
+		return payment;
+	}
+
+	/**
+	 * @param lines number of account based expense lines
+	 * @return
+	 */
+	public static VendorCredit vendorCredit(int lines) {
+		VendorCredit vendorCredit = new VendorCredit();
+		vendorCredit.setId("132");
+		vendorCredit.setVendorRef(ref("56", "Bob's Burger Joint"));
+		vendorCredit.setAPAccountRef(ref("33", "Accounts Payable (A/P)"));
+		List<Line> creditLines = new ArrayList<Line>();
+		for (int i = 0; i < lines; i++) {
+			Line line = line(i, "30.00");
+			line.setDetailType(LineDetailTypeEnum.ACCOUNT_BASED_EXPENSE_LINE_DETAIL);
+			AccountBasedExpenseLineDetail detail = new AccountBasedExpenseLineDetail();
+			detail.setAccountRef(ref("7", "Advertising"));
+			line.setAccountBasedExpenseLineDetail(detail);
+			creditLines.add(line);
+		}
+		vendorCredit.setLine(creditLines);
+		vendorCredit.setTotalAmt(new BigDecimal("30.00").multiply(BigDecimal.valueOf(lines)));
+		return vendorCredit;
+	}
+
+	/**
+	 * Profit and loss report with one section of account rows
+	 *
+	 * @param rows number of account rows
+	 * @return
+	 */
+	public static Report profitAndLoss(int rows) {
+		Report report = new Report();
+		ReportHeader header = new ReportHeader();
+		header.setReportName("ProfitAndLoss");
+		header.setStartPeriod("2026-01-01");
+		header.setEndPeriod("2026-12-31");
+		header.setSummarizeColumnsBy("Total");
+		header.setCurrency("USD");
+		report.setHeader(header);
+
+		Columns columns = new Columns();
+		columns.getColumn().add(column("", "Account"));
+		columns.getColumn().add(column("Total", "Money"));
+		report.setColumns(columns);
+
+		Row section = new Row();
+		section.setType(RowTypeEnum.SECTION);
+		section.setGroup("Income");
+		Header sectionHeader = new Header();
+		sectionHeader.getColData().add(colData("Income", null));
+		sectionHeader.getColData().add(colData("", null));
+		section.setHeader(sectionHeader);
+		Rows sectionRows = new Rows();
+		for (int i = 0; i < rows; i++) {
+			Row row = new Row();
+			row.setType(RowTypeEnum.DATA);
+			row.getColData().add(colData("Services " + i, Integer.toString(i + 1)));
+			row.getColData().add(colData("1250.00", null));
+			sectionRows.getRow().add(row);
+		}
+		section.setRows(sectionRows);
+		Summary summary = new Summary();
+		summary.getColData().add(colData("Total Income", null));
+		summary.getColData().add(colData(new BigDecimal("1250.00").multiply(BigDecimal.valueOf(rows)).toPlainString(), null));
+		section.setSummary(summary);
+
+		Rows reportRows = new Rows();
+		reportRows.getRow().add(section);
+		report.setRows(reportRows);
+		return report;
+	}
+
+	/**
+	 * Response to a query of invoices, built from the recorded invoice in
+	 * payloads/invoice.json
+	 *
+	 * @param invoices number of invoices in the response
+	 * @return
+	 */
+	public static String invoiceQueryResponse(int invoices) {
+		String invoice = resource("/payloads/invoice.json");
+		StringBuilder json = new StringBuilder(invoice.length() * invoices + 128);
+		json.append("{\"QueryResponse\":{\"Invoice\":[");
+		for (int i = 0; i < invoices; i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			json.append(invoice.replace("${id}", Integer.toString(i + 1)));
+		}
+		json.append("],\"startPosition\":1,\"maxResults\":").append(invoices)
+				.append("},\"time\":\"2026-10-17T09:25:34.431-07:00\"}");
+		return json.toString();
+	}
+
+	private static String resource(String name) {
+		try (InputStream in = BenchmarkEntities.class.getResourceAsStream(name);
+				Scanner scanner = new Scanner(in, StandardCharsets.UTF_8.name())) {
+			return scanner.useDelimiter("\\A").next();
+		} catch (Exception e) {
+			throw new IllegalStateException("Cannot read " + name, e);
+		}
+	}
+
+	private static Line line(int index, String amount) {
+		Line line = new Line();
+		line.setLineNum(BigInteger.valueOf(index + 1));
+		line.setAmount(new BigDecimal(amount));
+		return line;
+	}
+
+	private static ReferenceType ref(String value, String name) {
+		ReferenceType ref = new ReferenceType();
+		ref.setValue(value);
+		ref.setName(name);
+		return ref;
+	}
+
+	private static Column column(String title, String type) {
+		Column column = new Column();
+		column.setColTitle(title);
+		column.setColType(type);
+		return column;
+	}
+
+	private static ColData colData(String value, String id) {
+		ColData colData = new ColData();
+		colData.setValue(value);
+		colData.setId(id);
+		return colData;
+	}
+}
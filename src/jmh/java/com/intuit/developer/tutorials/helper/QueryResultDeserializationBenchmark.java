@@ -0,0 +1,48 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.intuit.ipp.data.IntuitResponse;
+import com.intuit.ipp.serialization.JSONSerializer;
+
+/**
+ * Deserialization of query responses by the SDK, as done by the DataService for
+ * executeQuery and findAll, from a recorded invoice repeated up to the query page size
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryResultDeserializationBenchmark {
+
+	@Param({ "10", "1000" })
+	int invoices;
+
+	private JSONSerializer serializer;
+	private String payload;
+
+	@Setup
+	public void setUp() {
+		serializer = new JSONSerializer();
+		payload = BenchmarkEntities.invoiceQueryResponse(invoices);
+	}
+
+	@Benchmark
+	public Object executeQuery() throws Exception {
+		return serializer.deserialize(payload, IntuitResponse.class);
+	}
+}
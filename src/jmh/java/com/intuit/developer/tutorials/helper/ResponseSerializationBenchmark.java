@@ -0,0 +1,66 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialization of the entities returned by the controllers' createResponse, as done by
+ * {@link JsonResponseConverter}, into a reused buffer so only the serialization allocates
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseSerializationBenchmark {
+
+	@Param({ "Invoice", "Payment", "VendorCredit", "Report" })
+	String entityType;
+
+	// lines of the transactions, rows of the report
+	@Param({ "2", "100" })
+	int size;
+
+	private JsonResponseWriter writer;
+	private Object entity;
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+
+	@Setup
+	public void setUp() {
+		writer = new JsonResponseWriter();
+		switch (entityType) {
+		case "Invoice":
+			entity = BenchmarkEntities.invoice(size);
+			break;
+		case "Payment":
+			entity = BenchmarkEntities.payment(size);
+			break;
+		case "VendorCredit":
+			entity = BenchmarkEntities.vendorCredit(size);
+			break;
+		default:
+			entity = BenchmarkEntities.profitAndLoss(size);
+		}
+	}
+
+	@Benchmark
+	public int createResponse() throws IOException {
+		out.reset();
+		writer.write(JsonResponse.of(entity).getEntity(), out);
+		return out.size();
+	}
+}
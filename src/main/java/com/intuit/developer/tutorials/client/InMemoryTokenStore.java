@@ -0,0 +1,34 @@
+package com.intuit.developer.tutorials.client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Token store that keeps tokens in the heap of the current node only
+ */
+public class InMemoryTokenStore implements TokenStore {
+
+	private final ConcurrentMap<String, TokenRecord> records = new ConcurrentHashMap<String, TokenRecord>();
+
+	@Override
+	public void save(TokenRecord record) {
+		records.put(record.getRealmId(), record);
+	}
+
+	@Override
+	public TokenRecord load(String realmId) {
+		return records.get(realmId);
+	}
+
+	@Override
+	public void remove(String realmId) {
+		records.remove(realmId);
+	}
+
+	@Override
+	public Collection<String> realmIds() {
+		return new ArrayList<String>(records.keySet());
+	}
+}
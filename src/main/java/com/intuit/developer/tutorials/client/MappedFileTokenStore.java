@@ -0,0 +1,440 @@
+package com.intuit.developer.tutorials.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Token store backed by a memory-mapped file, every record is encrypted with AES-GCM.
+ *
+ * The file is a small header followed by fixed size slots, one realm per slot:
+ * <pre>
+ * header: magic(int) version(int) slotSize(int) capacity(int) modCount(long) keyCheck(28 bytes)
+ * slot:   length(int, 0 = free) sequence(long) realmIdLength(short) realmId iv(12 bytes) ciphertext
+ * </pre>
+ * The realm id is stored in clear (and authenticated as associated data of the ciphertext), so
+ * the realm index is rebuilt from the slot headers without decrypting anything. The key check
+ * is an AES-GCM tag made with the key of the store: opening the file with another key fails.
+ *
+ * A save never overwrites the tokens it replaces: it writes the new record to a free slot,
+ * setting its length last, flushes it, and only then zeroes the slot of the previous record.
+ * A write interrupted before the length is set leaves a free slot; one interrupted before the
+ * old slot is zeroed leaves two slots of the realm, the one with the highest sequence wins and
+ * the other is reclaimed by the next save. A slot with a length is never reused until then:
+ * a slot whose header cannot be parsed stays reserved, and a record that does not decrypt
+ * makes {@link #load(String)} fail instead of losing the realm.
+ *
+ * Writes take an exclusive file lock and bump modCount, reads take a shared one, so several
+ * processes on the same host (or on a shared disk with coherent mmap) can use one file; a
+ * reader rebuilds its realm index when it sees that modCount changed, and reads a slot again
+ * if modCount changed while it was reading it. The file grows by doubling its capacity.
+ */
+public class MappedFileTokenStore implements TokenStore {
+
+	private static final Logger logger = Logger.getLogger(MappedFileTokenStore.class);
+
+	private static final int MAGIC = 0x51544F4B; // "QTOK"
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 64;
+	private static final int MOD_COUNT_OFFSET = 16;
+	private static final int KEY_CHECK_OFFSET = 24;
+	private static final int IV_LENGTH = 12;
+	private static final int TAG_BITS = 128;
+	private static final int KEY_CHECK_LENGTH = IV_LENGTH + TAG_BITS / 8;
+	// length, sequence and realm id length
+	private static final int SLOT_HEADER_SIZE = 4 + 8 + 2;
+	private static final int DEFAULT_SLOT_SIZE = 2048;
+	private static final int DEFAULT_CAPACITY = 1024;
+	private static final int MAX_READ_ATTEMPTS = 3;
+
+	private final SecretKeySpec key;
+	private final SecureRandom random = new SecureRandom();
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+
+	private MappedByteBuffer buffer;
+	private int slotSize;
+	private int capacity;
+	private long modCount = -1;
+
+	private final Map<String, Integer> index = new HashMap<String, Integer>();
+	private final Map<String, Long> sequences = new HashMap<String, Long>();
+	private final Deque<Integer> freeSlots = new ArrayDeque<Integer>();
+	// slots of records replaced by a save that did not complete, zeroed by the next save
+	private final List<Integer> staleSlots = new ArrayList<Integer>();
+
+	/**
+	 * @param path location of the store file, created if missing
+	 * @param key AES key (16, 24 or 32 bytes)
+	 * @throws IOException if the file is not a token store, or was created with another key
+	 */
+	public MappedFileTokenStore(File path, byte[] key) throws IOException {
+		this.key = new SecretKeySpec(key, "AES");
+		this.file = new RandomAccessFile(path, "rw");
+		this.channel = file.getChannel();
+		try (FileLock lock = channel.lock()) {
+			if (channel.size() < HEADER_SIZE) {
+				slotSize = DEFAULT_SLOT_SIZE;
+				capacity = DEFAULT_CAPACITY;
+				map();
+				buffer.putInt(0, MAGIC);
+				buffer.putInt(4, VERSION);
+				buffer.putInt(8, slotSize);
+				buffer.putInt(12, capacity);
+				buffer.putLong(MOD_COUNT_OFFSET, 0);
+				byte[] check = keyCheck();
+				buffer.position(KEY_CHECK_OFFSET);
+				buffer.put(check);
+			} else {
+				readHeader();
+				verifyKey();
+			}
+			rebuildIndex();
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			file.close();
+			throw e;
+		}
+		logger.info("token store " + path + " opened with " + index.size() + " realms");
+	}
+
+	@Override
+	public synchronized void save(TokenRecord record) {
+		byte[] realmId = record.getRealmId().getBytes(StandardCharsets.UTF_8);
+		byte[] encrypted = encrypt(record, realmId);
+		int length = SLOT_HEADER_SIZE + realmId.length + encrypted.length;
+		if (length > slotSize) {
+			throw new IllegalArgumentException("Tokens of realm " + record.getRealmId() + " do not fit in a slot of " + slotSize + " bytes");
+		}
+		try (FileLock lock = channel.lock()) {
+			refresh();
+			reclaimStaleSlots();
+			long sequence = buffer.getLong(MOD_COUNT_OFFSET) + 1;
+			int slot = freeSlots.isEmpty() ? grow() : freeSlots.poll();
+			int offset = offsetOf(slot);
+			buffer.position(offset + 4);
+			buffer.putLong(sequence);
+			buffer.putShort((short) realmId.length);
+			buffer.put(realmId);
+			buffer.put(encrypted);
+			// the length makes the slot visible, it is written once the record is complete
+			buffer.putInt(offset, length - 4);
+			Integer previous = index.put(record.getRealmId(), slot);
+			sequences.put(record.getRealmId(), sequence);
+			if (previous != null) {
+				// the new record is on disk before the one it replaces is dropped
+				buffer.force();
+				buffer.putInt(offsetOf(previous), 0);
+				freeSlots.add(previous);
+			}
+			bumpModCount();
+		} catch (IOException e) {
+			throw new IllegalStateException("Exception while saving tokens of realm " + record.getRealmId(), e);
+		}
+	}
+
+	@Override
+	public synchronized TokenRecord load(String realmId) {
+		try (FileLock lock = sharedLock()) {
+			for (int attempt = 1;; attempt++) {
+				refresh();
+				Integer slot = index.get(realmId);
+				if (slot == null) {
+					return null;
+				}
+				GeneralSecurityException failure = null;
+				try {
+					TokenRecord record = read(slot, realmId);
+					if (record != null) {
+						return record;
+					}
+				} catch (GeneralSecurityException e) {
+					failure = e;
+				}
+				// only a slot rewritten while it was read is worth reading again
+				if (buffer.getLong(MOD_COUNT_OFFSET) == modCount || attempt == MAX_READ_ATTEMPTS) {
+					if (failure != null) {
+						throw new IllegalStateException("Tokens of realm " + realmId + " in token store slot " + slot + " cannot be decrypted", failure);
+					}
+					return null;
+				}
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Exception while loading tokens of realm " + realmId, e);
+		}
+	}
+
+	@Override
+	public synchronized void remove(String realmId) {
+		try (FileLock lock = channel.lock()) {
+			refresh();
+			Integer slot = index.remove(realmId);
+			if (slot != null) {
+				sequences.remove(realmId);
+				buffer.putInt(offsetOf(slot), 0);
+				freeSlots.add(slot);
+				bumpModCount();
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Exception while removing tokens of realm " + realmId, e);
+		}
+	}
+
+	@Override
+	public synchronized Collection<String> realmIds() {
+		try (FileLock lock = sharedLock()) {
+			refresh();
+			return new ArrayList<String>(index.keySet());
+		} catch (IOException e) {
+			throw new IllegalStateException("Exception while listing realms", e);
+		}
+	}
+
+	public synchronized void close() throws IOException {
+		channel.close();
+		file.close();
+	}
+
+	// excludes writers of other processes, not readers
+	private FileLock sharedLock() throws IOException {
+		return channel.lock(0, Long.MAX_VALUE, true);
+	}
+
+	private void map() throws IOException {
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slotSize * capacity);
+	}
+
+	private void readHeader() throws IOException {
+		MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+		if (header.getInt(0) != MAGIC) {
+			throw new IOException("Not a token store file");
+		}
+		if (header.getInt(4) != VERSION) {
+			throw new IOException("Unsupported token store version " + header.getInt(4) + ", expected " + VERSION);
+		}
+		slotSize = header.getInt(8);
+		capacity = header.getInt(12);
+		map();
+	}
+
+	private void verifyKey() throws IOException {
+		byte[] check = new byte[KEY_CHECK_LENGTH];
+		buffer.position(KEY_CHECK_OFFSET);
+		buffer.get(check);
+		try {
+			Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+			cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, check, 0, IV_LENGTH));
+			cipher.updateAAD(header());
+			cipher.doFinal(check, IV_LENGTH, check.length - IV_LENGTH);
+		} catch (GeneralSecurityException e) {
+			throw new IOException("TokenStoreKey is not the key the token store was created with", e);
+		}
+	}
+
+	private byte[] keyCheck() {
+		try {
+			byte[] iv = new byte[IV_LENGTH];
+			random.nextBytes(iv);
+			Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+			cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+			cipher.updateAAD(header());
+			byte[] tag = cipher.doFinal();
+			byte[] check = new byte[KEY_CHECK_LENGTH];
+			System.arraycopy(iv, 0, check, 0, IV_LENGTH);
+			System.arraycopy(tag, 0, check, IV_LENGTH, tag.length);
+			return check;
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("Exception while creating the token store key check", e);
+		}
+	}
+
+	// magic, version and slot size, which do not change over the life of the file
+	private byte[] header() {
+		byte[] header = new byte[12];
+		buffer.position(0);
+		buffer.get(header);
+		return header;
+	}
+
+	/**
+	 * Picks up changes written by other processes since the index was built
+	 */
+	private void refresh() {
+		if (buffer.getLong(MOD_COUNT_OFFSET) == modCount) {
+			return;
+		}
+		try {
+			if (buffer.getInt(12) != capacity) {
+				readHeader();
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Exception while remapping token store", e);
+		}
+		rebuildIndex();
+	}
+
+	private void rebuildIndex() {
+		modCount = buffer.getLong(MOD_COUNT_OFFSET);
+		index.clear();
+		sequences.clear();
+		freeSlots.clear();
+		staleSlots.clear();
+		for (int slot = 0; slot < capacity; slot++) {
+			int offset = offsetOf(slot);
+			if (buffer.getInt(offset) == 0) {
+				freeSlots.add(slot);
+				continue;
+			}
+			String realmId = realmIdOf(slot);
+			if (realmId == null) {
+				logger.error("Token store slot " + slot + " has an invalid header, it is kept reserved");
+				continue;
+			}
+			long sequence = buffer.getLong(offset + 4);
+			Long indexed = sequences.get(realmId);
+			if (indexed == null || indexed < sequence) {
+				Integer replaced = index.put(realmId, slot);
+				sequences.put(realmId, sequence);
+				if (replaced != null) {
+					staleSlots.add(replaced);
+				}
+			} else {
+				staleSlots.add(slot);
+			}
+		}
+	}
+
+	// zeroes the slots left behind by saves that did not complete, the exclusive lock is held
+	private void reclaimStaleSlots() {
+		if (staleSlots.isEmpty()) {
+			return;
+		}
+		for (int slot : staleSlots) {
+			buffer.putInt(offsetOf(slot), 0);
+			freeSlots.add(slot);
+		}
+		logger.info("token store reclaimed " + staleSlots.size() + " slots of interrupted saves");
+		staleSlots.clear();
+	}
+
+	private int grow() throws IOException {
+		int first = capacity;
+		capacity *= 2;
+		map();
+		buffer.putInt(12, capacity);
+		for (int slot = first + 1; slot < capacity; slot++) {
+			freeSlots.add(slot);
+		}
+		logger.info("token store grown to " + capacity + " slots");
+		return first;
+	}
+
+	private void bumpModCount() {
+		modCount = buffer.getLong(MOD_COUNT_OFFSET) + 1;
+		buffer.putLong(MOD_COUNT_OFFSET, modCount);
+	}
+
+	private int offsetOf(int slot) {
+		return HEADER_SIZE + slot * slotSize;
+	}
+
+	/**
+	 * @param slot
+	 * @return realm id in the header of a used slot, null if the header is not valid
+	 */
+	private String realmIdOf(int slot) {
+		int offset = offsetOf(slot);
+		int length = buffer.getInt(offset);
+		if (length < SLOT_HEADER_SIZE - 4 + IV_LENGTH || length > slotSize - 4) {
+			return null;
+		}
+		int realmIdLength = buffer.getShort(offset + 12);
+		if (realmIdLength <= 0 || realmIdLength > length - (SLOT_HEADER_SIZE - 4) - IV_LENGTH) {
+			return null;
+		}
+		byte[] realmId = new byte[realmIdLength];
+		buffer.position(offset + SLOT_HEADER_SIZE);
+		buffer.get(realmId);
+		return new String(realmId, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param slot
+	 * @param realmId
+	 * @return tokens in the slot, null if the slot no longer holds the realm
+	 * @throws GeneralSecurityException if the record does not decrypt
+	 */
+	private TokenRecord read(int slot, String realmId) throws GeneralSecurityException {
+		if (!realmId.equals(realmIdOf(slot))) {
+			return null;
+		}
+		int offset = offsetOf(slot);
+		byte[] realmIdBytes = realmId.getBytes(StandardCharsets.UTF_8);
+		byte[] encrypted = new byte[buffer.getInt(offset) - (SLOT_HEADER_SIZE - 4) - realmIdBytes.length];
+		buffer.position(offset + SLOT_HEADER_SIZE + realmIdBytes.length);
+		buffer.get(encrypted);
+		try {
+			return decrypt(realmId, realmIdBytes, encrypted);
+		} catch (IOException e) {
+			throw new GeneralSecurityException("Malformed tokens of realm " + realmId, e);
+		}
+	}
+
+	private byte[] encrypt(TokenRecord record, byte[] realmId) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeUTF(record.getAccessToken());
+			out.writeUTF(record.getRefreshToken());
+			out.writeLong(record.getExpiresAt());
+			out.writeLong(record.getUpdatedAt());
+			out.flush();
+
+			byte[] iv = new byte[IV_LENGTH];
+			random.nextBytes(iv);
+			Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+			cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+			cipher.updateAAD(realmId);
+			byte[] ciphertext = cipher.doFinal(bytes.toByteArray());
+
+			byte[] result = new byte[IV_LENGTH + ciphertext.length];
+			System.arraycopy(iv, 0, result, 0, IV_LENGTH);
+			System.arraycopy(ciphertext, 0, result, IV_LENGTH, ciphertext.length);
+			return result;
+		} catch (GeneralSecurityException | IOException e) {
+			throw new IllegalStateException("Exception while encrypting tokens", e);
+		}
+	}
+
+	private TokenRecord decrypt(String realmId, byte[] realmIdBytes, byte[] encrypted) throws GeneralSecurityException, IOException {
+		Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+		cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, encrypted, 0, IV_LENGTH));
+		cipher.updateAAD(realmIdBytes);
+		byte[] plain = cipher.doFinal(encrypted, IV_LENGTH, encrypted.length - IV_LENGTH);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(plain));
+		return new TokenRecord(realmId, in.readUTF(), in.readUTF(), in.readLong(), in.readLong());
+	}
+}
@@ -1,7 +1,14 @@
 package com.intuit.developer.tutorials.client;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.List;
+
 import javax.annotation.PostConstruct;
 
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.stereotype.Service;
@@ -9,6 +16,8 @@ import org.springframework.stereotype.Service;
 import com.intuit.oauth2.client.OAuth2PlatformClient;
 import com.intuit.oauth2.config.Environment;
 import com.intuit.oauth2.config.OAuth2Config;
+import com.intuit.oauth2.config.Scope;
+import com.intuit.oauth2.exception.InvalidRequestException;
 
 /**
  * 
@@ -24,15 +33,45 @@ public class OAuth2PlatformClientFactory {
 
 	OAuth2PlatformClient client;
 	OAuth2Config oauth2Config;
+	TokenStore tokenStore;
+	String oauth2Host;
+	
+	private static final Logger logger = Logger.getLogger(OAuth2PlatformClientFactory.class);
+
+	// paths of the OAuth2 endpoints on OAuth2Host, as served by the QBO stub server
+	private static final String AUTHORIZATION_PATH = "/connect/oauth2";
+	private static final String BEARER_TOKEN_PATH = "/oauth2/v1/tokens/bearer";
+	private static final String REVOKE_TOKEN_PATH = "/oauth2/v1/tokens/revoke";
 	
 	@PostConstruct
-	public void init() {
+	public void init() throws IOException {
 		//initialize the config
-		oauth2Config = new OAuth2Config.OAuth2ConfigBuilder(env.getProperty("OAuth2AppClientId"), env.getProperty("OAuth2AppClientSecret")) //set client id, secret
-				.callDiscoveryAPI(Environment.SANDBOX) // call discovery API to populate urls
-				.buildConfig();
+		OAuth2Config.OAuth2ConfigBuilder builder = new OAuth2Config.OAuth2ConfigBuilder(env.getProperty("OAuth2AppClientId"), env.getProperty("OAuth2AppClientSecret")); //set client id, secret
+		oauth2Host = StringUtils.trimToNull(env.getProperty("OAuth2Host"));
+		if (oauth2Host == null) {
+			builder.callDiscoveryAPI(Environment.SANDBOX); // call discovery API to populate urls
+		} else {
+			// a stand-in OAuth server, the discovery API only knows the Intuit ones
+			logger.info("using the OAuth2 endpoints of " + oauth2Host);
+		}
+		oauth2Config = builder.buildConfig();
 		//build the client
 		client  = new OAuth2PlatformClient(oauth2Config);
+		//tokens of connected realms
+		tokenStore = createTokenStore();
+	}
+	
+	private TokenStore createTokenStore() throws IOException {
+		if (!"file".equalsIgnoreCase(env.getProperty("TokenStore"))) {
+			return new InMemoryTokenStore();
+		}
+		String key = env.getProperty("TokenStoreKey");
+		if (StringUtils.isEmpty(key)) {
+			throw new IllegalStateException("TokenStoreKey is required for the file token store");
+		}
+		File file = new File(env.getProperty("TokenStoreFile", "tokens.db"));
+		logger.info("using token store file " + file.getAbsolutePath());
+		return new MappedFileTokenStore(file, Base64.getDecoder().decode(key.trim()));
 	}
 	
 	
@@ -44,6 +83,42 @@ public class OAuth2PlatformClientFactory {
 		return oauth2Config;
 	}
 	
+	public TokenStore getTokenStore()  {
+		return tokenStore;
+	}
+
+	/**
+	 * @return whether OAuth2Host replaces the discovered OAuth2 endpoints
+	 */
+	public boolean hasOAuth2Host() {
+		return oauth2Host != null;
+	}
+
+	/**
+	 * URL of the authorization endpoint to redirect the user to
+	 *
+	 * @param scopes
+	 * @param redirectUri
+	 * @param csrfToken
+	 * @return
+	 * @throws InvalidRequestException
+	 */
+	public String prepareAuthorizationUrl(List<Scope> scopes, String redirectUri, String csrfToken) throws InvalidRequestException {
+		String url = oauth2Config.prepareUrl(scopes, redirectUri, csrfToken);
+		if (oauth2Host == null) {
+			return url;
+		}
+		return oauth2Host + AUTHORIZATION_PATH + url.substring(url.indexOf('?'));
+	}
+
+	public String getBearerTokenEndpoint() {
+		return oauth2Host != null ? oauth2Host + BEARER_TOKEN_PATH : oauth2Config.getIntuitBearerTokenEndpoint();
+	}
+
+	public String getRevokeTokenEndpoint() {
+		return oauth2Host != null ? oauth2Host + REVOKE_TOKEN_PATH : oauth2Config.getIntuitRevokeTokenEndpoint();
+	}
+	
 	public String getPropertyValue(String proppertyName) {
 		return env.getProperty(proppertyName);
 	}
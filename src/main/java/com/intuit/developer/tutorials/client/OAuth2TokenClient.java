@@ -0,0 +1,167 @@
+package com.intuit.developer.tutorials.client;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+import org.apache.log4j.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.intuit.developer.tutorials.helper.HttpTransport;
+import com.intuit.oauth2.config.OAuth2Config;
+import com.intuit.oauth2.data.BearerTokenResponse;
+import com.intuit.oauth2.data.PlatformResponse;
+import com.intuit.oauth2.exception.OAuthException;
+
+/**
+ * Calls the OAuth2 token endpoint through the pooled connections of {@link HttpTransport},
+ * so that token refreshes reuse kept-alive connections to the OAuth host.
+ *
+ * The OAuth2PlatformClient of the SDK opens a new connection for every call and does not
+ * accept a client to use instead. Set OAuth2PooledRefresh=false to refresh through it.
+ * It only knows the discovered Intuit endpoints, so all token calls go through the pool
+ * when OAuth2Host points at another OAuth server.
+ */
+@Service
+public class OAuth2TokenClient {
+
+	@Autowired
+	OAuth2PlatformClientFactory factory;
+
+	@Autowired
+	HttpTransport transport;
+
+	private static final Logger logger = Logger.getLogger(OAuth2TokenClient.class);
+
+	private boolean pooled;
+
+	@PostConstruct
+	public void init() {
+		String value = factory.getPropertyValue("OAuth2PooledRefresh");
+		pooled = value == null || Boolean.parseBoolean(value.trim());
+	}
+
+	/**
+	 * Exchanges a refresh token for new tokens
+	 *
+	 * @param refreshToken
+	 * @return
+	 * @throws OAuthException
+	 */
+	public BearerTokenResponse refreshToken(String refreshToken) throws OAuthException {
+		if (!pooled && !factory.hasOAuth2Host()) {
+			return factory.getOAuth2PlatformClient().refreshToken(refreshToken);
+		}
+		List<NameValuePair> form = new ArrayList<NameValuePair>();
+		form.add(new BasicNameValuePair("grant_type", "refresh_token"));
+		form.add(new BasicNameValuePair("refresh_token", refreshToken));
+		return toResponse(post(factory.getBearerTokenEndpoint(), new UrlEncodedFormEntity(form, StandardCharsets.UTF_8), "Token refresh"));
+	}
+
+	/**
+	 * Exchanges an authorization code for tokens
+	 *
+	 * @param authCode
+	 * @param redirectUri
+	 * @return
+	 * @throws OAuthException
+	 */
+	public BearerTokenResponse retrieveBearerTokens(String authCode, String redirectUri) throws OAuthException {
+		if (!factory.hasOAuth2Host()) {
+			return factory.getOAuth2PlatformClient().retrieveBearerTokens(authCode, redirectUri);
+		}
+		List<NameValuePair> form = new ArrayList<NameValuePair>();
+		form.add(new BasicNameValuePair("grant_type", "authorization_code"));
+		form.add(new BasicNameValuePair("code", authCode));
+		form.add(new BasicNameValuePair("redirect_uri", redirectUri));
+		return toResponse(post(factory.getBearerTokenEndpoint(), new UrlEncodedFormEntity(form, StandardCharsets.UTF_8), "Token exchange"));
+	}
+
+	/**
+	 * Revokes a refresh token, and the access tokens issued with it
+	 *
+	 * @param refreshToken
+	 * @throws OAuthException
+	 */
+	public void revokeToken(String refreshToken) throws OAuthException {
+		if (!factory.hasOAuth2Host()) {
+			PlatformResponse response = factory.getOAuth2PlatformClient().revokeToken(refreshToken);
+			logger.info("raw result for revoke token request= " + response.getStatus());
+			return;
+		}
+		post(factory.getRevokeTokenEndpoint(),
+				new StringEntity(new JSONObject().put("token", refreshToken).toString(), ContentType.APPLICATION_JSON), "Token revoke");
+	}
+
+	private String post(String endpoint, HttpEntity entity, String what) throws OAuthException {
+		OAuth2Config config = factory.getOAuth2Config();
+		HttpPost post = new HttpPost(endpoint);
+		String credentials = config.getClientId() + ":" + config.getClientSecret();
+		post.setHeader("Authorization", "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+		post.setHeader("Accept", "application/json");
+		post.setEntity(entity);
+
+		try (CloseableHttpResponse response = transport.getClient().execute(post)) {
+			// reading the whole entity releases the connection back to the pool
+			String body = response.getEntity() != null ? EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8) : "";
+			int status = response.getStatusLine().getStatusCode();
+			if (status != 200) {
+				// the body may echo credentials, only its OAuth error code is logged
+				logger.error(what + " failed with status " + status + " :: " + errorOf(body));
+				throw new OAuthException(what + " failed with status " + status);
+			}
+			return body;
+		} catch (IOException e) {
+			logger.error("Exception in " + what, e);
+			throw new OAuthException("Exception in " + what + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @param body
+	 * @return the error field of an OAuth error response
+	 */
+	private static String errorOf(String body) {
+		try {
+			return new JSONObject(body).optString("error", "no error field");
+		} catch (JSONException e) {
+			return "response is not JSON";
+		}
+	}
+
+	private BearerTokenResponse toResponse(String body) throws OAuthException {
+		try {
+			JSONObject json = new JSONObject(body);
+			BearerTokenResponse response = new BearerTokenResponse();
+			response.setAccessToken(json.getString("access_token"));
+			response.setRefreshToken(json.getString("refresh_token"));
+			response.setTokenType(json.optString("token_type", null));
+			if (json.has("expires_in")) {
+				response.setExpiresIn(json.getLong("expires_in"));
+			}
+			if (json.has("x_refresh_token_expires_in")) {
+				response.setXRefreshTokenExpiresIn(json.getLong("x_refresh_token_expires_in"));
+			}
+			return response;
+		} catch (JSONException e) {
+			logger.error("Invalid token response", e);
+			throw new OAuthException("Invalid token response: " + e.getMessage());
+		}
+	}
+}
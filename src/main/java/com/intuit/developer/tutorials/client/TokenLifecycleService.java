@@ -0,0 +1,244 @@
+package com.intuit.developer.tutorials.client;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.intuit.developer.tutorials.helper.TimerWheel;
+import com.intuit.oauth2.data.BearerTokenResponse;
+import com.intuit.oauth2.exception.OAuthException;
+
+/**
+ * Keeps track of the tokens of every connected realm and refreshes them in the background
+ * before the access token expires. Tokens are persisted in the {@link TokenStore} of
+ * {@link OAuth2PlatformClientFactory}, this service caches and schedules them per node.
+ *
+ * Refreshes are scheduled on a {@link TimerWheel}, which keeps the cost per realm constant,
+ * and run on a small pool of refresh threads. Request threads only read the current token
+ * of the realm and never wait for a refresh, unless QBO rejected the token (see
+ * {@link #refresh(String, String)}).
+ */
+@Service
+public class TokenLifecycleService {
+
+	@Autowired
+	OAuth2PlatformClientFactory factory;
+
+	@Autowired
+	TokenRefreshCoordinator refreshCoordinator;
+
+	private static final Logger logger = Logger.getLogger(TokenLifecycleService.class);
+
+	private static final long DEFAULT_LEAD_SECONDS = 300;
+	private static final long RETRY_SECONDS = 30;
+
+	private final ConcurrentMap<String, Tokens> tokens = new ConcurrentHashMap<String, Tokens>();
+
+	private ExecutorService refreshExecutor;
+	private TimerWheel wheel;
+	private long leadMillis;
+
+	@PostConstruct
+	public void init() {
+		leadMillis = TimeUnit.SECONDS.toMillis(longProperty("TokenRefreshLeadSeconds", DEFAULT_LEAD_SECONDS));
+		int threads = (int) longProperty("TokenRefreshThreads", 4);
+		AtomicInteger count = new AtomicInteger();
+		refreshExecutor = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "token-refresh-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		wheel = new TimerWheel("token-refresh-wheel", longProperty("TokenRefreshTickMillis", 1000), 512, refreshExecutor);
+
+		// realms connected before a restart or through another node
+		for (String realmId : factory.getTokenStore().realmIds()) {
+			TokenRecord record = factory.getTokenStore().load(realmId);
+			if (record != null) {
+				track(record);
+			}
+		}
+	}
+
+	@PreDestroy
+	public void destroy() {
+		wheel.stop();
+		refreshExecutor.shutdownNow();
+	}
+
+	private long longProperty(String name, long defaultValue) {
+		String value = factory.getPropertyValue(name);
+		return value == null ? defaultValue : Long.parseLong(value.trim());
+	}
+
+	/**
+	 * Records new tokens of a realm in the token store and schedules their refresh ahead of expiry
+	 *
+	 * @param realmId
+	 * @param response token response of the authorization code exchange or a refresh
+	 */
+	public void register(String realmId, BearerTokenResponse response) {
+		if (realmId == null) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		long expiresIn = response.getExpiresIn() != null ? response.getExpiresIn() : 3600;
+		TokenRecord record = new TokenRecord(realmId, response.getAccessToken(), response.getRefreshToken(),
+				now + TimeUnit.SECONDS.toMillis(expiresIn), now);
+		factory.getTokenStore().save(record);
+		track(record);
+	}
+
+	private Tokens track(TokenRecord record) {
+		Tokens current = new Tokens(record);
+		Tokens previous = tokens.put(record.getRealmId(), current);
+		if (previous != null && previous.timeout != null) {
+			previous.timeout.cancel();
+		}
+		// spread refreshes of realms connected at the same time over the last 10% of the lead
+		long jitter = ThreadLocalRandom.current().nextLong(leadMillis / 10 + 1);
+		long delay = Math.max(0, record.getExpiresAt() - leadMillis + jitter - System.currentTimeMillis());
+		schedule(current, delay);
+		return current;
+	}
+
+	private void schedule(Tokens state, long delayMillis) {
+		state.timeout = wheel.schedule(() -> refreshAhead(state), delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void refreshAhead(Tokens state) {
+		String realmId = state.record.getRealmId();
+		if (tokens.get(realmId) != state) {
+			// tokens were replaced or removed since this refresh was scheduled
+			return;
+		}
+		TokenRecord stored = factory.getTokenStore().load(realmId);
+		if (stored == null) {
+			// disconnected on another node
+			tokens.remove(realmId, state);
+			return;
+		}
+		if (stored.getUpdatedAt() > state.record.getUpdatedAt()) {
+			// another node already refreshed this realm
+			track(stored);
+			return;
+		}
+		try {
+			logger.info("refreshing tokens ahead of expiry for realm " + realmId);
+			refreshCoordinator.refresh(realmId, stored.getRefreshToken(), response -> register(realmId, response));
+		} catch (OAuthException e) {
+			logger.error("Exception while refreshing tokens for realm " + realmId, e);
+			if (System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(RETRY_SECONDS) < stored.getExpiresAt()) {
+				schedule(state, TimeUnit.SECONDS.toMillis(RETRY_SECONDS));
+			}
+		}
+	}
+
+	/**
+	 * Refreshes the tokens of a realm right away, e.g. after QBO answered with a 401.
+	 * If another node refreshed the realm in the meantime its tokens are used instead,
+	 * otherwise the latest stored refresh token is used even if the caller's one is outdated.
+	 * Callers that join a refresh in flight get the tokens already registered by its leader.
+	 *
+	 * @param realmId
+	 * @param refreshToken refresh token known to the caller
+	 * @return
+	 * @throws OAuthException
+	 */
+	public BearerTokenResponse refresh(String realmId, String refreshToken) throws OAuthException {
+		TokenRecord stored = realmId != null ? factory.getTokenStore().load(realmId) : null;
+		if (stored != null) {
+			Tokens local = tokens.get(realmId);
+			if (local != null && stored.getUpdatedAt() > local.record.getUpdatedAt() && !stored.isExpired()) {
+				track(stored);
+				return toResponse(stored);
+			}
+			refreshToken = stored.getRefreshToken();
+		}
+		return refreshCoordinator.refresh(realmId, refreshToken, response -> register(realmId, response));
+	}
+
+	private BearerTokenResponse toResponse(TokenRecord record) {
+		BearerTokenResponse response = new BearerTokenResponse();
+		response.setAccessToken(record.getAccessToken());
+		response.setRefreshToken(record.getRefreshToken());
+		response.setExpiresIn(TimeUnit.MILLISECONDS.toSeconds(record.getExpiresAt() - System.currentTimeMillis()));
+		return response;
+	}
+
+	/**
+	 * Current access token of the realm, loaded from the token store if this node
+	 * does not track the realm yet
+	 *
+	 * @param realmId
+	 * @param fallback token to use if the realm is not connected
+	 * @return
+	 */
+	public String getAccessToken(String realmId, String fallback) {
+		Tokens current = lookup(realmId);
+		return current != null ? current.record.getAccessToken() : fallback;
+	}
+
+	/**
+	 * Current refresh token of the realm
+	 *
+	 * @param realmId
+	 * @param fallback token to use if the realm is not connected
+	 * @return
+	 */
+	public String getRefreshToken(String realmId, String fallback) {
+		Tokens current = lookup(realmId);
+		return current != null ? current.record.getRefreshToken() : fallback;
+	}
+
+	private Tokens lookup(String realmId) {
+		if (realmId == null) {
+			return null;
+		}
+		Tokens current = tokens.get(realmId);
+		if (current == null) {
+			TokenRecord stored = factory.getTokenStore().load(realmId);
+			if (stored != null) {
+				current = track(stored);
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Disconnects a realm, e.g. after its tokens were revoked
+	 *
+	 * @param realmId
+	 */
+	public void remove(String realmId) {
+		factory.getTokenStore().remove(realmId);
+		Tokens previous = tokens.remove(realmId);
+		if (previous != null && previous.timeout != null) {
+			previous.timeout.cancel();
+		}
+	}
+
+	public int getTrackedRealms() {
+		return tokens.size();
+	}
+
+	private static final class Tokens {
+
+		private final TokenRecord record;
+		private volatile TimerWheel.Timeout timeout;
+
+		Tokens(TokenRecord record) {
+			this.record = record;
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package com.intuit.developer.tutorials.client;
+
+/**
+ * OAuth2 tokens of a realm as kept in a {@link TokenStore}
+ */
+public final class TokenRecord {
+
+	private final String realmId;
+	private final String accessToken;
+	private final String refreshToken;
+	private final long expiresAt;
+	private final long updatedAt;
+
+	public TokenRecord(String realmId, String accessToken, String refreshToken, long expiresAt, long updatedAt) {
+		this.realmId = realmId;
+		this.accessToken = accessToken;
+		this.refreshToken = refreshToken;
+		this.expiresAt = expiresAt;
+		this.updatedAt = updatedAt;
+	}
+
+	public String getRealmId() {
+		return realmId;
+	}
+
+	public String getAccessToken() {
+		return accessToken;
+	}
+
+	public String getRefreshToken() {
+		return refreshToken;
+	}
+
+	/**
+	 * @return expiry of the access token in epoch millis
+	 */
+	public long getExpiresAt() {
+		return expiresAt;
+	}
+
+	/**
+	 * @return time the tokens were obtained in epoch millis
+	 */
+	public long getUpdatedAt() {
+		return updatedAt;
+	}
+
+	public boolean isExpired() {
+		return System.currentTimeMillis() >= expiresAt;
+	}
+}
@@ -0,0 +1,136 @@
+package com.intuit.developer.tutorials.client;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.intuit.oauth2.data.BearerTokenResponse;
+import com.intuit.oauth2.exception.OAuthException;
+
+/**
+ * Coordinates OAuth2 token refreshes so that a realm has at most one refresh in flight.
+ *
+ * Concurrent callers that receive a 401 for the same realm wait on the refresh started by
+ * the first one and all get its result. Intuit rotates the refresh token on every refresh,
+ * so a caller that still holds the refresh token consumed by the last refresh gets that
+ * refresh's result instead of calling the token endpoint with a token that is no longer valid.
+ * Only the caller that called the token endpoint hands the new tokens to the listener, and
+ * does so before the waiting callers get them.
+ */
+@Service
+public class TokenRefreshCoordinator {
+
+	@Autowired
+	OAuth2TokenClient tokenClient;
+
+	private static final Logger logger = Logger.getLogger(TokenRefreshCoordinator.class);
+
+	private final ConcurrentMap<String, Refresh> inFlight = new ConcurrentHashMap<String, Refresh>();
+	private final ConcurrentMap<String, Refresh> completed = new ConcurrentHashMap<String, Refresh>();
+
+	/**
+	 * Refreshes the tokens of a realm, joining a refresh already in flight for it
+	 *
+	 * @param realmId
+	 * @param refreshToken the refresh token known to the caller
+	 * @param listener called once with the tokens of every refresh sent to the token endpoint
+	 * @return the new tokens
+	 * @throws OAuthException
+	 */
+	public BearerTokenResponse refresh(String realmId, String refreshToken, Consumer<BearerTokenResponse> listener)
+			throws OAuthException {
+		if (realmId == null) {
+			// connections without accounting scope have no realm to coordinate on
+			BearerTokenResponse response = tokenClient.refreshToken(refreshToken);
+			listener.accept(response);
+			return response;
+		}
+
+		Refresh last = lastRefreshOf(realmId, refreshToken);
+		if (last != null) {
+			return last.await();
+		}
+
+		Refresh refresh = new Refresh(refreshToken);
+		Refresh existing = inFlight.putIfAbsent(realmId, refresh);
+		if (existing != null) {
+			logger.debug("joining in flight token refresh for realm " + realmId);
+			return existing.await();
+		}
+
+		try {
+			// a refresh may have completed between the first check and claiming the slot
+			last = lastRefreshOf(realmId, refreshToken);
+			if (last != null) {
+				BearerTokenResponse response = last.await();
+				refresh.complete(response);
+				return response;
+			}
+			BearerTokenResponse response = tokenClient.refreshToken(refreshToken);
+			try {
+				listener.accept(response);
+			} finally {
+				// the old refresh token is consumed, the waiting callers need the new one either way
+				refresh.complete(response);
+				completed.put(realmId, refresh);
+			}
+			return response;
+		} catch (OAuthException | RuntimeException e) {
+			refresh.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(realmId, refresh);
+		}
+	}
+
+	private Refresh lastRefreshOf(String realmId, String refreshToken) {
+		Refresh last = completed.get(realmId);
+		if (last != null && last.refreshToken.equals(refreshToken) && last.isSuccessful()) {
+			logger.debug("refresh token already used for realm " + realmId + ", returning new tokens");
+			return last;
+		}
+		return null;
+	}
+
+	/**
+	 * Forgets the refresh history of a realm, e.g. after its tokens were revoked
+	 *
+	 * @param realmId
+	 */
+	public void forget(String realmId) {
+		completed.remove(realmId);
+	}
+
+	private static final class Refresh extends CompletableFuture<BearerTokenResponse> {
+
+		private final String refreshToken;
+
+		Refresh(String refreshToken) {
+			this.refreshToken = refreshToken;
+		}
+
+		boolean isSuccessful() {
+			return isDone() && !isCompletedExceptionally();
+		}
+
+		BearerTokenResponse await() throws OAuthException {
+			try {
+				return get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new OAuthException("Interrupted while waiting for token refresh", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof OAuthException) {
+					throw (OAuthException) e.getCause();
+				}
+				throw new OAuthException("Token refresh failed", e.getCause());
+			}
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package com.intuit.developer.tutorials.client;
+
+import java.util.Collection;
+
+/**
+ * Store for the OAuth2 tokens of connected realms, keyed by realmId.
+ *
+ * Keeping tokens outside the HttpSession lets any node serve any realm and keeps
+ * connections alive across restarts.
+ */
+public interface TokenStore {
+
+	/**
+	 * Saves or replaces the tokens of a realm
+	 *
+	 * @param record
+	 */
+	void save(TokenRecord record);
+
+	/**
+	 * @param realmId
+	 * @return the tokens of the realm, or null if the realm is not connected
+	 */
+	TokenRecord load(String realmId);
+
+	/**
+	 * @param realmId
+	 */
+	void remove(String realmId);
+
+	/**
+	 * @return the realms currently in the store
+	 */
+	Collection<String> realmIds();
+}
@@ -4,6 +4,7 @@ import java.math.BigDecimal;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import javax.servlet.http.HttpSession;
 
@@ -16,18 +17,19 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+import com.intuit.developer.tutorials.helper.AccountResolver;
+import com.intuit.developer.tutorials.helper.ErrorResponses;
+import com.intuit.developer.tutorials.helper.JsonResponse;
 import com.intuit.developer.tutorials.helper.QBOServiceHelper;
-import com.intuit.ipp.core.IEntity;
+import com.intuit.developer.tutorials.helper.SingleFlight;
+import com.intuit.developer.tutorials.helper.WorkflowExecutor;
 import com.intuit.ipp.data.Account;
 import com.intuit.ipp.data.AccountClassificationEnum;
 import com.intuit.ipp.data.AccountSubTypeEnum;
 import com.intuit.ipp.data.AccountTypeEnum;
 import com.intuit.ipp.data.EntityTypeEnum;
 import com.intuit.ipp.data.EntityTypeRef;
-import com.intuit.ipp.data.Error;
 import com.intuit.ipp.data.IntuitEntity;
 import com.intuit.ipp.data.JournalEntry;
 import com.intuit.ipp.data.JournalEntryLineDetail;
@@ -37,9 +39,7 @@ import com.intuit.ipp.data.PostingTypeEnum;
 import com.intuit.ipp.data.ReferenceType;
 import com.intuit.ipp.data.Vendor;
 import com.intuit.ipp.exception.FMSException;
-import com.intuit.ipp.exception.InvalidTokenException;
 import com.intuit.ipp.services.DataService;
-import com.intuit.ipp.services.QueryResult;
 import com.intuit.ipp.util.DateUtils;
 
 /**
@@ -55,9 +55,16 @@ public class AccountingController {
 	@Autowired
     public QBOServiceHelper helper;
 	
+	@Autowired
+	AccountResolver accountResolver;
+	
+	@Autowired
+	WorkflowExecutor workflowExecutor;
+	
 	private static final Logger logger = Logger.getLogger(AccountingController.class);
 	
-	private static final String ACCOUNT_QUERY = "select * from Account where AccountType='%s' maxresults 1";
+	// concurrent requests of a realm share one vendor lookup/create
+	private final SingleFlight<String, Vendor> vendorFlights = new SingleFlight<String, Vendor>();
 	
 	
 	/**
@@ -69,44 +76,33 @@ public class AccountingController {
      */
 	@ResponseBody
     @RequestMapping("/accounting")
-    public String callAccountingConcept(HttpSession session) {
+    public CompletableFuture<Object> callAccountingConcept(HttpSession session) {
 
     	String realmId = (String)session.getAttribute("realmId");
     	if (StringUtils.isEmpty(realmId)) {
-    		return new JSONObject().put("response","No realm ID.  QBO calls only work if the accounting scope was passed!").toString();
+    		return CompletableFuture.completedFuture(new JSONObject().put("response","No realm ID.  QBO calls only work if the accounting scope was passed!").toString());
     	}
     	String accessToken = (String)session.getAttribute("access_token");
     	
-    	try {
+    	// QBO calls run on the outbound pool, the request thread is released meanwhile
+    	return workflowExecutor.submit(() -> {
         	
         	// Get DataService
     		DataService service = helper.getDataService(realmId, accessToken);
 
     		// Create OR Fetch DebitAccount
-            Account savedDebitAccount = getDebitAccount(service);
+            Account savedDebitAccount = getDebitAccount(service, realmId);
 
             // Create OR Fetch CreditCard Account
-            Account savedCreditAccount = getCreditCardBankAccount(service);
+            Account savedCreditAccount = getCreditCardBankAccount(service, realmId);
     		
     		// Create Journal Entry using the accounts above
-            JournalEntry journalentry = getJournalEntryFields(service, savedDebitAccount, savedCreditAccount);
+            JournalEntry journalentry = getJournalEntryFields(savedDebitAccount, savedCreditAccount, getVendor(service, realmId));
             JournalEntry savedJournalEntry = service.add(journalentry);
             logger.info("JournalEntry created: " + savedJournalEntry.getId());
 
-            // Return the result
-    		return createResponse(savedJournalEntry);
-			
-		}
-	        
-        catch (InvalidTokenException e) {			
-			return new JSONObject().put("response","InvalidToken - Refreshtoken and try again").toString();
-		} catch (FMSException e) {
-			List<Error> list = e.getErrorList();
-			list.forEach(error -> logger.error("Error while calling the API :: " + error.getMessage()));
-			return new JSONObject().put("response","Failed").toString();
-		} catch (ParseException e) {
-			return new JSONObject().put("response","Parse Exception").toString();
-		}
+            return savedJournalEntry;
+    	}).handle((savedJournalEntry, e) -> e == null ? createResponse(savedJournalEntry) : ErrorResponses.of(e));
     }
 
 
@@ -114,18 +110,13 @@ public class AccountingController {
      * Create OR lookup Debit Account
      *
      * @param service Reference to the DataService to create the Account
+     * @param realmId The realm the account belongs to
      * @return The BankAccount object
      * @throws FMSException
      */
-    private Account getDebitAccount(DataService service) throws FMSException {
-
-    	QueryResult queryResult = service.executeQuery(String.format(ACCOUNT_QUERY, AccountTypeEnum.BANK.value()));
-		List<? extends IEntity> entities = queryResult.getEntities();
-		if(!entities.isEmpty()) {
-			return (Account)entities.get(0);
-		}
+    private Account getDebitAccount(DataService service, String realmId) throws FMSException {
 
-        return createDebitAccount(service);
+    	return accountResolver.getAccount(service, realmId, AccountTypeEnum.BANK, null, this::createDebitAccount);
     }
 
     /**
@@ -148,18 +139,13 @@ public class AccountingController {
      * Create OR lookup CreditCard Account
      *
      * @param service Reference to the DataService to create the Account
+     * @param realmId The realm the account belongs to
      * @return The CreditCard account
      * @throws FMSException
      */
-	private Account getCreditCardBankAccount(DataService service) throws FMSException {
+	private Account getCreditCardBankAccount(DataService service, String realmId) throws FMSException {
 		
-		QueryResult queryResult = service.executeQuery(String.format(ACCOUNT_QUERY, AccountTypeEnum.CREDIT_CARD.value()));
-		List<? extends IEntity> entities = queryResult.getEntities();
-		if(!entities.isEmpty()) {
-			return (Account)entities.get(0);
-		}
-
-		return createCreditCardBankAccount(service);
+		return accountResolver.getAccount(service, realmId, AccountTypeEnum.CREDIT_CARD, null, this::createCreditCardBankAccount);
 	}
 
     /**
@@ -186,16 +172,15 @@ public class AccountingController {
     /**
      * Creates a JournalEntry against the given BankAccount and CreditCard Account
      * These accounts are added as 2 line items
-     * This method internally creates or lookup a Vendor
+     * The Vendor is looked up or created by the caller
      *
-     * @param service Reference to the DataService to create the JournalEntry
      * @param debitAccount The BankAccount reference
      * @param creditAccount The CreditAccount reference
+     * @param vendor The Vendor referenced by the credit line
      * @return Reference to the created JournalEntry
      * @throws FMSException
-     * @throws ParseException
      */
-	private JournalEntry getJournalEntryFields(DataService service, Account debitAccount, Account creditAccount) throws FMSException, ParseException {
+	JournalEntry getJournalEntryFields(Account debitAccount, Account creditAccount, Vendor vendor) throws FMSException {
 
 	    JournalEntry journalEntry = new JournalEntry();
 		try {
@@ -225,7 +210,7 @@ public class AccountingController {
 		journalEntryLineDetail2.setAccountRef(createRef(creditAccount));
 		EntityTypeRef eRef = new EntityTypeRef();
 		eRef.setType(EntityTypeEnum.VENDOR);
-		eRef.setEntityRef(createRef(getVendor(service)));    // Set a Vendor as reference
+		eRef.setEntityRef(createRef(vendor));    // Set a Vendor as reference
 		journalEntryLineDetail2.setEntity(eRef);
 
 		line2.setJournalEntryLineDetail(journalEntryLineDetail2);
@@ -247,17 +232,19 @@ public class AccountingController {
      * Create OR lookup Vendor
      *
      * @param service Reference to the DataService to create the Vendor
+     * @param realmId The realm the Vendor belongs to
      * @return Vendor object
      * @throws FMSException
-     * @throws ParseException
      */
-	private Vendor getVendor(DataService service) throws FMSException, ParseException {
-		List<Vendor> vendors = (List<Vendor>) service.findAll(new Vendor());
-
-		if (!vendors.isEmpty()) {
-			return vendors.get(0);
-		}
-		return createVendor(service);
+	private Vendor getVendor(DataService service, String realmId) throws FMSException {
+		return vendorFlights.execute(realmId, () -> {
+			List<Vendor> vendors = (List<Vendor>) service.findAll(new Vendor());
+
+			if (!vendors.isEmpty()) {
+				return vendors.get(0);
+			}
+			return createVendor(service);
+		});
 	}
 
     /**
@@ -266,9 +253,8 @@ public class AccountingController {
      * @param service Reference to the DataService to create the Vendor
      * @return Created Vendor object
      * @throws FMSException
-     * @throws ParseException
      */
-	private Vendor createVendor(DataService service) throws FMSException, ParseException {
+	private Vendor createVendor(DataService service) throws FMSException {
 		return service.add(getVendorWithAllFields(service));
 	}
 
@@ -278,9 +264,8 @@ public class AccountingController {
      * @param service Reference to the DataService to create the Account
      * @return Vendor object
      * @throws FMSException
-     * @throws ParseException
      */
-	private Vendor getVendorWithAllFields(DataService service) throws FMSException, ParseException {
+	private Vendor getVendorWithAllFields(DataService service) throws FMSException {
 		Vendor vendor = new Vendor();
 		// Mandatory Fields
 		vendor.setDisplayName(RandomStringUtils.randomAlphanumeric(8));
@@ -308,26 +293,12 @@ public class AccountingController {
 	}
 
 	/**
-	 * Map object to json string
+	 * Map object to json, streamed to the response by JsonResponseConverter
 	 * @param entity
 	 * @return
 	 */
-	private String createResponse(Object entity) {
-		ObjectMapper mapper = new ObjectMapper();
-		String jsonInString;
-		try {
-			jsonInString = mapper.writeValueAsString(entity);
-		} catch (JsonProcessingException e) {
-			return createErrorResponse(e);
-		} catch (Exception e) {
-			return createErrorResponse(e);
-		}
-		return jsonInString;
-	}
-
-	private String createErrorResponse(Exception e) {
-		logger.error("Exception while calling QBO ", e);
-		return new JSONObject().put("response","Failed").toString();
+	private JsonResponse createResponse(Object entity) {
+		return JsonResponse.of(entity);
 	}
 
 }
\ No newline at end of file
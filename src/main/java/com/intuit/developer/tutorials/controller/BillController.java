@@ -4,6 +4,7 @@ import java.math.BigDecimal;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import javax.servlet.http.HttpSession;
 
@@ -16,11 +17,14 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+import com.intuit.developer.tutorials.helper.AccountResolver;
+import com.intuit.developer.tutorials.helper.ErrorResponses;
+import com.intuit.developer.tutorials.helper.JsonResponse;
 import com.intuit.developer.tutorials.helper.QBOServiceHelper;
-import com.intuit.ipp.core.IEntity;
+import com.intuit.developer.tutorials.helper.Workflow.Step;
+import com.intuit.developer.tutorials.helper.Workflow;
+import com.intuit.developer.tutorials.helper.WorkflowExecutor;
 import com.intuit.ipp.data.Account;
 import com.intuit.ipp.data.AccountBasedExpenseLineDetail;
 import com.intuit.ipp.data.AccountClassificationEnum;
@@ -31,7 +35,6 @@ import com.intuit.ipp.data.BillPayment;
 import com.intuit.ipp.data.BillPaymentCheck;
 import com.intuit.ipp.data.BillPaymentTypeEnum;
 import com.intuit.ipp.data.CheckPayment;
-import com.intuit.ipp.data.Error;
 import com.intuit.ipp.data.IntuitEntity;
 import com.intuit.ipp.data.Line;
 import com.intuit.ipp.data.LineDetailTypeEnum;
@@ -41,9 +44,7 @@ import com.intuit.ipp.data.TxnTypeEnum;
 import com.intuit.ipp.data.Vendor;
 import com.intuit.ipp.data.VendorCredit;
 import com.intuit.ipp.exception.FMSException;
-import com.intuit.ipp.exception.InvalidTokenException;
 import com.intuit.ipp.services.DataService;
-import com.intuit.ipp.services.QueryResult;
 
 
 /**
@@ -59,9 +60,13 @@ public class BillController {
 	@Autowired
     public QBOServiceHelper helper;
 	
-	private static final Logger logger = Logger.getLogger(BillController.class);
+	@Autowired
+	AccountResolver accountResolver;
 	
-	private static final String ACCOUNT_QUERY = "select * from Account where AccountType='%s' maxresults 1";
+	@Autowired
+	WorkflowExecutor workflowExecutor;
+	
+	private static final Logger logger = Logger.getLogger(BillController.class);
 	
 	
 	/**
@@ -72,11 +77,11 @@ public class BillController {
      */
 	@ResponseBody
     @RequestMapping("/bill")
-    public String callBillingConcept(HttpSession session) throws FMSException, ParseException{
+    public CompletableFuture<Object> callBillingConcept(HttpSession session) {
 
     	String realmId = (String)session.getAttribute("realmId");
     	if (StringUtils.isEmpty(realmId)) {
-    		return new JSONObject().put("response","No realm ID.  QBO calls only work if the accounting scope was passed!").toString();
+    		return CompletableFuture.completedFuture(new JSONObject().put("response","No realm ID.  QBO calls only work if the accounting scope was passed!").toString());
     	}
     	String accessToken = (String)session.getAttribute("access_token");
     	
@@ -85,33 +90,35 @@ public class BillController {
         	//get DataService
     		DataService service = helper.getDataService(realmId, accessToken);
 			
-    		//add vendor
-    		Vendor vendor = getVendorFields();
-			Vendor vendorOut = service.add(vendor);
+    		Workflow workflow = workflowExecutor.newWorkflow("bill", realmId);
+
+    		//add vendor and look up the accounts, these don't depend on each other
+    		Step<Vendor> vendorOut = workflow.step("addVendor", () -> service.add(getVendorFields()));
+    		Step<Account> apAccount = workflow.step("apAccount", () -> getLiabilityBankAccount(service, realmId));
+    		Step<Account> expenseAccount = workflow.step("expenseAccount", () -> getExpenseBankAccount(service, realmId));
+    		Step<Account> bankAccount = workflow.step("bankAccount", () -> getCheckBankAccount(service, realmId));
 
 			//add bill
-			Bill bill = getBillFields(service, vendorOut);
-			Bill billOut = service.add(bill);
+			Step<Bill> billOut = workflow.step("addBill",
+					() -> service.add(getBillFields(vendorOut.get(), apAccount.get(), expenseAccount.get())),
+					vendorOut, apAccount, expenseAccount);
 
     		//make bill payment
-			BillPayment billPayment = getBillPaymentFields(service, billOut);
-			service.add(billPayment);
-
-    		//add vendor credit
-			VendorCredit vendorCredit = getVendorCreditFields(service, vendorOut);
-			VendorCredit vendorCreditOut = service.add(vendorCredit);
+			Step<BillPayment> billPaymentOut = workflow.step("addBillPayment",
+					() -> service.add(getBillPaymentFields(billOut.get(), bankAccount.get())),
+					billOut, bankAccount);
+
+    		//add vendor credit, after the bill payment as before: not created if the payment failed
+			Step<VendorCredit> vendorCreditOut = workflow.step("addVendorCredit",
+					() -> service.add(getVendorCreditFields(vendorOut.get(), apAccount.get(), expenseAccount.get())),
+					vendorOut, apAccount, expenseAccount, billPaymentOut);
     		
-    		//return response back
-    		return createResponse(vendorCreditOut);
+    		//return response back once the workflow completed, the request thread is released meanwhile
+    		return workflow.completion(vendorCreditOut)
+    				.handle((vendorCredit, e) -> e == null ? createResponse(vendorCredit) : ErrorResponses.of(e));
 			
-		}
-	        
-        catch (InvalidTokenException e) {			
-			return new JSONObject().put("response","InvalidToken - Refreshtoken and try again").toString();
 		} catch (FMSException e) {
-			List<Error> list = e.getErrorList();
-			list.forEach(error -> logger.error("Error while calling the API :: " + error.getMessage()));
-			return new JSONObject().put("response","Failed").toString();
+			return CompletableFuture.completedFuture(ErrorResponses.of(e));
 		}
     }
 
@@ -128,24 +135,22 @@ public class BillController {
 
 	/**
 	 * Prepare Bill request
-	 * @param service
 	 * @param vendor
+	 * @param liabilityAccount
+	 * @param account expense account
 	 * @return
-	 * @throws FMSException
 	 */
-	private  Bill getBillFields(DataService service, Vendor vendor) throws FMSException {
+	Bill getBillFields(Vendor vendor, Account liabilityAccount, Account account) {
 
 		Bill bill = new Bill();
 		bill.setVendorRef(createRef(vendor));
 
-		Account liabilityAccount = getLiabilityBankAccount(service);
 		bill.setAPAccountRef(createRef(liabilityAccount));
 
 		Line line1 = new Line();
 		line1.setAmount(new BigDecimal("30.00"));
 		line1.setDetailType(LineDetailTypeEnum.ACCOUNT_BASED_EXPENSE_LINE_DETAIL);
 		AccountBasedExpenseLineDetail detail = new AccountBasedExpenseLineDetail();
-		Account account = getExpenseBankAccount(service);
 		ReferenceType expenseAccountRef = createRef(account);
 		detail.setAccountRef(expenseAccountRef);
 		line1.setAccountBasedExpenseLineDetail(detail);
@@ -161,12 +166,12 @@ public class BillController {
 
 	/**
 	 * Prepare BillPayment request
-	 * @param service
 	 * @param bill
+	 * @param bankAccount
 	 * @return
 	 * @throws FMSException
 	 */
-	private BillPayment getBillPaymentFields(DataService service, Bill bill) throws FMSException {
+	private BillPayment getBillPaymentFields(Bill bill, Account bankAccount) throws FMSException {
 		BillPayment billPayment = new BillPayment();
 
 		billPayment.setVendorRef(bill.getVendorRef());
@@ -185,7 +190,6 @@ public class BillController {
 		billPayment.setLine(lineList);
 
 		BillPaymentCheck billPaymentCheck = new BillPaymentCheck();
-		Account bankAccount = getCheckBankAccount(service);
 		billPaymentCheck.setBankAccountRef(createRef(bankAccount));
 
 		billPaymentCheck.setCheckDetail(getCheckPayment());
@@ -198,24 +202,22 @@ public class BillController {
 	
 	/**
 	 * Prepare VendorCredit Request
-	 * @param service
 	 * @param vendor
+	 * @param account AP account
+	 * @param expenseAccount
 	 * @return
-	 * @throws FMSException
 	 */
-	private  VendorCredit getVendorCreditFields(DataService service, Vendor vendor) throws FMSException {
+	private  VendorCredit getVendorCreditFields(Vendor vendor, Account account, Account expenseAccount) {
 
 		VendorCredit vendorCredit = new VendorCredit();
 		vendorCredit.setVendorRef(createRef(vendor));
 
-		Account account = getLiabilityBankAccount(service);
 		vendorCredit.setAPAccountRef(createRef(account));
 
 		Line line1 = new Line();
 		line1.setAmount(new BigDecimal("30.00"));
 		line1.setDetailType(LineDetailTypeEnum.ACCOUNT_BASED_EXPENSE_LINE_DETAIL);
 		AccountBasedExpenseLineDetail detail = new AccountBasedExpenseLineDetail();
-		Account expenseAccount = getExpenseBankAccount(service);
 		detail.setAccountRef(createRef(expenseAccount));
 		line1.setAccountBasedExpenseLineDetail(detail);
 
@@ -230,16 +232,12 @@ public class BillController {
 	 * Get Bank Account
 	 * 
 	 * @param service
+	 * @param realmId
 	 * @return
 	 * @throws FMSException
 	 */
-	private  Account getCheckBankAccount(DataService service) throws FMSException {
-		QueryResult queryResult = service.executeQuery(String.format(ACCOUNT_QUERY, AccountTypeEnum.BANK.value()));
-		List<? extends IEntity> entities = queryResult.getEntities();
-		if(!entities.isEmpty()) {
-			return (Account)entities.get(0);
-		}
-		return createBankAccount(service);
+	private  Account getCheckBankAccount(DataService service, String realmId) throws FMSException {
+		return accountResolver.getAccount(service, realmId, AccountTypeEnum.BANK, null, this::createBankAccount);
 	}
 	
 	/**
@@ -260,17 +258,13 @@ public class BillController {
 	/**
 	 * Get Expense Account
 	 * @param service
+	 * @param realmId
 	 * @return
 	 * @throws FMSException
 	 */
-	private  Account getExpenseBankAccount(DataService service) throws FMSException {
+	private  Account getExpenseBankAccount(DataService service, String realmId) throws FMSException {
 
-		QueryResult queryResult = service.executeQuery(String.format(ACCOUNT_QUERY, AccountTypeEnum.EXPENSE.value()));
-		List<? extends IEntity> entities = queryResult.getEntities();
-		if(!entities.isEmpty()) {
-			return (Account)entities.get(0);
-		}
-		return createExpenseBankAccount(service);
+		return accountResolver.getAccount(service, realmId, AccountTypeEnum.EXPENSE, null, this::createExpenseBankAccount);
 	}
 
 	/**
@@ -292,17 +286,13 @@ public class BillController {
 	/**
 	 * Get AP account
 	 * @param service
+	 * @param realmId
 	 * @return
 	 * @throws FMSException
 	 */
-	private Account getLiabilityBankAccount(DataService service) throws FMSException {
+	private Account getLiabilityBankAccount(DataService service, String realmId) throws FMSException {
 
-		QueryResult queryResult = service.executeQuery(String.format(ACCOUNT_QUERY, AccountTypeEnum.ACCOUNTS_PAYABLE.value()));
-		List<? extends IEntity> entities = queryResult.getEntities();
-		if(!entities.isEmpty()) {
-			return (Account)entities.get(0);
-		}
-		return createLiabilityBankAccount(service);
+		return accountResolver.getAccount(service, realmId, AccountTypeEnum.ACCOUNTS_PAYABLE, null, this::createLiabilityBankAccount);
 	}
 
 	/**
@@ -352,26 +342,12 @@ public class BillController {
 	}
 
 	/**
-	 * Map object to json string
+	 * Map object to json, streamed to the response by JsonResponseConverter
 	 * @param entity
 	 * @return
 	 */
-	private String createResponse(Object entity) {
-		ObjectMapper mapper = new ObjectMapper();
-		String jsonInString;
-		try {
-			jsonInString = mapper.writeValueAsString(entity);
-		} catch (JsonProcessingException e) {
-			return createErrorResponse(e);
-		} catch (Exception e) {
-			return createErrorResponse(e);
-		}
-		return jsonInString;
-	}
-
-	private String createErrorResponse(Exception e) {
-		logger.error("Exception while calling QBO ", e);
-		return new JSONObject().put("response","Failed").toString();
+	private JsonResponse createResponse(Object entity) {
+		return JsonResponse.of(entity);
 	}
 
 }
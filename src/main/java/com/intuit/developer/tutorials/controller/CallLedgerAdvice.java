@@ -0,0 +1,38 @@
+package com.intuit.developer.tutorials.controller;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import com.intuit.developer.tutorials.helper.CallLedger;
+import com.intuit.developer.tutorials.helper.CallLedgerFilter;
+
+/**
+ * Adds the QBO calls made for the request to the responses of the endpoints, in the
+ * X-QBO-Calls header
+ */
+@ControllerAdvice
+public class CallLedgerAdvice implements ResponseBodyAdvice<Object> {
+
+	@Override
+	public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+		return true;
+	}
+
+	@Override
+	public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType contentType,
+			Class<? extends HttpMessageConverter<?>> converterType, ServerHttpRequest request, ServerHttpResponse response) {
+		if (request instanceof ServletServerHttpRequest) {
+			CallLedger ledger = CallLedgerFilter.ledgerOf(((ServletServerHttpRequest) request).getServletRequest());
+			if (ledger != null) {
+				response.getHeaders().set(CallLedgerFilter.HEADER, ledger.toString());
+			}
+		}
+		return body;
+	}
+}
@@ -9,7 +9,8 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 
 import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
-import com.intuit.oauth2.client.OAuth2PlatformClient;
+import com.intuit.developer.tutorials.client.OAuth2TokenClient;
+import com.intuit.developer.tutorials.client.TokenLifecycleService;
 import com.intuit.oauth2.data.BearerTokenResponse;
 import com.intuit.oauth2.exception.OAuthException;
 
@@ -22,6 +23,12 @@ public class CallbackController {
     
 	@Autowired
 	OAuth2PlatformClientFactory factory;
+	
+	@Autowired
+	TokenLifecycleService tokenLifecycle;
+
+	@Autowired
+	OAuth2TokenClient tokenClient;
 
     private static final Logger logger = Logger.getLogger(CallbackController.class);
     
@@ -46,16 +53,17 @@ public class CallbackController {
 	            session.setAttribute("realmId", realmId);
 	            session.setAttribute("auth_code", authCode);
 	
-	            OAuth2PlatformClient client  = factory.getOAuth2PlatformClient();
 	            String redirectUri = factory.getPropertyValue("OAuth2AppRedirectUri");
 	            logger.info("inside oauth2redirect of sample -- redirectUri " + redirectUri  );
 	            
-	            BearerTokenResponse bearerTokenResponse = client.retrieveBearerTokens(authCode, redirectUri);
+	            BearerTokenResponse bearerTokenResponse = tokenClient.retrieveBearerTokens(authCode, redirectUri);
 				 
 	            session.setAttribute("access_token", bearerTokenResponse.getAccessToken());
 	            session.setAttribute("refresh_token", bearerTokenResponse.getRefreshToken());
 	    
 	            // Update your Data store here with user's AccessToken and RefreshToken along with the realmId
+	            // tokens are refreshed in the background ahead of expires_in
+	            tokenLifecycle.register(realmId, bearerTokenResponse);
 
 	            return "connected";
 	        }
@@ -1,28 +1,31 @@
 package com.intuit.developer.tutorials.controller;
 
-import java.util.List;
-
 import javax.servlet.http.HttpSession;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+import com.intuit.developer.tutorials.client.TokenLifecycleService;
+import com.intuit.developer.tutorials.helper.ETags;
+import com.intuit.developer.tutorials.helper.ErrorResponses;
+import com.intuit.developer.tutorials.helper.JsonResponse;
 import com.intuit.developer.tutorials.helper.QBOServiceHelper;
+import com.intuit.developer.tutorials.helper.QBOUnavailableException;
 import com.intuit.ipp.data.CompanyInfo;
-import com.intuit.ipp.data.Error;
 import com.intuit.ipp.exception.FMSException;
 import com.intuit.ipp.exception.InvalidTokenException;
 import com.intuit.ipp.services.DataService;
 import com.intuit.ipp.services.QueryResult;
-import com.intuit.oauth2.client.OAuth2PlatformClient;
 import com.intuit.oauth2.data.BearerTokenResponse;
 import com.intuit.oauth2.exception.OAuthException;
 
@@ -38,6 +41,9 @@ public class CompanyInfoController {
 	
 	@Autowired
     public QBOServiceHelper helper;
+	
+	@Autowired
+	TokenLifecycleService tokenLifecycle;
 
 	
 	private static final Logger logger = Logger.getLogger(CompanyInfoController.class);
@@ -48,11 +54,13 @@ public class CompanyInfoController {
      * Sample QBO API call using OAuth2 tokens
      * 
      * @param session
+     * @param ifNoneMatch ETag of the company info the client already has, answered with 304 if unchanged
      * @return
      */
 	@ResponseBody
     @RequestMapping("/getCompanyInfo")
-    public String callQBOCompanyInfo(HttpSession session) {
+    public Object callQBOCompanyInfo(HttpSession session,
+    		@RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
 
     	String realmId = (String)session.getAttribute("realmId");
     	if (StringUtils.isEmpty(realmId)) {
@@ -69,9 +77,12 @@ public class CompanyInfoController {
 			// get all companyinfo
 			String sql = "select * from companyinfo";
 			QueryResult queryResult = service.executeQuery(sql);
-			return processResponse(failureMsg, queryResult);
+			return processResponse(failureMsg, queryResult, realmId, ifNoneMatch);
 			
 		}
+	        catch (QBOUnavailableException e) {
+	        	return ErrorResponses.unavailable(e);
+	        }
 	        /*
 	         * Handle 401 status code - 
 	         * If a 401 response is received, refresh tokens should be used to get a new access token,
@@ -82,22 +93,22 @@ public class CompanyInfoController {
 				
 				//refresh tokens
 	        	logger.info("received 401 during companyinfo call, refreshing tokens now");
-	        	OAuth2PlatformClient client  = factory.getOAuth2PlatformClient();
 	        	String refreshToken = (String)session.getAttribute("refresh_token");
 	        	
 				try {
-					BearerTokenResponse bearerTokenResponse = client.refreshToken(refreshToken);
+					//concurrent 401s of the realm share a single refresh
+					BearerTokenResponse bearerTokenResponse = tokenLifecycle.refresh(realmId, refreshToken);
 					session.setAttribute("access_token", bearerTokenResponse.getAccessToken());
 		            session.setAttribute("refresh_token", bearerTokenResponse.getRefreshToken());
 		            
 		            //call company info again using new tokens
 		            logger.info("calling companyinfo using new tokens");
-		            DataService service = helper.getDataService(realmId, accessToken);
+		            DataService service = helper.getDataService(realmId, bearerTokenResponse.getAccessToken());
 					
 					// get all companyinfo
 					String sql = "select * from companyinfo";
 					QueryResult queryResult = service.executeQuery(sql);
-					return processResponse(failureMsg, queryResult);
+					return processResponse(failureMsg, queryResult, realmId, ifNoneMatch);
 					
 				} catch (OAuthException e1) {
 					logger.error("Error while calling bearer token :: " + e.getMessage());
@@ -108,26 +119,22 @@ public class CompanyInfoController {
 				}
 	            
 			} catch (FMSException e) {
-				List<Error> list = e.getErrorList();
-				list.forEach(error -> logger.error("Error while calling executeQuery :: " + error.getMessage()));
-				return new JSONObject().put("response",failureMsg).toString();
+				return ErrorResponses.failed(e, failureMsg);
 			}
 		
     }
 
-	private String processResponse(String failureMsg, QueryResult queryResult) {
+	private Object processResponse(String failureMsg, QueryResult queryResult, String realmId, String ifNoneMatch) {
 		if (!queryResult.getEntities().isEmpty() && queryResult.getEntities().size() > 0) {
 			CompanyInfo companyInfo = (CompanyInfo) queryResult.getEntities().get(0);
 			logger.info("Companyinfo -> CompanyName: " + companyInfo.getCompanyName());
-			ObjectMapper mapper = new ObjectMapper();
-			try {
-				String jsonInString = mapper.writeValueAsString(companyInfo);
-				return jsonInString;
-			} catch (JsonProcessingException e) {
-				logger.error("Exception while getting company info ", e);
-				return new JSONObject().put("response",failureMsg).toString();
+			//SyncToken and LastUpdatedTime change on every update, answer with 304 if the client has this version
+			String etag = ETags.of(realmId, companyInfo);
+			if (ETags.matches(ifNoneMatch, etag)) {
+				return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CacheControl.noCache().cachePrivate()).build();
 			}
-			
+			//streamed to the response by JsonResponseConverter
+			return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache().cachePrivate()).body(JsonResponse.of(companyInfo));
 		}
 		return failureMsg;
 	}
@@ -55,7 +55,7 @@ public class HomeController {
 		try {
 			List<Scope> scopes = new ArrayList<Scope>();
 			scopes.add(Scope.Accounting);
-			return new RedirectView(oauth2Config.prepareUrl(scopes, redirectUri, csrf), true, true, false);
+			return new RedirectView(factory.prepareAuthorizationUrl(scopes, redirectUri, csrf), true, true, false);
 		} catch (InvalidRequestException e) {
 			logger.error("Exception calling connectToQuickbooks ", e);
 		}
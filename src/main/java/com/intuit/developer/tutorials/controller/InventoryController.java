@@ -4,6 +4,7 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import javax.servlet.http.HttpSession;
 
@@ -16,17 +17,19 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+import com.intuit.developer.tutorials.helper.AccountResolver;
+import com.intuit.developer.tutorials.helper.ErrorResponses;
+import com.intuit.developer.tutorials.helper.JsonResponse;
+import com.intuit.developer.tutorials.helper.QBOBatch.BatchResult;
+import com.intuit.developer.tutorials.helper.QBOBatch;
 import com.intuit.developer.tutorials.helper.QBOServiceHelper;
-import com.intuit.ipp.core.IEntity;
+import com.intuit.developer.tutorials.helper.WorkflowExecutor;
 import com.intuit.ipp.data.Account;
 import com.intuit.ipp.data.AccountSubTypeEnum;
 import com.intuit.ipp.data.AccountTypeEnum;
 import com.intuit.ipp.data.Customer;
 import com.intuit.ipp.data.EmailAddress;
-import com.intuit.ipp.data.Error;
 import com.intuit.ipp.data.IntuitEntity;
 import com.intuit.ipp.data.Invoice;
 import com.intuit.ipp.data.Item;
@@ -36,9 +39,7 @@ import com.intuit.ipp.data.LineDetailTypeEnum;
 import com.intuit.ipp.data.ReferenceType;
 import com.intuit.ipp.data.SalesItemLineDetail;
 import com.intuit.ipp.exception.FMSException;
-import com.intuit.ipp.exception.InvalidTokenException;
 import com.intuit.ipp.services.DataService;
-import com.intuit.ipp.services.QueryResult;
 
 /**
  * @author bcole
@@ -53,9 +54,13 @@ public class InventoryController {
 	@Autowired
 	public QBOServiceHelper helper;
 
+	@Autowired
+	AccountResolver accountResolver;
+
+	@Autowired
+	WorkflowExecutor workflowExecutor;
+
 	private static final Logger logger = Logger.getLogger(InventoryController.class);
-	
-	private static final String ACCOUNT_QUERY = "select * from Account where AccountType='%s' and AccountSubType='%s' maxresults 1";
 
 
 	/**
@@ -66,26 +71,33 @@ public class InventoryController {
 	 */
 	@ResponseBody
 	@RequestMapping("/inventory")
-	public String callInventoryConcept(HttpSession session) {
+	public CompletableFuture<Object> callInventoryConcept(HttpSession session) {
 
 		String realmId = (String)session.getAttribute("realmId");
 		if (StringUtils.isEmpty(realmId)) {
-			return new JSONObject().put("response", "No realm ID.  QBO calls only work if the accounting scope was passed!").toString();
+			return CompletableFuture.completedFuture(new JSONObject().put("response", "No realm ID.  QBO calls only work if the accounting scope was passed!").toString());
 		}
 		String accessToken = (String)session.getAttribute("access_token");
 
-		try {
+		// QBO calls run on the outbound pool, the request thread is released meanwhile
+		return workflowExecutor.submit(() -> {
 
 			// Get DataService
 			DataService service = helper.getDataService(realmId, accessToken);
 
 			// Add inventory item - with initial Quantity on Hand of 10
-			Item item = getItemWithAllFields(service);
-			Item savedItem = service.add(item);
+			Item item = getItemWithAllFields(service, realmId);
+			Customer customer = getCustomerWithAllFields();
+
+			// Item and customer are independent, so send both in one batch request
+			QBOBatch batch = helper.newBatch(service);
+			BatchResult<Item> itemResult = batch.add(item);
+			BatchResult<Customer> customerResult = batch.add(customer);
+			batch.flush();
+			Item savedItem = itemResult.get();
+			Customer savedCustomer = customerResult.get();
 
 			// Create invoice (for 1 item) using the item created above
-			Customer customer = getCustomerWithAllFields();
-			Customer savedCustomer = service.add(customer);
 			Invoice invoice = getInvoiceFields(savedCustomer, savedItem);
 			service.add(invoice);
 
@@ -93,25 +105,19 @@ public class InventoryController {
 			Item itemsRemaining = service.findById(savedItem);
 
 			// Return response back - take a look at "qtyOnHand" in the output (should be 9)
-			return createResponse(itemsRemaining);
-
-		} catch (InvalidTokenException e) {
-			return new JSONObject().put("response", "InvalidToken - Refresh token and try again").toString();
-		} catch (FMSException e) {
-			List<Error> list = e.getErrorList();
-			list.forEach(error -> logger.error("Error while calling the API :: " + error.getMessage()));
-			return new JSONObject().put("response","Failed").toString();
-		}
+			return itemsRemaining;
+		}).handle((itemsRemaining, e) -> e == null ? createResponse(itemsRemaining) : ErrorResponses.of(e));
 	}
 
 
 	/**
 	 * Prepare Item request
 	 * @param service
+	 * @param realmId
 	 * @return
 	 * @throws FMSException
 	 */
-	private Item getItemWithAllFields(DataService service) throws FMSException {
+	private Item getItemWithAllFields(DataService service, String realmId) throws FMSException {
 		Item item = new Item();
 		item.setType(ItemTypeEnum.INVENTORY);
 		item.setName("Inventory Item " + RandomStringUtils.randomAlphanumeric(5));
@@ -121,13 +127,13 @@ public class InventoryController {
 		item.setQtyOnHand(BigDecimal.valueOf(10));
 		item.setTrackQtyOnHand(true);
 
-		Account incomeBankAccount = getIncomeBankAccount(service);
+		Account incomeBankAccount = getIncomeBankAccount(service, realmId);
 		item.setIncomeAccountRef(createRef(incomeBankAccount));
 
-		Account expenseBankAccount = getExpenseBankAccount(service);
+		Account expenseBankAccount = getExpenseBankAccount(service, realmId);
 		item.setExpenseAccountRef(createRef(expenseBankAccount));
 
-		Account assetAccount = getAssetAccount(service);
+		Account assetAccount = getAssetAccount(service, realmId);
 		item.setAssetAccountRef(createRef(assetAccount));
 
 		return item;
@@ -180,16 +186,12 @@ public class InventoryController {
 	/**
 	 * Get Income Account
 	 * @param service
+	 * @param realmId
 	 * @return
 	 * @throws FMSException
 	 */
-	private Account getIncomeBankAccount(DataService service) throws FMSException {
-		QueryResult queryResult = service.executeQuery(String.format(ACCOUNT_QUERY, AccountTypeEnum.INCOME.value(), AccountSubTypeEnum.SALES_OF_PRODUCT_INCOME.value()));
-		List<? extends IEntity> entities = queryResult.getEntities();
-		if(!entities.isEmpty()) {
-			return (Account)entities.get(0);
-		}
-		return createIncomeBankAccount(service);
+	private Account getIncomeBankAccount(DataService service, String realmId) throws FMSException {
+		return accountResolver.getAccount(service, realmId, AccountTypeEnum.INCOME, AccountSubTypeEnum.SALES_OF_PRODUCT_INCOME, this::createIncomeBankAccount);
 	}
 
 	/**
@@ -210,16 +212,12 @@ public class InventoryController {
 	/**
 	 * Get Expense Account
 	 * @param service
+	 * @param realmId
 	 * @return
 	 * @throws FMSException
 	 */
-	private Account getExpenseBankAccount(DataService service) throws FMSException {
-		QueryResult queryResult = service.executeQuery(String.format(ACCOUNT_QUERY, AccountTypeEnum.COST_OF_GOODS_SOLD.value(), AccountSubTypeEnum.SUPPLIES_MATERIALS_COGS.value()));
-		List<? extends IEntity> entities = queryResult.getEntities();
-		if(!entities.isEmpty()) {
-			return (Account)entities.get(0);
-		}
-		return createExpenseBankAccount(service);
+	private Account getExpenseBankAccount(DataService service, String realmId) throws FMSException {
+		return accountResolver.getAccount(service, realmId, AccountTypeEnum.COST_OF_GOODS_SOLD, AccountSubTypeEnum.SUPPLIES_MATERIALS_COGS, this::createExpenseBankAccount);
 	}
 
 	/**
@@ -241,16 +239,12 @@ public class InventoryController {
 	/**
 	 * Get Asset Account
 	 * @param service
+	 * @param realmId
 	 * @return
 	 * @throws FMSException
 	 */
-	private Account getAssetAccount(DataService service)  throws FMSException{
-		QueryResult queryResult = service.executeQuery(String.format(ACCOUNT_QUERY, AccountTypeEnum.OTHER_CURRENT_ASSET.value(), AccountSubTypeEnum.INVENTORY.value()));
-		List<? extends IEntity> entities = queryResult.getEntities();
-		if(!entities.isEmpty()) {
-			return (Account)entities.get(0);
-		}
-		return createOtherCurrentAssetAccount(service);
+	private Account getAssetAccount(DataService service, String realmId)  throws FMSException{
+		return accountResolver.getAccount(service, realmId, AccountTypeEnum.OTHER_CURRENT_ASSET, AccountSubTypeEnum.INVENTORY, this::createOtherCurrentAssetAccount);
 	}
 
 	/**
@@ -281,26 +275,12 @@ public class InventoryController {
 	}
 
 	/**
-	 * Map object to json string
+	 * Map object to json, streamed to the response by JsonResponseConverter
 	 * @param entity
 	 * @return
 	 */
-	private String createResponse(Object entity) {
-		ObjectMapper mapper = new ObjectMapper();
-		String jsonInString;
-		try {
-			jsonInString = mapper.writeValueAsString(entity);
-		} catch (JsonProcessingException e) {
-			return createErrorResponse(e);
-		} catch (Exception e) {
-			return createErrorResponse(e);
-		}
-		return jsonInString;
-	}
-
-	private String createErrorResponse(Exception e) {
-		logger.error("Exception while calling QBO ", e);
-		return new JSONObject().put("response","Failed").toString();
+	private JsonResponse createResponse(Object entity) {
+		return JsonResponse.of(entity);
 	}
 
 
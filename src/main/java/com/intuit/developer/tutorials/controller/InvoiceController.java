@@ -3,6 +3,7 @@ package com.intuit.developer.tutorials.controller;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import javax.servlet.http.HttpSession;
 
@@ -15,16 +16,20 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+import com.intuit.developer.tutorials.helper.AccountResolver;
+import com.intuit.developer.tutorials.helper.ErrorResponses;
+import com.intuit.developer.tutorials.helper.JsonResponse;
+import com.intuit.developer.tutorials.helper.QBOBatch.BatchResult;
+import com.intuit.developer.tutorials.helper.QBOBatch;
 import com.intuit.developer.tutorials.helper.QBOServiceHelper;
-import com.intuit.ipp.core.IEntity;
+import com.intuit.developer.tutorials.helper.Workflow.Step;
+import com.intuit.developer.tutorials.helper.Workflow;
+import com.intuit.developer.tutorials.helper.WorkflowExecutor;
 import com.intuit.ipp.data.Account;
 import com.intuit.ipp.data.AccountTypeEnum;
 import com.intuit.ipp.data.Customer;
 import com.intuit.ipp.data.EmailAddress;
-import com.intuit.ipp.data.Error;
 import com.intuit.ipp.data.IntuitEntity;
 import com.intuit.ipp.data.Invoice;
 import com.intuit.ipp.data.Item;
@@ -37,9 +42,7 @@ import com.intuit.ipp.data.ReferenceType;
 import com.intuit.ipp.data.SalesItemLineDetail;
 import com.intuit.ipp.data.TxnTypeEnum;
 import com.intuit.ipp.exception.FMSException;
-import com.intuit.ipp.exception.InvalidTokenException;
 import com.intuit.ipp.services.DataService;
-import com.intuit.ipp.services.QueryResult;
 
 /**
  * @author dderose
@@ -55,9 +58,13 @@ public class InvoiceController {
 	@Autowired
     public QBOServiceHelper helper;
 	
-	private static final Logger logger = Logger.getLogger(InvoiceController.class);
+	@Autowired
+	AccountResolver accountResolver;
+	
+	@Autowired
+	WorkflowExecutor workflowExecutor;
 	
-	private static final String ACCOUNT_QUERY = "select * from Account where AccountType='%s' maxresults 1";
+	private static final Logger logger = Logger.getLogger(InvoiceController.class);
 	
 	
 	/**
@@ -68,11 +75,11 @@ public class InvoiceController {
      */
 	@ResponseBody
     @RequestMapping("/invoice")
-    public String callInvoicingConcept(HttpSession session) {
+    public CompletableFuture<Object> callInvoicingConcept(HttpSession session) {
 
     	String realmId = (String)session.getAttribute("realmId");
     	if (StringUtils.isEmpty(realmId)) {
-    		return new JSONObject().put("response","No realm ID.  QBO calls only work if the accounting scope was passed!").toString();
+    		return CompletableFuture.completedFuture(new JSONObject().put("response","No realm ID.  QBO calls only work if the accounting scope was passed!").toString());
     	}
     	String accessToken = (String)session.getAttribute("access_token");
     	
@@ -81,36 +88,39 @@ public class InvoiceController {
         	//get DataService
     		DataService service = helper.getDataService(realmId, accessToken);
     		
-    		//add customer
-    		Customer customer = getCustomerWithAllFields();
-			Customer savedCustomer = service.add(customer);
+    		Workflow workflow = workflowExecutor.newWorkflow("invoice", realmId);
     		
-    		//add item
-			Item item = getItemFields(service);
-			Item savedItem = service.add(item);
+    		//look up the income account for the item
+    		Step<Account> incomeAccount = workflow.step("incomeAccount", () -> getIncomeBankAccount(service, realmId));
+    		
+    		//add customer and item, they are independent so send both in one batch request
+    		Customer customer = getCustomerWithAllFields();
+			QBOBatch batch = helper.newBatch(service);
+			BatchResult<Customer> customerResult = batch.add(customer);
+			Step<Item> savedItem = workflow.step("addCustomerAndItem", () -> {
+				BatchResult<Item> itemResult = batch.add(getItemFields(incomeAccount.get()));
+				batch.flush();
+				return itemResult.get();
+			}, incomeAccount);
     		
     		//create invoice using customer and item created above
-			Invoice invoice = getInvoiceFields(savedCustomer, savedItem);
-			Invoice savedInvoice = service.add(invoice);
+			Step<Invoice> savedInvoice = workflow.step("addInvoice",
+					() -> service.add(getInvoiceFields(customerResult.get(), savedItem.get())), savedItem);
     		
     		//send invoice email to customer
-			service.sendEmail(savedInvoice, customer.getPrimaryEmailAddr().getAddress());
+			Step<Invoice> sentInvoice = workflow.step("sendEmail",
+					() -> service.sendEmail(savedInvoice.get(), customer.getPrimaryEmailAddr().getAddress()), savedInvoice);
 			
-    		//receive payment for the invoice
-			Payment payment = getPaymentFields(savedCustomer, savedInvoice);
-			Payment savedPayment = service.add(payment);
+			//receive payment for the invoice once it was emailed, so the email does not show it paid
+			Step<Payment> savedPayment = workflow.step("addPayment",
+					() -> service.add(getPaymentFields(customerResult.get(), savedInvoice.get())), savedInvoice, sentInvoice);
 			
-			//return response back
-			return createResponse(savedPayment);
+			//return response back once the workflow completed, the request thread is released meanwhile
+			return workflow.completion(savedPayment)
+					.handle((payment, e) -> e == null ? createResponse(payment) : ErrorResponses.of(e));
 			
-		}
-	        
-        catch (InvalidTokenException e) {			
-			return new JSONObject().put("response","InvalidToken - Refreshtoken and try again").toString();
 		} catch (FMSException e) {
-			List<Error> list = e.getErrorList();
-			list.forEach(error -> logger.error("Error while calling the API :: " + error.getMessage()));
-			return new JSONObject().put("response", "Failed").toString();
+			return CompletableFuture.completedFuture(ErrorResponses.of(e));
 		}
 		
     }
@@ -133,11 +143,10 @@ public class InvoiceController {
 	
 	/**
 	 * Create Item request
-	 * @param service
+	 * @param incomeAccount
 	 * @return
-	 * @throws FMSException
 	 */
-	private Item getItemFields(DataService service) throws FMSException {
+	private Item getItemFields(Account incomeAccount) {
 
 		Item item = new Item();
 		item.setName("Item" + RandomStringUtils.randomAlphanumeric(5));
@@ -145,7 +154,6 @@ public class InvoiceController {
 		item.setUnitPrice(new BigDecimal("200"));
 		item.setType(ItemTypeEnum.SERVICE);
 
-		Account incomeAccount = getIncomeBankAccount(service);
 		item.setIncomeAccountRef(createRef(incomeAccount));
 		
 		return item;
@@ -154,16 +162,12 @@ public class InvoiceController {
 	/**
 	 * Get Income account
 	 * @param service
+	 * @param realmId
 	 * @return
 	 * @throws FMSException
 	 */
-	private Account getIncomeBankAccount(DataService service) throws FMSException {
-		QueryResult queryResult = service.executeQuery(String.format(ACCOUNT_QUERY, AccountTypeEnum.INCOME.value()));
-		List<? extends IEntity> entities = queryResult.getEntities();
-		if(!entities.isEmpty()) {
-			return (Account)entities.get(0);
-		}
-		return createIncomeBankAccount(service);
+	private Account getIncomeBankAccount(DataService service, String realmId) throws FMSException {
+		return accountResolver.getAccount(service, realmId, AccountTypeEnum.INCOME, null, this::createIncomeBankAccount);
 	}
 
 	/**
@@ -249,26 +253,12 @@ public class InvoiceController {
 	}
 
 	/**
-	 * Map object to json string
+	 * Map object to json, streamed to the response by JsonResponseConverter
 	 * @param entity
 	 * @return
 	 */
-	private String createResponse(Object entity) {
-		ObjectMapper mapper = new ObjectMapper();
-		String jsonInString;
-		try {
-			jsonInString = mapper.writeValueAsString(entity);
-		} catch (JsonProcessingException e) {
-			return createErrorResponse(e);
-		} catch (Exception e) {
-			return createErrorResponse(e);
-		}
-		return jsonInString;
-	}
-
-	private String createErrorResponse(Exception e) {
-		logger.error("Exception while calling QBO ", e);
-		return new JSONObject().put("response","Failed").toString();
+	private JsonResponse createResponse(Object entity) {
+		return JsonResponse.of(entity);
 	}
 
     
@@ -4,6 +4,7 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import javax.servlet.http.HttpSession;
 
@@ -16,16 +17,18 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+import com.intuit.developer.tutorials.helper.AccountResolver;
+import com.intuit.developer.tutorials.helper.ErrorResponses;
+import com.intuit.developer.tutorials.helper.JsonResponse;
 import com.intuit.developer.tutorials.helper.QBOServiceHelper;
-import com.intuit.ipp.core.IEntity;
+import com.intuit.developer.tutorials.helper.Workflow.Step;
+import com.intuit.developer.tutorials.helper.Workflow;
+import com.intuit.developer.tutorials.helper.WorkflowExecutor;
 import com.intuit.ipp.data.Account;
 import com.intuit.ipp.data.AccountTypeEnum;
 import com.intuit.ipp.data.Customer;
 import com.intuit.ipp.data.DiscountLineDetail;
-import com.intuit.ipp.data.Error;
 import com.intuit.ipp.data.Estimate;
 import com.intuit.ipp.data.IntuitEntity;
 import com.intuit.ipp.data.Invoice;
@@ -38,9 +41,7 @@ import com.intuit.ipp.data.ReferenceType;
 import com.intuit.ipp.data.SalesItemLineDetail;
 import com.intuit.ipp.data.TxnTypeEnum;
 import com.intuit.ipp.exception.FMSException;
-import com.intuit.ipp.exception.InvalidTokenException;
 import com.intuit.ipp.services.DataService;
-import com.intuit.ipp.services.QueryResult;
 
 /**
  * @author dderose
@@ -54,13 +55,16 @@ public class JobsController {
 	
 	@Autowired
     public QBOServiceHelper helper;
+	
+	@Autowired
+	AccountResolver accountResolver;
+	
+	@Autowired
+	WorkflowExecutor workflowExecutor;
 
 	private static final Logger logger = Logger.getLogger(JobsController.class);
 	
 	private static final String MINOR_VERSION = "4";
-
-	private static final String ACCOUNT_QUERY = "select * from Account where AccountType='%s' maxresults 1";
-
 	
 	
 	/**
@@ -71,11 +75,11 @@ public class JobsController {
      */
 	@ResponseBody
     @RequestMapping("/jobs")
-    public String callJobsConcept(HttpSession session) {
+    public CompletableFuture<Object> callJobsConcept(HttpSession session) {
 
     	String realmId = (String)session.getAttribute("realmId");
     	if (StringUtils.isEmpty(realmId)) {
-    		return new JSONObject().put("response","No realm ID.  QBO calls only work if the accounting scope was passed!").toString();
+    		return CompletableFuture.completedFuture(new JSONObject().put("response","No realm ID.  QBO calls only work if the accounting scope was passed!").toString());
     	}
     	String accessToken = (String)session.getAttribute("access_token");
     	
@@ -84,41 +88,43 @@ public class JobsController {
         	//get DataService
     		DataService service = helper.getDataService(realmId, accessToken, MINOR_VERSION);
 
-			//add customer
-			Customer customer = getCustomerWithMandatoryFields();
-			Customer customerResult = service.add(customer);
+    		Workflow workflow = workflowExecutor.newWorkflow("jobs", realmId);
+
+			//add customer, independent of the item
+			Step<Customer> customerResult = workflow.step("addCustomer", () -> service.add(getCustomerWithMandatoryFields()));
 
 			//add item
-			Item item = getItemWithMandatoryFields(service);
-			Item itemResult = service.add(item);
+			Step<Account> incomeAccount = workflow.step("incomeAccount", () -> getIncomeBankAccount(service, realmId));
+			Step<Item> itemResult = workflow.step("addItem",
+					() -> service.add(getItemWithMandatoryFields(incomeAccount.get())), incomeAccount);
     		
     		//create estimate
-			Estimate estimate = getEstimateWithMandatoryFields(itemResult, customerResult, service);
-			Estimate createdEstimate = service.add(estimate);
+			Step<Estimate> createdEstimate = workflow.step("addEstimate",
+					() -> service.add(getEstimateWithMandatoryFields(itemResult.get(), customerResult.get())), itemResult, customerResult);
 
 			//update estimate -change amt
-			createdEstimate.setTotalAmt(new BigDecimal("400.00"));
-			Estimate updatedEstimate = service.update(createdEstimate);
+			Step<Estimate> updatedEstimate = workflow.step("updateEstimate", () -> {
+				Estimate estimate = createdEstimate.get();
+				estimate.setTotalAmt(new BigDecimal("400.00"));
+				return service.update(estimate);
+			}, createdEstimate);
 
 			//create invoice using estimate data
-			Invoice invoice = getInvoiceFieldsFromEstimate(updatedEstimate);
-			Invoice createdInvoice = service.add(invoice);
-
-			//update invoice to add discount
-            Line discountLine = createDiscountLine(service);
-			createdInvoice.getLine().add(discountLine);
+			Step<Invoice> createdInvoice = workflow.step("addInvoice",
+					() -> service.add(getInvoiceFieldsFromEstimate(updatedEstimate.get())), updatedEstimate);
 
 			//update the invoice with the discount line
-			Invoice updatedInvoice = service.update(createdInvoice);
-
-			//return response back
-    		return createResponse(updatedInvoice);
-		} catch (InvalidTokenException e) {
-			return new JSONObject().put("response","InvalidToken - Refresh token and try again").toString();
+			Step<Invoice> updatedInvoice = workflow.step("updateInvoice", () -> {
+				Invoice invoice = createdInvoice.get();
+				invoice.getLine().add(createDiscountLine(incomeAccount.get()));
+				return service.update(invoice);
+			}, createdInvoice, incomeAccount);
+
+			//return response back once the workflow completed, the request thread is released meanwhile
+    		return workflow.completion(updatedInvoice)
+    				.handle((invoice, e) -> e == null ? createResponse(invoice) : ErrorResponses.of(e));
 		} catch (FMSException e) {
-			List<Error> list = e.getErrorList();
-			list.forEach(error -> logger.error("Error while calling the API :: " + error.getMessage()));
-			return new JSONObject().put("response","Failed").toString();
+			return CompletableFuture.completedFuture(ErrorResponses.of(e));
 		}
     }
 	
@@ -136,18 +142,16 @@ public class JobsController {
 
 	/**
 	 * Prepare Item request
-	 * @param service
+	 * @param incomeAccount
 	 * @return
-	 * @throws FMSException
 	 */
-	private Item getItemWithMandatoryFields(DataService service) throws FMSException {
+	private Item getItemWithMandatoryFields(Account incomeAccount) {
 		Item item = new Item();
 		item.setName("Item" + RandomStringUtils.randomAlphanumeric(5));
 		item.setTaxable(false);
 		item.setUnitPrice(new BigDecimal("200"));
 		item.setType(ItemTypeEnum.SERVICE);
 
-		Account incomeAccount = getIncomeBankAccount(service);
 		item.setIncomeAccountRef(createRef(incomeAccount));
 		return item;
 	}
@@ -156,11 +160,9 @@ public class JobsController {
 	 * Prepare Estimate request
 	 * @param item
 	 * @param customer
-	 * @param service
 	 * @return
-	 * @throws FMSException
 	 */
-	private Estimate getEstimateWithMandatoryFields(Item item, Customer customer, DataService service) throws FMSException {
+	private Estimate getEstimateWithMandatoryFields(Item item, Customer customer) {
 		Estimate estimate = new Estimate();
 	
 		Line line1 = new Line();
@@ -206,15 +208,14 @@ public class JobsController {
     /**
      * Create DiscountLineDetail object
      * 
-     * @param service
+     * @param discountAccount
      * @return
-     * @throws FMSException
      */
-    private Line createDiscountLine(DataService service) throws FMSException {
+    private Line createDiscountLine(Account discountAccount) {
         DiscountLineDetail discountLineDetail = new DiscountLineDetail();
 
         discountLineDetail.setPercentBased(false);
-        discountLineDetail.setDiscountAccountRef(createRef(getIncomeBankAccount(service)));
+        discountLineDetail.setDiscountAccountRef(createRef(discountAccount));
 
         Line discountLine = new Line();
 
@@ -228,16 +229,12 @@ public class JobsController {
 	/**
 	 * Get Income Account
 	 * @param service
+	 * @param realmId
 	 * @return
 	 * @throws FMSException
 	 */
-	private Account getIncomeBankAccount(DataService service) throws FMSException {
-		QueryResult queryResult = service.executeQuery(String.format(ACCOUNT_QUERY, AccountTypeEnum.INCOME.value()));
-		List<? extends IEntity> entities = queryResult.getEntities();
-		if(!entities.isEmpty()) {
-			return (Account)entities.get(0);
-		}
-		return createIncomeBankAccount(service);
+	private Account getIncomeBankAccount(DataService service, String realmId) throws FMSException {
+		return accountResolver.getAccount(service, realmId, AccountTypeEnum.INCOME, null, this::createIncomeBankAccount);
 	}
 
 	/**
@@ -267,26 +264,12 @@ public class JobsController {
 	}
 
 	/**
-	 * Map object to json string
+	 * Map object to json, streamed to the response by JsonResponseConverter
 	 * @param entity
 	 * @return
 	 */
-	private String createResponse(Object entity) {
-		ObjectMapper mapper = new ObjectMapper();
-		String jsonInString;
-		try {
-			jsonInString = mapper.writeValueAsString(entity);
-		} catch (JsonProcessingException e) {
-			return createErrorResponse(e);
-		} catch (Exception e) {
-			return createErrorResponse(e);
-		}
-		return jsonInString;
-	}
-
-	private String createErrorResponse(Exception e) {
-		logger.error("Exception while calling QBO ", e);
-		return new JSONObject().put("response","Failed").toString();
+	private JsonResponse createResponse(Object entity) {
+		return JsonResponse.of(entity);
 	}
 
 }
@@ -0,0 +1,239 @@
+package com.intuit.developer.tutorials.controller;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.pool.PoolStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+
+import com.intuit.developer.tutorials.helper.AccountResolver;
+import com.intuit.developer.tutorials.helper.AdaptiveConcurrencyLimit;
+import com.intuit.developer.tutorials.helper.CallLedgers;
+import com.intuit.developer.tutorials.helper.HttpTransport;
+import com.intuit.developer.tutorials.helper.LatencyHistogram;
+import com.intuit.developer.tutorials.helper.PrometheusWriter;
+import com.intuit.developer.tutorials.helper.QBOCallMetrics;
+import com.intuit.developer.tutorials.helper.QBOServicePool;
+import com.intuit.developer.tutorials.helper.RealmBulkhead;
+import com.intuit.developer.tutorials.helper.RealmCircuitBreaker;
+import com.intuit.developer.tutorials.helper.RealmGovernor;
+import com.intuit.developer.tutorials.helper.ReportEngine;
+import com.intuit.developer.tutorials.helper.RetryPolicy;
+import com.intuit.developer.tutorials.helper.WorkflowExecutor;
+
+/**
+ * Metrics of the QBO calls and of the components between the controllers and QBO, in the
+ * Prometheus text format. The metrics are labeled with realm ids, so the endpoint only
+ * answers scrapers that send the MetricsToken as a bearer token, or local ones when no
+ * token is configured.
+ */
+@Controller
+public class MetricsController {
+
+	// bucket bounds of the exported latency histograms, in seconds
+	private static final double[] BUCKETS = { 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60 };
+
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+	private static final String BEARER = "Bearer ";
+
+	@Autowired
+	OAuth2PlatformClientFactory factory;
+
+	@Autowired
+	QBOCallMetrics callMetrics;
+
+	@Autowired
+	CallLedgers callLedgers;
+
+	@Autowired
+	RealmGovernor governor;
+
+	@Autowired
+	RealmBulkhead bulkhead;
+
+	@Autowired
+	RealmCircuitBreaker circuitBreaker;
+
+	@Autowired
+	RetryPolicy retryPolicy;
+
+	@Autowired
+	AdaptiveConcurrencyLimit concurrencyLimit;
+
+	@Autowired
+	WorkflowExecutor workflowExecutor;
+
+	@Autowired
+	QBOServicePool pool;
+
+	@Autowired
+	ReportEngine reportEngine;
+
+	@Autowired
+	AccountResolver accountResolver;
+
+	@Autowired
+	HttpTransport transport;
+
+	private byte[] token;
+
+	@PostConstruct
+	public void init() {
+		String value = factory.getPropertyValue("MetricsToken");
+		token = StringUtils.isBlank(value) ? null : value.trim().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@ResponseBody
+	@RequestMapping(value = "/metrics", produces = PrometheusWriter.CONTENT_TYPE)
+	public ResponseEntity<?> metrics(HttpServletRequest request) {
+		if (!isAllowed(request)) {
+			return ResponseEntity.status(HttpStatus.UNAUTHORIZED).header(HttpHeaders.WWW_AUTHENTICATE, "Bearer").build();
+		}
+		PrometheusWriter writer = new PrometheusWriter();
+		writeCalls(writer);
+		writeEndpoints(writer);
+		writeLimits(writer);
+		writeCaches(writer);
+		writeTransport(writer);
+		return ResponseEntity.ok(writer.toString());
+	}
+
+	boolean isAllowed(HttpServletRequest request) {
+		if (token == null) {
+			return isLoopback(request.getRemoteAddr());
+		}
+		String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+		if (authorization == null || !authorization.startsWith(BEARER)) {
+			return false;
+		}
+		// constant time, the comparison does not tell how much of the token matched
+		return MessageDigest.isEqual(token, authorization.substring(BEARER.length()).trim().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static boolean isLoopback(String address) {
+		try {
+			// the remote address is a literal, this does not resolve anything
+			return address != null && InetAddress.getByName(address).isLoopbackAddress();
+		} catch (UnknownHostException e) {
+			return false;
+		}
+	}
+
+	private void writeCalls(PrometheusWriter writer) {
+		writer.family("qbo_call_duration_seconds", "histogram", "Duration of the QBO calls, each attempt counted separately");
+		callMetrics.forEach((realm, operation, entity, calls) -> {
+			LatencyHistogram.Snapshot snapshot = calls.getLatency().snapshot();
+			for (double bound : BUCKETS) {
+				writer.sample("qbo_call_duration_seconds_bucket", snapshot.countAtOrBelow(bound),
+						"realm", realm, "operation", operation, "entity", entity, "le", Double.toString(bound));
+			}
+			writer.sample("qbo_call_duration_seconds_bucket", snapshot.getTotal(),
+					"realm", realm, "operation", operation, "entity", entity, "le", "+Inf");
+			writer.sample("qbo_call_duration_seconds_sum", snapshot.getSumSeconds(),
+					"realm", realm, "operation", operation, "entity", entity);
+			writer.sample("qbo_call_duration_seconds_count", snapshot.getTotal(),
+					"realm", realm, "operation", operation, "entity", entity);
+		});
+
+		writer.family("qbo_call_duration_quantile_seconds", "gauge", "Quantiles of the duration of the QBO calls, within 6.25%");
+		callMetrics.forEach((realm, operation, entity, calls) -> {
+			LatencyHistogram.Snapshot snapshot = calls.getLatency().snapshot();
+			for (double quantile : QUANTILES) {
+				writer.sample("qbo_call_duration_quantile_seconds", snapshot.valueAt(quantile),
+						"realm", realm, "operation", operation, "entity", entity, "quantile", Double.toString(quantile));
+			}
+		});
+
+		writer.family("qbo_call_errors_total", "counter", "Failed QBO calls by error code or exception type");
+		callMetrics.forEach((realm, operation, entity, calls) -> calls.getErrors().forEach((code, count) ->
+				writer.sample("qbo_call_errors_total", count.get(),
+						"realm", realm, "operation", operation, "entity", entity, "code", code)));
+	}
+
+	private void writeEndpoints(PrometheusWriter writer) {
+		Map<String, CallLedgers.Endpoint> endpoints = callLedgers.getEndpoints();
+		writer.family("qbo_endpoint_requests_total", "counter", "Requests served by the endpoint");
+		endpoints.forEach((endpoint, totals) -> writer.sample("qbo_endpoint_requests_total", totals.getRequests(), "endpoint", endpoint));
+		writer.family("qbo_endpoint_calls_total", "counter", "QBO calls made by the requests of the endpoint, retries not counted");
+		endpoints.forEach((endpoint, totals) -> writer.sample("qbo_endpoint_calls_total", totals.getCalls(), "endpoint", endpoint));
+		if (callLedgers.isSized()) {
+			writer.family("qbo_endpoint_bytes_total", "counter", "JSON size of the entities sent to and received from QBO by the endpoint");
+			endpoints.forEach((endpoint, totals) -> writer.sample("qbo_endpoint_bytes_total", totals.getBytes(), "endpoint", endpoint));
+		}
+		writer.family("qbo_endpoint_call_seconds_total", "counter", "Time spent in the QBO calls of the endpoint, including throttling waits");
+		endpoints.forEach((endpoint, totals) -> writer.sample("qbo_endpoint_call_seconds_total", totals.getSeconds(), "endpoint", endpoint));
+		writer.family("qbo_endpoint_max_calls", "gauge", "Most QBO calls made by one request of the endpoint");
+		endpoints.forEach((endpoint, totals) -> writer.sample("qbo_endpoint_max_calls", totals.getMaxCalls(), "endpoint", endpoint));
+		writer.family("qbo_endpoint_over_budget_total", "counter", "Requests of the endpoint that went over its QBO call budget");
+		endpoints.forEach((endpoint, totals) -> writer.sample("qbo_endpoint_over_budget_total", totals.getOverBudget(), "endpoint", endpoint));
+	}
+
+	private void writeLimits(PrometheusWriter writer) {
+		Map<String, RealmGovernor.Stats> realms = governor.getStats();
+		writer.family("qbo_realm_tokens", "gauge", "Request tokens left in the bucket of the realm");
+		realms.forEach((realm, stats) -> writer.sample("qbo_realm_tokens", stats.getTokens(), "realm", realm));
+		writer.family("qbo_realm_in_flight", "gauge", "QBO calls of the realm in flight");
+		realms.forEach((realm, stats) -> writer.sample("qbo_realm_in_flight", stats.getInFlight(), "realm", realm));
+		writer.family("qbo_realm_queued", "gauge", "QBO calls of the realm waiting for its throttling limits");
+		realms.forEach((realm, stats) -> writer.sample("qbo_realm_queued", stats.getQueued(), "realm", realm));
+
+		writer.metric("qbo_throttled_calls_total", "counter", "QBO calls that waited for their throttling limits", governor.getThrottledCalls());
+		writer.family("qbo_rejected_calls_total", "counter", "QBO calls that were not sent")
+				.sample("qbo_rejected_calls_total", governor.getRejectedCalls(), "reason", "throttling")
+				.sample("qbo_rejected_calls_total", bulkhead.getRejectedCalls(), "reason", "bulkhead")
+				.sample("qbo_rejected_calls_total", circuitBreaker.getRejectedCalls(), "reason", "circuit_open")
+				.sample("qbo_rejected_calls_total", workflowExecutor.getRejectedCount(), "reason", "workflow_queue");
+		writer.metric("qbo_open_circuits", "gauge", "Realms whose circuit breaker is open or half open", circuitBreaker.getOpenCount());
+		writer.metric("qbo_retries_total", "counter", "Retried QBO reads", retryPolicy.getRetries());
+		writer.metric("qbo_retry_budget_exhausted_total", "counter", "Retries skipped because the retry budget was spent", retryPolicy.getBudgetExhausted());
+
+		writer.metric("qbo_concurrency_limit", "gauge", "Adaptive concurrency limit of the outbound QBO traffic", concurrencyLimit.getLimit());
+		writer.metric("qbo_concurrency_in_flight", "gauge", "Outbound tasks and queries in flight", concurrencyLimit.getInFlight());
+		writer.metric("qbo_latency_ratio", "gauge", "Recent QBO latency relative to the baseline of each operation", concurrencyLimit.getLatencyRatio());
+		writer.metric("qbo_workflow_active_threads", "gauge", "Threads of the outbound pool running a task", workflowExecutor.getActiveCount());
+		writer.metric("qbo_workflow_queued_tasks", "gauge", "Outbound tasks waiting for the concurrency limit or a thread", workflowExecutor.getQueueSize());
+	}
+
+	private void writeCaches(PrometheusWriter writer) {
+		writer.metric("qbo_service_pool_hits_total", "counter", "Lookups of a pooled QBO service graph that found it", pool.getHits());
+		writer.metric("qbo_service_pool_misses_total", "counter", "Lookups of a pooled QBO service graph that created it", pool.getMisses());
+		writer.metric("qbo_service_pool_evictions_total", "counter", "Pooled QBO service graphs evicted", pool.getEvictions());
+		writer.metric("qbo_service_pool_size", "gauge", "Pooled QBO service graphs", pool.size());
+		writer.metric("qbo_report_cache_hits_total", "counter", "Reports served from the cache", reportEngine.getHits());
+		writer.metric("qbo_report_cache_misses_total", "counter", "Reports fetched from QBO", reportEngine.getMisses());
+		writer.metric("qbo_report_cache_size", "gauge", "Cached reports", reportEngine.size());
+		writer.metric("qbo_account_cache_hits_total", "counter", "Reference accounts served from the cache", accountResolver.getHits());
+		writer.metric("qbo_account_cache_misses_total", "counter", "Reference accounts looked up in QBO", accountResolver.getMisses());
+		writer.metric("qbo_account_cache_coalesced_total", "counter", "Reference account lookups that joined one in progress", accountResolver.getCoalesced());
+	}
+
+	private void writeTransport(PrometheusWriter writer) {
+		Map<String, PoolStats> routes = transport.getRouteStats();
+		writer.family("http_pool_leased_connections", "gauge", "Pooled HTTP connections in use, by host");
+		routes.forEach((host, stats) -> writer.sample("http_pool_leased_connections", stats.getLeased(), "host", host));
+		writer.family("http_pool_available_connections", "gauge", "Idle pooled HTTP connections, by host");
+		routes.forEach((host, stats) -> writer.sample("http_pool_available_connections", stats.getAvailable(), "host", host));
+		writer.family("http_pool_pending_requests", "gauge", "Requests waiting for a pooled HTTP connection, by host");
+		routes.forEach((host, stats) -> writer.sample("http_pool_pending_requests", stats.getPending(), "host", host));
+		writer.metric("http_connects_total", "counter", "HTTP connections opened", transport.getConnects());
+		writer.metric("http_tls_handshakes_total", "counter", "TLS handshakes, including resumed sessions", transport.getHandshakes());
+		writer.metric("http_tls_resumed_sessions_total", "counter", "TLS handshakes that resumed a session", transport.getResumedSessions());
+		writer.metric("http_tls_handshake_seconds_total", "counter", "Time spent in TLS handshakes", transport.getHandshakeMillis() / 1000.0);
+	}
+}
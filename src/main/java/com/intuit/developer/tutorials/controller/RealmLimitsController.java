@@ -0,0 +1,51 @@
+package com.intuit.developer.tutorials.controller;
+
+import javax.servlet.http.HttpSession;
+
+import org.apache.commons.lang.StringUtils;
+import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.intuit.developer.tutorials.helper.RealmBulkhead;
+import com.intuit.developer.tutorials.helper.RealmCircuitBreaker;
+import com.intuit.developer.tutorials.helper.RealmGovernor;
+
+/**
+ * Current throttling and isolation state of the connected realm
+ */
+@Controller
+public class RealmLimitsController {
+
+	@Autowired
+	RealmGovernor governor;
+
+	@Autowired
+	RealmBulkhead bulkhead;
+
+	@Autowired
+	RealmCircuitBreaker circuitBreaker;
+
+	/**
+	 * @param session
+	 * @return throttling tokens, calls in flight, queue depths and circuit state of the session's realm
+	 */
+	@ResponseBody
+	@RequestMapping("/realmLimits")
+	public String realmLimits(HttpSession session) {
+		String realmId = (String)session.getAttribute("realmId");
+		if (StringUtils.isEmpty(realmId)) {
+			return new JSONObject().put("response","No realm ID.  QBO calls only work if the accounting scope was passed!").toString();
+		}
+		JSONObject limits = new JSONObject().put("realmId", realmId);
+		RealmGovernor.Stats stats = governor.getStats(realmId);
+		if (stats != null) {
+			limits.put("tokens", stats.getTokens()).put("inFlight", stats.getInFlight()).put("queued", stats.getQueued());
+		}
+		limits.put("bulkheadInFlight", bulkhead.getInFlight(realmId)).put("bulkheadQueued", bulkhead.getQueued(realmId));
+		limits.put("circuit", circuitBreaker.getState(realmId).name());
+		return limits.toString();
+	}
+}
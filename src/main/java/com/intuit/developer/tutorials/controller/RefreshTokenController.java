@@ -10,7 +10,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
-import com.intuit.oauth2.client.OAuth2PlatformClient;
+import com.intuit.developer.tutorials.client.TokenLifecycleService;
 import com.intuit.oauth2.data.BearerTokenResponse;
 
 /**
@@ -23,6 +23,9 @@ public class RefreshTokenController {
 	@Autowired
 	OAuth2PlatformClientFactory factory;
 	
+	@Autowired
+	TokenLifecycleService tokenLifecycle;
+	
 	private static final Logger logger = Logger.getLogger(RefreshTokenController.class);
 	
     /**
@@ -39,9 +42,9 @@ public class RefreshTokenController {
  
         try {
         	
-        	OAuth2PlatformClient client  = factory.getOAuth2PlatformClient();
+        	String realmId = (String)session.getAttribute("realmId");
         	String refreshToken = (String)session.getAttribute("refresh_token");
-        	BearerTokenResponse bearerTokenResponse = client.refreshToken(refreshToken);
+        	BearerTokenResponse bearerTokenResponse = tokenLifecycle.refresh(realmId, refreshToken);
             session.setAttribute("access_token", bearerTokenResponse.getAccessToken());
             session.setAttribute("refresh_token", bearerTokenResponse.getRefreshToken());
             String jsonString = new JSONObject()
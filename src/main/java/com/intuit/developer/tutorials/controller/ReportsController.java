@@ -1,27 +1,39 @@
 package com.intuit.developer.tutorials.controller;
 
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import javax.servlet.http.HttpSession;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+import com.intuit.developer.tutorials.helper.ColumnarReport;
+import com.intuit.developer.tutorials.helper.ETags;
+import com.intuit.developer.tutorials.helper.ErrorResponses;
+import com.intuit.developer.tutorials.helper.JsonResponse;
 import com.intuit.developer.tutorials.helper.QBOServiceHelper;
-import com.intuit.ipp.data.Error;
+import com.intuit.developer.tutorials.helper.ReportEngine;
+import com.intuit.developer.tutorials.helper.ReportRequest;
 import com.intuit.ipp.data.Report;
-import com.intuit.ipp.exception.FMSException;
-import com.intuit.ipp.exception.InvalidTokenException;
 import com.intuit.ipp.services.ReportName;
-import com.intuit.ipp.services.ReportService;
 
 /**
  * @author dderose
@@ -36,29 +48,45 @@ public class ReportsController {
 	@Autowired
     public QBOServiceHelper helper;
 
+	@Autowired
+	ReportEngine reportEngine;
+
 	private static final Logger logger = Logger.getLogger(ReportsController.class);
 
+	//period reports that can be fetched in shards, by lower case name
+	private static final Map<String, ReportName> SHARDED_REPORTS = new HashMap<String, ReportName>();
+	static {
+		SHARDED_REPORTS.put("generalledger", ReportName.GENERALLEDGER);
+		SHARDED_REPORTS.put("transactionlist", ReportName.TRANSACTIONLIST);
+	}
+
 
 	/**
      	* Sample QBO API call using OAuth2 tokens
      	*
      	* @param session the HttpSession
+     	* @param ifNoneMatch ETag of the report the client already has, answered with 304 if unchanged
+     	* @param shard month or quarter to fetch a period report in shards of that length, see {@link #callShardedReport}
+     	* @param report GeneralLedger (default) or TransactionList, the period report fetched in shards
      	* @return a report in JSON String format
      	*/
 	@ResponseBody
     	@RequestMapping("/reports")
-    	public String callReportsConcept(HttpSession session) {
+    	public CompletableFuture<Object> callReportsConcept(HttpSession session,
+    			@RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch,
+    			@RequestParam(value = "shard", required = false) String shard,
+    			@RequestParam(value = "report", required = false) String report) {
     		String realmId = (String)session.getAttribute("realmId");
 
     		if (StringUtils.isEmpty(realmId)) {
-    			return new JSONObject().put("response","No realm ID.  QBO calls only work if the accounting scope was passed!").toString();
+    			return CompletableFuture.completedFuture(new JSONObject().put("response","No realm ID.  QBO calls only work if the accounting scope was passed!").toString());
     		}
 
     		String accessToken = (String)session.getAttribute("access_token");
-        	try {
-			
-        	// get ReportService
-        	ReportService service = helper.getReportService(realmId, accessToken);
+    		
+    		if (shard != null) {
+    			return callShardedReport(realmId, accessToken, shard, report, ifNoneMatch);
+    		}
         	
         	/*
              * Read default profit and Loss report: 
@@ -66,7 +94,7 @@ public class ReportsController {
              * Deafult accounting method: Defined in Preferences.ReportPrefs.ReportBasis. The two accepted values are "Accural" and "Cash"
              * Default includes data for all customers
              * */
-            Report defaultPnLReport = service.executeReport(ReportName.PROFITANDLOSS.toString());
+            ReportRequest defaultPnLReport = ReportRequest.of(ReportName.PROFITANDLOSS);
             
             /*
              * Read default Balance sheet report:
@@ -75,71 +103,144 @@ public class ReportsController {
              * Default includes data for all customers
              * Default it is summarized by Total
              * */  
-            Report defaultBalanceSheet = service.executeReport(ReportName.BALANCESHEET.toString());
+            ReportRequest defaultBalanceSheet = ReportRequest.of(ReportName.BALANCESHEET);
             
             /*  report for given start and end date
-             *  set start_date and end_date properties in the ReportService instance with the date range in yyyy-mm-dd format
+             *  set start_date and end_date of the request with the date range in yyyy-mm-dd format
              * */
-            
-            service.setStart_date("2018-01-01");
-            service.setEnd_date("2018-04-15");
            
-            //Run BalanceSheet yearly report
-            defaultBalanceSheet = service.executeReport(ReportName.BALANCESHEET.toString());
+            //BalanceSheet yearly report
+            ReportRequest yearlyBalanceSheet = defaultBalanceSheet.withDateRange("2018-01-01", "2018-04-15");
             
-            //Run P&L yearly report
-            defaultPnLReport = service.executeReport(ReportName.PROFITANDLOSS.toString());
+            //P&L yearly report
+            ReportRequest yearlyPnLReport = defaultPnLReport.withDateRange("2018-01-01", "2018-04-15");
 
            /* Year End Balance Sheet report summarized by Customer
-            * set the customer property to the customer.Id and set summarize_column_by property to "Customers"
-            * You can also set customer property with multiple customer ids comma seperated.
-            * You can summarize by the following:Total, Customers, Vendors, Classes, Departments, Employees, ProductsAndServices by setting the summarize_column_by property
+            * set the customer of the request to the customer.Id and summarize it by "Customers"
+            * You can also set customer with multiple customer ids comma seperated.
+            * You can summarize by the following:Total, Customers, Vendors, Classes, Departments, Employees, ProductsAndServices
             * */
-            service.setSummarize_column_by("Customers");
            
-            //Run BalanceSheet report summarized by column
-            defaultBalanceSheet = service.executeReport(ReportName.BALANCESHEET.toString());
-            logger.info("ReportName -> name: " + defaultBalanceSheet.getHeader().getReportName().toLowerCase());
+            //BalanceSheet report summarized by column
+            ReportRequest summarizedBalanceSheet = yearlyBalanceSheet.summarizedBy("Customers");
            
-            //Run P&L yearly report summarized by column
-            defaultPnLReport = service.executeReport(ReportName.PROFITANDLOSS.toString());
-            logger.info("ReportName -> name: " + defaultPnLReport.getHeader().getReportName().toLowerCase());
-
-            //return P&L response
-            return createResponse(defaultPnLReport);
-          
-		} catch (InvalidTokenException e) {
-        		logger.error("invalid token: ", e);
-			return new JSONObject().put("response","InvalidToken - Refreshtoken and try again").toString();
-		} catch (FMSException e) {
-			List<Error> list = e.getErrorList();
-			list.forEach(error -> logger.error("Error while calling the API :: " + error.getMessage()));
-			return new JSONObject().put("response","Failed").toString();
-		}
+            //P&L yearly report summarized by column
+            ReportRequest summarizedPnLReport = yearlyPnLReport.summarizedBy("Customers");
+
+            //the requests are independent, run them in parallel on the outbound pool (or serve them from
+            //the report cache), the request thread is released meanwhile
+            List<ReportRequest> requests = Arrays.asList(defaultPnLReport, defaultBalanceSheet, yearlyBalanceSheet,
+            		yearlyPnLReport, summarizedBalanceSheet, summarizedPnLReport);
+            return reportEngine.executeAll(realmId, accessToken, requests).handle((reports, e) -> {
+            	if (e != null) {
+            		return ErrorResponses.of(e);
+            	}
+            	Report balanceSheet = reports.get(4);
+            	logger.info("ReportName -> name: " + balanceSheet.getHeader().getReportName().toLowerCase());
+            	Report pnlReport = reports.get(5);
+            	logger.info("ReportName -> name: " + pnlReport.getHeader().getReportName().toLowerCase());
+
+            	//return P&L response, or 304 if the client already has it
+            	return reportResponse(pnlReport, ifNoneMatch);
+            });
 
     	}
 
-
 	/**
-	 * Map object to json string
-	 * @param entity
+	 * Fetches a period report over a year as month or quarter shards, in parallel, and
+	 * merges them into one report. Shards are cached, a run over an overlapping range only
+	 * fetches the shards it misses.
+	 *
+	 * @param realmId
+	 * @param accessToken
+	 * @param shard month or quarter
+	 * @param report GeneralLedger or TransactionList, GeneralLedger if null
+	 * @param ifNoneMatch
 	 * @return
 	 */
-	private String createResponse(Object entity) {
-		ObjectMapper mapper = new ObjectMapper();
-		String jsonInString;
+	private CompletableFuture<Object> callShardedReport(String realmId, String accessToken, String shard, String report,
+			String ifNoneMatch) {
+		ReportRequest.ShardPeriod period;
 		try {
-			jsonInString = mapper.writeValueAsString(entity);
-		} catch (JsonProcessingException e) {
-			return createErrorResponse(e);
-		} catch (Exception e) {
-			return createErrorResponse(e);
+			period = ReportRequest.ShardPeriod.valueOf(shard.toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			return CompletableFuture.completedFuture(new JSONObject().put("response","Invalid shard " + shard + ", use month or quarter").toString());
 		}
-		return jsonInString;
+		ReportName reportName = report == null ? ReportName.GENERALLEDGER : SHARDED_REPORTS.get(report.toLowerCase(Locale.ROOT));
+		if (reportName == null) {
+			return CompletableFuture.completedFuture(new JSONObject().put("response","Invalid report " + report + ", use GeneralLedger or TransactionList").toString());
+		}
+		
+		ReportRequest request = ReportRequest.of(reportName).withDateRange("2018-01-01", "2018-12-31");
+		return reportEngine.executeSharded(realmId, accessToken, request, period)
+				.handle((merged, e) -> e == null ? reportResponse(merged, ifNoneMatch) : ErrorResponses.of(e));
 	}
 
-	private String createErrorResponse(Exception e) {
-		logger.error("Exception while calling QBO ", e);
-		return new JSONObject().put("response","Failed").toString();
+	/**
+	 * Largest transactions of the 2018 TransactionList, ranked on the columnar form of
+	 * the report, which is cached instead of the report itself
+	 *
+	 * @param session
+	 * @param n number of transactions, 10 by default
+	 * @return the transactions with their columns, largest amount first
+	 */
+	@ResponseBody
+	@RequestMapping("/reports/topTransactions")
+	public CompletableFuture<Object> callTopTransactions(HttpSession session,
+			@RequestParam(value = "n", defaultValue = "10") int n) {
+		String realmId = (String)session.getAttribute("realmId");
+		if (StringUtils.isEmpty(realmId)) {
+			return CompletableFuture.completedFuture(new JSONObject().put("response","No realm ID.  QBO calls only work if the accounting scope was passed!").toString());
+		}
+		String accessToken = (String)session.getAttribute("access_token");
+		
+		ReportRequest request = ReportRequest.of(ReportName.TRANSACTIONLIST).withDateRange("2018-01-01", "2018-12-31");
+		return reportEngine.executeColumnar(realmId, accessToken, request).handle((report, e) -> {
+			if (e != null) {
+				return ErrorResponses.of(e);
+			}
+			int amount = report.columnIndex("Amount");
+			if (amount < 0 || !report.isAmountColumn(amount)) {
+				logger.error("No Amount column in report " + report.getReportName());
+				return new JSONObject().put("response","Failed").toString();
+			}
+			JSONArray transactions = new JSONArray();
+			for (int row : report.topN(report.allRows(), amount, n)) {
+				JSONObject transaction = new JSONObject();
+				for (int c = 0; c < report.getColumnCount(); c++) {
+					if (!report.isAmountColumn(c)) {
+						transaction.put(report.getColumnTitle(c), report.getText(row, c));
+					} else if (report.getCents(row, c) != ColumnarReport.NO_AMOUNT) {
+						transaction.put(report.getColumnTitle(c), BigDecimal.valueOf(report.getCents(row, c), 2).toPlainString());
+					}
+				}
+				transactions.put(transaction);
+			}
+			return new JSONObject().put("response", transactions).toString();
+		});
+	}
+
+	/**
+	 * Report response with its ETag, or 304 if the client already has it
+	 * @param report
+	 * @param ifNoneMatch
+	 * @return
+	 */
+	private Object reportResponse(Report report, String ifNoneMatch) {
+		String etag = ETags.of(report);
+		if (ETags.matches(ifNoneMatch, etag)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CacheControl.noCache().cachePrivate()).build();
+		}
+		return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache().cachePrivate()).body(createResponse(report));
+	}
+
+
+	/**
+	 * Map object to json, streamed to the response by JsonResponseConverter
+	 * @param entity
+	 * @return
+	 */
+	private JsonResponse createResponse(Object entity) {
+		return JsonResponse.of(entity);
 	}
 }
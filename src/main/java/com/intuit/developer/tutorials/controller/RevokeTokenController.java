@@ -9,9 +9,15 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
 
-import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
-import com.intuit.oauth2.client.OAuth2PlatformClient;
-import com.intuit.oauth2.data.PlatformResponse;
+import com.intuit.developer.tutorials.client.OAuth2TokenClient;
+import com.intuit.developer.tutorials.client.TokenLifecycleService;
+import com.intuit.developer.tutorials.client.TokenRefreshCoordinator;
+import com.intuit.developer.tutorials.helper.AccountResolver;
+import com.intuit.developer.tutorials.helper.QBOServicePool;
+import com.intuit.developer.tutorials.helper.RealmBulkhead;
+import com.intuit.developer.tutorials.helper.RealmCircuitBreaker;
+import com.intuit.developer.tutorials.helper.RealmGovernor;
+import com.intuit.developer.tutorials.helper.ReportEngine;
 
 /**
  * @author dderose
@@ -21,7 +27,31 @@ import com.intuit.oauth2.data.PlatformResponse;
 public class RevokeTokenController {
 	
 	@Autowired
-	OAuth2PlatformClientFactory factory;
+	QBOServicePool pool;
+	
+	@Autowired
+	TokenRefreshCoordinator refreshCoordinator;
+	
+	@Autowired
+	TokenLifecycleService tokenLifecycle;
+	
+	@Autowired
+	OAuth2TokenClient tokenClient;
+	
+	@Autowired
+	RealmGovernor governor;
+	
+	@Autowired
+	RealmBulkhead bulkhead;
+	
+	@Autowired
+	RealmCircuitBreaker circuitBreaker;
+	
+	@Autowired
+	ReportEngine reportEngine;
+	
+	@Autowired
+	AccountResolver accountResolver;
 	
 	private static final Logger logger = Logger.getLogger(RevokeTokenController.class);
 	
@@ -39,10 +69,22 @@ public class RevokeTokenController {
     	      
         try {
 
-        	OAuth2PlatformClient client  = factory.getOAuth2PlatformClient();
-        	String refreshToken = (String)session.getAttribute("refresh_token");
-        	PlatformResponse response  = client.revokeToken(refreshToken);
-            logger.info("raw result for revoke token request= " + response.getStatus());
+        	String realmId = (String)session.getAttribute("realmId");
+        	String refreshToken = tokenLifecycle.getRefreshToken(realmId, (String)session.getAttribute("refresh_token"));
+        	tokenClient.revokeToken(refreshToken);
+            
+            // pooled services of this realm hold the revoked token
+            if (realmId != null) {
+            	tokenLifecycle.remove(realmId);
+            	pool.evictRealm(realmId);
+            	governor.evictRealm(realmId);
+            	bulkhead.evictRealm(realmId);
+            	circuitBreaker.evictRealm(realmId);
+            	refreshCoordinator.forget(realmId);
+            	// cached data must not outlive the connection of the realm
+            	reportEngine.invalidate(realmId);
+            	accountResolver.invalidate(realmId);
+            }
             return new JSONObject().put("response", "Revoke successful").toString();
         }
         catch (Exception ex) {
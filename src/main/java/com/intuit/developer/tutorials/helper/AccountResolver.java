@@ -0,0 +1,233 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+import com.intuit.ipp.core.IEntity;
+import com.intuit.ipp.data.Account;
+import com.intuit.ipp.data.AccountSubTypeEnum;
+import com.intuit.ipp.data.AccountTypeEnum;
+import com.intuit.ipp.exception.FMSException;
+import com.intuit.ipp.services.DataService;
+import com.intuit.ipp.services.QueryResult;
+
+/**
+ * Per realm cache of the reference accounts used by the sample workflows, keyed by
+ * AccountType and AccountSubType.
+ *
+ * Entries expire after a TTL and the cache is bounded in size (least recently used
+ * entries are evicted first). Accounts created through the resolver are cached right
+ * away, and {@link RealmCacheInvalidation} drops a realm's entries after account writes.
+ *
+ * Concurrent misses for the same key are coalesced into a single query and at most one
+ * create, which all waiting requests share. Each lookup emits a {@link FlightEvents.AccountLookup}.
+ */
+@Service
+public class AccountResolver {
+
+	@Autowired
+	OAuth2PlatformClientFactory factory;
+
+	private static final Logger logger = Logger.getLogger(AccountResolver.class);
+
+	private static final String ACCOUNT_QUERY = "select * from Account where AccountType='%s' maxresults 1";
+	private static final String ACCOUNT_SUBTYPE_QUERY = "select * from Account where AccountType='%s' and AccountSubType='%s' maxresults 1";
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	private long ttlMillis = TimeUnit.MINUTES.toMillis(5);
+	private int maxSize = 10000;
+
+	private Map<Key, Cached> cache;
+
+	private final SingleFlight<Key, Account> flights = new SingleFlight<Key, Account>();
+
+	/**
+	 * Creates an account of the requested type when the realm has none
+	 */
+	public interface AccountCreator {
+		Account create(DataService service) throws FMSException;
+	}
+
+	@PostConstruct
+	public void init() {
+		String ttl = factory.getPropertyValue("AccountCacheTtlSeconds");
+		if (ttl != null) {
+			ttlMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(ttl.trim()));
+		}
+		String size = factory.getPropertyValue("AccountCacheMaxSize");
+		if (size != null) {
+			maxSize = Integer.parseInt(size.trim());
+		}
+		cache = new LinkedHashMap<Key, Cached>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Cached> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Looks up the first account of the given type (and sub type) in the realm,
+	 * creating it if the realm has none
+	 *
+	 * @param service DataService of the realm
+	 * @param realmId
+	 * @param type
+	 * @param subType sub type to match, or null to match on the type only
+	 * @param creator creates the account if none exists
+	 * @return
+	 * @throws FMSException
+	 */
+	public Account getAccount(DataService service, String realmId, AccountTypeEnum type, AccountSubTypeEnum subType,
+			AccountCreator creator) throws FMSException {
+		FlightEvents.AccountLookup event = FlightEvents.get().accountLookup();
+		Key key = new Key(realmId, type, subType);
+		Account account = get(key);
+		String outcome = "hit";
+		try {
+			if (account != null) {
+				hits.incrementAndGet();
+				return account;
+			}
+			misses.incrementAndGet();
+			outcome = "miss";
+			account = flights.execute(key, () -> findOrCreate(key, service, creator));
+			return account;
+		} catch (FMSException | RuntimeException e) {
+			outcome = FlightEvents.outcomeOf(e);
+			throw e;
+		} finally {
+			if (event.finish()) {
+				event.record(realmId, type.value(), subType != null ? subType.value() : null, JsonSize.of(account), outcome);
+			}
+		}
+	}
+
+	private Account findOrCreate(Key key, DataService service, AccountCreator creator) throws FMSException {
+		// a flight for this key may have completed between the cache check and this one
+		Account account = get(key);
+		if (account != null) {
+			return account;
+		}
+		AccountTypeEnum type = key.type;
+		AccountSubTypeEnum subType = key.subType;
+		String sql = subType == null ? String.format(ACCOUNT_QUERY, type.value())
+				: String.format(ACCOUNT_SUBTYPE_QUERY, type.value(), subType.value());
+		QueryResult queryResult = service.executeQuery(sql);
+		List<? extends IEntity> entities = queryResult.getEntities();
+		if (!entities.isEmpty()) {
+			account = (Account) entities.get(0);
+		} else {
+			logger.info("no " + type.value() + " account in realm " + key.realmId + ", creating one");
+			account = creator.create(service);
+		}
+		put(key, account);
+		return account;
+	}
+
+	private Account get(Key key) {
+		synchronized (cache) {
+			Cached cached = cache.get(key);
+			if (cached == null) {
+				return null;
+			}
+			if (cached.expiresAt < System.currentTimeMillis()) {
+				cache.remove(key);
+				return null;
+			}
+			return cached.account;
+		}
+	}
+
+	private void put(Key key, Account account) {
+		synchronized (cache) {
+			cache.put(key, new Cached(account, System.currentTimeMillis() + ttlMillis));
+		}
+	}
+
+	/**
+	 * Drops the cached accounts of a realm, called by {@link RealmCacheInvalidation} when
+	 * accounts of the realm are written
+	 *
+	 * @param realmId
+	 */
+	public void invalidate(String realmId) {
+		synchronized (cache) {
+			Iterator<Key> it = cache.keySet().iterator();
+			while (it.hasNext()) {
+				if (it.next().realmId.equals(realmId)) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getCoalesced() {
+		return flights.getCoalesced();
+	}
+
+	private static final class Cached {
+
+		private final Account account;
+		private final long expiresAt;
+
+		Cached(Account account, long expiresAt) {
+			this.account = account;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private static final class Key {
+
+		private final String realmId;
+		private final AccountTypeEnum type;
+		private final AccountSubTypeEnum subType;
+
+		Key(String realmId, AccountTypeEnum type, AccountSubTypeEnum subType) {
+			this.realmId = realmId;
+			this.type = type;
+			this.subType = subType;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return realmId.equals(other.realmId) && type == other.type && subType == other.subType;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(realmId, type, subType);
+		}
+	}
+}
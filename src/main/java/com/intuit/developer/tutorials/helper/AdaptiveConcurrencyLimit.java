@@ -0,0 +1,206 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+import com.intuit.ipp.exception.FMSException;
+
+/**
+ * Concurrency limit of the outbound QBO traffic that adapts to the latency of QBO (AIMD).
+ *
+ * As the innermost call interceptor it times every QBO call, after the throttling waits.
+ * Each operation (add:Invoice, executeQuery, executeReport:ProfitAndLoss..) has its own
+ * baseline latency, so that slow and fast operations can be compared. The baseline only
+ * learns from calls within the tolerance: a sustained slowdown of QBO keeps cutting the
+ * limit, down to QBOAdaptiveMinLimit, instead of becoming the new norm. The limit grows by
+ * one per limit's worth of calls while the work in flight is close to the limit and
+ * latencies stay within QBOAdaptiveLatencyTolerance times their baseline. It is cut by
+ * QBOAdaptiveBackoffRatio when they inflate or QBO throttles or times out, at most once
+ * per QBOAdaptiveCooldownMillis.
+ *
+ * The limit is applied by {@link WorkflowExecutor} to the tasks it runs and by
+ * {@link QBOServiceHelper#queryData} to its queries.
+ */
+@Service
+@Order(400)
+public class AdaptiveConcurrencyLimit implements QBOCallInterceptor {
+
+	@Autowired
+	OAuth2PlatformClientFactory factory;
+
+	private static final Logger logger = Logger.getLogger(AdaptiveConcurrencyLimit.class);
+
+	// weight of a new call in the short term latency ratio and in the baseline of its operation
+	private static final double SHORT_WEIGHT = 0.2;
+	private static final double BASELINE_WEIGHT = 0.05;
+	private static final int BASELINE_WARMUP = 10;
+
+	private final Map<String, Baseline> baselines = new ConcurrentHashMap<String, Baseline>();
+
+	private int minLimit;
+	private int maxLimit;
+	private double tolerance;
+	private double backoffRatio;
+	private long cooldownNanos;
+
+	private double limit;
+	private int inFlight;
+	private double latencyRatio = 1;
+	private long decreasedAt;
+
+	@PostConstruct
+	public void init() {
+		minLimit = Math.max(1, intProperty("QBOAdaptiveMinLimit", 4));
+		maxLimit = Math.max(minLimit, intProperty("QBOAdaptiveMaxLimit", intProperty("QBOWorkflowThreads", 32)));
+		limit = Math.max(minLimit, Math.min(maxLimit, intProperty("QBOAdaptiveInitialLimit", 8)));
+		tolerance = doubleProperty("QBOAdaptiveLatencyTolerance", 2.0);
+		backoffRatio = doubleProperty("QBOAdaptiveBackoffRatio", 0.9);
+		cooldownNanos = TimeUnit.MILLISECONDS.toNanos(intProperty("QBOAdaptiveCooldownMillis", 1000));
+		decreasedAt = System.nanoTime() - cooldownNanos;
+	}
+
+	private int intProperty(String name, int defaultValue) {
+		String value = factory.getPropertyValue(name);
+		return value == null ? defaultValue : Integer.parseInt(value.trim());
+	}
+
+	private double doubleProperty(String name, double defaultValue) {
+		String value = factory.getPropertyValue(name);
+		return value == null ? defaultValue : Double.parseDouble(value.trim());
+	}
+
+	@Override
+	public <T> T intercept(QBOCall call, QBOCall.Invocation<T> next) throws FMSException {
+		long start = System.nanoTime();
+		try {
+			T result = next.proceed();
+			onLatency(call.getOperation(), System.nanoTime() - start);
+			return result;
+		} catch (FMSException e) {
+			if (RetryPolicy.classify(e) != RetryPolicy.Failure.PERMANENT) {
+				onOverload(call + " failed: " + e.getMessage());
+			}
+			throw e;
+		}
+	}
+
+	private void onLatency(String operation, long nanos) {
+		Baseline baseline = baselines.computeIfAbsent(operation, op -> new Baseline());
+		double ratio = baseline.ratioAndUpdate(nanos, tolerance);
+		boolean inflated;
+		synchronized (this) {
+			latencyRatio += SHORT_WEIGHT * (ratio - latencyRatio);
+			inflated = latencyRatio > tolerance;
+			if (!inflated && inFlight >= limit / 2 && limit < maxLimit) {
+				// additive increase: about one per limit's worth of calls
+				limit = Math.min(maxLimit, limit + 1 / limit);
+			}
+		}
+		if (inflated) {
+			onOverload("latency " + String.format("%.1f", latencyRatio) + "x baseline");
+		}
+	}
+
+	private synchronized void onOverload(String reason) {
+		long now = System.nanoTime();
+		if (now - decreasedAt < cooldownNanos) {
+			return;
+		}
+		decreasedAt = now;
+		double previous = limit;
+		limit = Math.max(minLimit, limit * backoffRatio);
+		// start over from the new limit, otherwise the old samples decrease it again
+		latencyRatio = 1;
+		if ((int) previous != (int) limit) {
+			logger.info("outbound QBO concurrency limit " + (int) previous + " -> " + (int) limit + ", " + reason);
+		}
+	}
+
+	/**
+	 * @return whether a unit of work may start now, release it with {@link #release()}
+	 */
+	public synchronized boolean tryAcquire() {
+		if (inFlight < (int) limit) {
+			inFlight++;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Waits until a unit of work may start
+	 *
+	 * @param timeoutMillis
+	 * @return false if the limit was still reached after the timeout
+	 * @throws InterruptedException
+	 */
+	public synchronized boolean acquire(long timeoutMillis) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		while (inFlight >= (int) limit) {
+			long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (remaining <= 0) {
+				return false;
+			}
+			wait(remaining);
+		}
+		inFlight++;
+		return true;
+	}
+
+	public synchronized void release() {
+		inFlight--;
+		notifyAll();
+	}
+
+	public synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	/**
+	 * @return recent latency of the QBO calls relative to the baseline of their operation
+	 */
+	public synchronized double getLatencyRatio() {
+		return latencyRatio;
+	}
+
+	/**
+	 * Long term latency of an operation when QBO is not overloaded
+	 */
+	private static final class Baseline {
+
+		private double nanos;
+		private int samples;
+
+		/**
+		 * @param sample
+		 * @param tolerance ratio over which a sample is inflated
+		 * @return ratio of the sample to the baseline, 1 during the warmup
+		 */
+		synchronized double ratioAndUpdate(long sample, double tolerance) {
+			if (samples < BASELINE_WARMUP) {
+				// plain average until the baseline is meaningful
+				nanos += (sample - nanos) / ++samples;
+				return 1;
+			}
+			double ratio = sample / nanos;
+			// inflated samples are left out, however long the slowdown lasts
+			if (ratio <= tolerance) {
+				nanos += BASELINE_WEIGHT * (sample - nanos);
+			}
+			return ratio;
+		}
+	}
+}
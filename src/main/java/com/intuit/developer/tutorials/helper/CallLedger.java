@@ -0,0 +1,123 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * QBO calls made on behalf of one inbound request: their number, the time spent in them and,
+ * when it is sized, the JSON size of what was sent and received.
+ *
+ * The ledger of the request is attached to the thread serving it by {@link CallLedgers} and
+ * follows the calls onto the outbound pool through {@link Workflow} and
+ * {@link WorkflowExecutor#submit}, like the QBO environment settings.
+ */
+public final class CallLedger {
+
+	private static final ThreadLocal<CallLedger> CURRENT = new ThreadLocal<CallLedger>();
+
+	private final String endpoint;
+	private final int budget;
+	private final boolean sized;
+	private final AtomicInteger calls = new AtomicInteger();
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicLong nanos = new AtomicLong();
+
+	/**
+	 * @param endpoint
+	 * @param budget maximum number of QBO calls of the request, 0 for none
+	 * @param sized whether the JSON size of the calls is counted
+	 */
+	CallLedger(String endpoint, int budget, boolean sized) {
+		this.endpoint = endpoint;
+		this.budget = budget;
+		this.sized = sized;
+	}
+
+	/**
+	 * @return ledger of the request served by the calling thread, null if there is none
+	 */
+	public static CallLedger current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Attaches a ledger to the calling thread
+	 *
+	 * @param ledger may be null
+	 * @return ledger attached before, to be restored with {@link #restore(CallLedger)}
+	 */
+	public static CallLedger attach(CallLedger ledger) {
+		CallLedger previous = CURRENT.get();
+		if (ledger == null) {
+			CURRENT.remove();
+		} else {
+			CURRENT.set(ledger);
+		}
+		return previous;
+	}
+
+	/**
+	 * @param previous ledger returned by {@link #attach(CallLedger)}
+	 */
+	public static void restore(CallLedger previous) {
+		attach(previous);
+	}
+
+	/**
+	 * @return number of calls including this one
+	 */
+	int begin() {
+		return calls.incrementAndGet();
+	}
+
+	void end(long callBytes, long callNanos) {
+		if (callBytes > 0) {
+			bytes.addAndGet(callBytes);
+		}
+		nanos.addAndGet(callNanos);
+	}
+
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	public int getBudget() {
+		return budget;
+	}
+
+	public int getCalls() {
+		return calls.get();
+	}
+
+	public boolean isSized() {
+		return sized;
+	}
+
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	public long getNanos() {
+		return nanos.get();
+	}
+
+	public boolean isOverBudget() {
+		return budget > 0 && calls.get() > budget;
+	}
+
+	/**
+	 * @return value of the response header
+	 */
+	@Override
+	public String toString() {
+		StringBuilder value = new StringBuilder(64).append("count=").append(calls.get());
+		if (sized) {
+			value.append(", bytes=").append(bytes.get());
+		}
+		value.append(", millis=").append(nanos.get() / 1000000);
+		if (budget > 0) {
+			value.append(", budget=").append(budget);
+		}
+		return value.toString();
+	}
+}
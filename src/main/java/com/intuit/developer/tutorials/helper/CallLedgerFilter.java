@@ -0,0 +1,79 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.io.IOException;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Opens the {@link CallLedger} of each request and closes it once the response is complete,
+ * after the asynchronous processing of the endpoints returning a CompletableFuture.
+ *
+ * Spring Boot registers it for all requests.
+ */
+@Component
+public class CallLedgerFilter extends OncePerRequestFilter {
+
+	public static final String HEADER = "X-QBO-Calls";
+
+	private static final String LEDGER_ATTRIBUTE = CallLedger.class.getName();
+
+	@Autowired
+	CallLedgers ledgers;
+
+	/**
+	 * @param request
+	 * @return ledger of the request, null if it was not opened by the filter
+	 */
+	public static CallLedger ledgerOf(HttpServletRequest request) {
+		return (CallLedger) request.getAttribute(LEDGER_ATTRIBUTE);
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		CallLedger ledger = ledgers.open(request.getServletPath());
+		request.setAttribute(LEDGER_ATTRIBUTE, ledger);
+		CallLedger previous = CallLedger.attach(ledger);
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			CallLedger.restore(previous);
+			if (request.isAsyncStarted()) {
+				request.getAsyncContext().addListener(new AsyncListener() {
+					@Override
+					public void onComplete(AsyncEvent event) {
+						close(request, ledger);
+					}
+
+					@Override
+					public void onTimeout(AsyncEvent event) {
+					}
+
+					@Override
+					public void onError(AsyncEvent event) {
+					}
+
+					@Override
+					public void onStartAsync(AsyncEvent event) {
+					}
+				});
+			} else {
+				close(request, ledger);
+			}
+		}
+	}
+
+	private void close(HttpServletRequest request, CallLedger ledger) {
+		ledgers.close(ledger, (String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE));
+	}
+}
@@ -0,0 +1,180 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+import com.intuit.ipp.exception.FMSException;
+
+/**
+ * Accounts the QBO calls of each inbound request in its {@link CallLedger} and aggregates
+ * the ledgers by endpoint, to catch endpoints whose number of round trips grows.
+ *
+ * The outermost interceptor, so a call is counted once however many times it is retried,
+ * and its time includes the throttling waits. With CallLedgerBytes=true its bytes are the
+ * {@link JsonSize} of the entity or query sent and of the result; off by default, as sizing
+ * serializes both.
+ *
+ * An endpoint gets a budget with a CallBudget.&lt;path&gt; property, e.g. CallBudget.inventory=7.
+ * Only the budgets found are kept, the paths without one are looked up again on each request.
+ * A request going over its budget is logged when CallBudgetMode is warn (default); when it is
+ * fail, the call going over it throws an IllegalStateException, so tests fail on the regression.
+ */
+@Service
+@Order(50)
+public class CallLedgers implements QBOCallInterceptor {
+
+	private static final Logger logger = Logger.getLogger(CallLedgers.class);
+
+	private static final String BUDGET_PREFIX = "CallBudget.";
+
+	@Autowired
+	OAuth2PlatformClientFactory factory;
+
+	private final ConcurrentMap<String, Integer> budgets = new ConcurrentHashMap<String, Integer>();
+	private final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<String, Endpoint>();
+
+	private boolean failOverBudget;
+	private boolean sized;
+
+	@PostConstruct
+	public void init() {
+		failOverBudget = "fail".equalsIgnoreCase(factory.getPropertyValue("CallBudgetMode"));
+		sized = Boolean.parseBoolean(factory.getPropertyValue("CallLedgerBytes"));
+	}
+
+	/**
+	 * Starts the ledger of a request
+	 *
+	 * @param path servlet path of the request
+	 * @return
+	 */
+	public CallLedger open(String path) {
+		Integer budget = budgets.get(path);
+		if (budget == null) {
+			budget = budgetOf(path);
+			// the paths come from the requests, caching the misses would let clients grow the map
+			if (budget > 0) {
+				budgets.putIfAbsent(path, budget);
+			}
+		}
+		return new CallLedger(path, budget, sized);
+	}
+
+	/**
+	 * @return whether the JSON size of the calls is counted
+	 */
+	public boolean isSized() {
+		return sized;
+	}
+
+	private int budgetOf(String path) {
+		String value = factory.getPropertyValue(BUDGET_PREFIX + (path.startsWith("/") ? path.substring(1) : path));
+		return value == null ? 0 : Integer.parseInt(value.trim());
+	}
+
+	/**
+	 * Adds the ledger of a completed request to the totals of its endpoint
+	 *
+	 * @param ledger
+	 * @param endpoint handler mapping pattern of the request, null if no handler was found
+	 */
+	public void close(CallLedger ledger, String endpoint) {
+		if (ledger.isOverBudget()) {
+			logger.warn(ledger.getEndpoint() + " made " + ledger.getCalls() + " QBO calls, over its budget of " + ledger.getBudget());
+		}
+		if (endpoint != null) {
+			endpoints.computeIfAbsent(endpoint, e -> new Endpoint()).add(ledger);
+		}
+	}
+
+	@Override
+	public <T> T intercept(QBOCall call, QBOCall.Invocation<T> next) throws FMSException {
+		CallLedger ledger = CallLedger.current();
+		if (ledger == null) {
+			return next.proceed();
+		}
+		int calls = ledger.begin();
+		if (failOverBudget && ledger.getBudget() > 0 && calls > ledger.getBudget()) {
+			throw new IllegalStateException(call.getOperation() + " is QBO call " + calls + " of " + ledger.getEndpoint()
+					+ ", over its budget of " + ledger.getBudget());
+		}
+		long start = System.nanoTime();
+		T result = null;
+		try {
+			result = next.proceed();
+			return result;
+		} finally {
+			ledger.end(ledger.isSized() ? JsonSize.of(call.getPayload()) + JsonSize.of(result) : 0, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * @return totals by handler mapping pattern
+	 */
+	public Map<String, Endpoint> getEndpoints() {
+		return endpoints;
+	}
+
+	/**
+	 * Totals of the ledgers of an endpoint
+	 */
+	public static final class Endpoint {
+
+		private final AtomicLong requests = new AtomicLong();
+		private final AtomicLong calls = new AtomicLong();
+		private final AtomicLong bytes = new AtomicLong();
+		private final AtomicLong nanos = new AtomicLong();
+		private final AtomicLong overBudget = new AtomicLong();
+		private volatile int maxCalls;
+
+		void add(CallLedger ledger) {
+			requests.incrementAndGet();
+			calls.addAndGet(ledger.getCalls());
+			bytes.addAndGet(ledger.getBytes());
+			nanos.addAndGet(ledger.getNanos());
+			if (ledger.isOverBudget()) {
+				overBudget.incrementAndGet();
+			}
+			synchronized (this) {
+				maxCalls = Math.max(maxCalls, ledger.getCalls());
+			}
+		}
+
+		public long getRequests() {
+			return requests.get();
+		}
+
+		public long getCalls() {
+			return calls.get();
+		}
+
+		public long getBytes() {
+			return bytes.get();
+		}
+
+		public double getSeconds() {
+			return nanos.get() / 1e9;
+		}
+
+		public long getOverBudget() {
+			return overBudget.get();
+		}
+
+		/**
+		 * @return most QBO calls made by one request
+		 */
+		public int getMaxCalls() {
+			return maxCalls;
+		}
+	}
+}
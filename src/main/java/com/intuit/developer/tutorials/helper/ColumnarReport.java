@@ -0,0 +1,496 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongPredicate;
+
+import com.intuit.ipp.data.ColData;
+import com.intuit.ipp.data.Column;
+import com.intuit.ipp.data.Header;
+import com.intuit.ipp.data.Report;
+import com.intuit.ipp.data.Row;
+import com.intuit.ipp.data.RowTypeEnum;
+import com.intuit.ipp.data.Rows;
+
+/**
+ * Compact, read only, column oriented copy of the data rows of a QBO {@link Report}.
+ *
+ * Amount columns are stored as arrays of long cents, text columns (row labels, dates,
+ * names..) as arrays of codes into a per column dictionary, and each row keeps the code
+ * of the section it belongs to. Column titles are interned across reports. Summary rows
+ * are not kept, they can be recomputed with {@link #sumBy(int[], int, int)}.
+ *
+ * Filters return row selections (arrays of row indexes) which can be passed on to further
+ * filters, group-bys and top-N, none of which walks the Report object graph.
+ */
+public final class ColumnarReport {
+
+	/**
+	 * Value of empty or non numeric cells of amount columns
+	 */
+	public static final long NO_AMOUNT = Long.MIN_VALUE;
+
+	/**
+	 * Code of rows that are not in a section
+	 */
+	public static final int NO_SECTION = -1;
+
+	private static final ConcurrentMap<String, String> TITLES = new ConcurrentHashMap<String, String>();
+
+	private final String reportName;
+	private final String[] titles;
+	private final int rowCount;
+	private final long[][] amounts;
+	private final int[][] codes;
+	private final String[][] dictionaries;
+	private final int[] sections;
+	private final String[] sectionDictionary;
+
+	private ColumnarReport(String reportName, String[] titles, int rowCount, long[][] amounts, int[][] codes,
+			String[][] dictionaries, int[] sections, String[] sectionDictionary) {
+		this.reportName = reportName;
+		this.titles = titles;
+		this.rowCount = rowCount;
+		this.amounts = amounts;
+		this.codes = codes;
+		this.dictionaries = dictionaries;
+		this.sections = sections;
+		this.sectionDictionary = sectionDictionary;
+	}
+
+	/**
+	 * Converts the data rows of a report
+	 *
+	 * @param report
+	 * @return
+	 */
+	public static ColumnarReport from(Report report) {
+		List<Column> columns = report.getColumns() != null && report.getColumns().getColumn() != null
+				? report.getColumns().getColumn() : new ArrayList<Column>();
+
+		// collect the data rows with the section they belong to
+		List<Row> dataRows = new ArrayList<Row>();
+		List<String> rowSections = new ArrayList<String>();
+		collect(report.getRows(), null, dataRows, rowSections);
+
+		int columnCount = columns.size();
+		if (columnCount == 0) {
+			for (Row row : dataRows) {
+				columnCount = Math.max(columnCount, row.getColData().size());
+			}
+		}
+		int rowCount = dataRows.size();
+		String[] titles = new String[columnCount];
+		long[][] amounts = new long[columnCount][];
+		int[][] codes = new int[columnCount][];
+		String[][] dictionaries = new String[columnCount][];
+
+		for (int c = 0; c < columnCount; c++) {
+			Column column = c < columns.size() ? columns.get(c) : null;
+			titles[c] = intern(column != null && column.getColTitle() != null ? column.getColTitle() : "");
+			if (isAmountColumn(column, dataRows, c)) {
+				long[] values = new long[rowCount];
+				for (int r = 0; r < rowCount; r++) {
+					values[r] = parseCents(cell(dataRows.get(r), c));
+				}
+				amounts[c] = values;
+			} else {
+				Dictionary dictionary = new Dictionary();
+				int[] values = new int[rowCount];
+				for (int r = 0; r < rowCount; r++) {
+					values[r] = dictionary.code(cell(dataRows.get(r), c));
+				}
+				codes[c] = values;
+				dictionaries[c] = dictionary.values();
+			}
+		}
+
+		Dictionary sectionDictionary = new Dictionary();
+		int[] sections = new int[rowCount];
+		for (int r = 0; r < rowCount; r++) {
+			String section = rowSections.get(r);
+			sections[r] = section == null ? NO_SECTION : sectionDictionary.code(section);
+		}
+
+		String reportName = report.getHeader() != null ? report.getHeader().getReportName() : null;
+		return new ColumnarReport(reportName, titles, rowCount, amounts, codes, dictionaries, sections,
+				sectionDictionary.values());
+	}
+
+	private static void collect(Rows rows, String section, List<Row> dataRows, List<String> rowSections) {
+		if (rows == null || rows.getRow() == null) {
+			return;
+		}
+		for (Row row : rows.getRow()) {
+			if (row.getType() == RowTypeEnum.SECTION) {
+				collect(row.getRows(), sectionLabel(row, section), dataRows, rowSections);
+			} else if (row.getColData() != null && !row.getColData().isEmpty()) {
+				dataRows.add(row);
+				rowSections.add(section);
+			}
+		}
+	}
+
+	private static String sectionLabel(Row row, String parent) {
+		Header header = row.getHeader();
+		if (header != null && header.getColData() != null && !header.getColData().isEmpty()) {
+			return header.getColData().get(0).getValue();
+		}
+		return row.getGroup() != null ? row.getGroup() : parent;
+	}
+
+	private static boolean isAmountColumn(Column column, List<Row> dataRows, int c) {
+		if (column != null && column.getColType() != null) {
+			return "Money".equalsIgnoreCase(column.getColType());
+		}
+		boolean any = false;
+		for (Row row : dataRows) {
+			String value = cell(row, c);
+			if (value != null && !value.isEmpty()) {
+				if (parseCents(value) == NO_AMOUNT) {
+					return false;
+				}
+				any = true;
+			}
+		}
+		return any;
+	}
+
+	private static String cell(Row row, int c) {
+		List<ColData> cells = row.getColData();
+		return c < cells.size() ? cells.get(c).getValue() : null;
+	}
+
+	private static String intern(String title) {
+		String existing = TITLES.putIfAbsent(title, title);
+		return existing != null ? existing : title;
+	}
+
+	/**
+	 * Parses a decimal amount such as "-1234.5" into cents, rounding half up beyond two
+	 * decimals, without going through BigDecimal
+	 *
+	 * @param value
+	 * @return the amount in cents, or {@link #NO_AMOUNT} if the value is empty or not a number
+	 */
+	static long parseCents(String value) {
+		if (value == null) {
+			return NO_AMOUNT;
+		}
+		int length = value.length();
+		int i = 0;
+		boolean negative = false;
+		if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+			negative = value.charAt(i) == '-';
+			i++;
+		}
+		long cents = 0;
+		int digits = 0;
+		int decimals = -1;
+		boolean roundUp = false;
+		for (; i < length; i++) {
+			char ch = value.charAt(i);
+			if (ch == '.' && decimals < 0) {
+				decimals = 0;
+			} else if (ch >= '0' && ch <= '9') {
+				digits++;
+				if (decimals < 0) {
+					cents = cents * 10 + (ch - '0');
+				} else if (decimals < 2) {
+					cents = cents * 10 + (ch - '0');
+					decimals++;
+				} else if (decimals == 2) {
+					roundUp = ch >= '5';
+					decimals++;
+				}
+			} else if (ch != ',') {
+				return NO_AMOUNT;
+			}
+		}
+		if (digits == 0) {
+			return NO_AMOUNT;
+		}
+		for (int d = Math.max(decimals, 0); d < 2; d++) {
+			cents *= 10;
+		}
+		if (roundUp) {
+			cents++;
+		}
+		return negative ? -cents : cents;
+	}
+
+	public String getReportName() {
+		return reportName;
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	public int getColumnCount() {
+		return titles.length;
+	}
+
+	public String getColumnTitle(int column) {
+		return titles[column];
+	}
+
+	/**
+	 * @param title
+	 * @return index of the first column with the given title, or -1
+	 */
+	public int columnIndex(String title) {
+		for (int c = 0; c < titles.length; c++) {
+			if (titles[c].equals(title)) {
+				return c;
+			}
+		}
+		return -1;
+	}
+
+	public boolean isAmountColumn(int column) {
+		return amounts[column] != null;
+	}
+
+	/**
+	 * @param row
+	 * @param column an amount column
+	 * @return the amount in cents, or {@link #NO_AMOUNT}
+	 */
+	public long getCents(int row, int column) {
+		return amountColumn(column)[row];
+	}
+
+	/**
+	 * @param row
+	 * @param column a text column
+	 * @return
+	 */
+	public String getText(int row, int column) {
+		return dictionaries[column][textColumn(column)[row]];
+	}
+
+	/**
+	 * @param row
+	 * @return label of the section header the row is in, or null
+	 */
+	public String getSection(int row) {
+		return sections[row] == NO_SECTION ? null : sectionDictionary[sections[row]];
+	}
+
+	/**
+	 * @return selection of all rows
+	 */
+	public int[] allRows() {
+		int[] rows = new int[rowCount];
+		for (int r = 0; r < rowCount; r++) {
+			rows[r] = r;
+		}
+		return rows;
+	}
+
+	/**
+	 * @param rows selection to filter
+	 * @param column an amount column
+	 * @param predicate test on the amount in cents, rows without an amount never match
+	 * @return selection of the matching rows
+	 */
+	public int[] filter(int[] rows, int column, LongPredicate predicate) {
+		long[] values = amountColumn(column);
+		int[] matches = new int[rows.length];
+		int count = 0;
+		for (int row : rows) {
+			long value = values[row];
+			if (value != NO_AMOUNT && predicate.test(value)) {
+				matches[count++] = row;
+			}
+		}
+		return Arrays.copyOf(matches, count);
+	}
+
+	/**
+	 * @param rows selection to filter
+	 * @param column a text column
+	 * @param value
+	 * @return selection of the rows whose column equals the value
+	 */
+	public int[] filterEquals(int[] rows, int column, String value) {
+		int code = indexOf(dictionaries[column], value);
+		return code < 0 ? new int[0] : filterCode(rows, textColumn(column), code);
+	}
+
+	/**
+	 * @param rows selection to filter
+	 * @param section
+	 * @return selection of the rows in the given section
+	 */
+	public int[] filterSection(int[] rows, String section) {
+		int code = indexOf(sectionDictionary, section);
+		return code < 0 ? new int[0] : filterCode(rows, sections, code);
+	}
+
+	private static int[] filterCode(int[] rows, int[] values, int code) {
+		int[] matches = new int[rows.length];
+		int count = 0;
+		for (int row : rows) {
+			if (values[row] == code) {
+				matches[count++] = row;
+			}
+		}
+		return Arrays.copyOf(matches, count);
+	}
+
+	/**
+	 * Sums an amount column by the values of a text column, or by section if groupColumn is -1
+	 *
+	 * @param rows selection to aggregate
+	 * @param groupColumn a text column, or -1 to group by section
+	 * @param amountColumn
+	 * @return total in cents per group, in order of the dictionary
+	 */
+	public Map<String, Long> sumBy(int[] rows, int groupColumn, int amountColumn) {
+		int[] groups = groupColumn < 0 ? sections : textColumn(groupColumn);
+		String[] labels = groupColumn < 0 ? sectionDictionary : dictionaries[groupColumn];
+		long[] values = amountColumn(amountColumn);
+		long[] totals = new long[labels.length + 1];
+		boolean[] present = new boolean[labels.length + 1];
+		for (int row : rows) {
+			long value = values[row];
+			if (value != NO_AMOUNT) {
+				// slot 0 holds rows without a section
+				int slot = groups[row] + 1;
+				totals[slot] += value;
+				present[slot] = true;
+			}
+		}
+		Map<String, Long> result = new LinkedHashMap<String, Long>();
+		for (int slot = 0; slot < totals.length; slot++) {
+			if (present[slot]) {
+				result.put(slot == 0 ? null : labels[slot - 1], totals[slot]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param rows selection to rank
+	 * @param amountColumn
+	 * @param n
+	 * @return selection of the n rows with the largest amounts, largest first
+	 */
+	public int[] topN(int[] rows, int amountColumn, int n) {
+		long[] values = amountColumn(amountColumn);
+		// min heap of row indexes ordered by amount, the smallest of the current top at the root
+		int[] heap = new int[Math.min(n, rows.length)];
+		int size = 0;
+		for (int row : rows) {
+			long value = values[row];
+			if (value == NO_AMOUNT || heap.length == 0) {
+				continue;
+			}
+			if (size < heap.length) {
+				heap[size] = row;
+				siftUp(heap, size++, values);
+			} else if (value > values[heap[0]]) {
+				heap[0] = row;
+				siftDown(heap, size, values);
+			}
+		}
+		int[] top = new int[size];
+		for (int i = size - 1; i >= 0; i--) {
+			top[i] = heap[0];
+			heap[0] = heap[--size];
+			siftDown(heap, size, values);
+		}
+		return top;
+	}
+
+	private static void siftUp(int[] heap, int i, long[] values) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (values[heap[parent]] <= values[heap[i]]) {
+				return;
+			}
+			swap(heap, parent, i);
+			i = parent;
+		}
+	}
+
+	private static void siftDown(int[] heap, int size, long[] values) {
+		int i = 0;
+		while (true) {
+			int smallest = i;
+			int left = 2 * i + 1;
+			int right = left + 1;
+			if (left < size && values[heap[left]] < values[heap[smallest]]) {
+				smallest = left;
+			}
+			if (right < size && values[heap[right]] < values[heap[smallest]]) {
+				smallest = right;
+			}
+			if (smallest == i) {
+				return;
+			}
+			swap(heap, i, smallest);
+			i = smallest;
+		}
+	}
+
+	private static void swap(int[] heap, int a, int b) {
+		int tmp = heap[a];
+		heap[a] = heap[b];
+		heap[b] = tmp;
+	}
+
+	private long[] amountColumn(int column) {
+		if (amounts[column] == null) {
+			throw new IllegalArgumentException("Column " + titles[column] + " is not an amount column");
+		}
+		return amounts[column];
+	}
+
+	private int[] textColumn(int column) {
+		if (codes[column] == null) {
+			throw new IllegalArgumentException("Column " + titles[column] + " is not a text column");
+		}
+		return codes[column];
+	}
+
+	private static int indexOf(String[] dictionary, String value) {
+		for (int i = 0; i < dictionary.length; i++) {
+			if (value == null ? dictionary[i] == null : value.equals(dictionary[i])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Assigns codes to distinct values in order of first appearance
+	 */
+	private static final class Dictionary {
+
+		private final Map<String, Integer> codes = new HashMap<String, Integer>();
+		private final List<String> values = new ArrayList<String>();
+
+		int code(String value) {
+			Integer code = codes.get(value);
+			if (code == null) {
+				code = values.size();
+				codes.put(value, code);
+				values.add(value);
+			}
+			return code;
+		}
+
+		String[] values() {
+			return values.toArray(new String[values.size()]);
+		}
+	}
+}
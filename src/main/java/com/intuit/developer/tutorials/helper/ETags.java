@@ -0,0 +1,158 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.util.List;
+
+import com.intuit.ipp.data.ColData;
+import com.intuit.ipp.data.Column;
+import com.intuit.ipp.data.Header;
+import com.intuit.ipp.data.IntuitEntity;
+import com.intuit.ipp.data.Report;
+import com.intuit.ipp.data.ReportHeader;
+import com.intuit.ipp.data.Row;
+import com.intuit.ipp.data.Rows;
+import com.intuit.ipp.data.Summary;
+
+/**
+ * ETags of the responses of the read endpoints, so that repeated polling can be answered
+ * with a 304 Not Modified without serializing the payload again.
+ *
+ * Entities are tagged by realm, id, SyncToken and MetaData.LastUpdatedTime, which QBO
+ * changes on every update. Reports are tagged by a 64 bit hash of their content.
+ *
+ * Tags are strong, so a gzip compressed response carries the tag with a -gzip suffix,
+ * see {@link #gzipped(String)}. If-None-Match matches either variant.
+ */
+public final class ETags {
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+	private static final String GZIP_SUFFIX = "-gzip";
+
+	private ETags() {
+	}
+
+	/**
+	 * @param realmId
+	 * @param entity
+	 * @return strong ETag of the entity, quoted
+	 */
+	public static String of(String realmId, IntuitEntity entity) {
+		long hash = FNV_OFFSET;
+		hash = hash(hash, realmId);
+		hash = hash(hash, entity.getClass().getSimpleName());
+		hash = hash(hash, entity.getId());
+		hash = hash(hash, entity.getSyncToken());
+		if (entity.getMetaData() != null && entity.getMetaData().getLastUpdatedTime() != null) {
+			hash = hash(hash, Long.toString(entity.getMetaData().getLastUpdatedTime().getTime()));
+		}
+		return quote(hash);
+	}
+
+	/**
+	 * Hashes the header, columns and rows of the report. The time at which QBO generated
+	 * the report is left out, so that a report regenerated with the same content keeps its tag.
+	 *
+	 * @param report
+	 * @return strong ETag of the report, quoted
+	 */
+	public static String of(Report report) {
+		long hash = FNV_OFFSET;
+		ReportHeader header = report.getHeader();
+		if (header != null) {
+			hash = hash(hash, header.getReportName());
+			hash = hash(hash, header.getStartPeriod());
+			hash = hash(hash, header.getEndPeriod());
+			hash = hash(hash, header.getSummarizeColumnsBy());
+			hash = hash(hash, header.getCurrency());
+			hash = hash(hash, header.getCustomer());
+		}
+		if (report.getColumns() != null && report.getColumns().getColumn() != null) {
+			for (Column column : report.getColumns().getColumn()) {
+				hash = hash(hash, column.getColTitle());
+				hash = hash(hash, column.getColType());
+			}
+		}
+		return quote(hash(hash, report.getRows()));
+	}
+
+	private static long hash(long hash, Rows rows) {
+		if (rows == null || rows.getRow() == null) {
+			return hash(hash, (String) null);
+		}
+		for (Row row : rows.getRow()) {
+			hash = hash(hash, row.getType() != null ? row.getType().name() : null);
+			hash = hash(hash, row.getGroup());
+			Header header = row.getHeader();
+			hash = hash(hash, header != null ? header.getColData() : null);
+			hash = hash(hash, row.getColData());
+			if (row.getRows() != null) {
+				hash = hash(hash, row.getRows());
+			}
+			Summary summary = row.getSummary();
+			hash = hash(hash, summary != null ? summary.getColData() : null);
+		}
+		return hash;
+	}
+
+	private static long hash(long hash, List<ColData> cells) {
+		if (cells == null) {
+			return hash(hash, (String) null);
+		}
+		for (ColData cell : cells) {
+			hash = hash(hash, cell.getValue());
+			hash = hash(hash, cell.getId());
+		}
+		return hash;
+	}
+
+	/**
+	 * FNV-1a over the chars of the value followed by a separator, null hashes as the separator only
+	 */
+	private static long hash(long hash, String value) {
+		if (value != null) {
+			for (int i = 0; i < value.length(); i++) {
+				hash ^= value.charAt(i);
+				hash *= FNV_PRIME;
+			}
+		}
+		hash ^= 0xffff;
+		return hash * FNV_PRIME;
+	}
+
+	private static String quote(long hash) {
+		return "\"" + Long.toHexString(hash) + "\"";
+	}
+
+	/**
+	 * @param etag quoted strong ETag of the uncompressed representation
+	 * @return ETag of the gzip compressed representation
+	 */
+	public static String gzipped(String etag) {
+		if (etag.endsWith(GZIP_SUFFIX + "\"") || !etag.endsWith("\"")) {
+			return etag;
+		}
+		return etag.substring(0, etag.length() - 1) + GZIP_SUFFIX + "\"";
+	}
+
+	/**
+	 * @param ifNoneMatch If-None-Match header of the request, may be null
+	 * @param etag current ETag of the resource
+	 * @return whether the client already has the current representation
+	 */
+	public static boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			// If-None-Match uses the weak comparison
+			if (candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+			if (candidate.equals("*") || candidate.equals(etag) || candidate.equals(gzipped(etag))) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,78 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
+import org.apache.log4j.Logger;
+import org.json.JSONObject;
+
+import com.intuit.ipp.data.Error;
+import com.intuit.ipp.exception.FMSException;
+import com.intuit.ipp.exception.InvalidTokenException;
+
+/**
+ * Error responses of the endpoints for the exceptions of QBO calls
+ */
+public final class ErrorResponses {
+
+	private static final Logger logger = Logger.getLogger(ErrorResponses.class);
+
+	private static final String FAILED = "Failed";
+
+	private ErrorResponses() {
+	}
+
+	/**
+	 * Maps the exception of a, possibly asynchronous, QBO call to the error response
+	 *
+	 * @param e
+	 * @return
+	 * @throws RuntimeException if e is not an FMSException, unchecked ones are rethrown
+	 */
+	public static String of(Throwable e) {
+		if (e instanceof CompletionException && e.getCause() != null) {
+			e = e.getCause();
+		}
+		if (e instanceof InvalidTokenException) {
+			logger.warn("Invalid token :: " + e.getMessage());
+			return new JSONObject().put("response","InvalidToken - Refresh token and try again").toString();
+		}
+		if (e instanceof QBOUnavailableException) {
+			return unavailable((QBOUnavailableException) e);
+		}
+		if (e instanceof FMSException) {
+			return failed((FMSException) e, FAILED);
+		}
+		throw e instanceof RuntimeException ? (RuntimeException) e : new CompletionException(e);
+	}
+
+	/**
+	 * Response of a call that was not sent because the realm is isolated or over its limits
+	 *
+	 * @param e
+	 * @return
+	 */
+	public static String unavailable(QBOUnavailableException e) {
+		logger.warn("QBO unavailable" + (e.getRealmId() != null ? " for realm " + e.getRealmId() : "") + " :: " + e.getMessage());
+		return new JSONObject().put("response","Unavailable - " + e.getMessage() + ", try again later")
+				.put("retryAfterSeconds", e.getRetryAfterSeconds()).toString();
+	}
+
+	/**
+	 * Logs the errors of a failed call and returns the given failure response
+	 *
+	 * @param e
+	 * @param response
+	 * @return
+	 */
+	public static String failed(FMSException e, String response) {
+		// exceptions raised by the app or wrapping another one have no error list
+		List<Error> list = e.getErrorList();
+		if (list == null || list.isEmpty()) {
+			logger.error("Error while calling the API :: " + e.getMessage(), e.getCause());
+		} else {
+			list.forEach(error -> logger.error("Error while calling the API :: " + error.getMessage()));
+		}
+		return new JSONObject().put("response", response).toString();
+	}
+}
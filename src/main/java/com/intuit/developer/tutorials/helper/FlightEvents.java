@@ -0,0 +1,154 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import com.intuit.ipp.data.Error;
+import com.intuit.ipp.exception.FMSException;
+
+/**
+ * Java Flight Recorder events of the workflow steps, QBO calls, account lookups and report
+ * executions, to find the slow link of a request in a continuous recording
+ * (-XX:StartFlightRecording, JDK 8u262 or later).
+ *
+ * jdk.jfr is not part of the Java 8 API, the events are in the jfr source set
+ * (src/jfr/java) and loaded by reflection. Without them, or on a JVM without JFR, the
+ * events are not recorded.
+ *
+ * Events shorter than 10 ms are dropped by default, lower the threshold of the
+ * com.intuit.developer.tutorials.* events in the recording settings to see them all. The
+ * payload size is the {@link JsonSize} of the result and is only computed for recorded events.
+ */
+public abstract class FlightEvents {
+
+	public static final String SUCCESS = "success";
+
+	private static final Logger logger = Logger.getLogger(FlightEvents.class);
+
+	private static final String RECORDER_CLASS = "com.intuit.developer.tutorials.helper.JfrFlightEvents";
+
+	private static final FlightEvents RECORDER = load();
+
+	/**
+	 * An event in progress, started when it is created
+	 */
+	interface Event {
+
+		/**
+		 * Ends the event
+		 *
+		 * @return whether the event is recorded, its fields only need to be computed if so
+		 */
+		boolean finish();
+	}
+
+	interface WorkflowStep extends Event {
+		void record(String workflow, String step, String realm, String entityType, long payloadSize, String outcome);
+	}
+
+	interface QBOCallAttempt extends Event {
+		void record(String realm, String operation, String entityType, long payloadSize, String outcome);
+	}
+
+	interface AccountLookup extends Event {
+		void record(String realm, String accountType, String accountSubType, long payloadSize, String outcome);
+	}
+
+	interface ReportExecution extends Event {
+		void record(String realm, String report, String startDate, String endDate, long payloadSize, String outcome);
+	}
+
+	/**
+	 * @return the recorder of the events, one that records nothing when JFR is not available
+	 */
+	static FlightEvents get() {
+		return RECORDER;
+	}
+
+	abstract WorkflowStep workflowStep();
+
+	abstract QBOCallAttempt qboCallAttempt();
+
+	abstract AccountLookup accountLookup();
+
+	abstract ReportExecution reportExecution();
+
+	private static FlightEvents load() {
+		try {
+			return (FlightEvents) Class.forName(RECORDER_CLASS).newInstance();
+		} catch (ClassNotFoundException | LinkageError e) {
+			logger.info("Flight recorder events not available: " + e);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			logger.warn("Flight recorder events could not be loaded", e);
+		}
+		return new Disabled();
+	}
+
+	/**
+	 * @param entity
+	 * @return simple class name of the entity, null for null
+	 */
+	static String typeOf(Object entity) {
+		return entity == null ? null : entity.getClass().getSimpleName();
+	}
+
+	/**
+	 * @param t
+	 * @return code of the first error of the fault, or the exception type when it has none
+	 */
+	static String outcomeOf(Throwable t) {
+		if (t instanceof FMSException) {
+			List<Error> errors = ((FMSException) t).getErrorList();
+			if (errors != null && !errors.isEmpty() && errors.get(0).getCode() != null) {
+				return errors.get(0).getCode();
+			}
+		}
+		return t.getClass().getSimpleName();
+	}
+
+	/**
+	 * Records nothing: every event is the one instance of {@link Unrecorded}
+	 */
+	private static final class Disabled extends FlightEvents {
+
+		private static final Unrecorded EVENT = new Unrecorded();
+
+		@Override
+		WorkflowStep workflowStep() {
+			return EVENT;
+		}
+
+		@Override
+		QBOCallAttempt qboCallAttempt() {
+			return EVENT;
+		}
+
+		@Override
+		AccountLookup accountLookup() {
+			return EVENT;
+		}
+
+		@Override
+		ReportExecution reportExecution() {
+			return EVENT;
+		}
+	}
+
+	// the workflow step and report execution, and the call attempt and account lookup, share a signature
+	private static final class Unrecorded implements WorkflowStep, QBOCallAttempt, AccountLookup, ReportExecution {
+
+		@Override
+		public boolean finish() {
+			return false;
+		}
+
+		@Override
+		public void record(String a, String b, String c, String d, long payloadSize, String outcome) {
+		}
+
+		@Override
+		public void record(String a, String b, String c, long payloadSize, String outcome) {
+		}
+	}
+}
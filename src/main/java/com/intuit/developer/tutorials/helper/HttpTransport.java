@@ -0,0 +1,213 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContexts;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+
+/**
+ * Shared, explicitly managed HTTP connection pool for the OAuth hosts. The QBO API calls
+ * go through the SDK's own HTTP client, configured by {@link QBOContextFactory}.
+ *
+ * Connections are kept alive between calls (at most HttpKeepAliveSeconds, or less if the
+ * server says so), evicted after HttpPoolIdleSeconds without use, and limited per route.
+ * All TLS connections are created from one SSLContext, so its session cache lets new
+ * connections to a host resume the TLS session instead of doing a full handshake.
+ *
+ * The number of new connections, TLS handshakes, resumed sessions and the pool statistics
+ * are exposed for monitoring.
+ */
+@Service
+public class HttpTransport {
+
+	@Autowired
+	OAuth2PlatformClientFactory factory;
+
+	private static final Logger logger = Logger.getLogger(HttpTransport.class);
+
+	private final AtomicLong connects = new AtomicLong();
+	private final AtomicLong handshakes = new AtomicLong();
+	private final AtomicLong resumedSessions = new AtomicLong();
+	private final AtomicLong handshakeNanos = new AtomicLong();
+
+	private PoolingHttpClientConnectionManager connectionManager;
+	private CloseableHttpClient client;
+
+	@PostConstruct
+	public void init() {
+		SSLContext sslContext = SSLContexts.createDefault();
+		sslContext.getClientSessionContext().setSessionTimeout(intProperty("HttpTlsSessionTimeoutSeconds", 3600));
+
+		Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory> create()
+				.register("http", new CountingPlainSocketFactory())
+				.register("https", new CountingTlsSocketFactory(sslContext))
+				.build();
+		connectionManager = new PoolingHttpClientConnectionManager(registry);
+		connectionManager.setMaxTotal(intProperty("HttpPoolMaxTotal", 200));
+		connectionManager.setDefaultMaxPerRoute(intProperty("HttpPoolMaxPerRoute", 20));
+		// check connections that were idle for a while before reusing them
+		connectionManager.setValidateAfterInactivity(2000);
+
+		if (factory.getOAuth2Config() != null) {
+			setMaxPerRoute(factory.getBearerTokenEndpoint(), intProperty("HttpPoolMaxPerOAuthRoute", 20));
+		}
+
+		long keepAliveMillis = TimeUnit.SECONDS.toMillis(intProperty("HttpKeepAliveSeconds", 60));
+		ConnectionKeepAliveStrategy keepAlive = (response, context) -> {
+			long server = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+			return server > 0 ? Math.min(server, keepAliveMillis) : keepAliveMillis;
+		};
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(intProperty("HttpConnectTimeoutMillis", 5000))
+				.setSocketTimeout(intProperty("HttpSocketTimeoutMillis", 60000))
+				.setConnectionRequestTimeout(intProperty("HttpPoolWaitMillis", 10000))
+				.build();
+		client = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setKeepAliveStrategy(keepAlive)
+				.setDefaultRequestConfig(requestConfig)
+				.evictExpiredConnections()
+				.evictIdleConnections(intProperty("HttpPoolIdleSeconds", 30), TimeUnit.SECONDS)
+				.build();
+	}
+
+	@PreDestroy
+	public void destroy() throws IOException {
+		client.close();
+	}
+
+	private int intProperty(String name, int defaultValue) {
+		String value = factory.getPropertyValue(name);
+		return value == null ? defaultValue : Integer.parseInt(value.trim());
+	}
+
+	private void setMaxPerRoute(String url, int max) {
+		if (StringUtils.isEmpty(url)) {
+			return;
+		}
+		URI uri = URI.create(url);
+		int port = uri.getPort() > 0 ? uri.getPort() : "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+		connectionManager.setMaxPerRoute(new HttpRoute(new HttpHost(uri.getHost(), port, uri.getScheme())), max);
+		logger.info("max " + max + " pooled connections to " + uri.getHost() + ":" + port);
+	}
+
+	/**
+	 * @return the pooled client, shared by all callers; do not close it
+	 */
+	public CloseableHttpClient getClient() {
+		return client;
+	}
+
+	public PoolStats getTotalStats() {
+		return connectionManager.getTotalStats();
+	}
+
+	/**
+	 * @return pool statistics of each route the pool has connected to
+	 */
+	public Map<String, PoolStats> getRouteStats() {
+		Map<String, PoolStats> stats = new LinkedHashMap<String, PoolStats>();
+		for (HttpRoute route : connectionManager.getRoutes()) {
+			stats.put(route.getTargetHost().toHostString(), connectionManager.getStats(route));
+		}
+		return stats;
+	}
+
+	/**
+	 * @return number of connections opened
+	 */
+	public long getConnects() {
+		return connects.get();
+	}
+
+	/**
+	 * @return number of TLS handshakes, including the ones that resumed a session
+	 */
+	public long getHandshakes() {
+		return handshakes.get();
+	}
+
+	/**
+	 * @return number of TLS handshakes that resumed a cached session
+	 */
+	public long getResumedSessions() {
+		return resumedSessions.get();
+	}
+
+	/**
+	 * @return total time spent in TLS handshakes, in millis
+	 */
+	public long getHandshakeMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(handshakeNanos.get());
+	}
+
+	private final class CountingPlainSocketFactory extends PlainConnectionSocketFactory {
+
+		@Override
+		public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+				InetSocketAddress localAddress, HttpContext context) throws IOException {
+			connects.incrementAndGet();
+			return super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+		}
+	}
+
+	private final class CountingTlsSocketFactory extends SSLConnectionSocketFactory {
+
+		CountingTlsSocketFactory(SSLContext sslContext) {
+			super(sslContext, SSLConnectionSocketFactory.getDefaultHostnameVerifier());
+		}
+
+		@Override
+		public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+				InetSocketAddress localAddress, HttpContext context) throws IOException {
+			connects.incrementAndGet();
+			return super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+		}
+
+		@Override
+		public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context) throws IOException {
+			long startMillis = System.currentTimeMillis();
+			long start = System.nanoTime();
+			Socket layered = super.createLayeredSocket(socket, target, port, context);
+			handshakeNanos.addAndGet(System.nanoTime() - start);
+			handshakes.incrementAndGet();
+			// a resumed session was created by an earlier connection
+			if (layered instanceof SSLSocket && ((SSLSocket) layered).getSession().getCreationTime() < startMillis) {
+				resumedSessions.incrementAndGet();
+			}
+			return layered;
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.util.List;
+
+import com.intuit.ipp.core.Context;
+import com.intuit.ipp.core.IEntity;
+import com.intuit.ipp.exception.FMSException;
+import com.intuit.ipp.services.BatchOperation;
+import com.intuit.ipp.services.DataService;
+import com.intuit.ipp.services.QueryResult;
+
+/**
+ * DataService that sends the calls used by the application through the {@link QBOCallChain}
+ */
+class InterceptedDataService extends DataService {
+
+	private final String realmId;
+	private final QBOCallChain chain;
+
+	InterceptedDataService(Context context, String realmId, QBOCallChain chain) throws FMSException {
+		super(context);
+		this.realmId = realmId;
+		this.chain = chain;
+	}
+
+	private QBOCall call(String method, IEntity entity, boolean read) {
+		return new QBOCall(realmId, method, entity.getClass().getSimpleName(), entity, read);
+	}
+
+	@Override
+	public <T extends IEntity> T add(T entity) throws FMSException {
+		return chain.execute(call("add", entity, false), () -> super.add(entity));
+	}
+
+	@Override
+	public <T extends IEntity> T update(T entity) throws FMSException {
+		return chain.execute(call("update", entity, false), () -> super.update(entity));
+	}
+
+	@Override
+	public <T extends IEntity> T delete(T entity) throws FMSException {
+		return chain.execute(call("delete", entity, false), () -> super.delete(entity));
+	}
+
+	@Override
+	public <T extends IEntity> T voidRequest(T entity) throws FMSException {
+		return chain.execute(call("void", entity, false), () -> super.voidRequest(entity));
+	}
+
+	@Override
+	public <T extends IEntity> T findById(T entity) throws FMSException {
+		return chain.execute(call("findById", entity, true), () -> super.findById(entity));
+	}
+
+	@Override
+	public <T extends IEntity> List<T> findAll(T entity) throws FMSException {
+		return chain.execute(call("findAll", entity, true), () -> super.findAll(entity));
+	}
+
+	@Override
+	public <T extends IEntity> T sendEmail(T entity) throws FMSException {
+		return chain.execute(call("sendEmail", entity, false), () -> super.sendEmail(entity));
+	}
+
+	@Override
+	public <T extends IEntity> T sendEmail(T entity, String email) throws FMSException {
+		return chain.execute(call("sendEmail", entity, false), () -> super.sendEmail(entity, email));
+	}
+
+	@Override
+	public QueryResult executeQuery(String query) throws FMSException {
+		return chain.execute(new QBOCall(realmId, "executeQuery", null, query, true), () -> super.executeQuery(query));
+	}
+
+	@Override
+	public void executeBatch(BatchOperation batchOperation) throws FMSException {
+		// a batch may contain writes
+		chain.execute(new QBOCall(realmId, "executeBatch", null, null, false), () -> {
+			super.executeBatch(batchOperation);
+			return null;
+		});
+	}
+}
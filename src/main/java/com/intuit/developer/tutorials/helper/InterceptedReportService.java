@@ -0,0 +1,26 @@
+package com.intuit.developer.tutorials.helper;
+
+import com.intuit.ipp.core.Context;
+import com.intuit.ipp.data.Report;
+import com.intuit.ipp.exception.FMSException;
+import com.intuit.ipp.services.ReportService;
+
+/**
+ * ReportService that sends report executions through the {@link QBOCallChain}
+ */
+class InterceptedReportService extends ReportService {
+
+	private final String realmId;
+	private final QBOCallChain chain;
+
+	InterceptedReportService(Context context, String realmId, QBOCallChain chain) throws FMSException {
+		super(context);
+		this.realmId = realmId;
+		this.chain = chain;
+	}
+
+	@Override
+	public Report executeReport(String reportName) throws FMSException {
+		return chain.execute(new QBOCall(realmId, "executeReport", reportName, null, true), () -> super.executeReport(reportName));
+	}
+}
@@ -0,0 +1,22 @@
+package com.intuit.developer.tutorials.helper;
+
+/**
+ * Entity returned by a controller to be streamed as JSON to the response by
+ * {@link JsonResponseConverter}, instead of being serialized to a String first
+ */
+public final class JsonResponse {
+
+	private final Object entity;
+
+	private JsonResponse(Object entity) {
+		this.entity = entity;
+	}
+
+	public static JsonResponse of(Object entity) {
+		return new JsonResponse(entity);
+	}
+
+	public Object getEntity() {
+		return entity;
+	}
+}
@@ -0,0 +1,84 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * Streams {@link JsonResponse}s returned by the controllers to the servlet output stream
+ * through {@link JsonResponseWriter}, optionally gzip compressed.
+ *
+ * Spring Boot registers it ahead of the default message converters.
+ */
+@Component
+public class JsonResponseConverter extends AbstractHttpMessageConverter<JsonResponse> {
+
+	@Autowired
+	JsonResponseWriter writer;
+
+	public JsonResponseConverter() {
+		super(MediaType.APPLICATION_JSON_UTF8);
+	}
+
+	@Override
+	protected boolean supports(Class<?> clazz) {
+		return JsonResponse.class.isAssignableFrom(clazz);
+	}
+
+	@Override
+	public boolean canRead(Class<?> clazz, MediaType mediaType) {
+		return false;
+	}
+
+	@Override
+	protected JsonResponse readInternal(Class<? extends JsonResponse> clazz, HttpInputMessage inputMessage) {
+		throw new HttpMessageNotReadableException("JsonResponse is only written");
+	}
+
+	@Override
+	protected MediaType getDefaultContentType(JsonResponse response) {
+		return MediaType.APPLICATION_JSON_UTF8;
+	}
+
+	@Override
+	protected void writeInternal(JsonResponse response, HttpOutputMessage outputMessage) throws IOException {
+		if (writer.isGzipEnabled()) {
+			outputMessage.getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		}
+		if (writer.useGzip(acceptEncoding())) {
+			HttpHeaders headers = outputMessage.getHeaders();
+			headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+			// the compressed bytes differ from the identity ones, they need their own strong tag
+			if (headers.getETag() != null) {
+				headers.setETag(ETags.gzipped(headers.getETag()));
+			}
+			GZIPOutputStream gzip = new GZIPOutputStream(outputMessage.getBody(), 8192);
+			writer.write(response.getEntity(), gzip);
+			gzip.finish();
+		} else {
+			writer.write(response.getEntity(), outputMessage.getBody());
+		}
+	}
+
+	private static String acceptEncoding() {
+		RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+		if (attributes instanceof ServletRequestAttributes) {
+			HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+			return request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+		}
+		return null;
+	}
+}
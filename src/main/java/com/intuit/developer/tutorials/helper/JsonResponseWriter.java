@@ -0,0 +1,81 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+
+/**
+ * Writes entities as JSON straight to an output stream, with one shared ObjectMapper and
+ * an ObjectWriter per entity type that is created on first use and reused afterwards.
+ *
+ * Responses are gzip compressed when ResponseGzip is enabled and the client accepts it.
+ */
+@Service
+public class JsonResponseWriter {
+
+	@Autowired
+	OAuth2PlatformClientFactory factory;
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<Class<?>, ObjectWriter>();
+
+	private boolean gzip;
+
+	@PostConstruct
+	public void init() {
+		// the caller owns the stream, e.g. to finish the gzip stream after the entity
+		mapper.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+		gzip = Boolean.parseBoolean(factory.getPropertyValue("ResponseGzip"));
+	}
+
+	/**
+	 * @param type
+	 * @return the shared writer of the type
+	 */
+	public ObjectWriter writerFor(Class<?> type) {
+		ObjectWriter writer = writers.get(type);
+		if (writer == null) {
+			writer = mapper.writerFor(type);
+			ObjectWriter existing = writers.putIfAbsent(type, writer);
+			if (existing != null) {
+				writer = existing;
+			}
+		}
+		return writer;
+	}
+
+	/**
+	 * Serializes the entity to the stream, without closing it
+	 *
+	 * @param entity
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(Object entity, OutputStream out) throws IOException {
+		ObjectWriter writer = entity == null ? mapper.writer() : writerFor(entity.getClass());
+		writer.writeValue(out, entity);
+	}
+
+	public boolean isGzipEnabled() {
+		return gzip;
+	}
+
+	/**
+	 * @param acceptEncoding Accept-Encoding header of the request
+	 * @return whether the response to the request should be gzip compressed
+	 */
+	public boolean useGzip(String acceptEncoding) {
+		return gzip && acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+	}
+}
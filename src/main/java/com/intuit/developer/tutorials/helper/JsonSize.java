@@ -0,0 +1,55 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Size of the JSON form of the entities sent to and received from QBO. The SDK does not
+ * expose the HTTP messages, so this stands in for the payload size on the wire.
+ */
+public final class JsonSize {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+	private JsonSize() {
+	}
+
+	/**
+	 * @param payload entity, report, query result, or query string
+	 * @return size in bytes, 0 for null and -1 if it cannot be serialized
+	 */
+	public static long of(Object payload) {
+		if (payload == null) {
+			return 0;
+		}
+		if (payload instanceof String) {
+			return ((String) payload).getBytes(StandardCharsets.UTF_8).length;
+		}
+		CountingOutputStream out = new CountingOutputStream();
+		try {
+			MAPPER.writeValue(out, payload);
+			return out.count;
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	private static final class CountingOutputStream extends OutputStream {
+
+		private long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent latency histogram with log-linear buckets in the style of HdrHistogram:
+ * each power of two range of microseconds is split into 16 linear sub-buckets, which
+ * bounds the error of the reported values to 1/16 (6.25%) from 1 microsecond to
+ * about 2 minutes. Longer values are counted in the last bucket.
+ *
+ * {@link #record(long)} only does atomic increments on preallocated arrays, it does not
+ * allocate and does not lock.
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// highest power of two of the tracked microseconds, 2^27 us is about 134 s
+	private static final int MAX_EXPONENT = 27;
+	private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sumMicros = new AtomicLong();
+
+	/**
+	 * @param nanos
+	 */
+	public void record(long nanos) {
+		long micros = Math.max(0, nanos / 1000);
+		// the sum before the bucket, a snapshot reads them in the reverse order
+		sumMicros.addAndGet(micros);
+		count.incrementAndGet();
+		counts.incrementAndGet(index(micros));
+	}
+
+	static int index(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		if (exponent > MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		int shift = exponent - SUB_BUCKET_BITS;
+		int subBucket = (int) (micros >>> shift) & (SUB_BUCKETS - 1);
+		return (shift + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * @return highest value in micros counted in the bucket
+	 */
+	static long highestValue(int index) {
+		int shift = index / SUB_BUCKETS - 1;
+		int subBucket = index % SUB_BUCKETS;
+		if (shift < 0) {
+			return subBucket;
+		}
+		return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Copies the bucket counts and the sum, so that several values can be read from a consistent
+	 * state. The sum is read after the buckets: it holds every counted value, and at most the
+	 * values of the records still in progress.
+	 *
+	 * @return
+	 */
+	public Snapshot snapshot() {
+		long[] copy = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			copy[i] = counts.get(i);
+			total += copy[i];
+		}
+		return new Snapshot(copy, total, sumMicros.get());
+	}
+
+	/**
+	 * Bucket counts of a histogram at a point in time
+	 */
+	public static final class Snapshot {
+
+		private final long[] counts;
+		private final long total;
+		private final long sumMicros;
+
+		Snapshot(long[] counts, long total, long sumMicros) {
+			this.counts = counts;
+			this.total = total;
+			this.sumMicros = sumMicros;
+		}
+
+		public long getTotal() {
+			return total;
+		}
+
+		public double getSumSeconds() {
+			return sumMicros / (double) TimeUnit.SECONDS.toMicros(1);
+		}
+
+		/**
+		 * @param quantile between 0 and 1
+		 * @return value in seconds at the quantile, 0 if nothing was recorded
+		 */
+		public double valueAt(double quantile) {
+			if (total == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(quantile * total));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					return highestValue(i) / (double) TimeUnit.SECONDS.toMicros(1);
+				}
+			}
+			return highestValue(counts.length - 1) / (double) TimeUnit.SECONDS.toMicros(1);
+		}
+
+		/**
+		 * @param seconds
+		 * @return number of values that are at most the given seconds, within the precision of the buckets
+		 */
+		public long countAtOrBelow(double seconds) {
+			long micros = (long) (seconds * TimeUnit.SECONDS.toMicros(1));
+			long below = 0;
+			for (int i = 0; i < counts.length && highestValue(i) <= micros; i++) {
+				below += counts[i];
+			}
+			return below;
+		}
+	}
+}
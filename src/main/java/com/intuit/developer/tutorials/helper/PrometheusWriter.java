@@ -0,0 +1,84 @@
+package com.intuit.developer.tutorials.helper;
+
+/**
+ * Writes metrics in the Prometheus text exposition format (version 0.0.4). All samples of
+ * a metric family must be written right after its {@link #family} header.
+ */
+public final class PrometheusWriter {
+
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final StringBuilder out = new StringBuilder(8192);
+
+	/**
+	 * @param name
+	 * @param type counter, gauge, histogram or summary
+	 * @param help
+	 * @return
+	 */
+	public PrometheusWriter family(String name, String type, String help) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+		return this;
+	}
+
+	/**
+	 * @param name
+	 * @param value
+	 * @param labels label names and values, alternating
+	 * @return
+	 */
+	public PrometheusWriter sample(String name, double value, String... labels) {
+		out.append(name);
+		if (labels.length > 0) {
+			out.append('{');
+			for (int i = 0; i + 1 < labels.length; i += 2) {
+				if (i > 0) {
+					out.append(',');
+				}
+				out.append(labels[i]).append("=\"");
+				escape(labels[i + 1]);
+				out.append('"');
+			}
+			out.append('}');
+		}
+		out.append(' ');
+		if (Double.isInfinite(value)) {
+			out.append(value > 0 ? "+Inf" : "-Inf");
+		} else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			out.append((long) value);
+		} else {
+			out.append(value);
+		}
+		out.append('\n');
+		return this;
+	}
+
+	/**
+	 * Family with a single sample
+	 */
+	public PrometheusWriter metric(String name, String type, String help, double value) {
+		return family(name, type, help).sample(name, value);
+	}
+
+	private void escape(String value) {
+		if (value == null) {
+			return;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\\' || c == '"') {
+				out.append('\\').append(c);
+			} else if (c == '\n') {
+				out.append("\\n");
+			} else {
+				out.append(c);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return out.toString();
+	}
+}
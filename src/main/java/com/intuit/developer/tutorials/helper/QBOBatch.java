@@ -0,0 +1,188 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import com.intuit.ipp.core.IEntity;
+import com.intuit.ipp.data.Fault;
+import com.intuit.ipp.data.OperationEnum;
+import com.intuit.ipp.exception.FMSException;
+import com.intuit.ipp.services.BatchOperation;
+import com.intuit.ipp.services.DataService;
+import com.intuit.ipp.services.QueryResult;
+
+/**
+ * Queues independent creates, updates and queries and sends them to QBO through the
+ * batch endpoint, in chunks of at most {@link #MAX_BATCH_SIZE} operations per request.
+ *
+ * Each queued operation returns a {@link BatchResult} which is filled in by {@link #flush()}.
+ * A fault of a single operation only fails that operation's result.
+ */
+public class QBOBatch {
+
+	private static final Logger logger = Logger.getLogger(QBOBatch.class);
+
+	/**
+	 * Maximum number of operations QBO accepts in one batch request
+	 */
+	public static final int MAX_BATCH_SIZE = 30;
+
+	private final DataService service;
+	private final List<BatchResult<?>> pending = new ArrayList<BatchResult<?>>();
+	private int sequence;
+
+	QBOBatch(DataService service) {
+		this.service = service;
+	}
+
+	/**
+	 * Queues the creation of an entity
+	 *
+	 * @param entity
+	 * @return result holder of the created entity
+	 */
+	public <T extends IEntity> BatchResult<T> add(T entity) {
+		return enqueue(new BatchResult<T>(nextId(), entity, OperationEnum.CREATE, null));
+	}
+
+	/**
+	 * Queues the update of an entity
+	 *
+	 * @param entity
+	 * @return result holder of the updated entity
+	 */
+	public <T extends IEntity> BatchResult<T> update(T entity) {
+		return enqueue(new BatchResult<T>(nextId(), entity, OperationEnum.UPDATE, null));
+	}
+
+	/**
+	 * Queues a query
+	 *
+	 * @param sql
+	 * @return result holder of the query result
+	 */
+	public BatchResult<QueryResult> query(String sql) {
+		return enqueue(new BatchResult<QueryResult>(nextId(), null, OperationEnum.QUERY, sql));
+	}
+
+	public int size() {
+		return pending.size();
+	}
+
+	private String nextId() {
+		return "bId" + (++sequence);
+	}
+
+	private <T> BatchResult<T> enqueue(BatchResult<T> result) {
+		pending.add(result);
+		return result;
+	}
+
+	/**
+	 * Sends all queued operations. Operations are sent in chunks of at most
+	 * {@link #MAX_BATCH_SIZE}, one HTTP exchange per chunk.
+	 *
+	 * When a chunk fails as a whole the later chunks are not sent, what failed the request
+	 * (throttling, an expired token, an outage) would most likely fail them too.
+	 *
+	 * @throws FMSException if a batch request as a whole failed; the results of its
+	 * operations carry the same exception, the results of the chunks that were not sent
+	 * an exception saying so, caused by it
+	 */
+	public void flush() throws FMSException {
+		List<BatchResult<?>> queued = new ArrayList<BatchResult<?>>(pending);
+		pending.clear();
+		for (int from = 0; from < queued.size(); from += MAX_BATCH_SIZE) {
+			int to = Math.min(from + MAX_BATCH_SIZE, queued.size());
+			List<BatchResult<?>> chunk = queued.subList(from, to);
+			BatchOperation batchOperation = new BatchOperation();
+			for (BatchResult<?> result : chunk) {
+				if (result.operation == OperationEnum.QUERY) {
+					batchOperation.addQuery(result.query, result.bId);
+				} else {
+					batchOperation.addEntity(result.entity, result.operation, result.bId);
+				}
+			}
+			try {
+				service.executeBatch(batchOperation);
+			} catch (FMSException e) {
+				for (BatchResult<?> result : chunk) {
+					result.exception = e;
+				}
+				for (BatchResult<?> result : queued.subList(to, queued.size())) {
+					result.exception = new FMSException("Batch operation " + result.bId + " was not sent, an earlier batch request failed", e);
+				}
+				throw e;
+			}
+			for (BatchResult<?> result : chunk) {
+				result.complete(batchOperation);
+			}
+			logger.debug("executed batch of " + chunk.size() + " operations");
+		}
+	}
+
+	/**
+	 * Result of a single batched operation
+	 *
+	 * @param <T> entity type, or QueryResult for queries
+	 */
+	public static final class BatchResult<T> {
+
+		private final String bId;
+		private final IEntity entity;
+		private final OperationEnum operation;
+		private final String query;
+
+		private T value;
+		private Fault fault;
+		private FMSException exception;
+		private boolean done;
+
+		BatchResult(String bId, IEntity entity, OperationEnum operation, String query) {
+			this.bId = bId;
+			this.entity = entity;
+			this.operation = operation;
+			this.query = query;
+		}
+
+		@SuppressWarnings("unchecked")
+		void complete(BatchOperation batchOperation) {
+			done = true;
+			if (batchOperation.isFault(bId)) {
+				fault = batchOperation.getFault(bId);
+			} else if (operation == OperationEnum.QUERY) {
+				value = (T) batchOperation.getQueryResponse(bId);
+			} else {
+				value = (T) batchOperation.getEntity(bId);
+			}
+		}
+
+		/**
+		 * @return the entity or query result returned by QBO
+		 * @throws FMSException with the errors of the operation's fault, or the exception
+		 * of the batch request
+		 */
+		public T get() throws FMSException {
+			if (exception != null) {
+				throw exception;
+			}
+			if (!done) {
+				throw new FMSException("Batch operation " + bId + " has not been flushed");
+			}
+			if (fault != null) {
+				throw new FMSException(fault.getError());
+			}
+			return value;
+		}
+
+		public boolean isFault() {
+			return fault != null;
+		}
+
+		public Fault getFault() {
+			return fault;
+		}
+	}
+}
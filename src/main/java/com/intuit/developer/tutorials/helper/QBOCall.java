@@ -0,0 +1,82 @@
+package com.intuit.developer.tutorials.helper;
+
+import com.intuit.ipp.exception.FMSException;
+
+/**
+ * A single call to the QBO API made through a DataService or ReportService of
+ * {@link QBOServiceHelper}, as seen by the {@link QBOCallInterceptor}s.
+ */
+public final class QBOCall {
+
+	/**
+	 * The SDK call itself, or the remaining interceptors of the chain
+	 */
+	@FunctionalInterface
+	public interface Invocation<T> {
+		T proceed() throws FMSException;
+	}
+
+	private final String realmId;
+	private final String method;
+	private final String entity;
+	private final String operation;
+	private final Object payload;
+	private final boolean read;
+
+	/**
+	 * @param realmId
+	 * @param method SDK method, e.g. add or executeReport
+	 * @param entity entity type or report name, null for queries and batches
+	 * @param payload entity or query sent to QBO, null if there is none
+	 * @param read whether the call only reads data
+	 */
+	QBOCall(String realmId, String method, String entity, Object payload, boolean read) {
+		this.realmId = realmId;
+		this.method = method;
+		this.entity = entity;
+		this.operation = entity == null ? method : method + ":" + entity;
+		this.payload = payload;
+		this.read = read;
+	}
+
+	public String getRealmId() {
+		return realmId;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return entity type or report name, null for queries and batches
+	 */
+	public String getEntity() {
+		return entity;
+	}
+
+	/**
+	 * @return SDK method and entity, e.g. add:Invoice, executeQuery or executeReport:ProfitAndLoss
+	 */
+	public String getOperation() {
+		return operation;
+	}
+
+	/**
+	 * @return entity or query sent to QBO, null if there is none
+	 */
+	public Object getPayload() {
+		return payload;
+	}
+
+	/**
+	 * @return whether the call only reads data, so that it can safely be sent again
+	 */
+	public boolean isRead() {
+		return read;
+	}
+
+	@Override
+	public String toString() {
+		return operation + "[realm=" + realmId + "]";
+	}
+}
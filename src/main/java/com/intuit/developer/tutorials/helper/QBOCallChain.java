@@ -0,0 +1,44 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.intuit.ipp.exception.FMSException;
+
+/**
+ * Applies the {@link QBOCallInterceptor} beans, in their order, to the calls of the
+ * DataService and ReportService instances handed out by {@link QBOServiceHelper}.
+ */
+@Service
+public class QBOCallChain {
+
+	private List<QBOCallInterceptor> interceptors = new ArrayList<QBOCallInterceptor>();
+
+	/**
+	 * @param interceptors sorted by Spring according to their Order
+	 */
+	@Autowired(required = false)
+	public void setInterceptors(List<QBOCallInterceptor> interceptors) {
+		this.interceptors = new ArrayList<QBOCallInterceptor>(interceptors);
+	}
+
+	/**
+	 * @param call
+	 * @param target the SDK call
+	 * @return
+	 * @throws FMSException
+	 */
+	public <T> T execute(QBOCall call, QBOCall.Invocation<T> target) throws FMSException {
+		return proceed(0, call, target);
+	}
+
+	private <T> T proceed(int index, QBOCall call, QBOCall.Invocation<T> target) throws FMSException {
+		if (index == interceptors.size()) {
+			return target.proceed();
+		}
+		return interceptors.get(index).intercept(call, () -> proceed(index + 1, call, target));
+	}
+}
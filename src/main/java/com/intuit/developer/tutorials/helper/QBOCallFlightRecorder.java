@@ -0,0 +1,32 @@
+package com.intuit.developer.tutorials.helper;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import com.intuit.ipp.exception.FMSException;
+
+/**
+ * Emits a {@link FlightEvents.QBOCallAttempt} for every attempt of a QBO call
+ */
+@Service
+@Order(360)
+public class QBOCallFlightRecorder implements QBOCallInterceptor {
+
+	@Override
+	public <T> T intercept(QBOCall call, QBOCall.Invocation<T> next) throws FMSException {
+		FlightEvents.QBOCallAttempt event = FlightEvents.get().qboCallAttempt();
+		T result = null;
+		String outcome = FlightEvents.SUCCESS;
+		try {
+			result = next.proceed();
+			return result;
+		} catch (FMSException | RuntimeException e) {
+			outcome = FlightEvents.outcomeOf(e);
+			throw e;
+		} finally {
+			if (event.finish()) {
+				event.record(call.getRealmId(), call.getMethod(), call.getEntity(), JsonSize.of(result), outcome);
+			}
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package com.intuit.developer.tutorials.helper;
+
+import com.intuit.ipp.exception.FMSException;
+
+/**
+ * Wraps every QBO API call made through {@link QBOServiceHelper}. Interceptors are Spring
+ * beans, applied by {@link QBOCallChain} in {@link org.springframework.core.annotation.Order}
+ * (lowest first, outermost).
+ */
+public interface QBOCallInterceptor {
+
+	/**
+	 * @param call
+	 * @param next the rest of the chain, may be invoked zero, one or several times
+	 * @return result of the call
+	 * @throws FMSException
+	 */
+	<T> T intercept(QBOCall call, QBOCall.Invocation<T> next) throws FMSException;
+}
@@ -0,0 +1,136 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+import com.intuit.ipp.data.Error;
+import com.intuit.ipp.exception.FMSException;
+
+/**
+ * Latency histograms and error counters of the QBO calls, by realm, operation (SDK method)
+ * and entity type or report name.
+ *
+ * Every attempt is recorded, after the throttling waits of the {@link RealmGovernor}, so
+ * throttled attempts that are retried show up in the error counters. Errors are counted
+ * by the code of the first error of the fault, or the exception type when it has none.
+ *
+ * Only the first MetricsMaxRealms realms get their own label, the others are recorded
+ * under realm "other", to keep the number of series bounded. Recording the latency of a
+ * call does not allocate once its series exists.
+ */
+@Service
+@Order(350)
+public class QBOCallMetrics implements QBOCallInterceptor {
+
+	public static final String OTHER_REALM = "other";
+
+	private static final String NO_ENTITY = "";
+
+	@Autowired
+	OAuth2PlatformClientFactory factory;
+
+	// realm -> operation -> entity
+	private final ConcurrentMap<String, ConcurrentMap<String, ConcurrentMap<String, Series>>> series =
+			new ConcurrentHashMap<String, ConcurrentMap<String, ConcurrentMap<String, Series>>>();
+
+	private int maxRealms;
+
+	@PostConstruct
+	public void init() {
+		String value = factory.getPropertyValue("MetricsMaxRealms");
+		maxRealms = value == null ? 100 : Integer.parseInt(value.trim());
+	}
+
+	@Override
+	public <T> T intercept(QBOCall call, QBOCall.Invocation<T> next) throws FMSException {
+		Series calls = series(call);
+		long start = System.nanoTime();
+		try {
+			return next.proceed();
+		} catch (FMSException e) {
+			calls.error(errorCode(e));
+			throw e;
+		} finally {
+			calls.latency.record(System.nanoTime() - start);
+		}
+	}
+
+	private Series series(QBOCall call) {
+		ConcurrentMap<String, ConcurrentMap<String, Series>> operations = series.get(call.getRealmId());
+		if (operations == null) {
+			String realm = series.size() < maxRealms ? call.getRealmId() : OTHER_REALM;
+			operations = series.computeIfAbsent(realm, r -> new ConcurrentHashMap<String, ConcurrentMap<String, Series>>());
+		}
+		ConcurrentMap<String, Series> entities = operations.get(call.getMethod());
+		if (entities == null) {
+			entities = operations.computeIfAbsent(call.getMethod(), m -> new ConcurrentHashMap<String, Series>());
+		}
+		String entity = call.getEntity() == null ? NO_ENTITY : call.getEntity();
+		Series calls = entities.get(entity);
+		if (calls == null) {
+			calls = entities.computeIfAbsent(entity, e -> new Series());
+		}
+		return calls;
+	}
+
+	private static String errorCode(FMSException e) {
+		List<Error> errors = e.getErrorList();
+		if (errors != null && !errors.isEmpty() && errors.get(0).getCode() != null) {
+			return errors.get(0).getCode();
+		}
+		return e.getClass().getSimpleName();
+	}
+
+	/**
+	 * Visits every series, in no particular order
+	 *
+	 * @param visitor
+	 */
+	public void forEach(SeriesVisitor visitor) {
+		series.forEach((realm, operations) -> operations.forEach((operation, entities) -> entities
+				.forEach((entity, calls) -> visitor.visit(realm, operation, entity, calls))));
+	}
+
+	@FunctionalInterface
+	public interface SeriesVisitor {
+		void visit(String realm, String operation, String entity, Series calls);
+	}
+
+	/**
+	 * Latency and errors of the calls of one realm, operation and entity
+	 */
+	public static final class Series {
+
+		private final LatencyHistogram latency = new LatencyHistogram();
+		private final ConcurrentMap<String, AtomicLong> errors = new ConcurrentHashMap<String, AtomicLong>();
+
+		void error(String code) {
+			AtomicLong counter = errors.get(code);
+			if (counter == null) {
+				counter = errors.computeIfAbsent(code, c -> new AtomicLong());
+			}
+			counter.incrementAndGet();
+		}
+
+		public LatencyHistogram getLatency() {
+			return latency;
+		}
+
+		/**
+		 * @return number of failed calls by error code
+		 */
+		public Map<String, AtomicLong> getErrors() {
+			return errors;
+		}
+	}
+}
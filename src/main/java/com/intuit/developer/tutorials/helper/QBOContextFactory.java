@@ -0,0 +1,191 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+import com.intuit.ipp.core.Context;
+import com.intuit.ipp.core.ServiceType;
+import com.intuit.ipp.exception.FMSException;
+import com.intuit.ipp.security.OAuth2Authorizer;
+import com.intuit.ipp.util.Config;
+import com.intuit.oauth2.config.Environment;
+
+/**
+ * Creates QBO Contexts that carry the settings of the environment (sandbox or production)
+ * the realm lives in.
+ *
+ * The SDK resolves the API base url from its per-thread Config when a call is made, so
+ * instead of writing Config on every request the settings are applied to the calling
+ * thread only when they differ from what that thread used last. The settings themselves
+ * are immutable, so realms of both environments can be served concurrently from one node.
+ * The settings also carry the HTTP timeouts shared with {@link HttpTransport}.
+ */
+@Service
+public class QBOContextFactory {
+
+	@Autowired
+	OAuth2PlatformClientFactory factory;
+
+	private static final Logger logger = Logger.getLogger(QBOContextFactory.class);
+
+	private static final String SANDBOX_HOST = "https://sandbox-quickbooks.api.intuit.com";
+	private static final String PRODUCTION_HOST = "https://quickbooks.api.intuit.com";
+
+	// last settings applied to the SDK Config of the current thread
+	private static final ThreadLocal<Settings> applied = new ThreadLocal<Settings>();
+
+	private static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+	private static final int DEFAULT_SOCKET_TIMEOUT_MILLIS = 60000;
+
+	private Map<Environment, Settings> settings;
+	private Environment defaultEnvironment;
+
+	private final Map<String, Environment> realmEnvironments = new ConcurrentHashMap<String, Environment>();
+
+	@PostConstruct
+	public void init() {
+		String host = factory.getPropertyValue("IntuitAccountingAPIHost");
+		String env = factory.getPropertyValue("IntuitEnvironment");
+		if (StringUtils.isNotEmpty(env)) {
+			defaultEnvironment = Environment.valueOf(env.trim().toUpperCase());
+		} else {
+			defaultEnvironment = (host == null || host.contains("sandbox")) ? Environment.SANDBOX : Environment.PRODUCTION;
+		}
+
+		int connectTimeout = intProperty("HttpConnectTimeoutMillis", DEFAULT_CONNECT_TIMEOUT_MILLIS);
+		int socketTimeout = intProperty("HttpSocketTimeoutMillis", DEFAULT_SOCKET_TIMEOUT_MILLIS);
+		Map<Environment, Settings> map = new EnumMap<Environment, Settings>(Environment.class);
+		map.put(Environment.SANDBOX, new Settings(Environment.SANDBOX,
+				hostFor(Environment.SANDBOX, "IntuitAccountingAPIHost.sandbox", SANDBOX_HOST, host), connectTimeout, socketTimeout));
+		map.put(Environment.PRODUCTION, new Settings(Environment.PRODUCTION,
+				hostFor(Environment.PRODUCTION, "IntuitAccountingAPIHost.production", PRODUCTION_HOST, host), connectTimeout, socketTimeout));
+		settings = Collections.unmodifiableMap(map);
+		logger.info("default QBO environment " + defaultEnvironment + " -> " + settings.get(defaultEnvironment).getBaseUrl());
+	}
+
+	private int intProperty(String name, int defaultValue) {
+		String value = factory.getPropertyValue(name);
+		return value == null ? defaultValue : Integer.parseInt(value.trim());
+	}
+
+	private String hostFor(Environment environment, String property, String fallback, String defaultHost) {
+		String host = factory.getPropertyValue(property);
+		if (StringUtils.isNotEmpty(host)) {
+			return host;
+		}
+		// IntuitAccountingAPIHost keeps configuring the default environment
+		if (environment == defaultEnvironment && StringUtils.isNotEmpty(defaultHost)) {
+			return defaultHost;
+		}
+		return fallback;
+	}
+
+	/**
+	 * Records the environment a realm was connected in
+	 *
+	 * @param realmId
+	 * @param environment
+	 */
+	public void registerRealm(String realmId, Environment environment) {
+		realmEnvironments.put(realmId, environment);
+	}
+
+	/**
+	 * Environment of the realm, falls back to the configured default environment
+	 *
+	 * @param realmId
+	 * @return
+	 */
+	public Environment environmentOf(String realmId) {
+		Environment environment = realmEnvironments.get(realmId);
+		return environment != null ? environment : defaultEnvironment;
+	}
+
+	public Environment getDefaultEnvironment() {
+		return defaultEnvironment;
+	}
+
+	public Settings settingsFor(Environment environment) {
+		return settings.get(environment);
+	}
+
+	/**
+	 * @return the settings last applied to the current thread, or null if none were applied
+	 */
+	public static Settings currentSettings() {
+		return applied.get();
+	}
+
+	/**
+	 * Creates a Context for the realm, the environment specific settings are kept
+	 * next to it (see {@link Settings#apply()})
+	 *
+	 * @param realmId
+	 * @param authorizer
+	 * @param minorVersion minor version to pin, or null for the SDK default
+	 * @return
+	 * @throws FMSException
+	 */
+	public Context createContext(String realmId, OAuth2Authorizer authorizer, String minorVersion) throws FMSException {
+		Context context = new Context(authorizer, ServiceType.QBO, realmId);
+		if (minorVersion != null) {
+			context.setMinorVersion(minorVersion);
+		}
+		return context;
+	}
+
+	/**
+	 * Immutable SDK settings of one environment
+	 */
+	public static final class Settings {
+
+		private final Environment environment;
+		private final String host;
+		private final String baseUrl;
+		private final String connectTimeout;
+		private final String requestTimeout;
+
+		Settings(Environment environment, String host, int connectTimeoutMillis, int requestTimeoutMillis) {
+			this.environment = environment;
+			this.host = host;
+			this.baseUrl = host + "/v3/company";
+			this.connectTimeout = Integer.toString(connectTimeoutMillis);
+			this.requestTimeout = Integer.toString(requestTimeoutMillis);
+		}
+
+		public Environment getEnvironment() {
+			return environment;
+		}
+
+		public String getHost() {
+			return host;
+		}
+
+		public String getBaseUrl() {
+			return baseUrl;
+		}
+
+		/**
+		 * Makes the SDK calls issued from the current thread use these settings.
+		 * Config is only written when the thread last used a different environment.
+		 */
+		public void apply() {
+			if (applied.get() != this) {
+				Config.setProperty(Config.BASE_URL_QBO, baseUrl);
+				Config.setProperty(Config.TIMEOUT_CONNECTION, connectTimeout);
+				Config.setProperty(Config.TIMEOUT_REQUEST, requestTimeout);
+				applied.set(this);
+			}
+		}
+	}
+}
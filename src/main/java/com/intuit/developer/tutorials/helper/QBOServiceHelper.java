@@ -10,18 +10,15 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+import com.intuit.developer.tutorials.client.TokenLifecycleService;
 import com.intuit.ipp.core.Context;
 import com.intuit.ipp.core.IEntity;
-import com.intuit.ipp.core.ServiceType;
 import com.intuit.ipp.data.Error;
 import com.intuit.ipp.exception.FMSException;
 import com.intuit.ipp.exception.InvalidTokenException;
-import com.intuit.ipp.security.OAuth2Authorizer;
 import com.intuit.ipp.services.DataService;
 import com.intuit.ipp.services.QueryResult;
 import com.intuit.ipp.services.ReportService;
-import com.intuit.ipp.util.Config;
-import com.intuit.oauth2.client.OAuth2PlatformClient;
 import com.intuit.oauth2.data.BearerTokenResponse;
 import com.intuit.oauth2.exception.OAuthException;
 
@@ -31,33 +28,49 @@ public class QBOServiceHelper {
 	@Autowired
 	OAuth2PlatformClientFactory factory;
 	
+	@Autowired
+	QBOServicePool pool;
+	
+	@Autowired
+	QBOContextFactory contextFactory;
+	
+	@Autowired
+	TokenLifecycleService tokenLifecycle;
+	
+	@Autowired
+	QBOCallChain callChain;
+	
+	@Autowired
+	AdaptiveConcurrencyLimit concurrencyLimit;
+	
 	private static final Logger logger = Logger.getLogger(QBOServiceHelper.class);
+	
+	private static final long QUERY_LIMIT_WAIT_MILLIS = 10000;
 
 	public DataService getDataService(String realmId, String accessToken) throws FMSException {
 		
-    	Context context = prepareContext(realmId, accessToken);
-
-		// create dataservice
-		return new DataService(context);
+		// reuse the pooled dataservice for this realm
+		return acquire(realmId, accessToken, null).getDataService();
 	}
 
-	private Context prepareContext(String realmId, String accessToken) throws FMSException {
-		String url = factory.getPropertyValue("IntuitAccountingAPIHost") + "/v3/company";
-
-		Config.setProperty(Config.BASE_URL_QBO, url);
-		//create oauth object
-		OAuth2Authorizer oauth = new OAuth2Authorizer(accessToken);
-		//create context
-		Context context = new Context(oauth, ServiceType.QBO, realmId);
-		return context;
+	private QBOServicePool.Entry acquire(String realmId, String accessToken, String minorVersion) throws FMSException {
+		//the session token may be older than the one refreshed in the background
+		accessToken = tokenLifecycle.getAccessToken(realmId, accessToken);
+		
+		//get or create the pooled context for this realm in its environment
+		QBOServicePool.Entry entry = pool.acquire(realmId, accessToken, minorVersion, contextFactory.environmentOf(realmId));
+		
+		//point the SDK calls of this thread to the realm's environment
+		entry.getSettings().apply();
+		return entry;
 	}
 	
 	public ReportService getReportService(String realmId, String accessToken) throws FMSException {
 		
-    	Context context = prepareContext(realmId, accessToken);
-
-		// create dataservice
-		return new ReportService(context);
+		// ReportService carries the per-report query parameters (dates, summarize_column_by..)
+		// so it is not shared, only the pooled context is
+		Context context = acquire(realmId, accessToken, null).getContext();
+		return new InterceptedReportService(context, realmId, callChain);
 	}
 	
 	/**
@@ -73,11 +86,19 @@ public class QBOServiceHelper {
 	 */
 	public DataService getDataService(String realmId, String accessToken, String minorVersion) throws FMSException {
 
-		Context context = prepareContext(realmId, accessToken);
-		context.setMinorVersion(minorVersion);
+		// minor version is part of the pool key, so this gets its own pooled context
+		return acquire(realmId, accessToken, minorVersion).getDataService();
+	}
 
-		// create dataservice
-		return new DataService(context);
+	/**
+	 * Starts a batch of independent operations against the realm of the given DataService.
+	 * Operations are sent when {@link QBOBatch#flush()} is called.
+	 *
+	 * @param service
+	 * @return
+	 */
+	public QBOBatch newBatch(DataService service) {
+		return new QBOBatch(service);
 	}
 
 	
@@ -102,9 +123,12 @@ public class QBOServiceHelper {
     		DataService service = getDataService(realmId, accessToken);
 			
 			// get data
-			QueryResult queryResult = service.executeQuery(sql);
+			QueryResult queryResult = limitedQuery(service, realmId, sql);
 			return queryResult.getEntities();
 		}
+	        catch (QBOUnavailableException e) {
+	        	logger.warn("QBO unavailable for realm " + realmId + " :: " + e.getMessage());
+	        }
 	        /*
 	         * Handle 401 status code - 
 	         * If a 401 response is received, refresh tokens should be used to get a new access token,
@@ -115,20 +139,20 @@ public class QBOServiceHelper {
 				
 				//refresh tokens
 	        	logger.info("received 401 during companyinfo call, refreshing tokens now");
-	        	OAuth2PlatformClient client  = factory.getOAuth2PlatformClient();
 	        	String refreshToken = (String)session.getAttribute("refresh_token");
 	        	
 				try {
-					BearerTokenResponse bearerTokenResponse = client.refreshToken(refreshToken);
+					//concurrent 401s of the realm share a single refresh
+					BearerTokenResponse bearerTokenResponse = tokenLifecycle.refresh(realmId, refreshToken);
 					session.setAttribute("access_token", bearerTokenResponse.getAccessToken());
 		            session.setAttribute("refresh_token", bearerTokenResponse.getRefreshToken());
 		            
 		            //call company info again using new tokens
 		            logger.info("calling companyinfo using new tokens");
-		            DataService service = getDataService(realmId, accessToken);
+		            DataService service = getDataService(realmId, bearerTokenResponse.getAccessToken());
 					
 					// get data
-					QueryResult queryResult = service.executeQuery(sql);
+					QueryResult queryResult = limitedQuery(service, realmId, sql);
 					return queryResult.getEntities();
 					 
 				} catch (OAuthException e1) {
@@ -144,4 +168,30 @@ public class QBOServiceHelper {
 			}
 		return null;
     }
+    
+    /**
+     * Runs the query within the adaptive concurrency limit of the outbound QBO traffic,
+     * queryData runs on the request thread instead of the outbound pool
+     * 
+     * @param service
+     * @param realmId
+     * @param sql
+     * @return
+     * @throws FMSException
+     */
+    private QueryResult limitedQuery(DataService service, String realmId, String sql) throws FMSException {
+    	try {
+    		if (!concurrencyLimit.acquire(QUERY_LIMIT_WAIT_MILLIS)) {
+    			throw new QBOUnavailableException("Outbound QBO concurrency limit reached", realmId, QUERY_LIMIT_WAIT_MILLIS);
+    		}
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		throw new FMSException("Interrupted while waiting to call QBO", e);
+    	}
+    	try {
+    		return service.executeQuery(sql);
+    	} finally {
+    		concurrencyLimit.release();
+    	}
+    }
 }
@@ -0,0 +1,223 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+import com.intuit.ipp.core.Context;
+import com.intuit.ipp.exception.FMSException;
+import com.intuit.ipp.security.OAuth2Authorizer;
+import com.intuit.ipp.services.DataService;
+import com.intuit.oauth2.config.Environment;
+
+/**
+ * Bounded pool of ready-to-use QBO service graphs (authorizer, Context and DataService)
+ * keyed by realm, minor version and environment. The pooled DataService sends its calls
+ * through the {@link QBOCallChain}.
+ *
+ * Entries are evicted in least-recently-used order once the pool is full. When the
+ * access token of a realm rotates the pooled authorizer is rebound in place instead
+ * of building a new graph.
+ */
+@Service
+public class QBOServicePool {
+
+	@Autowired
+	OAuth2PlatformClientFactory factory;
+
+	@Autowired
+	QBOContextFactory contextFactory;
+
+	@Autowired
+	QBOCallChain callChain;
+
+	private static final Logger logger = Logger.getLogger(QBOServicePool.class);
+
+	private static final int DEFAULT_MAX_SIZE = 1000;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	private int maxSize = DEFAULT_MAX_SIZE;
+
+	private Map<Key, Entry> entries;
+
+	@PostConstruct
+	public void init() {
+		String size = factory.getPropertyValue("QBOServicePoolMaxSize");
+		if (size != null) {
+			maxSize = Integer.parseInt(size.trim());
+		}
+		entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, QBOServicePool.Entry> eldest) {
+				if (size() > maxSize) {
+					evictions.incrementAndGet();
+					logger.debug("evicting pooled QBO services for realm " + eldest.getKey().realmId);
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns the pooled service graph for the given key, creating it on first use
+	 * and rebinding the access token if it has changed since the last lookup.
+	 *
+	 * @param realmId
+	 * @param accessToken
+	 * @param minorVersion minor version to pin, or null for the SDK default
+	 * @param environment
+	 * @return
+	 * @throws FMSException
+	 */
+	public Entry acquire(String realmId, String accessToken, String minorVersion, Environment environment) throws FMSException {
+		Key key = new Key(realmId, minorVersion, environment);
+		Entry entry;
+		synchronized (entries) {
+			entry = entries.get(key);
+		}
+		if (entry != null) {
+			hits.incrementAndGet();
+			entry.rebind(accessToken);
+			return entry;
+		}
+		misses.incrementAndGet();
+		OAuth2Authorizer authorizer = new OAuth2Authorizer(accessToken);
+		Context context = contextFactory.createContext(realmId, authorizer, minorVersion);
+		Entry created = new Entry(authorizer, context, new InterceptedDataService(context, realmId, callChain),
+				contextFactory.settingsFor(environment), accessToken);
+		synchronized (entries) {
+			entry = entries.get(key);
+			if (entry == null) {
+				entries.put(key, created);
+				return created;
+			}
+		}
+		// another request populated the key first, keep a single graph per key
+		entry.rebind(accessToken);
+		return entry;
+	}
+
+	/**
+	 * Drops every pooled graph of the given realm, e.g. after its tokens were revoked
+	 *
+	 * @param realmId
+	 */
+	public void evictRealm(String realmId) {
+		synchronized (entries) {
+			Iterator<Key> it = entries.keySet().iterator();
+			while (it.hasNext()) {
+				if (it.next().realmId.equals(realmId)) {
+					it.remove();
+					evictions.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Pooled service graph for a single key
+	 */
+	public static class Entry {
+
+		private final OAuth2Authorizer authorizer;
+		private final Context context;
+		private final DataService dataService;
+		private final QBOContextFactory.Settings settings;
+		private volatile String accessToken;
+
+		Entry(OAuth2Authorizer authorizer, Context context, DataService dataService, QBOContextFactory.Settings settings, String accessToken) {
+			this.authorizer = authorizer;
+			this.context = context;
+			this.dataService = dataService;
+			this.settings = settings;
+			this.accessToken = accessToken;
+		}
+
+		void rebind(String newAccessToken) {
+			if (!Objects.equals(accessToken, newAccessToken)) {
+				synchronized (this) {
+					if (!Objects.equals(accessToken, newAccessToken)) {
+						authorizer.setAccessToken(newAccessToken);
+						accessToken = newAccessToken;
+					}
+				}
+			}
+		}
+
+		public Context getContext() {
+			return context;
+		}
+
+		public DataService getDataService() {
+			return dataService;
+		}
+
+		public QBOContextFactory.Settings getSettings() {
+			return settings;
+		}
+	}
+
+	private static final class Key {
+
+		private final String realmId;
+		private final String minorVersion;
+		private final Environment environment;
+
+		Key(String realmId, String minorVersion, Environment environment) {
+			this.realmId = realmId;
+			this.minorVersion = minorVersion;
+			this.environment = environment;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return Objects.equals(realmId, other.realmId) && Objects.equals(minorVersion, other.minorVersion)
+					&& environment == other.environment;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(realmId, minorVersion, environment);
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package com.intuit.developer.tutorials.helper;
+
+import com.intuit.ipp.exception.FMSException;
+
+/**
+ * A QBO call of a realm was not sent because the realm is isolated: its circuit breaker
+ * is open, its bulkhead is full or it waited too long for its throttling limits. Also
+ * raised, without a realm, when the outbound queue of {@link WorkflowExecutor} is full.
+ * The call can be tried again after {@link #getRetryAfterMillis()}.
+ */
+public class QBOUnavailableException extends FMSException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String realmId;
+	private final long retryAfterMillis;
+
+	public QBOUnavailableException(String message, String realmId, long retryAfterMillis) {
+		super(message);
+		this.realmId = realmId;
+		this.retryAfterMillis = retryAfterMillis;
+	}
+
+	/**
+	 * @return realm of the call, null when all realms are overloaded
+	 */
+	public String getRealmId() {
+		return realmId;
+	}
+
+	public long getRetryAfterMillis() {
+		return retryAfterMillis;
+	}
+
+	/**
+	 * @return the retry delay rounded up to whole seconds, at least 1
+	 */
+	public long getRetryAfterSeconds() {
+		return Math.max(1, (retryAfterMillis + 999) / 1000);
+	}
+}
@@ -0,0 +1,145 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+import com.intuit.ipp.exception.FMSException;
+
+/**
+ * Bounds the threads a single realm can hold while its QBO calls are in progress,
+ * including the time they wait for the {@link RealmGovernor} or between retries.
+ *
+ * At most QBOBulkheadMaxConcurrent calls of a realm run at once and QBOBulkheadMaxQueue
+ * more wait, for at most QBOBulkheadMaxWaitMillis. Calls beyond that fail right away with
+ * a {@link QBOUnavailableException}, so a slow company file cannot take over the outbound
+ * pool that every other realm shares.
+ *
+ * The bulkhead owns the per realm concurrency: it bounds every call of the realm, whether
+ * it waits for the {@link RealmGovernor}, sleeps between retries or runs. The governor only
+ * caps, below this limit, the requests of the realm in flight at QBO.
+ */
+@Service
+@Order(150)
+public class RealmBulkhead implements QBOCallInterceptor {
+
+	@Autowired
+	OAuth2PlatformClientFactory factory;
+
+	private static final Logger logger = Logger.getLogger(RealmBulkhead.class);
+
+	private final Map<String, Compartment> compartments = new ConcurrentHashMap<String, Compartment>();
+
+	private final AtomicLong rejectedCalls = new AtomicLong();
+
+	private int maxConcurrent;
+	private int maxQueue;
+	private long maxWaitMillis;
+
+	@PostConstruct
+	public void init() {
+		maxConcurrent = intProperty("QBOBulkheadMaxConcurrent", 10);
+		maxQueue = intProperty("QBOBulkheadMaxQueue", 4);
+		maxWaitMillis = intProperty("QBOBulkheadMaxWaitMillis", 5000);
+	}
+
+	private int intProperty(String name, int defaultValue) {
+		String value = factory.getPropertyValue(name);
+		return value == null ? defaultValue : Integer.parseInt(value.trim());
+	}
+
+	@Override
+	public <T> T intercept(QBOCall call, QBOCall.Invocation<T> next) throws FMSException {
+		Compartment compartment = compartments.computeIfAbsent(call.getRealmId(), id -> new Compartment());
+		compartment.enter(call);
+		try {
+			return next.proceed();
+		} finally {
+			compartment.permits.release();
+		}
+	}
+
+	/**
+	 * Drops the state of a realm, e.g. after its tokens were revoked
+	 *
+	 * @param realmId
+	 */
+	public void evictRealm(String realmId) {
+		compartments.remove(realmId);
+	}
+
+	/**
+	 * @param realmId
+	 * @return number of calls of the realm in progress
+	 */
+	public int getInFlight(String realmId) {
+		Compartment compartment = compartments.get(realmId);
+		return compartment == null ? 0 : maxConcurrent - compartment.permits.availablePermits();
+	}
+
+	/**
+	 * @param realmId
+	 * @return number of calls of the realm waiting to enter the bulkhead
+	 */
+	public int getQueued(String realmId) {
+		Compartment compartment = compartments.get(realmId);
+		return compartment == null ? 0 : compartment.queued.get();
+	}
+
+	/**
+	 * @return number of calls rejected because the bulkhead of their realm was full
+	 */
+	public long getRejectedCalls() {
+		return rejectedCalls.get();
+	}
+
+	private QBOUnavailableException rejected(QBOCall call, String reason) {
+		rejectedCalls.incrementAndGet();
+		logger.warn("rejecting " + call + ": " + reason);
+		return new QBOUnavailableException("Too many QBO calls in progress for this company (" + reason + ")",
+				call.getRealmId(), maxWaitMillis);
+	}
+
+	/**
+	 * Bulkhead of a single realm
+	 */
+	private final class Compartment {
+
+		private final Semaphore permits = new Semaphore(maxConcurrent, true);
+		private final AtomicInteger queued = new AtomicInteger();
+
+		void enter(QBOCall call) throws FMSException {
+			try {
+				// the timed tryAcquire honors the fairness of the semaphore, the untimed one does not
+				if (permits.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+					return;
+				}
+				if (queued.incrementAndGet() > maxQueue) {
+					queued.decrementAndGet();
+					throw rejected(call, "queue full");
+				}
+				try {
+					if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+						throw rejected(call, "waited " + maxWaitMillis + " ms");
+					}
+				} finally {
+					queued.decrementAndGet();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new FMSException("Interrupted while waiting to call QBO", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package com.intuit.developer.tutorials.helper;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import com.intuit.ipp.exception.FMSException;
+
+/**
+ * Drops the cached reports of a realm once a write to it completes, so that reports
+ * reflect the app's own writes instead of being stale for the rest of their TTL, and its
+ * cached reference accounts once an Account (or a batch, which may hold accounts) is written.
+ *
+ * Invalidation follows failed writes too, a write that timed out may still have been
+ * applied. Reports loading while the write ran are not cached once they complete.
+ */
+@Service
+@Order(60)
+public class RealmCacheInvalidation implements QBOCallInterceptor {
+
+	private static final String ACCOUNT = "Account";
+
+	@Autowired
+	ReportEngine reportEngine;
+
+	@Autowired
+	AccountResolver accountResolver;
+
+	@Override
+	public <T> T intercept(QBOCall call, QBOCall.Invocation<T> next) throws FMSException {
+		if (call.isRead()) {
+			return next.proceed();
+		}
+		try {
+			return next.proceed();
+		} finally {
+			reportEngine.invalidate(call.getRealmId());
+			if (call.getEntity() == null || ACCOUNT.equals(call.getEntity())) {
+				accountResolver.invalidate(call.getRealmId());
+			}
+		}
+	}
+}
@@ -0,0 +1,229 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+import com.intuit.ipp.exception.FMSException;
+
+/**
+ * Circuit breaker of each realm, outermost of the QBO call interceptors.
+ *
+ * The breaker opens when at least QBOBreakerFailureRatePercent of the last
+ * QBOBreakerWindowSize calls of the realm failed with a transient error (throttling,
+ * 5xx, timeouts, see {@link RetryPolicy#classify(FMSException)}), once the window holds
+ * QBOBreakerMinCalls calls. Validation and authentication errors are the caller's and do
+ * not count.
+ *
+ * While open, calls fail right away with a {@link QBOUnavailableException}. After
+ * QBOBreakerOpenSeconds the breaker lets QBOBreakerTrialCalls calls through: it closes if
+ * they all succeed and opens again on the first failure.
+ */
+@Service
+@Order(100)
+public class RealmCircuitBreaker implements QBOCallInterceptor {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private enum Outcome {
+		SUCCESS, FAILURE, IGNORED
+	}
+
+	@Autowired
+	OAuth2PlatformClientFactory factory;
+
+	private static final Logger logger = Logger.getLogger(RealmCircuitBreaker.class);
+
+	private final Map<String, Breaker> breakers = new ConcurrentHashMap<String, Breaker>();
+
+	private final AtomicLong rejectedCalls = new AtomicLong();
+
+	private int windowSize;
+	private int minCalls;
+	private int failureRatePercent;
+	private long openMillis;
+	private int trialCalls;
+
+	@PostConstruct
+	public void init() {
+		windowSize = intProperty("QBOBreakerWindowSize", 20);
+		minCalls = Math.min(windowSize, intProperty("QBOBreakerMinCalls", 10));
+		failureRatePercent = intProperty("QBOBreakerFailureRatePercent", 50);
+		openMillis = TimeUnit.SECONDS.toMillis(intProperty("QBOBreakerOpenSeconds", 30));
+		trialCalls = intProperty("QBOBreakerTrialCalls", 3);
+	}
+
+	private int intProperty(String name, int defaultValue) {
+		String value = factory.getPropertyValue(name);
+		return value == null ? defaultValue : Integer.parseInt(value.trim());
+	}
+
+	@Override
+	public <T> T intercept(QBOCall call, QBOCall.Invocation<T> next) throws FMSException {
+		Breaker breaker = breakers.computeIfAbsent(call.getRealmId(), id -> new Breaker());
+		boolean trial = breaker.acquire(call);
+		Outcome outcome = Outcome.IGNORED;
+		try {
+			T result = next.proceed();
+			outcome = Outcome.SUCCESS;
+			return result;
+		} catch (QBOUnavailableException e) {
+			// rejected by the inner limits, QBO was not called
+			throw e;
+		} catch (FMSException e) {
+			outcome = RetryPolicy.classify(e) == RetryPolicy.Failure.PERMANENT ? Outcome.SUCCESS : Outcome.FAILURE;
+			throw e;
+		} finally {
+			breaker.record(call, trial, outcome);
+		}
+	}
+
+	/**
+	 * Drops the state of a realm, e.g. after its tokens were revoked
+	 *
+	 * @param realmId
+	 */
+	public void evictRealm(String realmId) {
+		breakers.remove(realmId);
+	}
+
+	/**
+	 * @param realmId
+	 * @return state of the breaker of the realm
+	 */
+	public State getState(String realmId) {
+		Breaker breaker = breakers.get(realmId);
+		return breaker == null ? State.CLOSED : breaker.state();
+	}
+
+	/**
+	 * @return number of realms whose breaker is not closed
+	 */
+	public int getOpenCount() {
+		int open = 0;
+		for (Breaker breaker : breakers.values()) {
+			if (breaker.state() != State.CLOSED) {
+				open++;
+			}
+		}
+		return open;
+	}
+
+	/**
+	 * @return number of calls rejected by an open breaker
+	 */
+	public long getRejectedCalls() {
+		return rejectedCalls.get();
+	}
+
+	/**
+	 * Breaker of a single realm, with a count based sliding window of outcomes
+	 */
+	private final class Breaker {
+
+		private final boolean[] failures = new boolean[windowSize];
+		private int next;
+		private int calls;
+		private int failed;
+
+		private State state = State.CLOSED;
+		private long openedAt;
+		private int trialsInFlight;
+		private int trialsSucceeded;
+
+		synchronized State state() {
+			return state;
+		}
+
+		/**
+		 * @return whether the call is a trial call of a half open breaker
+		 */
+		synchronized boolean acquire(QBOCall call) throws QBOUnavailableException {
+			long now = System.currentTimeMillis();
+			if (state == State.OPEN) {
+				long remaining = openedAt + openMillis - now;
+				if (remaining > 0) {
+					throw rejected(call, remaining);
+				}
+				state = State.HALF_OPEN;
+				trialsInFlight = 0;
+				trialsSucceeded = 0;
+				logger.info("circuit of realm " + call.getRealmId() + " half open");
+			}
+			if (state == State.HALF_OPEN) {
+				if (trialsInFlight + trialsSucceeded >= trialCalls) {
+					throw rejected(call, 1000);
+				}
+				trialsInFlight++;
+				return true;
+			}
+			return false;
+		}
+
+		synchronized void record(QBOCall call, boolean trial, Outcome outcome) {
+			if (trial) {
+				if (state != State.HALF_OPEN) {
+					return;
+				}
+				trialsInFlight--;
+				if (outcome == Outcome.FAILURE) {
+					open(call);
+				} else if (outcome == Outcome.SUCCESS && ++trialsSucceeded >= trialCalls) {
+					close(call);
+				}
+				return;
+			}
+			if (state != State.CLOSED || outcome == Outcome.IGNORED) {
+				// calls that were sent before the breaker opened
+				return;
+			}
+			boolean failure = outcome == Outcome.FAILURE;
+			if (calls == windowSize) {
+				if (failures[next]) {
+					failed--;
+				}
+			} else {
+				calls++;
+			}
+			failures[next] = failure;
+			if (failure) {
+				failed++;
+			}
+			next = (next + 1) % windowSize;
+			if (calls >= minCalls && failed * 100 >= failureRatePercent * calls) {
+				open(call);
+			}
+		}
+
+		private void open(QBOCall call) {
+			state = State.OPEN;
+			openedAt = System.currentTimeMillis();
+			logger.warn("circuit of realm " + call.getRealmId() + " open for " + openMillis + " ms after " + call + " failed");
+		}
+
+		private void close(QBOCall call) {
+			state = State.CLOSED;
+			calls = 0;
+			failed = 0;
+			next = 0;
+			logger.info("circuit of realm " + call.getRealmId() + " closed");
+		}
+
+		private QBOUnavailableException rejected(QBOCall call, long retryAfterMillis) {
+			rejectedCalls.incrementAndGet();
+			return new QBOUnavailableException("QBO calls of this company are suspended after repeated failures",
+					call.getRealmId(), retryAfterMillis);
+		}
+	}
+}
@@ -0,0 +1,255 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+import com.intuit.ipp.exception.FMSException;
+
+/**
+ * Keeps the QBO calls of each realm within the QBO throttling limits: a token bucket for
+ * the requests per minute and a semaphore for the concurrent requests.
+ *
+ * Calls get here holding a permit of the {@link RealmBulkhead}, which owns the number of
+ * threads a realm may hold. The semaphore caps the requests of the realm actually in flight
+ * at QBO, so QBORealmMaxConcurrent must stay below QBOBulkheadMaxConcurrent to ever bind.
+ * Waits here hold the bulkhead permit too, keep QBORealmMaxWaitMillis short.
+ *
+ * Calls over the limits wait instead of failing with a 429. Both the bucket and the
+ * semaphore are first come, first served: a call reserves the next free token even if
+ * it has to wait for it, so a burst is spread over time in arrival order. A call fails
+ * only if it would wait longer than QBORealmMaxWaitMillis, with a {@link QBOUnavailableException}.
+ *
+ * The available tokens, calls in flight and queue depth of each realm are exposed
+ * through {@link #getStats()}.
+ */
+@Service
+@Order(300)
+public class RealmGovernor implements QBOCallInterceptor {
+
+	@Autowired
+	OAuth2PlatformClientFactory factory;
+
+	private static final Logger logger = Logger.getLogger(RealmGovernor.class);
+
+	private final Map<String, Realm> realms = new ConcurrentHashMap<String, Realm>();
+
+	private final AtomicLong throttledCalls = new AtomicLong();
+	private final AtomicLong rejectedCalls = new AtomicLong();
+
+	private int requestsPerMinute;
+	private int burst;
+	private int maxConcurrent;
+	private long maxWaitNanos;
+
+	@PostConstruct
+	public void init() {
+		requestsPerMinute = intProperty("QBORealmRequestsPerMinute", 500);
+		burst = intProperty("QBORealmRequestBurst", 100);
+		maxConcurrent = intProperty("QBORealmMaxConcurrent", 8);
+		maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(intProperty("QBORealmMaxWaitMillis", 5000));
+	}
+
+	private int intProperty(String name, int defaultValue) {
+		String value = factory.getPropertyValue(name);
+		return value == null ? defaultValue : Integer.parseInt(value.trim());
+	}
+
+	@Override
+	public <T> T intercept(QBOCall call, QBOCall.Invocation<T> next) throws FMSException {
+		Realm realm = realms.computeIfAbsent(call.getRealmId(), id -> new Realm());
+		long deadline = System.nanoTime() + maxWaitNanos;
+		realm.queued.incrementAndGet();
+		try {
+			realm.awaitToken(call, deadline);
+			try {
+				realm.awaitPermit(call, deadline);
+			} catch (FMSException e) {
+				// the call is not sent, its token goes to the next caller
+				realm.cancel();
+				throw e;
+			}
+		} finally {
+			realm.queued.decrementAndGet();
+		}
+		try {
+			return next.proceed();
+		} finally {
+			realm.permits.release();
+		}
+	}
+
+	/**
+	 * Drops the state of a realm, e.g. after its tokens were revoked
+	 *
+	 * @param realmId
+	 */
+	public void evictRealm(String realmId) {
+		realms.remove(realmId);
+	}
+
+	/**
+	 * @return state of each realm that made calls, by realm id
+	 */
+	public Map<String, Stats> getStats() {
+		Map<String, Stats> stats = new LinkedHashMap<String, Stats>();
+		realms.forEach((realmId, realm) -> stats.put(realmId, realm.stats()));
+		return stats;
+	}
+
+	/**
+	 * @param realmId
+	 * @return state of the realm, or null if it made no calls
+	 */
+	public Stats getStats(String realmId) {
+		Realm realm = realms.get(realmId);
+		return realm == null ? null : realm.stats();
+	}
+
+	/**
+	 * @return number of calls that had to wait for a token or a permit
+	 */
+	public long getThrottledCalls() {
+		return throttledCalls.get();
+	}
+
+	/**
+	 * @return number of calls that failed because they would have waited too long
+	 */
+	public long getRejectedCalls() {
+		return rejectedCalls.get();
+	}
+
+	private QBOUnavailableException rejected(QBOCall call, String reason, long retryAfterMillis) {
+		rejectedCalls.incrementAndGet();
+		logger.warn("rejecting " + call + ": " + reason);
+		return new QBOUnavailableException("QBO throttling limits of this company exceeded (" + reason + ")",
+				call.getRealmId(), retryAfterMillis);
+	}
+
+	/**
+	 * Limits of a single realm
+	 */
+	private final class Realm {
+
+		private final Semaphore permits = new Semaphore(maxConcurrent, true);
+		private final AtomicInteger queued = new AtomicInteger();
+
+		// may go negative: the tokens reserved by the callers that wait for them
+		private double tokens = burst;
+		private long refilledAt = System.nanoTime();
+
+		private synchronized long reserve(long now) {
+			refill(now);
+			tokens -= 1;
+			return tokens >= 0 ? 0 : (long) Math.ceil(-tokens * TimeUnit.MINUTES.toNanos(1) / requestsPerMinute);
+		}
+
+		private synchronized void cancel() {
+			tokens += 1;
+		}
+
+		private synchronized double available(long now) {
+			refill(now);
+			return tokens;
+		}
+
+		private void refill(long now) {
+			tokens = Math.min(burst, tokens + (now - refilledAt) * (double) requestsPerMinute / TimeUnit.MINUTES.toNanos(1));
+			refilledAt = now;
+		}
+
+		void awaitToken(QBOCall call, long deadline) throws FMSException {
+			long now = System.nanoTime();
+			long wait = reserve(now);
+			if (wait == 0) {
+				return;
+			}
+			if (now + wait - deadline > 0) {
+				cancel();
+				throw rejected(call, "request rate exceeded for " + TimeUnit.NANOSECONDS.toMillis(wait) + " ms",
+						TimeUnit.NANOSECONDS.toMillis(wait));
+			}
+			throttledCalls.incrementAndGet();
+			logger.debug("delaying " + call + " by " + TimeUnit.NANOSECONDS.toMillis(wait) + " ms");
+			try {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				cancel();
+				throw new FMSException("Interrupted while waiting to call QBO", e);
+			}
+		}
+
+		void awaitPermit(QBOCall call, long deadline) throws FMSException {
+			try {
+				// the timed tryAcquire honors the fairness of the semaphore, the untimed one does not
+				if (permits.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+					return;
+				}
+				throttledCalls.incrementAndGet();
+				if (!permits.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+					throw rejected(call, maxConcurrent + " concurrent calls in flight", TimeUnit.NANOSECONDS.toMillis(maxWaitNanos));
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new FMSException("Interrupted while waiting to call QBO", e);
+			}
+		}
+
+		Stats stats() {
+			return new Stats(available(System.nanoTime()), maxConcurrent - permits.availablePermits(), queued.get());
+		}
+	}
+
+	/**
+	 * Snapshot of the limits of a realm
+	 */
+	public static final class Stats {
+
+		private final double tokens;
+		private final int inFlight;
+		private final int queued;
+
+		Stats(double tokens, int inFlight, int queued) {
+			this.tokens = tokens;
+			this.inFlight = inFlight;
+			this.queued = queued;
+		}
+
+		/**
+		 * @return tokens left in the bucket, negative when callers wait for tokens
+		 */
+		public double getTokens() {
+			return tokens;
+		}
+
+		public int getInFlight() {
+			return inFlight;
+		}
+
+		/**
+		 * @return number of calls waiting for a token or a permit
+		 */
+		public int getQueued() {
+			return queued;
+		}
+
+		@Override
+		public String toString() {
+			return "tokens=" + String.format("%.1f", tokens) + ", inFlight=" + inFlight + ", queued=" + queued;
+		}
+	}
+}
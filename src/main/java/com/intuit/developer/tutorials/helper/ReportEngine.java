@@ -0,0 +1,325 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+import com.intuit.ipp.data.Report;
+import com.intuit.ipp.exception.FMSException;
+import com.intuit.ipp.services.ReportService;
+
+/**
+ * Runs {@link ReportRequest}s on the outbound pool and caches the reports per realm.
+ *
+ * Every request gets its own ReportService, so independent requests run in parallel.
+ * Reports are cached for a TTL in a cache bounded in size (least recently used entries are
+ * evicted first). The cache holds the pending result as soon as a request is started, so
+ * concurrent loads of the same report share one QBO call; failed calls are not cached.
+ * Writes to a realm drop its cached reports, see {@link RealmCacheInvalidation}.
+ * Reports run for analytics through {@link #executeColumnar} are cached in their much
+ * smaller {@link ColumnarReport} form only.
+ *
+ * Reports over long date ranges can be fetched as month or quarter shards, see
+ * {@link #executeSharded(String, String, ReportRequest, ReportRequest.ShardPeriod)}.
+ *
+ * Report executions and cache hits emit {@link FlightEvents.ReportExecution} events.
+ */
+@Service
+public class ReportEngine {
+
+	@Autowired
+	OAuth2PlatformClientFactory factory;
+
+	@Autowired
+	QBOServiceHelper helper;
+
+	@Autowired
+	WorkflowExecutor workflowExecutor;
+
+	private static final Logger logger = Logger.getLogger(ReportEngine.class);
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	private long ttlMillis = TimeUnit.MINUTES.toMillis(1);
+	private int maxSize = 1000;
+	private int shardConcurrency = 4;
+
+	private Map<Key, Cached> cache;
+
+	@PostConstruct
+	public void init() {
+		String ttl = factory.getPropertyValue("ReportCacheTtlSeconds");
+		if (ttl != null) {
+			ttlMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(ttl.trim()));
+		}
+		String size = factory.getPropertyValue("ReportCacheMaxSize");
+		if (size != null) {
+			maxSize = Integer.parseInt(size.trim());
+		}
+		String concurrency = factory.getPropertyValue("ReportShardConcurrency");
+		if (concurrency != null) {
+			shardConcurrency = Integer.parseInt(concurrency.trim());
+		}
+		cache = new LinkedHashMap<Key, Cached>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Cached> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Runs a report, or returns it from the cache
+	 *
+	 * @param realmId
+	 * @param accessToken
+	 * @param request
+	 * @return completes with the report, or exceptionally with the FMSException of the call
+	 */
+	public CompletableFuture<Report> execute(String realmId, String accessToken, ReportRequest request) {
+		return load(new Key(realmId, request, false), () -> run(realmId, accessToken, request));
+	}
+
+	/**
+	 * Runs a report and converts it to its columnar form for filters, group-bys and top-N,
+	 * or returns the columnar form from the cache. Only the columnar form is cached, the
+	 * Report is dropped once converted.
+	 *
+	 * @param realmId
+	 * @param accessToken
+	 * @param request
+	 * @return
+	 */
+	public CompletableFuture<ColumnarReport> executeColumnar(String realmId, String accessToken, ReportRequest request) {
+		return load(new Key(realmId, request, true), () -> ColumnarReport.from(run(realmId, accessToken, request)));
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> CompletableFuture<T> load(Key key, Workflow.StepCall<T> call) {
+		CompletableFuture<T> report;
+		synchronized (cache) {
+			Cached cached = cache.get(key);
+			if (cached != null && cached.expiresAt >= System.currentTimeMillis()) {
+				hits.incrementAndGet();
+				recordCacheHit(key.realmId, key.request);
+				return (CompletableFuture<T>) cached.report;
+			}
+			misses.incrementAndGet();
+			report = new CompletableFuture<T>();
+			cache.put(key, new Cached(report, Long.MAX_VALUE));
+		}
+		workflowExecutor.submit(call).whenComplete((result, e) -> {
+			synchronized (cache) {
+				Cached cached = cache.get(key);
+				if (cached != null && cached.report == report) {
+					if (e == null) {
+						cache.put(key, new Cached(report, System.currentTimeMillis() + ttlMillis));
+					} else {
+						cache.remove(key);
+					}
+				}
+			}
+			if (e == null) {
+				report.complete(result);
+			} else {
+				report.completeExceptionally(e);
+			}
+		});
+		return report;
+	}
+
+	/**
+	 * Runs reports in parallel
+	 *
+	 * @param realmId
+	 * @param accessToken
+	 * @param requests
+	 * @return completes with the reports in the order of the requests, or exceptionally
+	 * with the exception of the first failed one
+	 */
+	public CompletableFuture<List<Report>> executeAll(String realmId, String accessToken, List<ReportRequest> requests) {
+		List<CompletableFuture<Report>> reports = new ArrayList<CompletableFuture<Report>>(requests.size());
+		for (ReportRequest request : requests) {
+			reports.add(execute(realmId, accessToken, request));
+		}
+		return CompletableFuture.allOf(reports.toArray(new CompletableFuture[reports.size()])).thenApply(ignored -> {
+			List<Report> results = new ArrayList<Report>(reports.size());
+			reports.forEach(report -> results.add(report.join()));
+			return results;
+		});
+	}
+
+	/**
+	 * Runs a report over a long date range as shards of the given period and merges
+	 * them into one report. At most ReportShardConcurrency shards of the request are in
+	 * flight at a time, the shards are cached like any other report so that a later run
+	 * over an overlapping range only fetches the shards it misses.
+	 *
+	 * @param realmId
+	 * @param accessToken
+	 * @param request request with a start and end date
+	 * @param period
+	 * @return completes with the merged report, or exceptionally with the exception of
+	 * the first failed shard
+	 */
+	public CompletableFuture<Report> executeSharded(String realmId, String accessToken, ReportRequest request,
+			ReportRequest.ShardPeriod period) {
+		List<ReportRequest> shards = request.split(period);
+		List<CompletableFuture<Report>> reports = new ArrayList<CompletableFuture<Report>>(shards.size());
+		for (int i = 0; i < shards.size(); i++) {
+			reports.add(new CompletableFuture<Report>());
+		}
+		AtomicInteger next = new AtomicInteger();
+		for (int lane = 0; lane < Math.min(shardConcurrency, shards.size()); lane++) {
+			runNextShard(realmId, accessToken, shards, reports, next);
+		}
+		return CompletableFuture.allOf(reports.toArray(new CompletableFuture[reports.size()])).thenApply(ignored -> {
+			List<Report> results = new ArrayList<Report>(reports.size());
+			reports.forEach(report -> results.add(report.join()));
+			long start = System.nanoTime();
+			Report merged = ReportMerger.merge(request, results);
+			logger.debug("merged " + results.size() + " shards of " + request + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+			return merged;
+		});
+	}
+
+	private void runNextShard(String realmId, String accessToken, List<ReportRequest> shards,
+			List<CompletableFuture<Report>> reports, AtomicInteger next) {
+		int index = next.getAndIncrement();
+		if (index >= shards.size()) {
+			return;
+		}
+		execute(realmId, accessToken, shards.get(index)).whenComplete((report, e) -> {
+			if (e != null) {
+				// fail the remaining shards right away instead of fetching them
+				reports.forEach(pending -> pending.completeExceptionally(e));
+				return;
+			}
+			reports.get(index).complete(report);
+			runNextShard(realmId, accessToken, shards, reports, next);
+		});
+	}
+
+	private Report run(String realmId, String accessToken, ReportRequest request) throws FMSException {
+		FlightEvents.ReportExecution event = FlightEvents.get().reportExecution();
+		long start = System.nanoTime();
+		Report report = null;
+		String outcome = FlightEvents.SUCCESS;
+		try {
+			ReportService service = helper.getReportService(realmId, accessToken);
+			request.applyTo(service);
+			report = service.executeReport(request.getReportName());
+			logger.debug("report " + request + " took " + (System.nanoTime() - start) / 1000000 + " ms");
+			return report;
+		} catch (FMSException | RuntimeException e) {
+			outcome = FlightEvents.outcomeOf(e);
+			throw e;
+		} finally {
+			if (event.finish()) {
+				record(event, realmId, request, JsonSize.of(report), outcome);
+			}
+		}
+	}
+
+	private static void recordCacheHit(String realmId, ReportRequest request) {
+		FlightEvents.ReportExecution event = FlightEvents.get().reportExecution();
+		if (event.finish()) {
+			record(event, realmId, request, 0, "cache-hit");
+		}
+	}
+
+	private static void record(FlightEvents.ReportExecution event, String realmId, ReportRequest request, long payloadSize,
+			String outcome) {
+		event.record(realmId, request.getReportName(), request.getStartDate(), request.getEndDate(), payloadSize, outcome);
+	}
+
+	/**
+	 * Drops the cached reports of a realm, called by {@link RealmCacheInvalidation} after
+	 * writes. Reports still loading are not cached once they complete.
+	 *
+	 * @param realmId
+	 */
+	public void invalidate(String realmId) {
+		synchronized (cache) {
+			Iterator<Key> it = cache.keySet().iterator();
+			while (it.hasNext()) {
+				if (it.next().realmId.equals(realmId)) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	private static final class Cached {
+
+		// the Report, or its ColumnarReport form
+		private final CompletableFuture<?> report;
+		private final long expiresAt;
+
+		Cached(CompletableFuture<?> report, long expiresAt) {
+			this.report = report;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private static final class Key {
+
+		private final String realmId;
+		private final ReportRequest request;
+		private final boolean columnar;
+
+		Key(String realmId, ReportRequest request, boolean columnar) {
+			this.realmId = realmId;
+			this.request = request;
+			this.columnar = columnar;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return realmId.equals(other.realmId) && request.equals(other.request) && columnar == other.columnar;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(realmId, request, columnar);
+		}
+	}
+}
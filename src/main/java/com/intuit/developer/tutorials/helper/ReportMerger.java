@@ -0,0 +1,223 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.intuit.ipp.data.ColData;
+import com.intuit.ipp.data.Column;
+import com.intuit.ipp.data.Columns;
+import com.intuit.ipp.data.Header;
+import com.intuit.ipp.data.Report;
+import com.intuit.ipp.data.ReportHeader;
+import com.intuit.ipp.data.Row;
+import com.intuit.ipp.data.RowTypeEnum;
+import com.intuit.ipp.data.Rows;
+import com.intuit.ipp.data.Summary;
+
+/**
+ * Merges the reports of consecutive date range shards into one report.
+ *
+ * Data rows are concatenated in shard order. Sections with the same group (or header) are
+ * merged recursively and their summaries recomputed: amount columns are summed, balance
+ * columns take the value of the last shard. The "Beginning Balance" rows that QBO adds to
+ * every shard are only kept for the first one.
+ *
+ * This is only meaningful for reports over a period (GeneralLedger, TransactionList,
+ * ProfitAndLoss..), not for point in time reports such as the BalanceSheet.
+ *
+ * The shard reports are not modified, they may be shared through the report cache.
+ */
+final class ReportMerger {
+
+	private static final String BEGINNING_BALANCE = "Beginning Balance";
+
+	private final Set<Integer> balanceColumns;
+
+	private ReportMerger(Set<Integer> balanceColumns) {
+		this.balanceColumns = balanceColumns;
+	}
+
+	/**
+	 * @param request the request that was split into shards
+	 * @param shards reports of the shards, in chronological order
+	 * @return
+	 */
+	static Report merge(ReportRequest request, List<Report> shards) {
+		Report first = shards.get(0);
+		if (shards.size() == 1) {
+			return first;
+		}
+		ReportMerger merger = new ReportMerger(balanceColumns(first.getColumns()));
+
+		List<List<Row>> shardRows = new ArrayList<List<Row>>(shards.size());
+		for (Report shard : shards) {
+			shardRows.add(rowsOf(shard.getRows()));
+		}
+
+		Report merged = new Report();
+		merged.setHeader(copyHeader(first.getHeader(), request));
+		merged.setColumns(first.getColumns());
+		Rows rows = new Rows();
+		rows.getRow().addAll(merger.mergeRows(shardRows));
+		merged.setRows(rows);
+		return merged;
+	}
+
+	private static Set<Integer> balanceColumns(Columns columns) {
+		Set<Integer> balance = new HashSet<Integer>();
+		if (columns != null && columns.getColumn() != null) {
+			List<Column> list = columns.getColumn();
+			for (int i = 0; i < list.size(); i++) {
+				String title = list.get(i).getColTitle();
+				if (title != null && title.toLowerCase().contains("balance")) {
+					balance.add(i);
+				}
+			}
+		}
+		return balance;
+	}
+
+	private static ReportHeader copyHeader(ReportHeader header, ReportRequest request) {
+		ReportHeader copy = new ReportHeader();
+		if (header != null) {
+			copy.setTime(header.getTime());
+			copy.setReportName(header.getReportName());
+			copy.setReportBasis(header.getReportBasis());
+			copy.setSummarizeColumnsBy(header.getSummarizeColumnsBy());
+			copy.setCurrency(header.getCurrency());
+			copy.setCustomer(header.getCustomer());
+			if (header.getOption() != null) {
+				copy.getOption().addAll(header.getOption());
+			}
+		}
+		copy.setStartPeriod(request.getStartDate());
+		copy.setEndPeriod(request.getEndDate());
+		return copy;
+	}
+
+	private static List<Row> rowsOf(Rows rows) {
+		return rows == null || rows.getRow() == null ? new ArrayList<Row>() : rows.getRow();
+	}
+
+	private List<Row> mergeRows(List<List<Row>> shardRows) {
+		// data rows and section keys in order of first appearance
+		List<Object> order = new ArrayList<Object>();
+		Map<String, List<Row>> sections = new LinkedHashMap<String, List<Row>>();
+		for (int shard = 0; shard < shardRows.size(); shard++) {
+			for (Row row : shardRows.get(shard)) {
+				if (row.getType() == RowTypeEnum.SECTION) {
+					String key = sectionKey(row);
+					List<Row> parts = sections.get(key);
+					if (parts == null) {
+						parts = new ArrayList<Row>();
+						sections.put(key, parts);
+						order.add(key);
+					}
+					parts.add(row);
+				} else if (shard == 0 || !isBeginningBalance(row)) {
+					order.add(row);
+				}
+			}
+		}
+
+		List<Row> merged = new ArrayList<Row>(order.size());
+		for (Object entry : order) {
+			merged.add(entry instanceof Row ? (Row) entry : mergeSection(sections.get(entry)));
+		}
+		return merged;
+	}
+
+	private Row mergeSection(List<Row> parts) {
+		Row first = parts.get(0);
+		if (parts.size() == 1) {
+			return first;
+		}
+		List<List<Row>> partRows = new ArrayList<List<Row>>(parts.size());
+		List<Summary> summaries = new ArrayList<Summary>(parts.size());
+		for (Row part : parts) {
+			partRows.add(rowsOf(part.getRows()));
+			if (part.getSummary() != null) {
+				summaries.add(part.getSummary());
+			}
+		}
+
+		Row section = new Row();
+		section.setType(RowTypeEnum.SECTION);
+		section.setGroup(first.getGroup());
+		section.setHeader(first.getHeader());
+		Rows rows = new Rows();
+		rows.getRow().addAll(mergeRows(partRows));
+		section.setRows(rows);
+		if (!summaries.isEmpty()) {
+			section.setSummary(mergeSummary(summaries));
+		}
+		return section;
+	}
+
+	private Summary mergeSummary(List<Summary> summaries) {
+		Summary merged = new Summary();
+		int columns = 0;
+		for (Summary summary : summaries) {
+			columns = Math.max(columns, summary.getColData().size());
+		}
+		for (int i = 0; i < columns; i++) {
+			ColData firstCell = null;
+			ColData lastCell = null;
+			BigDecimal total = null;
+			boolean numeric = true;
+			for (Summary summary : summaries) {
+				if (i >= summary.getColData().size()) {
+					continue;
+				}
+				ColData cell = summary.getColData().get(i);
+				if (firstCell == null) {
+					firstCell = cell;
+				}
+				lastCell = cell;
+				String value = cell.getValue();
+				if (value == null || value.isEmpty()) {
+					continue;
+				}
+				try {
+					BigDecimal amount = new BigDecimal(value);
+					total = total == null ? amount : total.add(amount);
+				} catch (NumberFormatException e) {
+					numeric = false;
+				}
+			}
+			ColData cell = new ColData();
+			cell.setId(firstCell.getId());
+			if (balanceColumns.contains(i)) {
+				cell.setValue(lastCell.getValue());
+			} else if (numeric && total != null) {
+				cell.setValue(total.toPlainString());
+			} else {
+				cell.setValue(firstCell.getValue());
+			}
+			merged.getColData().add(cell);
+		}
+		return merged;
+	}
+
+	private static String sectionKey(Row row) {
+		if (row.getGroup() != null) {
+			return "group:" + row.getGroup();
+		}
+		Header header = row.getHeader();
+		if (header != null && header.getColData() != null && !header.getColData().isEmpty()) {
+			ColData label = header.getColData().get(0);
+			return "header:" + (label.getId() != null ? label.getId() : label.getValue());
+		}
+		return "section";
+	}
+
+	private static boolean isBeginningBalance(Row row) {
+		List<ColData> cells = row.getColData();
+		return cells != null && !cells.isEmpty() && BEGINNING_BALANCE.equals(cells.get(0).getValue());
+	}
+}
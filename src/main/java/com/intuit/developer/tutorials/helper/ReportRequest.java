@@ -0,0 +1,173 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import com.intuit.ipp.services.ReportName;
+import com.intuit.ipp.services.ReportService;
+
+/**
+ * Immutable description of a QBO report: report name, date range, summarize_column_by
+ * and customer filter. Unset parameters use the QBO defaults.
+ *
+ * Requests are used as cache keys by {@link ReportEngine}, derive variants with the
+ * with* methods instead of mutating a shared ReportService.
+ */
+public final class ReportRequest {
+
+	/**
+	 * Length of the date range shards of a sharded report, shards are aligned on calendar boundaries
+	 */
+	public enum ShardPeriod {
+		MONTH(1), QUARTER(3);
+
+		private final int months;
+
+		ShardPeriod(int months) {
+			this.months = months;
+		}
+
+		LocalDate shardStart(LocalDate date) {
+			return date.withDayOfMonth(1).minusMonths((date.getMonthValue() - 1) % months);
+		}
+	}
+
+	private final String reportName;
+	private final String startDate;
+	private final String endDate;
+	private final String summarizeColumnBy;
+	private final String customer;
+
+	private ReportRequest(String reportName, String startDate, String endDate, String summarizeColumnBy, String customer) {
+		this.reportName = Objects.requireNonNull(reportName, "reportName");
+		this.startDate = startDate;
+		this.endDate = endDate;
+		this.summarizeColumnBy = summarizeColumnBy;
+		this.customer = customer;
+	}
+
+	/**
+	 * Report with the QBO default parameters
+	 *
+	 * @param reportName
+	 * @return
+	 */
+	public static ReportRequest of(ReportName reportName) {
+		return new ReportRequest(reportName.toString(), null, null, null, null);
+	}
+
+	/**
+	 * @param startDate yyyy-mm-dd
+	 * @param endDate yyyy-mm-dd
+	 * @return a copy of this request for the given date range
+	 */
+	public ReportRequest withDateRange(String startDate, String endDate) {
+		return new ReportRequest(reportName, startDate, endDate, summarizeColumnBy, customer);
+	}
+
+	/**
+	 * @param summarizeColumnBy Total, Customers, Vendors, Classes, Departments, Employees or ProductsAndServices
+	 * @return a copy of this request summarized by the given column
+	 */
+	public ReportRequest summarizedBy(String summarizeColumnBy) {
+		return new ReportRequest(reportName, startDate, endDate, summarizeColumnBy, customer);
+	}
+
+	/**
+	 * @param customer customer id, or comma separated customer ids
+	 * @return a copy of this request filtered on the given customers
+	 */
+	public ReportRequest forCustomer(String customer) {
+		return new ReportRequest(reportName, startDate, endDate, summarizeColumnBy, customer);
+	}
+
+	/**
+	 * Splits the date range of this request into consecutive shards of the given period,
+	 * the first and last shards are cut at the start and end date of the request
+	 *
+	 * @param period
+	 * @return requests for each shard, in chronological order
+	 */
+	public List<ReportRequest> split(ShardPeriod period) {
+		if (startDate == null || endDate == null) {
+			throw new IllegalArgumentException("Only requests with a date range can be split: " + this);
+		}
+		LocalDate end = LocalDate.parse(endDate);
+		List<ReportRequest> shards = new ArrayList<ReportRequest>();
+		LocalDate shardStart = LocalDate.parse(startDate);
+		while (!shardStart.isAfter(end)) {
+			LocalDate next = period.shardStart(shardStart).plusMonths(period.months);
+			LocalDate shardEnd = next.minusDays(1).isAfter(end) ? end : next.minusDays(1);
+			shards.add(withDateRange(shardStart.toString(), shardEnd.toString()));
+			shardStart = next;
+		}
+		return shards;
+	}
+
+	/**
+	 * Sets the parameters of this request on a ReportService, which must not be shared
+	 *
+	 * @param service
+	 */
+	void applyTo(ReportService service) {
+		if (startDate != null) {
+			service.setStart_date(startDate);
+		}
+		if (endDate != null) {
+			service.setEnd_date(endDate);
+		}
+		if (summarizeColumnBy != null) {
+			service.setSummarize_column_by(summarizeColumnBy);
+		}
+		if (customer != null) {
+			service.setCustomer(customer);
+		}
+	}
+
+	public String getReportName() {
+		return reportName;
+	}
+
+	public String getStartDate() {
+		return startDate;
+	}
+
+	public String getEndDate() {
+		return endDate;
+	}
+
+	public String getSummarizeColumnBy() {
+		return summarizeColumnBy;
+	}
+
+	public String getCustomer() {
+		return customer;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof ReportRequest)) {
+			return false;
+		}
+		ReportRequest other = (ReportRequest) o;
+		return reportName.equals(other.reportName) && Objects.equals(startDate, other.startDate)
+				&& Objects.equals(endDate, other.endDate) && Objects.equals(summarizeColumnBy, other.summarizeColumnBy)
+				&& Objects.equals(customer, other.customer);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(reportName, startDate, endDate, summarizeColumnBy, customer);
+	}
+
+	@Override
+	public String toString() {
+		return reportName + "[start_date=" + startDate + ", end_date=" + endDate + ", summarize_column_by="
+				+ summarizeColumnBy + ", customer=" + customer + "]";
+	}
+}
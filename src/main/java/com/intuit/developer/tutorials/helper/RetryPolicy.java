@@ -0,0 +1,244 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.http.NoHttpResponseException;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+import com.intuit.ipp.data.Error;
+import com.intuit.ipp.exception.FMSException;
+import com.intuit.ipp.exception.InternalServiceException;
+import com.intuit.ipp.exception.ServiceException;
+
+/**
+ * Retries QBO reads that failed with a transient error: throttling (429, error 3001),
+ * server errors (ServiceFault, 5xx, error 10000) and timeouts or resets of the connection.
+ * Writes are never retried, QBO may have applied them before the failure.
+ *
+ * Attempts are spaced by an exponential backoff with full jitter. Throttled calls wait at
+ * least the Retry-After of the fault, or QBORetryThrottleDelayMillis when it has none.
+ * Each attempt goes through the {@link RealmGovernor} again.
+ *
+ * Retries are limited by a budget shared by all realms: every call deposits
+ * QBORetryBudgetRatio of a retry, and QBORetryBudgetPerSecond retries are added each
+ * second. When the budget is spent the error is returned right away, so that retries
+ * cannot multiply the load of QBO during an outage.
+ */
+@Service
+@Order(200)
+public class RetryPolicy implements QBOCallInterceptor {
+
+	/**
+	 * Outcome of a failed call
+	 */
+	public enum Failure {
+		THROTTLED, TRANSIENT, PERMANENT
+	}
+
+	@Autowired
+	OAuth2PlatformClientFactory factory;
+
+	private static final Logger logger = Logger.getLogger(RetryPolicy.class);
+
+	private static final String THROTTLE_CODE = "3001";
+	private static final String APPLICATION_ERROR_CODE = "10000";
+	private static final Pattern RETRY_AFTER = Pattern.compile("retry-after\\D{0,3}(\\d+)", Pattern.CASE_INSENSITIVE);
+
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicLong budgetExhausted = new AtomicLong();
+
+	private int maxAttempts;
+	private long baseDelayMillis;
+	private long maxDelayMillis;
+	private long throttleDelayMillis;
+	private Budget budget;
+
+	@PostConstruct
+	public void init() {
+		maxAttempts = intProperty("QBORetryMaxAttempts", 3);
+		baseDelayMillis = intProperty("QBORetryBaseDelayMillis", 200);
+		maxDelayMillis = intProperty("QBORetryMaxDelayMillis", 10000);
+		throttleDelayMillis = intProperty("QBORetryThrottleDelayMillis", 1000);
+		String ratio = factory.getPropertyValue("QBORetryBudgetRatio");
+		budget = new Budget(ratio == null ? 0.1 : Double.parseDouble(ratio.trim()), intProperty("QBORetryBudgetPerSecond", 5));
+	}
+
+	private int intProperty(String name, int defaultValue) {
+		String value = factory.getPropertyValue(name);
+		return value == null ? defaultValue : Integer.parseInt(value.trim());
+	}
+
+	@Override
+	public <T> T intercept(QBOCall call, QBOCall.Invocation<T> next) throws FMSException {
+		budget.deposit();
+		for (int attempt = 1; ; attempt++) {
+			try {
+				return next.proceed();
+			} catch (FMSException e) {
+				Failure failure = classify(e);
+				if (!call.isRead() || failure == Failure.PERMANENT || attempt >= maxAttempts) {
+					throw e;
+				}
+				long delay = delayMillis(attempt, failure, e);
+				if (delay > maxDelayMillis) {
+					// QBO asked to wait longer than this request should be held
+					throw e;
+				}
+				if (!budget.withdraw()) {
+					budgetExhausted.incrementAndGet();
+					logger.warn("retry budget exhausted, not retrying " + call);
+					throw e;
+				}
+				retries.incrementAndGet();
+				logger.info("retrying " + call + " in " + delay + " ms after " + failure + " failure: " + e.getMessage());
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
+			}
+		}
+	}
+
+	private long delayMillis(int attempt, Failure failure, FMSException e) {
+		long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 20));
+		long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+		if (failure == Failure.THROTTLED) {
+			long retryAfter = retryAfterMillis(e);
+			delay = Math.max(delay, retryAfter >= 0 ? retryAfter : throttleDelayMillis);
+		}
+		return delay;
+	}
+
+	/**
+	 * @param e
+	 * @return whether the failed call may succeed if it is sent again
+	 */
+	public static Failure classify(FMSException e) {
+		List<Error> errors = e.getErrorList();
+		if (errors != null) {
+			for (Error error : errors) {
+				String code = error.getCode() == null ? "" : error.getCode().replaceFirst("^0+", "");
+				if (THROTTLE_CODE.equals(code) || contains(error.getMessage(), "ThrottleExceeded")) {
+					return Failure.THROTTLED;
+				}
+				if (APPLICATION_ERROR_CODE.equals(code)) {
+					return Failure.TRANSIENT;
+				}
+			}
+		}
+		if (contains(e.getMessage(), "statusCode=429") || contains(e.getMessage(), "ThrottleExceeded")) {
+			return Failure.THROTTLED;
+		}
+		if (e instanceof ServiceException || e instanceof InternalServiceException) {
+			return Failure.TRANSIENT;
+		}
+		for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+			// SocketTimeoutException is an InterruptedIOException
+			if (cause instanceof InterruptedIOException || cause instanceof ConnectException
+					|| cause instanceof NoHttpResponseException) {
+				return Failure.TRANSIENT;
+			}
+		}
+		return Failure.PERMANENT;
+	}
+
+	/**
+	 * The SDK does not expose the response headers, the Retry-After is taken from the
+	 * fault when QBO includes it there
+	 *
+	 * @param e
+	 * @return delay in millis, or -1 if there is none
+	 */
+	static long retryAfterMillis(FMSException e) {
+		List<Error> errors = e.getErrorList();
+		if (errors != null) {
+			for (Error error : errors) {
+				long delay = retryAfterMillis(error.getDetail());
+				if (delay < 0) {
+					delay = retryAfterMillis(error.getMessage());
+				}
+				if (delay >= 0) {
+					return delay;
+				}
+			}
+		}
+		return retryAfterMillis(e.getMessage());
+	}
+
+	private static long retryAfterMillis(String text) {
+		if (text == null) {
+			return -1;
+		}
+		Matcher matcher = RETRY_AFTER.matcher(text);
+		return matcher.find() ? TimeUnit.SECONDS.toMillis(Long.parseLong(matcher.group(1))) : -1;
+	}
+
+	private static boolean contains(String text, String token) {
+		return text != null && text.contains(token);
+	}
+
+	/**
+	 * @return number of retried attempts
+	 */
+	public long getRetries() {
+		return retries.get();
+	}
+
+	/**
+	 * @return number of retries skipped because the budget was spent
+	 */
+	public long getBudgetExhausted() {
+		return budgetExhausted.get();
+	}
+
+	/**
+	 * Retry budget: the balance grows with the calls and with time, up to a cap
+	 */
+	private static final class Budget {
+
+		private final double ratio;
+		private final double perSecond;
+		private final double max;
+
+		private double balance;
+		private long updatedAt = System.nanoTime();
+
+		Budget(double ratio, double perSecond) {
+			this.ratio = ratio;
+			this.perSecond = perSecond;
+			// about ten seconds of the minimum rate
+			this.max = Math.max(1, perSecond * 10);
+			this.balance = max;
+		}
+
+		synchronized void deposit() {
+			balance = Math.min(max, balance + ratio);
+		}
+
+		synchronized boolean withdraw() {
+			long now = System.nanoTime();
+			balance = Math.min(max, balance + (now - updatedAt) * perSecond / TimeUnit.SECONDS.toNanos(1));
+			updatedAt = now;
+			if (balance < 1) {
+				return false;
+			}
+			balance -= 1;
+			return true;
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.intuit.ipp.exception.FMSException;
+
+/**
+ * Coalesces concurrent calls for the same key: the first caller runs the call, callers
+ * arriving while it is in flight wait for it and share its result (or its exception;
+ * they get an Error of the call wrapped in an FMSException).
+ *
+ * Used for the find-or-create lookups of the workflows, so that concurrent requests
+ * against a fresh realm issue one query and at most one create per key.
+ *
+ * @param <K> key type
+ * @param <V> result type
+ */
+public class SingleFlight<K, V> {
+
+	private final ConcurrentMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<K, CompletableFuture<V>>();
+	private final AtomicLong coalesced = new AtomicLong();
+
+	/**
+	 * Call to run once per key
+	 */
+	public interface Call<V> {
+		V call() throws FMSException;
+	}
+
+	/**
+	 * Runs the call unless one for the same key is already in flight, in which case
+	 * its result is returned
+	 *
+	 * @param key
+	 * @param call
+	 * @return
+	 * @throws FMSException
+	 */
+	public V execute(K key, Call<V> call) throws FMSException {
+		CompletableFuture<V> flight = new CompletableFuture<V>();
+		CompletableFuture<V> existing = calls.putIfAbsent(key, flight);
+		if (existing != null) {
+			coalesced.incrementAndGet();
+			return await(existing);
+		}
+		try {
+			V result = call.call();
+			flight.complete(result);
+			return result;
+		} catch (Throwable e) {
+			// Errors too, or the callers waiting for this flight would wait forever
+			flight.completeExceptionally(e);
+			throw e;
+		} finally {
+			calls.remove(key, flight);
+		}
+	}
+
+	private V await(CompletableFuture<V> flight) throws FMSException {
+		try {
+			return flight.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new FMSException("Interrupted while waiting for in flight call", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof FMSException) {
+				throw (FMSException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new FMSException("In flight call failed", cause);
+		}
+	}
+
+	/**
+	 * @return number of calls that were served by a call already in flight
+	 */
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+}
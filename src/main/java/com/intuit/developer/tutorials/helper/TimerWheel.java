@@ -0,0 +1,147 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Hashed timer wheel for large numbers of coarse grained timeouts.
+ *
+ * Scheduling and cancelling are O(1) and lock-free; a single worker thread advances the
+ * wheel once per tick and hands expired tasks to the given executor, so tasks never run
+ * on the wheel thread. Precision is one tick.
+ */
+public class TimerWheel {
+
+	private static final Logger logger = Logger.getLogger(TimerWheel.class);
+
+	private final long tickMillis;
+	private final List<Timeout>[] buckets;
+	private final int mask;
+	private final Executor executor;
+	private final Queue<Timeout> pending = new ConcurrentLinkedQueue<Timeout>();
+	private final Thread worker;
+	private final long startTime;
+
+	private volatile boolean running = true;
+	private long tick;
+
+	/**
+	 * @param name name of the worker thread
+	 * @param tickMillis duration of one tick
+	 * @param wheelSize number of buckets, rounded up to a power of two
+	 * @param executor executor that runs the expired tasks
+	 */
+	@SuppressWarnings("unchecked")
+	public TimerWheel(String name, long tickMillis, int wheelSize, Executor executor) {
+		int size = Integer.highestOneBit(Math.max(wheelSize, 2) - 1) << 1;
+		this.tickMillis = tickMillis;
+		this.buckets = new List[size];
+		for (int i = 0; i < size; i++) {
+			buckets[i] = new ArrayList<Timeout>();
+		}
+		this.mask = size - 1;
+		this.executor = executor;
+		this.startTime = System.currentTimeMillis();
+		this.worker = new Thread(this::run, name);
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Schedules a task to run once after the given delay
+	 *
+	 * @param task
+	 * @param delay
+	 * @param unit
+	 * @return handle to cancel the task
+	 */
+	public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+		Timeout timeout = new Timeout(task, System.currentTimeMillis() + Math.max(0, unit.toMillis(delay)));
+		pending.add(timeout);
+		return timeout;
+	}
+
+	public void stop() {
+		running = false;
+		worker.interrupt();
+	}
+
+	private void run() {
+		while (running) {
+			long deadline = startTime + (tick + 1) * tickMillis;
+			long sleep = deadline - System.currentTimeMillis();
+			if (sleep > 0) {
+				try {
+					Thread.sleep(sleep);
+				} catch (InterruptedException e) {
+					continue;
+				}
+			}
+			transferPending();
+			expire(buckets[(int) (tick & mask)]);
+			tick++;
+		}
+	}
+
+	private void transferPending() {
+		Timeout timeout;
+		while ((timeout = pending.poll()) != null) {
+			if (timeout.cancelled) {
+				continue;
+			}
+			long ticks = Math.max((timeout.deadline - startTime) / tickMillis, tick);
+			timeout.rounds = (ticks - tick) / buckets.length;
+			buckets[(int) (ticks & mask)].add(timeout);
+		}
+	}
+
+	private void expire(List<Timeout> bucket) {
+		Iterator<Timeout> it = bucket.iterator();
+		while (it.hasNext()) {
+			Timeout timeout = it.next();
+			if (timeout.cancelled) {
+				it.remove();
+			} else if (timeout.rounds > 0) {
+				timeout.rounds--;
+			} else {
+				it.remove();
+				try {
+					executor.execute(timeout.task);
+				} catch (RuntimeException e) {
+					logger.error("Exception while dispatching timer task ", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Handle of a scheduled task
+	 */
+	public static final class Timeout {
+
+		private final Runnable task;
+		private final long deadline;
+		private volatile boolean cancelled;
+		private long rounds;
+
+		Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		public void cancel() {
+			cancelled = true;
+		}
+
+		public long getDeadline() {
+			return deadline;
+		}
+	}
+}
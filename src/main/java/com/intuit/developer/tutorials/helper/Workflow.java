@@ -0,0 +1,193 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.log4j.Logger;
+
+import com.intuit.ipp.exception.FMSException;
+
+/**
+ * A set of QBO calls with declared dependencies between them.
+ *
+ * Each step is started as soon as the steps it depends on have completed, so independent
+ * steps run concurrently and the workflow takes as long as its critical path. Steps must be
+ * declared after the steps they depend on. The duration of every step is recorded.
+ *
+ * Create workflows through {@link WorkflowExecutor#newWorkflow(String, String)}. Each step
+ * emits a {@link FlightEvents.WorkflowStep} event, and its QBO calls are accounted in the
+ * {@link CallLedger} of the request that created the workflow.
+ */
+public class Workflow {
+
+	private static final Logger logger = Logger.getLogger(Workflow.class);
+
+	private final String name;
+	private final String realmId;
+	private final Executor executor;
+	private final QBOContextFactory.Settings settings;
+	private final CallLedger ledger = CallLedger.current();
+	private final List<Step<?>> steps = new ArrayList<Step<?>>();
+	private final long startNanos = System.nanoTime();
+
+	/**
+	 * Body of a step, may call {@link Step#get()} on the steps it declared as dependencies
+	 */
+	public interface StepCall<T> {
+		T call() throws FMSException;
+	}
+
+	Workflow(String name, String realmId, Executor executor, QBOContextFactory.Settings settings) {
+		this.name = name;
+		this.realmId = realmId;
+		this.executor = executor;
+		this.settings = settings;
+	}
+
+	/**
+	 * Declares a step and schedules it to run once its dependencies have completed
+	 *
+	 * @param stepName
+	 * @param call
+	 * @param dependencies steps whose results the call uses
+	 * @return
+	 */
+	public <T> Step<T> step(String stepName, StepCall<T> call, Step<?>... dependencies) {
+		CompletableFuture<?>[] inputs = new CompletableFuture<?>[dependencies.length];
+		for (int i = 0; i < dependencies.length; i++) {
+			inputs[i] = dependencies[i].future;
+		}
+		Step<T> step = new Step<T>(this, stepName);
+		step.future = CompletableFuture.allOf(inputs).thenApplyAsync(ignored -> step.run(call, settings), executor);
+		steps.add(step);
+		return step;
+	}
+
+	/**
+	 * Completes with the result of the given step once all steps have completed, without
+	 * blocking the calling thread. Completes exceptionally with the exception of the first
+	 * failed step.
+	 *
+	 * @param result the step whose result is returned
+	 * @return
+	 */
+	public <T> CompletableFuture<T> completion(Step<T> result) {
+		CompletableFuture<T> completion = new CompletableFuture<T>();
+		allSteps().whenComplete((ignored, t) -> {
+			logTimings();
+			if (t != null) {
+				try {
+					completion.completeExceptionally(unwrap(t));
+				} catch (RuntimeException e) {
+					completion.completeExceptionally(e);
+				}
+			} else {
+				completion.complete(result.future.join());
+			}
+		});
+		return completion;
+	}
+
+	private CompletableFuture<Void> allSteps() {
+		return CompletableFuture.allOf(steps.stream().map(s -> s.future).toArray(CompletableFuture[]::new));
+	}
+
+	/**
+	 * @return duration in millis of each completed step, in declaration order
+	 */
+	public Map<String, Long> getTimings() {
+		Map<String, Long> timings = new LinkedHashMap<String, Long>();
+		for (Step<?> step : steps) {
+			if (step.endNanos > 0) {
+				timings.put(step.name, (step.endNanos - step.startNanos) / 1000000);
+			}
+		}
+		return timings;
+	}
+
+	private void logTimings() {
+		if (logger.isInfoEnabled()) {
+			logger.info("workflow " + name + " took " + (System.nanoTime() - startNanos) / 1000000 + " ms, steps " + getTimings());
+		}
+	}
+
+	static FMSException unwrap(Throwable t) {
+		// a step the executor rejected fails with the rejection, caused by the QBOUnavailableException
+		while ((t instanceof CompletionException || t instanceof ExecutionException || t instanceof RejectedExecutionException)
+				&& t.getCause() != null) {
+			t = t.getCause();
+		}
+		if (t instanceof FMSException) {
+			return (FMSException) t;
+		}
+		if (t instanceof RuntimeException) {
+			throw (RuntimeException) t;
+		}
+		return new FMSException(t.getMessage(), t);
+	}
+
+	/**
+	 * A declared step of a workflow
+	 */
+	public static final class Step<T> {
+
+		private final Workflow workflow;
+		private final String name;
+		private CompletableFuture<T> future;
+		private volatile long startNanos;
+		private volatile long endNanos;
+
+		Step(Workflow workflow, String name) {
+			this.workflow = workflow;
+			this.name = name;
+		}
+
+		T run(StepCall<T> call, QBOContextFactory.Settings settings) {
+			FlightEvents.WorkflowStep event = FlightEvents.get().workflowStep();
+			startNanos = System.nanoTime();
+			T result = null;
+			String outcome = FlightEvents.SUCCESS;
+			CallLedger previous = CallLedger.attach(workflow.ledger);
+			try {
+				// SDK settings are per thread, use the ones of the thread that created the workflow
+				if (settings != null) {
+					settings.apply();
+				}
+				result = call.call();
+				return result;
+			} catch (FMSException e) {
+				outcome = FlightEvents.outcomeOf(e);
+				throw new CompletionException(e);
+			} catch (RuntimeException e) {
+				outcome = FlightEvents.outcomeOf(e);
+				throw e;
+			} finally {
+				CallLedger.restore(previous);
+				endNanos = System.nanoTime();
+				if (event.finish()) {
+					event.record(workflow.name, name, workflow.realmId, FlightEvents.typeOf(result), JsonSize.of(result), outcome);
+				}
+			}
+		}
+
+		/**
+		 * Result of the step, only to be called from steps that depend on this one
+		 *
+		 * @return
+		 */
+		public T get() {
+			return future.join();
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+}
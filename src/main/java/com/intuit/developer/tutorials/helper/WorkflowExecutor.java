@@ -0,0 +1,176 @@
+package com.intuit.developer.tutorials.helper;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+
+/**
+ * Bounded thread pool for outbound QBO calls: it runs the steps of {@link Workflow}s and
+ * the bodies of asynchronous request handlers, so that servlet threads are not held while
+ * QBO responds.
+ *
+ * At most {@link AdaptiveConcurrencyLimit#getLimit()} tasks run at a time, the others wait
+ * in order of submission. When QBOWorkflowQueueSize tasks are waiting further tasks are
+ * rejected with a {@link QBOUnavailableException}, answered by {@link ErrorResponses}: running
+ * them on the calling thread would hold servlet threads and bypass the concurrency limit
+ * under overload, when both matter most.
+ */
+@Service
+public class WorkflowExecutor {
+
+	@Autowired
+	OAuth2PlatformClientFactory factory;
+
+	@Autowired
+	AdaptiveConcurrencyLimit concurrencyLimit;
+
+	private ThreadPoolExecutor executor;
+
+	private final Queue<Runnable> pending = new ConcurrentLinkedQueue<Runnable>();
+	private final AtomicInteger pendingCount = new AtomicInteger();
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private final Executor limitedExecutor = this::dispatch;
+	private int queueSize;
+	private long retryAfterMillis;
+
+	@PostConstruct
+	public void init() {
+		int threads = intProperty("QBOWorkflowThreads", 32);
+		queueSize = intProperty("QBOWorkflowQueueSize", 1000);
+		retryAfterMillis = intProperty("QBOWorkflowRetryAfterMillis", 1000);
+		AtomicInteger count = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize), r -> {
+					Thread thread = new Thread(r, "qbo-workflow-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	@PreDestroy
+	public void destroy() {
+		executor.shutdown();
+	}
+
+	private int intProperty(String name, int defaultValue) {
+		String value = factory.getPropertyValue(name);
+		return value == null ? defaultValue : Integer.parseInt(value.trim());
+	}
+
+	/**
+	 * Starts a new workflow. Its steps use the QBO environment settings of the calling thread,
+	 * so create it after the DataService has been obtained from {@link QBOServiceHelper}.
+	 *
+	 * @param name name used when logging the step timings
+	 * @param realmId realm the workflow calls, recorded in its flight recorder events
+	 * @return
+	 */
+	public Workflow newWorkflow(String name, String realmId) {
+		return new Workflow(name, realmId, limitedExecutor, QBOContextFactory.currentSettings());
+	}
+
+	/**
+	 * Runs a sequence of QBO calls on the outbound pool, with the QBO environment settings
+	 * and the {@link CallLedger} of the calling thread
+	 *
+	 * @param call
+	 * @return completes with the result of the call, or exceptionally with its exception or
+	 *         a {@link QBOUnavailableException} if the outbound queue is full
+	 */
+	public <T> CompletableFuture<T> submit(Workflow.StepCall<T> call) {
+		QBOContextFactory.Settings settings = QBOContextFactory.currentSettings();
+		CallLedger ledger = CallLedger.current();
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		try {
+			limitedExecutor.execute(() -> {
+				CallLedger previous = CallLedger.attach(ledger);
+				try {
+					if (settings != null) {
+						settings.apply();
+					}
+					future.complete(call.call());
+				} catch (Throwable t) {
+					future.completeExceptionally(t);
+				} finally {
+					CallLedger.restore(previous);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e.getCause());
+		}
+		return future;
+	}
+
+	/**
+	 * @param task
+	 * @throws RejectedExecutionException caused by a {@link QBOUnavailableException} when the
+	 *         queue is full, a workflow step fails with it
+	 */
+	private void dispatch(Runnable task) {
+		if (pendingCount.incrementAndGet() > queueSize) {
+			pendingCount.decrementAndGet();
+			rejectedCount.incrementAndGet();
+			String message = "Outbound QBO queue full, " + queueSize + " tasks waiting";
+			throw new RejectedExecutionException(message, new QBOUnavailableException(message, null, retryAfterMillis));
+		}
+		pending.add(task);
+		drain();
+	}
+
+	/**
+	 * Starts waiting tasks while the concurrency limit allows it, called on submission and
+	 * whenever a task ends
+	 */
+	private void drain() {
+		while (!pending.isEmpty() && concurrencyLimit.tryAcquire()) {
+			Runnable task = pending.poll();
+			if (task == null) {
+				concurrencyLimit.release();
+				return;
+			}
+			pendingCount.decrementAndGet();
+			executor.execute(() -> {
+				try {
+					task.run();
+				} finally {
+					concurrencyLimit.release();
+					drain();
+				}
+			});
+		}
+	}
+
+	/**
+	 * @return number of tasks rejected because the queue was full
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * @return number of tasks waiting for the concurrency limit or a thread
+	 */
+	public int getQueueSize() {
+		return pendingCount.get() + executor.getQueue().size();
+	}
+}
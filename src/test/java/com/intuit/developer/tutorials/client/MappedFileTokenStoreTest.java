@@ -0,0 +1,252 @@
+package com.intuit.developer.tutorials.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedFileTokenStoreTest {
+
+	private static final byte[] KEY = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File file;
+	private MappedFileTokenStore store;
+
+	@Before
+	public void setUp() throws IOException {
+		file = new File(folder.getRoot(), "tokens.dat");
+		store = new MappedFileTokenStore(file, KEY);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		store.close();
+	}
+
+	@Test
+	public void savesAndLoadsTokens() {
+		store.save(record("123", "access-1", 1000));
+
+		TokenRecord loaded = store.load("123");
+		assertEquals("123", loaded.getRealmId());
+		assertEquals("access-1", loaded.getAccessToken());
+		assertEquals("refresh-123", loaded.getRefreshToken());
+		assertEquals(1000, loaded.getExpiresAt());
+		assertNull(store.load("456"));
+	}
+
+	@Test
+	public void replacesTokensOfARealm() throws IOException {
+		store.save(record("123", "access-1", 1000));
+		store.save(record("123", "access-2", 2000));
+
+		assertEquals("access-2", store.load("123").getAccessToken());
+		assertEquals(1, store.realmIds().size());
+		// written to another slot, the previous one is free again
+		assertEquals(0, slotLength(0));
+		assertTrue(slotLength(1) > 0);
+	}
+
+	@Test
+	public void removesRealmsAndReusesTheirSlots() {
+		store.save(record("123", "access-1", 1000));
+		store.remove("123");
+		assertNull(store.load("123"));
+		assertTrue(store.realmIds().isEmpty());
+
+		store.save(record("456", "access-2", 1000));
+		assertEquals("access-2", store.load("456").getAccessToken());
+	}
+
+	@Test
+	public void keepsTokensAcrossReopening() throws IOException {
+		store.save(record("123", "access-1", 1000));
+		store.close();
+
+		store = new MappedFileTokenStore(file, KEY);
+		assertEquals("access-1", store.load("123").getAccessToken());
+	}
+
+	@Test
+	public void seesWritesOfAnotherStoreOnTheSameFile() throws IOException {
+		MappedFileTokenStore other = new MappedFileTokenStore(file, KEY);
+		try {
+			store.save(record("123", "access-1", 1000));
+			assertEquals("access-1", other.load("123").getAccessToken());
+
+			other.save(record("123", "access-2", 2000));
+			other.save(record("456", "access-3", 2000));
+			assertEquals("access-2", store.load("123").getAccessToken());
+			assertEquals(new HashSet<String>(Arrays.asList("123", "456")), new HashSet<String>(store.realmIds()));
+
+			other.remove("123");
+			assertNull(store.load("123"));
+		} finally {
+			other.close();
+		}
+	}
+
+	@Test
+	public void growsBeyondItsInitialCapacity() throws IOException {
+		int realms = 1500;
+		for (int i = 0; i < realms; i++) {
+			store.save(record(Integer.toString(i), "access-" + i, 1000));
+		}
+		store.close();
+
+		store = new MappedFileTokenStore(file, KEY);
+		Set<String> realmIds = new HashSet<String>(store.realmIds());
+		assertEquals(realms, realmIds.size());
+		assertEquals("access-1499", store.load("1499").getAccessToken());
+		assertEquals("access-0", store.load("0").getAccessToken());
+	}
+
+	@Test
+	public void encryptsTokensAtRest() throws IOException {
+		store.save(record("123", "secret-access-token", 1000));
+
+		String contents = new String(Files.readAllBytes(file.toPath()), StandardCharsets.ISO_8859_1);
+		assertFalse(contents.contains("secret-access-token"));
+		assertFalse(contents.contains("refresh-123"));
+	}
+
+	@Test
+	public void refusesToOpenWithAnotherKey() throws IOException {
+		store.save(record("123", "access-1", 1000));
+		store.close();
+
+		try {
+			new MappedFileTokenStore(file, "fedcba9876543210".getBytes(StandardCharsets.US_ASCII));
+			fail("expected the key to be rejected");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("TokenStoreKey"));
+		}
+		store = new MappedFileTokenStore(file, KEY);
+		assertEquals("access-1", store.load("123").getAccessToken());
+	}
+
+	@Test
+	public void keepsASlotThatDoesNotDecryptReserved() throws IOException {
+		store.save(record("123", "access-1", 1000));
+		store.close();
+		// flips a byte of the ciphertext
+		try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+			long position = slotOffset(0) + slotLength(0);
+			raw.seek(position);
+			int b = raw.read();
+			raw.seek(position);
+			raw.write(b ^ 0xFF);
+		}
+
+		store = new MappedFileTokenStore(file, KEY);
+		assertEquals(Arrays.asList("123"), new ArrayList<String>(store.realmIds()));
+		try {
+			store.load("123");
+			fail("expected the tokens not to decrypt");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage().contains("realm 123"));
+		}
+
+		store.save(record("456", "access-2", 1000));
+		assertTrue(slotLength(0) > 0);
+		assertEquals("access-2", store.load("456").getAccessToken());
+	}
+
+	@Test
+	public void recoversFromASaveThatDidNotDropThePreviousRecord() throws IOException {
+		store.save(record("123", "access-1", 1000));
+		byte[] previous = slot(0);
+		store.save(record("123", "access-2", 2000));
+		store.close();
+		// the state of a save interrupted before the previous slot was zeroed
+		writeSlot(0, previous);
+
+		store = new MappedFileTokenStore(file, KEY);
+		assertEquals("access-2", store.load("123").getAccessToken());
+		assertEquals(1, store.realmIds().size());
+
+		// the next save zeroes the stale slot
+		store.save(record("456", "access-3", 1000));
+		store.close();
+		store = new MappedFileTokenStore(file, KEY);
+		assertEquals(new HashSet<String>(Arrays.asList("123", "456")), new HashSet<String>(store.realmIds()));
+		assertEquals("access-2", store.load("123").getAccessToken());
+	}
+
+	@Test
+	public void ignoresASaveInterruptedBeforeItsLengthWasWritten() throws IOException {
+		store.save(record("123", "access-1", 1000));
+		store.close();
+		// a record body without its length
+		byte[] body = slot(0);
+		body[0] = body[1] = body[2] = body[3] = 0;
+		writeSlot(1, body);
+
+		store = new MappedFileTokenStore(file, KEY);
+		assertEquals("access-1", store.load("123").getAccessToken());
+		store.save(record("456", "access-2", 1000));
+		assertEquals("access-1", store.load("123").getAccessToken());
+		assertEquals("access-2", store.load("456").getAccessToken());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsRecordsLargerThanASlot() {
+		StringBuilder token = new StringBuilder();
+		for (int i = 0; i < 3000; i++) {
+			token.append('x');
+		}
+		store.save(record("123", token.toString(), 1000));
+	}
+
+	// layout of the file: a 64 bytes header followed by slots of 2048 bytes
+	private static long slotOffset(int slot) {
+		return 64 + slot * 2048L;
+	}
+
+	private int slotLength(int slot) throws IOException {
+		try (RandomAccessFile raw = new RandomAccessFile(file, "r")) {
+			raw.seek(slotOffset(slot));
+			return raw.readInt();
+		}
+	}
+
+	private byte[] slot(int slot) throws IOException {
+		byte[] bytes = new byte[2048];
+		try (RandomAccessFile raw = new RandomAccessFile(file, "r")) {
+			raw.seek(slotOffset(slot));
+			raw.readFully(bytes);
+		}
+		return bytes;
+	}
+
+	private void writeSlot(int slot, byte[] bytes) throws IOException {
+		try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+			raw.seek(slotOffset(slot));
+			raw.write(bytes);
+		}
+	}
+
+	private static TokenRecord record(String realmId, String accessToken, long expiresAt) {
+		return new TokenRecord(realmId, accessToken, "refresh-" + realmId, expiresAt, System.currentTimeMillis());
+	}
+}
@@ -0,0 +1,186 @@
+package com.intuit.developer.tutorials.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.intuit.oauth2.data.BearerTokenResponse;
+import com.intuit.oauth2.exception.OAuthException;
+
+public class TokenRefreshCoordinatorTest {
+
+	private static final int CALLERS = 8;
+
+	private final TokenRefreshCoordinator coordinator = new TokenRefreshCoordinator();
+	private final OAuth2TokenClient tokenClient = mock(OAuth2TokenClient.class);
+	private final List<BearerTokenResponse> registered = new CopyOnWriteArrayList<BearerTokenResponse>();
+	private final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+
+	@Before
+	public void setUp() {
+		coordinator.tokenClient = tokenClient;
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void refreshesTheTokensOfARealmOnceForConcurrentCallers() throws Exception {
+		BearerTokenResponse tokens = tokens("access2", "refresh2");
+		CountDownLatch refreshing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		when(tokenClient.refreshToken("refresh1")).thenAnswer(invocation -> {
+			refreshing.countDown();
+			assertTrue(release.await(5, TimeUnit.SECONDS));
+			return tokens;
+		});
+
+		List<Future<BearerTokenResponse>> results = new ArrayList<Future<BearerTokenResponse>>();
+		for (int i = 0; i < CALLERS; i++) {
+			results.add(executor.submit(() -> refresh("123", "refresh1")));
+		}
+		assertTrue(refreshing.await(5, TimeUnit.SECONDS));
+		release.countDown();
+
+		for (Future<BearerTokenResponse> result : results) {
+			assertSame(tokens, result.get(5, TimeUnit.SECONDS));
+		}
+		verify(tokenClient, times(1)).refreshToken("refresh1");
+		assertEquals(1, registered.size());
+	}
+
+	@Test
+	public void returnsTheLastRefreshToCallersWithTheConsumedRefreshToken() throws OAuthException {
+		BearerTokenResponse tokens = tokens("access2", "refresh2");
+		when(tokenClient.refreshToken("refresh1")).thenReturn(tokens);
+
+		assertSame(tokens, refresh("123", "refresh1"));
+		assertSame(tokens, refresh("123", "refresh1"));
+		verify(tokenClient, times(1)).refreshToken("refresh1");
+		assertEquals(1, registered.size());
+	}
+
+	@Test
+	public void refreshesAgainWithTheRotatedRefreshToken() throws OAuthException {
+		BearerTokenResponse first = tokens("access2", "refresh2");
+		BearerTokenResponse second = tokens("access3", "refresh3");
+		when(tokenClient.refreshToken("refresh1")).thenReturn(first);
+		when(tokenClient.refreshToken("refresh2")).thenReturn(second);
+
+		assertSame(first, refresh("123", "refresh1"));
+		assertSame(second, refresh("123", "refresh2"));
+		assertEquals(2, registered.size());
+	}
+
+	@Test
+	public void keepsTheRefreshesOfRealmsApart() throws OAuthException {
+		BearerTokenResponse tokens = tokens("access2", "refresh2");
+		when(tokenClient.refreshToken("refresh1")).thenReturn(tokens);
+
+		refresh("123", "refresh1");
+		refresh("456", "refresh1");
+		verify(tokenClient, times(2)).refreshToken("refresh1");
+	}
+
+	@Test
+	public void doesNotReuseAFailedRefresh() throws OAuthException {
+		OAuthException failure = new OAuthException("invalid_grant");
+		BearerTokenResponse tokens = tokens("access2", "refresh2");
+		when(tokenClient.refreshToken("refresh1")).thenThrow(failure).thenReturn(tokens);
+
+		try {
+			refresh("123", "refresh1");
+			fail("expected the refresh to fail");
+		} catch (OAuthException e) {
+			assertSame(failure, e);
+		}
+		assertEquals(0, registered.size());
+
+		assertSame(tokens, refresh("123", "refresh1"));
+		verify(tokenClient, times(2)).refreshToken("refresh1");
+	}
+
+	@Test
+	public void failsTheCallersWaitingOnAFailedRefresh() throws Exception {
+		OAuthException failure = new OAuthException("invalid_grant");
+		CountDownLatch refreshing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		when(tokenClient.refreshToken("refresh1")).thenAnswer(invocation -> {
+			refreshing.countDown();
+			assertTrue(release.await(5, TimeUnit.SECONDS));
+			throw failure;
+		});
+
+		Future<BearerTokenResponse> leader = executor.submit(() -> refresh("123", "refresh1"));
+		assertTrue(refreshing.await(5, TimeUnit.SECONDS));
+		Future<BearerTokenResponse> follower = executor.submit(() -> refresh("123", "refresh1"));
+		release.countDown();
+
+		assertFailsWith(failure, leader);
+		assertFailsWith(failure, follower);
+		assertEquals(0, registered.size());
+	}
+
+	@Test
+	public void refreshesAgainAfterTheRealmWasForgotten() throws OAuthException {
+		when(tokenClient.refreshToken("refresh1")).thenReturn(tokens("access2", "refresh2"));
+
+		refresh("123", "refresh1");
+		coordinator.forget("123");
+		refresh("123", "refresh1");
+		verify(tokenClient, times(2)).refreshToken("refresh1");
+	}
+
+	@Test
+	public void refreshesConnectionsWithoutARealmDirectly() throws OAuthException {
+		BearerTokenResponse tokens = tokens("access2", "refresh2");
+		when(tokenClient.refreshToken("refresh1")).thenReturn(tokens);
+
+		assertSame(tokens, refresh(null, "refresh1"));
+		assertSame(tokens, refresh(null, "refresh1"));
+		verify(tokenClient, times(2)).refreshToken("refresh1");
+		assertEquals(2, registered.size());
+	}
+
+	private BearerTokenResponse refresh(String realmId, String refreshToken) throws OAuthException {
+		return coordinator.refresh(realmId, refreshToken, registered::add);
+	}
+
+	private static void assertFailsWith(OAuthException failure, Future<BearerTokenResponse> result) throws Exception {
+		try {
+			result.get(5, TimeUnit.SECONDS);
+			fail("expected the refresh to fail");
+		} catch (ExecutionException e) {
+			assertSame(failure, e.getCause());
+		}
+	}
+
+	private static BearerTokenResponse tokens(String accessToken, String refreshToken) {
+		BearerTokenResponse response = new BearerTokenResponse();
+		response.setAccessToken(accessToken);
+		response.setRefreshToken(refreshToken);
+		response.setExpiresIn(3600L);
+		return response;
+	}
+}
@@ -0,0 +1,117 @@
+package com.intuit.developer.tutorials.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+
+import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+import com.intuit.ipp.exception.FMSException;
+import com.intuit.ipp.exception.ServiceException;
+
+public class AdaptiveConcurrencyLimitTest {
+
+	private static final QBOCall CALL = new QBOCall("123", "findById", "Invoice", null, true);
+
+	private static final long BASELINE_MILLIS = 10;
+
+	@Test
+	public void keepsCuttingTheLimitWhileQBOStaysSlow() throws FMSException {
+		AdaptiveConcurrencyLimit limit = limit(64, 2);
+		warmUp(limit);
+
+		// 64 -> 32 -> 16 -> 8 -> 4 -> 2, each cut needs a few inflated calls
+		for (int i = 0; i < 40 && limit.getLimit() > 2; i++) {
+			call(limit, 3 * BASELINE_MILLIS);
+		}
+		assertEquals(2, limit.getLimit());
+	}
+
+	@Test
+	public void doesNotLearnTheSlowLatencyAsTheBaseline() throws FMSException {
+		AdaptiveConcurrencyLimit limit = limit(64, 2);
+		warmUp(limit);
+		for (int i = 0; i < 30; i++) {
+			call(limit, 3 * BASELINE_MILLIS);
+		}
+		for (int i = 0; i < 20; i++) {
+			call(limit, BASELINE_MILLIS);
+		}
+
+		// back to the baseline learned before the slowdown
+		assertEquals(1, limit.getLatencyRatio(), 0.3);
+	}
+
+	@Test
+	public void keepsTheLimitWhileLatenciesStayWithinTheTolerance() throws FMSException {
+		AdaptiveConcurrencyLimit limit = limit(64, 2);
+		warmUp(limit);
+		for (int i = 0; i < 10; i++) {
+			call(limit, BASELINE_MILLIS);
+		}
+
+		assertEquals(64, limit.getLimit());
+		assertTrue(limit.getLatencyRatio() < 2);
+	}
+
+	@Test
+	public void cutsTheLimitWhenQBOFails() {
+		AdaptiveConcurrencyLimit limit = limit(64, 2);
+		try {
+			limit.intercept(CALL, () -> {
+				throw new ServiceException("ServiceFault");
+			});
+			fail("expected the exception of the call");
+		} catch (FMSException e) {
+			assertEquals(32, limit.getLimit());
+		}
+	}
+
+	@Test
+	public void admitsWorkUpToTheLimit() {
+		AdaptiveConcurrencyLimit limit = limit(2, 2);
+		assertTrue(limit.tryAcquire());
+		assertTrue(limit.tryAcquire());
+		assertFalse(limit.tryAcquire());
+
+		limit.release();
+		assertTrue(limit.tryAcquire());
+		assertEquals(2, limit.getInFlight());
+	}
+
+	private static void warmUp(AdaptiveConcurrencyLimit limit) throws FMSException {
+		for (int i = 0; i < 10; i++) {
+			call(limit, BASELINE_MILLIS);
+		}
+	}
+
+	private static void call(AdaptiveConcurrencyLimit limit, long millis) throws FMSException {
+		limit.intercept(CALL, () -> {
+			try {
+				Thread.sleep(millis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return "result";
+		});
+	}
+
+	private static AdaptiveConcurrencyLimit limit(int initialLimit, int minLimit) {
+		OAuth2PlatformClientFactory factory = mock(OAuth2PlatformClientFactory.class);
+		when(factory.getPropertyValue("QBOAdaptiveInitialLimit")).thenReturn(Integer.toString(initialLimit));
+		when(factory.getPropertyValue("QBOAdaptiveMinLimit")).thenReturn(Integer.toString(minLimit));
+		when(factory.getPropertyValue("QBOAdaptiveMaxLimit")).thenReturn("64");
+		when(factory.getPropertyValue("QBOAdaptiveLatencyTolerance")).thenReturn("2.0");
+		when(factory.getPropertyValue("QBOAdaptiveBackoffRatio")).thenReturn("0.5");
+		// every inflated sample may cut the limit
+		when(factory.getPropertyValue("QBOAdaptiveCooldownMillis")).thenReturn("0");
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit();
+		limit.factory = factory;
+		limit.init();
+		return limit;
+	}
+}
@@ -0,0 +1,136 @@
+package com.intuit.developer.tutorials.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+import com.intuit.ipp.exception.FMSException;
+
+public class CallLedgersTest {
+
+	private static final QBOCall QUERY = new QBOCall("123", "executeQuery", null, "select * from Invoice", true);
+
+	private final OAuth2PlatformClientFactory factory = mock(OAuth2PlatformClientFactory.class);
+	private CallLedgers ledgers;
+
+	@After
+	public void tearDown() {
+		CallLedger.attach(null);
+	}
+
+	@Test
+	public void countsTheCallsOfTheAttachedLedger() throws FMSException {
+		ledgers = ledgers("warn", false);
+		CallLedger ledger = ledgers.open("/invoice");
+		CallLedger.attach(ledger);
+		call();
+		call();
+
+		assertEquals(2, ledger.getCalls());
+		assertEquals(2, ledger.getBudget());
+		assertFalse(ledger.isOverBudget());
+		assertTrue(ledger.getNanos() > 0);
+	}
+
+	@Test
+	public void letsRequestsGoOverTheirBudgetInWarnMode() throws FMSException {
+		ledgers = ledgers("warn", false);
+		CallLedger ledger = ledgers.open("/invoice");
+		CallLedger.attach(ledger);
+		for (int i = 0; i < 3; i++) {
+			call();
+		}
+		ledgers.close(ledger, "/invoice");
+
+		assertTrue(ledger.isOverBudget());
+		CallLedgers.Endpoint endpoint = ledgers.getEndpoints().get("/invoice");
+		assertEquals(1, endpoint.getRequests());
+		assertEquals(3, endpoint.getCalls());
+		assertEquals(3, endpoint.getMaxCalls());
+		assertEquals(1, endpoint.getOverBudget());
+	}
+
+	@Test
+	public void failsTheCallOverTheBudgetInFailMode() throws FMSException {
+		ledgers = ledgers("fail", false);
+		CallLedger.attach(ledgers.open("/invoice"));
+		call();
+		call();
+		AtomicInteger sent = new AtomicInteger();
+
+		try {
+			ledgers.intercept(QUERY, () -> {
+				sent.incrementAndGet();
+				return "result";
+			});
+			fail("expected the call over the budget to fail");
+		} catch (IllegalStateException e) {
+			assertEquals("executeQuery is QBO call 3 of /invoice, over its budget of 2", e.getMessage());
+		}
+		assertEquals(0, sent.get());
+	}
+
+	@Test
+	public void cachesOnlyTheBudgetsFound() {
+		ledgers = ledgers("warn", false);
+		ledgers.open("/invoice");
+		ledgers.open("/invoice");
+		ledgers.open("/unknown");
+		ledgers.open("/unknown");
+
+		verify(factory, times(1)).getPropertyValue("CallBudget.invoice");
+		verify(factory, times(2)).getPropertyValue("CallBudget.unknown");
+		assertEquals(0, ledgers.open("/unknown").getBudget());
+	}
+
+	@Test
+	public void sizesTheCallsOnlyWhenEnabled() throws FMSException {
+		ledgers = ledgers("warn", false);
+		CallLedger unsized = ledgers.open("/invoice");
+		CallLedger.attach(unsized);
+		call();
+		assertEquals(0, unsized.getBytes());
+		assertFalse(unsized.toString().contains("bytes="));
+
+		ledgers = ledgers("warn", true);
+		CallLedger sized = ledgers.open("/invoice");
+		CallLedger.attach(sized);
+		call();
+		assertEquals("select * from Invoice".length() + "result".length(), sized.getBytes());
+		assertTrue(sized.toString().contains("bytes=27"));
+	}
+
+	@Test
+	public void letsCallsOutsideOfARequestThrough() throws FMSException {
+		ledgers = ledgers("fail", false);
+
+		assertNull(CallLedger.current());
+		assertEquals("result", call());
+	}
+
+	private String call() throws FMSException {
+		return ledgers.intercept(QUERY, () -> "result");
+	}
+
+	private CallLedgers ledgers(String mode, boolean sized) {
+		when(factory.getPropertyValue("CallBudgetMode")).thenReturn(mode);
+		when(factory.getPropertyValue("CallLedgerBytes")).thenReturn(Boolean.toString(sized));
+		when(factory.getPropertyValue("CallBudget.invoice")).thenReturn("2");
+		CallLedgers ledgers = new CallLedgers();
+		ledgers.factory = factory;
+		ledgers.init();
+		return ledgers;
+	}
+}
@@ -0,0 +1,194 @@
+package com.intuit.developer.tutorials.helper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.intuit.ipp.data.ColData;
+import com.intuit.ipp.data.Column;
+import com.intuit.ipp.data.Columns;
+import com.intuit.ipp.data.Header;
+import com.intuit.ipp.data.Report;
+import com.intuit.ipp.data.ReportHeader;
+import com.intuit.ipp.data.Row;
+import com.intuit.ipp.data.RowTypeEnum;
+import com.intuit.ipp.data.Rows;
+
+public class ColumnarReportTest {
+
+	private static final int DATE = 0;
+	private static final int NAME = 1;
+	private static final int AMOUNT = 2;
+
+	@Test
+	public void parsesAmountsIntoCents() {
+		assertEquals(123450, ColumnarReport.parseCents("1234.5"));
+		assertEquals(123450, ColumnarReport.parseCents("1,234.50"));
+		assertEquals(-1200, ColumnarReport.parseCents("-12"));
+		assertEquals(700, ColumnarReport.parseCents("+7.00"));
+		assertEquals(5, ColumnarReport.parseCents(".05"));
+		assertEquals(0, ColumnarReport.parseCents("0"));
+	}
+
+	@Test
+	public void roundsHalfUpBeyondTwoDecimals() {
+		assertEquals(101, ColumnarReport.parseCents("1.005"));
+		assertEquals(100, ColumnarReport.parseCents("1.0049"));
+		assertEquals(-101, ColumnarReport.parseCents("-1.005"));
+	}
+
+	@Test
+	public void rejectsValuesThatAreNoAmounts() {
+		assertEquals(ColumnarReport.NO_AMOUNT, ColumnarReport.parseCents(null));
+		assertEquals(ColumnarReport.NO_AMOUNT, ColumnarReport.parseCents(""));
+		assertEquals(ColumnarReport.NO_AMOUNT, ColumnarReport.parseCents("-"));
+		assertEquals(ColumnarReport.NO_AMOUNT, ColumnarReport.parseCents("1.2.3"));
+		assertEquals(ColumnarReport.NO_AMOUNT, ColumnarReport.parseCents("Total"));
+	}
+
+	@Test
+	public void encodesTextColumnsWithADictionary() {
+		ColumnarReport report = ColumnarReport.from(transactions());
+
+		assertEquals(5, report.getRowCount());
+		assertFalse(report.isAmountColumn(NAME));
+		assertTrue(report.isAmountColumn(AMOUNT));
+		assertEquals("Cool Cars", report.getText(0, NAME));
+		assertEquals("Amy's Bird Sanctuary", report.getText(1, NAME));
+		assertEquals("Cool Cars", report.getText(4, NAME));
+		assertArrayEquals(new int[] { 0, 2, 4 }, report.filterEquals(report.allRows(), NAME, "Cool Cars"));
+		assertEquals(0, report.filterEquals(report.allRows(), NAME, "Unknown").length);
+	}
+
+	@Test
+	public void keepsTheSectionOfEachRow() {
+		ColumnarReport report = ColumnarReport.from(transactions());
+
+		assertEquals("Invoices", report.getSection(0));
+		assertEquals("Payments", report.getSection(3));
+		assertArrayEquals(new int[] { 3, 4 }, report.filterSection(report.allRows(), "Payments"));
+	}
+
+	@Test
+	public void sumsAmountsByGroup() {
+		ColumnarReport report = ColumnarReport.from(transactions());
+
+		Map<String, Long> byName = new LinkedHashMap<String, Long>();
+		byName.put("Cool Cars", 150000L + 4025L - 50000L);
+		byName.put("Amy's Bird Sanctuary", 30000L);
+		byName.put("Geeta Kalapatapu", -10000L);
+		assertEquals(byName, report.sumBy(report.allRows(), NAME, AMOUNT));
+
+		Map<String, Long> bySection = new LinkedHashMap<String, Long>();
+		bySection.put("Invoices", 150000L + 30000L + 4025L);
+		bySection.put("Payments", -60000L);
+		assertEquals(bySection, report.sumBy(report.allRows(), -1, AMOUNT));
+	}
+
+	@Test
+	public void ranksTheLargestAmounts() {
+		ColumnarReport report = ColumnarReport.from(transactions());
+
+		assertArrayEquals(new int[] { 0, 1, 2 }, report.topN(report.allRows(), AMOUNT, 3));
+		assertArrayEquals(new int[] { 0, 1, 2, 3, 4 }, report.topN(report.allRows(), AMOUNT, 10));
+		assertEquals(0, report.topN(report.allRows(), AMOUNT, 0).length);
+		int[] payments = report.filterSection(report.allRows(), "Payments");
+		assertArrayEquals(new int[] { 3 }, report.topN(payments, AMOUNT, 1));
+	}
+
+	@Test
+	public void filtersOnAmounts() {
+		ColumnarReport report = ColumnarReport.from(transactions());
+
+		assertArrayEquals(new int[] { 3, 4 }, report.filter(report.allRows(), AMOUNT, cents -> cents < 0));
+	}
+
+	@Test
+	public void internsColumnTitlesAcrossReports() {
+		ColumnarReport first = ColumnarReport.from(transactions());
+		ColumnarReport second = ColumnarReport.from(transactions());
+
+		assertSame(first.getColumnTitle(NAME), second.getColumnTitle(NAME));
+		assertEquals(AMOUNT, first.columnIndex("Amount"));
+		assertEquals(-1, first.columnIndex("Memo"));
+	}
+
+	@Test
+	public void skipsEmptyAmountCells() {
+		Report report = report(section("Invoices", data("2018-01-05", "Cool Cars", "")));
+
+		ColumnarReport columnar = ColumnarReport.from(report);
+		assertEquals(ColumnarReport.NO_AMOUNT, columnar.getCents(0, AMOUNT));
+		assertEquals(0, columnar.topN(columnar.allRows(), AMOUNT, 1).length);
+		assertNull(columnar.sumBy(columnar.allRows(), NAME, AMOUNT).get("Cool Cars"));
+	}
+
+	// a TransactionList with an invoices and a payments section
+	private static Report transactions() {
+		return report(
+				section("Invoices",
+						data("2018-01-05", "Cool Cars", "1500.00"),
+						data("2018-01-09", "Amy's Bird Sanctuary", "300.00"),
+						data("2018-02-11", "Cool Cars", "40.25")),
+				section("Payments",
+						data("2018-02-14", "Geeta Kalapatapu", "-100.00"),
+						data("2018-03-01", "Cool Cars", "-500.00")));
+	}
+
+	private static Report report(Row... sections) {
+		Columns columns = new Columns();
+		columns.getColumn().add(column("Date", "Date"));
+		columns.getColumn().add(column("Name", "String"));
+		columns.getColumn().add(column("Amount", "Money"));
+		ReportHeader header = new ReportHeader();
+		header.setReportName("TransactionList");
+		Report report = new Report();
+		report.setHeader(header);
+		report.setColumns(columns);
+		Rows rows = new Rows();
+		rows.getRow().addAll(Arrays.asList(sections));
+		report.setRows(rows);
+		return report;
+	}
+
+	private static Column column(String title, String type) {
+		Column column = new Column();
+		column.setColTitle(title);
+		column.setColType(type);
+		return column;
+	}
+
+	private static Row section(String label, Row... data) {
+		Header header = new Header();
+		header.getColData().add(cell(label));
+		Rows rows = new Rows();
+		rows.getRow().addAll(Arrays.asList(data));
+		Row section = new Row();
+		section.setType(RowTypeEnum.SECTION);
+		section.setHeader(header);
+		section.setRows(rows);
+		return section;
+	}
+
+	private static Row data(String date, String name, String amount) {
+		Row row = new Row();
+		row.setType(RowTypeEnum.DATA);
+		row.getColData().addAll(Arrays.asList(cell(date), cell(name), cell(amount)));
+		return row;
+	}
+
+	private static ColData cell(String value) {
+		ColData cell = new ColData();
+		cell.setValue(value);
+		return cell;
+	}
+}
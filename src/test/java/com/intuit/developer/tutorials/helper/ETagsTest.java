@@ -0,0 +1,46 @@
+package com.intuit.developer.tutorials.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.intuit.ipp.data.Customer;
+
+public class ETagsTest {
+
+	@Test
+	public void tagsGzipResponsesWithASuffix() {
+		assertEquals("\"1f3a-gzip\"", ETags.gzipped("\"1f3a\""));
+		assertEquals("\"1f3a-gzip\"", ETags.gzipped("\"1f3a-gzip\""));
+	}
+
+	@Test
+	public void matchesBothEncodingsOfARepresentation() {
+		String etag = ETags.of("123", customer("2"));
+
+		assertTrue(ETags.matches(etag, etag));
+		assertTrue(ETags.matches(ETags.gzipped(etag), etag));
+		assertTrue(ETags.matches("W/" + etag, etag));
+		assertTrue(ETags.matches("\"other\", " + ETags.gzipped(etag), etag));
+		assertFalse(ETags.matches(null, etag));
+	}
+
+	@Test
+	public void changesTheTagOnEveryUpdate() {
+		String etag = ETags.of("123", customer("2"));
+
+		assertNotEquals(etag, ETags.of("123", customer("3")));
+		assertNotEquals(etag, ETags.of("456", customer("2")));
+		assertFalse(ETags.matches(ETags.gzipped(etag), ETags.of("123", customer("3"))));
+	}
+
+	private static Customer customer(String syncToken) {
+		Customer customer = new Customer();
+		customer.setId("58");
+		customer.setSyncToken(syncToken);
+		return customer;
+	}
+}
@@ -0,0 +1,62 @@
+package com.intuit.developer.tutorials.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.concurrent.CompletionException;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import com.intuit.ipp.data.Error;
+import com.intuit.ipp.exception.FMSException;
+import com.intuit.ipp.exception.InvalidTokenException;
+
+public class ErrorResponsesTest {
+
+	@Test
+	public void answersFailedForErrorsOfQBO() {
+		Error error = new Error();
+		error.setMessage("Duplicate Name Exists Error");
+		FMSException e = new FMSException(Collections.singletonList(error));
+
+		assertEquals("Failed", response(ErrorResponses.of(e)));
+	}
+
+	@Test
+	public void answersFailedForExceptionsWithoutErrorList() {
+		FMSException e = new FMSException("Interrupted while running workflow", new InterruptedException());
+
+		assertEquals("Failed", response(ErrorResponses.of(new CompletionException(e))));
+	}
+
+	@Test
+	public void asksToRefreshInvalidTokens() {
+		assertEquals("InvalidToken - Refresh token and try again", response(ErrorResponses.of(new InvalidTokenException("401"))));
+	}
+
+	@Test
+	public void tellsWhenToRetryUnavailableRealms() {
+		JSONObject json = new JSONObject(ErrorResponses.of(new QBOUnavailableException("circuit open", "123", 1500)));
+
+		assertEquals("Unavailable - circuit open, try again later", json.getString("response"));
+		assertEquals(2, json.getLong("retryAfterSeconds"));
+	}
+
+	@Test
+	public void rethrowsOtherExceptions() {
+		IllegalStateException e = new IllegalStateException("bug");
+		try {
+			ErrorResponses.of(new CompletionException(e));
+			fail("expected the exception to be rethrown");
+		} catch (IllegalStateException rethrown) {
+			assertSame(e, rethrown);
+		}
+	}
+
+	private static String response(String json) {
+		return new JSONObject(json).getString("response");
+	}
+}
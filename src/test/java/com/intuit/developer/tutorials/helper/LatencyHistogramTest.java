@@ -0,0 +1,49 @@
+package com.intuit.developer.tutorials.helper;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	private final LatencyHistogram histogram = new LatencyHistogram();
+
+	@Test
+	public void snapshotsTheSumWithTheBuckets() {
+		histogram.record(TimeUnit.MILLISECONDS.toNanos(10));
+		histogram.record(TimeUnit.MILLISECONDS.toNanos(30));
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		histogram.record(TimeUnit.SECONDS.toNanos(5));
+
+		assertEquals(2, snapshot.getTotal());
+		assertEquals(0.04, snapshot.getSumSeconds(), 1e-9);
+		assertEquals(5.04, histogram.snapshot().getSumSeconds(), 1e-9);
+	}
+
+	@Test
+	public void countsTheValuesAtOrBelowABound() {
+		histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+		histogram.record(TimeUnit.MILLISECONDS.toNanos(80));
+		histogram.record(TimeUnit.SECONDS.toNanos(2));
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+		assertEquals(0, snapshot.countAtOrBelow(0.001));
+		assertEquals(1, snapshot.countAtOrBelow(0.005));
+		assertEquals(2, snapshot.countAtOrBelow(0.1));
+		assertEquals(3, snapshot.countAtOrBelow(2.5));
+	}
+
+	@Test
+	public void reportsQuantilesWithinTheBucketPrecision() {
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+		}
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+		assertEquals(0.05, snapshot.valueAt(0.5), 0.05 * 0.0625);
+		assertEquals(0.099, snapshot.valueAt(0.99), 0.099 * 0.0625);
+		assertEquals(0, new LatencyHistogram().snapshot().valueAt(0.5), 0);
+	}
+}
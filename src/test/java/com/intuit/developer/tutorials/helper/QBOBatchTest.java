@@ -0,0 +1,56 @@
+package com.intuit.developer.tutorials.helper;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.intuit.ipp.exception.FMSException;
+import com.intuit.ipp.services.BatchOperation;
+import com.intuit.ipp.services.DataService;
+import com.intuit.ipp.services.QueryResult;
+
+public class QBOBatchTest {
+
+	@Test
+	public void failsTheResultsOfUnsentChunksWhenAChunkFails() throws FMSException {
+		DataService service = mock(DataService.class);
+		FMSException failure = new FMSException("throttled");
+		doThrow(failure).when(service).executeBatch(any(BatchOperation.class));
+
+		QBOBatch batch = new QBOBatch(service);
+		List<QBOBatch.BatchResult<QueryResult>> results = new ArrayList<QBOBatch.BatchResult<QueryResult>>();
+		for (int i = 0; i < QBOBatch.MAX_BATCH_SIZE + 5; i++) {
+			results.add(batch.query("select * from Invoice startposition " + (i + 1) + " maxresults 1"));
+		}
+		try {
+			batch.flush();
+			fail("expected the exception of the batch request");
+		} catch (FMSException e) {
+			assertSame(failure, e);
+		}
+
+		// the second chunk is not sent once the first one failed
+		verify(service, times(1)).executeBatch(any(BatchOperation.class));
+		for (int i = 0; i < results.size(); i++) {
+			try {
+				results.get(i).get();
+				fail("expected the result to fail");
+			} catch (FMSException e) {
+				if (i < QBOBatch.MAX_BATCH_SIZE) {
+					assertSame(failure, e);
+				} else {
+					assertSame(failure, e.getCause());
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package com.intuit.developer.tutorials.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+import com.intuit.ipp.core.Context;
+import com.intuit.ipp.exception.FMSException;
+import com.intuit.ipp.security.OAuth2Authorizer;
+import com.intuit.oauth2.config.Environment;
+
+public class QBOServicePoolTest {
+
+	private final QBOContextFactory contextFactory = mock(QBOContextFactory.class);
+	private QBOServicePool pool;
+
+	@Before
+	public void setUp() throws FMSException {
+		when(contextFactory.createContext(anyString(), any(OAuth2Authorizer.class), anyString())).thenReturn(mock(Context.class));
+		pool = pool(2);
+	}
+
+	@Test
+	public void reusesTheServicesOfAKey() throws FMSException {
+		QBOServicePool.Entry entry = pool.acquire("123", "access1", "65", Environment.SANDBOX);
+
+		assertSame(entry, pool.acquire("123", "access1", "65", Environment.SANDBOX));
+		assertEquals(1, pool.getMisses());
+		assertEquals(1, pool.getHits());
+		verify(contextFactory, times(1)).createContext(eq("123"), any(OAuth2Authorizer.class), eq("65"));
+	}
+
+	@Test
+	public void keepsTheServicesOfMinorVersionsAndEnvironmentsApart() throws FMSException {
+		QBOServicePool.Entry entry = pool.acquire("123", "access1", "65", Environment.SANDBOX);
+
+		assertNotSame(entry, pool.acquire("123", "access1", "70", Environment.SANDBOX));
+		assertNotSame(entry, pool.acquire("123", "access1", "65", Environment.PRODUCTION));
+		assertEquals(3, pool.getMisses());
+	}
+
+	@Test
+	public void rebindsTheAccessTokenOfThePooledServices() throws FMSException {
+		ArgumentCaptor<OAuth2Authorizer> authorizer = ArgumentCaptor.forClass(OAuth2Authorizer.class);
+		QBOServicePool.Entry entry = pool.acquire("123", "access1", "65", Environment.SANDBOX);
+		verify(contextFactory).createContext(eq("123"), authorizer.capture(), eq("65"));
+		assertEquals("access1", authorizer.getValue().getAccessToken());
+
+		assertSame(entry, pool.acquire("123", "access2", "65", Environment.SANDBOX));
+		assertEquals("access2", authorizer.getValue().getAccessToken());
+		assertEquals(1, pool.getMisses());
+	}
+
+	@Test
+	public void evictsTheLeastRecentlyUsedServices() throws FMSException {
+		QBOServicePool.Entry first = pool.acquire("123", "access1", "65", Environment.SANDBOX);
+		QBOServicePool.Entry second = pool.acquire("456", "access1", "65", Environment.SANDBOX);
+		// using the first realm makes the second one the eldest
+		pool.acquire("123", "access1", "65", Environment.SANDBOX);
+		pool.acquire("789", "access1", "65", Environment.SANDBOX);
+
+		assertEquals(2, pool.size());
+		assertEquals(1, pool.getEvictions());
+		assertSame(first, pool.acquire("123", "access1", "65", Environment.SANDBOX));
+		assertNotSame(second, pool.acquire("456", "access1", "65", Environment.SANDBOX));
+	}
+
+	@Test
+	public void evictsEveryServiceOfARealm() throws FMSException {
+		pool = pool(4);
+		pool.acquire("123", "access1", "65", Environment.SANDBOX);
+		pool.acquire("123", "access1", "70", Environment.SANDBOX);
+		QBOServicePool.Entry other = pool.acquire("456", "access1", "65", Environment.SANDBOX);
+
+		pool.evictRealm("123");
+		assertEquals(1, pool.size());
+		assertEquals(2, pool.getEvictions());
+		assertSame(other, pool.acquire("456", "access1", "65", Environment.SANDBOX));
+	}
+
+	private QBOServicePool pool(int maxSize) {
+		OAuth2PlatformClientFactory factory = mock(OAuth2PlatformClientFactory.class);
+		when(factory.getPropertyValue("QBOServicePoolMaxSize")).thenReturn(Integer.toString(maxSize));
+		QBOServicePool pool = new QBOServicePool();
+		pool.factory = factory;
+		pool.contextFactory = contextFactory;
+		pool.init();
+		return pool;
+	}
+}
@@ -0,0 +1,70 @@
+package com.intuit.developer.tutorials.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.intuit.ipp.exception.FMSException;
+
+public class RealmCacheInvalidationTest {
+
+	private RealmCacheInvalidation invalidation;
+
+	@Before
+	public void setUp() {
+		invalidation = new RealmCacheInvalidation();
+		invalidation.reportEngine = mock(ReportEngine.class);
+		invalidation.accountResolver = mock(AccountResolver.class);
+	}
+
+	@Test
+	public void keepsReportsOnReads() throws FMSException {
+		QBOCall query = new QBOCall("123", "executeQuery", null, "select * from Invoice", true);
+
+		assertEquals("result", invalidation.intercept(query, () -> "result"));
+		verify(invalidation.reportEngine, never()).invalidate("123");
+		verify(invalidation.accountResolver, never()).invalidate("123");
+	}
+
+	@Test
+	public void dropsReportsOfTheRealmAfterWrites() throws FMSException {
+		QBOCall add = new QBOCall("123", "add", "Invoice", null, false);
+
+		assertEquals("result", invalidation.intercept(add, () -> "result"));
+		verify(invalidation.reportEngine).invalidate("123");
+		verify(invalidation.accountResolver, never()).invalidate("123");
+	}
+
+	@Test
+	public void dropsAccountsOfTheRealmAfterAccountWrites() throws FMSException {
+		invalidation.intercept(new QBOCall("123", "update", "Account", null, false), () -> "result");
+
+		verify(invalidation.accountResolver).invalidate("123");
+		verify(invalidation.reportEngine).invalidate("123");
+	}
+
+	@Test
+	public void dropsAccountsOfTheRealmAfterBatches() throws FMSException {
+		invalidation.intercept(new QBOCall("123", "executeBatch", null, null, false), () -> null);
+
+		verify(invalidation.accountResolver).invalidate("123");
+	}
+
+	@Test
+	public void dropsReportsAfterFailedWrites() {
+		QBOCall add = new QBOCall("123", "add", "Bill", null, false);
+		try {
+			invalidation.intercept(add, () -> {
+				throw new FMSException("timed out");
+			});
+			fail("expected the exception of the call");
+		} catch (FMSException e) {
+			verify(invalidation.reportEngine).invalidate("123");
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package com.intuit.developer.tutorials.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+import com.intuit.ipp.exception.FMSException;
+import com.intuit.ipp.exception.ServiceException;
+import com.intuit.ipp.exception.ValidationException;
+
+public class RealmCircuitBreakerTest {
+
+	private static final QBOCall CALL = new QBOCall("123", "findById", "Invoice", null, true);
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+	private RealmCircuitBreaker breaker;
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void staysClosedUntilTheWindowHoldsTheMinCalls() {
+		breaker = breaker(60, 3);
+		for (int i = 0; i < 3; i++) {
+			failWith(new ServiceException("ServiceFault"));
+		}
+
+		assertEquals(RealmCircuitBreaker.State.CLOSED, breaker.getState("123"));
+	}
+
+	@Test
+	public void opensAtTheFailureRate() throws FMSException {
+		breaker = breaker(60, 3);
+		succeed();
+		succeed();
+		failWith(new ServiceException("ServiceFault"));
+		assertEquals(RealmCircuitBreaker.State.CLOSED, breaker.getState("123"));
+
+		failWith(new ServiceException("ServiceFault"));
+		assertEquals(RealmCircuitBreaker.State.OPEN, breaker.getState("123"));
+		assertEquals(1, breaker.getOpenCount());
+	}
+
+	@Test
+	public void failsFastWhileOpen() {
+		breaker = breaker(60, 3);
+		open();
+
+		try {
+			breaker.intercept(CALL, () -> {
+				throw new AssertionError("QBO called through an open circuit");
+			});
+			fail("expected the call to be rejected");
+		} catch (QBOUnavailableException e) {
+			assertEquals("123", e.getRealmId());
+			assertTrue(e.getRetryAfterMillis() > 59000);
+		} catch (FMSException e) {
+			throw new AssertionError(e);
+		}
+		assertEquals(1, breaker.getRejectedCalls());
+	}
+
+	@Test
+	public void doesNotCountErrorsOfTheCaller() {
+		breaker = breaker(60, 3);
+		for (int i = 0; i < 4; i++) {
+			failWith(new ValidationException("Duplicate Name Exists Error"));
+		}
+
+		assertEquals(RealmCircuitBreaker.State.CLOSED, breaker.getState("123"));
+	}
+
+	@Test
+	public void doesNotCountCallsRejectedByTheInnerLimits() {
+		breaker = breaker(60, 3);
+		for (int i = 0; i < 4; i++) {
+			failWith(new QBOUnavailableException("queue full", "123", 1000));
+		}
+
+		assertEquals(RealmCircuitBreaker.State.CLOSED, breaker.getState("123"));
+	}
+
+	@Test
+	public void closesOnceTheTrialCallsSucceed() throws FMSException {
+		// no open period, the next call is a trial
+		breaker = breaker(0, 2);
+		open();
+
+		breaker.intercept(CALL, () -> {
+			assertEquals(RealmCircuitBreaker.State.HALF_OPEN, breaker.getState("123"));
+			return "result";
+		});
+		assertEquals(RealmCircuitBreaker.State.HALF_OPEN, breaker.getState("123"));
+		succeed();
+		assertEquals(RealmCircuitBreaker.State.CLOSED, breaker.getState("123"));
+
+		// the window starts over
+		failWith(new ServiceException("ServiceFault"));
+		assertEquals(RealmCircuitBreaker.State.CLOSED, breaker.getState("123"));
+	}
+
+	@Test
+	public void opensAgainWhenATrialCallFails() throws FMSException {
+		breaker = breaker(0, 2);
+		open();
+
+		succeed();
+		failWith(new ServiceException("ServiceFault"));
+		assertEquals(RealmCircuitBreaker.State.OPEN, breaker.getState("123"));
+	}
+
+	@Test
+	public void letsOnlyTheTrialCallsThrough() throws Exception {
+		breaker = breaker(0, 1);
+		open();
+		CountDownLatch inTrial = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Future<String> trial = executor.submit(() -> breaker.intercept(CALL, () -> {
+			inTrial.countDown();
+			await(release);
+			return "trial";
+		}));
+		assertTrue(inTrial.await(5, TimeUnit.SECONDS));
+
+		try {
+			succeed();
+			fail("expected the call to be rejected");
+		} catch (QBOUnavailableException e) {
+			assertEquals(1, breaker.getRejectedCalls());
+		}
+		release.countDown();
+		assertEquals("trial", trial.get(5, TimeUnit.SECONDS));
+		assertEquals(RealmCircuitBreaker.State.CLOSED, breaker.getState("123"));
+	}
+
+	@Test
+	public void isolatesRealms() throws FMSException {
+		breaker = breaker(60, 3);
+		open();
+
+		assertEquals("result", breaker.intercept(new QBOCall("456", "findById", "Invoice", null, true), () -> "result"));
+		assertEquals(RealmCircuitBreaker.State.CLOSED, breaker.getState("456"));
+	}
+
+	// half of the 4 calls of the window fail
+	private void open() {
+		try {
+			succeed();
+			succeed();
+		} catch (FMSException e) {
+			throw new AssertionError(e);
+		}
+		failWith(new ServiceException("ServiceFault"));
+		failWith(new ServiceException("ServiceFault"));
+		assertEquals(RealmCircuitBreaker.State.OPEN, breaker.getState("123"));
+	}
+
+	private void succeed() throws FMSException {
+		assertEquals("result", breaker.intercept(CALL, () -> "result"));
+	}
+
+	private void failWith(FMSException failure) {
+		try {
+			breaker.intercept(CALL, () -> {
+				throw failure;
+			});
+			throw new AssertionError("expected the exception of the call");
+		} catch (FMSException e) {
+			assertSame(failure, e);
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			assertTrue(latch.await(5, TimeUnit.SECONDS));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static RealmCircuitBreaker breaker(int openSeconds, int trialCalls) {
+		OAuth2PlatformClientFactory factory = mock(OAuth2PlatformClientFactory.class);
+		when(factory.getPropertyValue("QBOBreakerWindowSize")).thenReturn("4");
+		when(factory.getPropertyValue("QBOBreakerMinCalls")).thenReturn("4");
+		when(factory.getPropertyValue("QBOBreakerFailureRatePercent")).thenReturn("50");
+		when(factory.getPropertyValue("QBOBreakerOpenSeconds")).thenReturn(Integer.toString(openSeconds));
+		when(factory.getPropertyValue("QBOBreakerTrialCalls")).thenReturn(Integer.toString(trialCalls));
+		RealmCircuitBreaker breaker = new RealmCircuitBreaker();
+		breaker.factory = factory;
+		breaker.init();
+		return breaker;
+	}
+}
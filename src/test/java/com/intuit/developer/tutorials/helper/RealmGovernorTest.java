@@ -0,0 +1,182 @@
+package com.intuit.developer.tutorials.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+import com.intuit.ipp.exception.FMSException;
+
+public class RealmGovernorTest {
+
+	private static final QBOCall CALL = new QBOCall("123", "findById", "Invoice", null, true);
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+	private RealmGovernor governor;
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void letsABurstThroughWithoutWaiting() throws FMSException {
+		// one token every 10 ms
+		governor = governor(6000, 3, 10, 1000);
+		for (int i = 0; i < 3; i++) {
+			call();
+		}
+
+		assertEquals(0, governor.getThrottledCalls());
+		assertEquals(0, governor.getStats("123").getTokens(), 0.5);
+	}
+
+	@Test
+	public void delaysCallsOverTheBurstUntilTheirToken() throws FMSException {
+		// one token every 50 ms
+		governor = governor(1200, 1, 10, 1000);
+		call();
+		long start = System.nanoTime();
+		call();
+		call();
+
+		// the last call reserved the token after the one reserved by the call before it
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 90);
+		assertEquals(2, governor.getThrottledCalls());
+	}
+
+	@Test
+	public void refillsTheBucketUpToTheBurst() throws Exception {
+		// one token every ms
+		governor = governor(60000, 5, 10, 1000);
+		call();
+		Thread.sleep(50);
+
+		assertEquals(5, governor.getStats("123").getTokens(), 0.001);
+	}
+
+	@Test
+	public void rejectsCallsThatWouldWaitTooLongForTheirToken() throws FMSException {
+		// one token per second
+		governor = governor(60, 1, 10, 100);
+		call();
+		try {
+			call();
+			fail("expected the call to be rejected");
+		} catch (QBOUnavailableException e) {
+			assertEquals("123", e.getRealmId());
+			assertTrue(e.getRetryAfterMillis() > 900 && e.getRetryAfterMillis() <= 1000);
+		}
+
+		// the rejected call gave its reserved token back
+		assertEquals(0, governor.getStats("123").getTokens(), 0.1);
+		assertEquals(1, governor.getRejectedCalls());
+	}
+
+	@Test
+	public void rejectsCallsOverTheConcurrencyLimit() throws Exception {
+		governor = governor(6000, 10, 1, 100);
+		CountDownLatch inFlight = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Future<String> first = executor.submit(() -> governor.intercept(CALL, () -> {
+			inFlight.countDown();
+			await(release);
+			return "first";
+		}));
+		assertTrue(inFlight.await(5, TimeUnit.SECONDS));
+		assertEquals(1, governor.getStats("123").getInFlight());
+
+		try {
+			call();
+			fail("expected the call to be rejected");
+		} catch (QBOUnavailableException e) {
+			assertEquals(1, governor.getRejectedCalls());
+		}
+		release.countDown();
+		assertEquals("first", first.get(5, TimeUnit.SECONDS));
+		assertEquals(0, governor.getStats("123").getInFlight());
+	}
+
+	@Test
+	public void givesBackTheTokenOfACallRejectedOverTheConcurrencyLimit() throws Exception {
+		// one token per second
+		governor = governor(60, 10, 1, 100);
+		CountDownLatch inFlight = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Future<String> first = executor.submit(() -> governor.intercept(CALL, () -> {
+			inFlight.countDown();
+			await(release);
+			return "first";
+		}));
+		assertTrue(inFlight.await(5, TimeUnit.SECONDS));
+
+		try {
+			call();
+			fail("expected the call to be rejected");
+		} catch (QBOUnavailableException e) {
+			// only the call in flight holds a token
+			assertEquals(9, governor.getStats("123").getTokens(), 0.2);
+		}
+		release.countDown();
+		assertEquals("first", first.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void releasesThePermitOfAFailedCall() throws FMSException {
+		governor = governor(6000, 10, 1, 100);
+		try {
+			governor.intercept(CALL, () -> {
+				throw new FMSException("timed out");
+			});
+			fail("expected the exception of the call");
+		} catch (FMSException e) {
+			assertEquals("timed out", e.getMessage());
+		}
+
+		assertEquals("result", call());
+	}
+
+	@Test
+	public void limitsRealmsIndependently() throws FMSException {
+		governor = governor(60, 1, 10, 100);
+		call();
+
+		assertEquals("result", governor.intercept(new QBOCall("456", "findById", "Invoice", null, true), () -> "result"));
+		assertEquals(0, governor.getRejectedCalls());
+	}
+
+	private String call() throws FMSException {
+		return governor.intercept(CALL, () -> "result");
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			assertTrue(latch.await(5, TimeUnit.SECONDS));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static RealmGovernor governor(int requestsPerMinute, int burst, int maxConcurrent, int maxWaitMillis) {
+		OAuth2PlatformClientFactory factory = mock(OAuth2PlatformClientFactory.class);
+		when(factory.getPropertyValue("QBORealmRequestsPerMinute")).thenReturn(Integer.toString(requestsPerMinute));
+		when(factory.getPropertyValue("QBORealmRequestBurst")).thenReturn(Integer.toString(burst));
+		when(factory.getPropertyValue("QBORealmMaxConcurrent")).thenReturn(Integer.toString(maxConcurrent));
+		when(factory.getPropertyValue("QBORealmMaxWaitMillis")).thenReturn(Integer.toString(maxWaitMillis));
+		RealmGovernor governor = new RealmGovernor();
+		governor.factory = factory;
+		governor.init();
+		return governor;
+	}
+}
@@ -0,0 +1,79 @@
+package com.intuit.developer.tutorials.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+import com.intuit.ipp.data.Report;
+import com.intuit.ipp.data.ReportHeader;
+import com.intuit.ipp.exception.FMSException;
+import com.intuit.ipp.services.ReportName;
+import com.intuit.ipp.services.ReportService;
+
+public class ReportEngineTest {
+
+	private static final ReportRequest REQUEST = ReportRequest.of(ReportName.TRANSACTIONLIST).withDateRange("2018-01-01", "2018-12-31");
+
+	private final ReportEngine engine = new ReportEngine();
+	private final ReportService reportService = mock(ReportService.class);
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setUp() throws FMSException {
+		engine.factory = mock(OAuth2PlatformClientFactory.class);
+		engine.helper = mock(QBOServiceHelper.class);
+		engine.workflowExecutor = mock(WorkflowExecutor.class);
+		when(engine.helper.getReportService("123", "token")).thenReturn(reportService);
+		// run the calls on the test thread
+		when(engine.workflowExecutor.submit(any(Workflow.StepCall.class))).thenAnswer(invocation -> {
+			CompletableFuture<Object> future = new CompletableFuture<Object>();
+			future.complete(((Workflow.StepCall<?>) invocation.getArguments()[0]).call());
+			return future;
+		});
+		ReportHeader header = new ReportHeader();
+		header.setReportName("TransactionList");
+		Report report = new Report();
+		report.setHeader(header);
+		when(reportService.executeReport(anyString())).thenReturn(report);
+		engine.init();
+	}
+
+	@Test
+	public void cachesTheColumnarForm() {
+		ColumnarReport first = engine.executeColumnar("123", "token", REQUEST).join();
+
+		assertSame(first, engine.executeColumnar("123", "token", REQUEST).join());
+		assertEquals("TransactionList", first.getReportName());
+		assertEquals(1, engine.getHits());
+	}
+
+	@Test
+	public void cachesReportsAndColumnarFormsSeparately() throws FMSException {
+		engine.executeColumnar("123", "token", REQUEST).join();
+		engine.execute("123", "token", REQUEST).join();
+		engine.execute("123", "token", REQUEST).join();
+
+		verify(reportService, times(2)).executeReport(anyString());
+		assertEquals(2, engine.size());
+	}
+
+	@Test
+	public void dropsColumnarFormsOfARealmOnInvalidation() throws FMSException {
+		engine.executeColumnar("123", "token", REQUEST).join();
+		engine.invalidate("123");
+		engine.executeColumnar("123", "token", REQUEST).join();
+
+		verify(reportService, times(2)).executeReport(anyString());
+	}
+}
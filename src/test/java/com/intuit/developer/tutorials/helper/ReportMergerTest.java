@@ -0,0 +1,170 @@
+package com.intuit.developer.tutorials.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.intuit.ipp.data.ColData;
+import com.intuit.ipp.data.Column;
+import com.intuit.ipp.data.Columns;
+import com.intuit.ipp.data.Header;
+import com.intuit.ipp.data.Report;
+import com.intuit.ipp.data.ReportHeader;
+import com.intuit.ipp.data.Row;
+import com.intuit.ipp.data.RowTypeEnum;
+import com.intuit.ipp.data.Rows;
+import com.intuit.ipp.data.Summary;
+import com.intuit.ipp.services.ReportName;
+
+public class ReportMergerTest {
+
+	private static final ReportRequest QUARTER = ReportRequest.of(ReportName.GENERALLEDGER).withDateRange("2018-01-01", "2018-03-31");
+
+	// GeneralLedger shards as returned by QBO for January, February and March, the
+	// columns are date, transaction type, amount and balance
+	private final Report january = shard("2018-01-01", "2018-01-31",
+			section("35", "Checking", summary("Total for Checking", "50.00", "150.00"),
+					data("Beginning Balance", "", "", "100.00"),
+					data("2018-01-12", "Deposit", "50.00", "150.00")),
+			section("90", "Sales", summary("Total for Sales", "-50.00", ""),
+					data("2018-01-12", "Deposit", "-50.00", "-50.00")));
+	private final Report february = shard("2018-02-01", "2018-02-28",
+			section("35", "Checking", summary("Total for Checking", "25.00", "175.00"),
+					data("Beginning Balance", "", "", "150.00"),
+					data("2018-02-03", "Deposit", "25.00", "175.00")));
+	private final Report march = shard("2018-03-01", "2018-03-31",
+			section("35", "Checking", summary("Total for Checking", "-30.00", "145.00"),
+					data("Beginning Balance", "", "", "175.00"),
+					data("2018-03-20", "Expense", "-30.00", "145.00")),
+			section("90", "Sales", summary("Total for Sales", "-25.25", ""),
+					data("2018-03-09", "Invoice", "-25.25", "-75.25")));
+
+	@Test
+	public void mergesSectionsOfTheSameAccount() {
+		List<Row> rows = merge().getRows().getRow();
+
+		assertEquals(2, rows.size());
+		assertEquals("Checking", rows.get(0).getHeader().getColData().get(0).getValue());
+		assertEquals("Sales", rows.get(1).getHeader().getColData().get(0).getValue());
+		List<Row> sales = rows.get(1).getRows().getRow();
+		assertEquals(Arrays.asList("2018-01-12", "2018-03-09"), Arrays.asList(firstCell(sales.get(0)), firstCell(sales.get(1))));
+	}
+
+	@Test
+	public void keepsOnlyTheFirstBeginningBalance() {
+		List<Row> checking = merge().getRows().getRow().get(0).getRows().getRow();
+
+		assertEquals(4, checking.size());
+		assertEquals("Beginning Balance", firstCell(checking.get(0)));
+		assertEquals("100.00", checking.get(0).getColData().get(3).getValue());
+		assertEquals("2018-01-12", firstCell(checking.get(1)));
+		assertEquals("2018-02-03", firstCell(checking.get(2)));
+		assertEquals("2018-03-20", firstCell(checking.get(3)));
+	}
+
+	@Test
+	public void sumsAmountsAndTakesTheLastBalance() {
+		List<Row> rows = merge().getRows().getRow();
+
+		List<ColData> checking = rows.get(0).getSummary().getColData();
+		assertEquals("Total for Checking", checking.get(0).getValue());
+		assertEquals("45.00", checking.get(2).getValue());
+		assertEquals("145.00", checking.get(3).getValue());
+		List<ColData> sales = rows.get(1).getSummary().getColData();
+		assertEquals("-75.25", sales.get(2).getValue());
+		assertEquals("", sales.get(3).getValue());
+	}
+
+	@Test
+	public void coversTheDateRangeOfTheRequest() {
+		Report merged = merge();
+
+		assertEquals("GeneralLedger", merged.getHeader().getReportName());
+		assertEquals("2018-01-01", merged.getHeader().getStartPeriod());
+		assertEquals("2018-03-31", merged.getHeader().getEndPeriod());
+		assertSame(january.getColumns(), merged.getColumns());
+	}
+
+	@Test
+	public void leavesTheShardsUnchanged() {
+		merge();
+
+		assertEquals("2018-02-01", february.getHeader().getStartPeriod());
+		assertEquals(2, january.getRows().getRow().get(0).getRows().getRow().size());
+		assertEquals("50.00", january.getRows().getRow().get(0).getSummary().getColData().get(2).getValue());
+	}
+
+	@Test
+	public void returnsASingleShardAsIs() {
+		assertSame(january, ReportMerger.merge(QUARTER, Arrays.asList(january)));
+	}
+
+	private Report merge() {
+		return ReportMerger.merge(QUARTER, Arrays.asList(january, february, march));
+	}
+
+	private static Report shard(String start, String end, Row... sections) {
+		ReportHeader header = new ReportHeader();
+		header.setReportName("GeneralLedger");
+		header.setStartPeriod(start);
+		header.setEndPeriod(end);
+		Columns columns = new Columns();
+		for (String title : new String[] { "Date", "Transaction Type", "Amount", "Balance" }) {
+			Column column = new Column();
+			column.setColTitle(title);
+			columns.getColumn().add(column);
+		}
+		Report report = new Report();
+		report.setHeader(header);
+		report.setColumns(columns);
+		report.setRows(rows(sections));
+		return report;
+	}
+
+	private static Row section(String accountId, String account, Summary summary, Row... data) {
+		Header header = new Header();
+		header.getColData().add(cell(accountId, account));
+		Row section = new Row();
+		section.setType(RowTypeEnum.SECTION);
+		section.setHeader(header);
+		section.setRows(rows(data));
+		section.setSummary(summary);
+		return section;
+	}
+
+	private static Summary summary(String label, String amount, String balance) {
+		Summary summary = new Summary();
+		summary.getColData().addAll(Arrays.asList(cell(null, label), cell(null, ""), cell(null, amount), cell(null, balance)));
+		return summary;
+	}
+
+	private static Row data(String... values) {
+		Row row = new Row();
+		row.setType(RowTypeEnum.DATA);
+		for (String value : values) {
+			row.getColData().add(cell(null, value));
+		}
+		return row;
+	}
+
+	private static Rows rows(Row... list) {
+		Rows rows = new Rows();
+		rows.getRow().addAll(Arrays.asList(list));
+		return rows;
+	}
+
+	private static ColData cell(String id, String value) {
+		ColData cell = new ColData();
+		cell.setId(id);
+		cell.setValue(value);
+		return cell;
+	}
+
+	private static String firstCell(Row row) {
+		return row.getColData().get(0).getValue();
+	}
+}
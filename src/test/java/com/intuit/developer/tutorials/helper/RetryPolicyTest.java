@@ -0,0 +1,182 @@
+package com.intuit.developer.tutorials.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+import com.intuit.ipp.data.Error;
+import com.intuit.ipp.exception.FMSException;
+import com.intuit.ipp.exception.InternalServiceException;
+import com.intuit.ipp.exception.ServiceException;
+import com.intuit.ipp.exception.ValidationException;
+
+public class RetryPolicyTest {
+
+	private static final QBOCall READ = new QBOCall("123", "executeQuery", null, "select * from Invoice", true);
+	private static final QBOCall WRITE = new QBOCall("123", "add", "Invoice", null, false);
+
+	@Test
+	public void classifiesThrottlingAsThrottled() {
+		assertEquals(RetryPolicy.Failure.THROTTLED, RetryPolicy.classify(fault("003001", "message")));
+		assertEquals(RetryPolicy.Failure.THROTTLED, RetryPolicy.classify(fault("", "ThrottleExceeded")));
+		assertEquals(RetryPolicy.Failure.THROTTLED, RetryPolicy.classify(new FMSException("statusCode=429")));
+	}
+
+	@Test
+	public void classifiesServerErrorsAndBrokenConnectionsAsTransient() {
+		assertEquals(RetryPolicy.Failure.TRANSIENT, RetryPolicy.classify(fault("10000", "An application error has occurred")));
+		assertEquals(RetryPolicy.Failure.TRANSIENT, RetryPolicy.classify(new ServiceException("ServiceFault")));
+		assertEquals(RetryPolicy.Failure.TRANSIENT, RetryPolicy.classify(new InternalServiceException("500")));
+		assertEquals(RetryPolicy.Failure.TRANSIENT,
+				RetryPolicy.classify(new FMSException("I/O error", new RuntimeException(new SocketTimeoutException("Read timed out")))));
+		assertEquals(RetryPolicy.Failure.TRANSIENT, RetryPolicy.classify(new FMSException("I/O error", new ConnectException())));
+	}
+
+	@Test
+	public void classifiesOtherErrorsAsPermanent() {
+		assertEquals(RetryPolicy.Failure.PERMANENT, RetryPolicy.classify(fault("6240", "Duplicate Name Exists Error")));
+		assertEquals(RetryPolicy.Failure.PERMANENT, RetryPolicy.classify(new ValidationException("invalid")));
+		assertEquals(RetryPolicy.Failure.PERMANENT, RetryPolicy.classify(new FMSException("failed")));
+	}
+
+	@Test
+	public void takesTheRetryAfterFromTheFault() {
+		Error error = new Error();
+		error.setCode("3001");
+		error.setDetail("ThrottleExceeded, Retry-After: 7");
+		FMSException e = new FMSException(Collections.singletonList(error));
+
+		assertEquals(7000, RetryPolicy.retryAfterMillis(e));
+		assertEquals(-1, RetryPolicy.retryAfterMillis(fault("3001", "ThrottleExceeded")));
+	}
+
+	@Test
+	public void retriesTransientFailuresOfReads() throws FMSException {
+		RetryPolicy policy = policy(3, 10);
+		AtomicInteger attempts = new AtomicInteger();
+
+		String result = policy.intercept(READ, () -> {
+			if (attempts.incrementAndGet() < 3) {
+				throw new ServiceException("ServiceFault");
+			}
+			return "result";
+		});
+		assertEquals("result", result);
+		assertEquals(3, attempts.get());
+		assertEquals(2, policy.getRetries());
+	}
+
+	@Test
+	public void givesUpAfterTheMaxAttempts() {
+		RetryPolicy policy = policy(3, 10);
+		AtomicInteger attempts = new AtomicInteger();
+
+		assertFailsAfter(policy, READ, attempts, new ServiceException("ServiceFault"));
+		assertEquals(3, attempts.get());
+	}
+
+	@Test
+	public void neverRetriesWrites() {
+		RetryPolicy policy = policy(3, 10);
+		AtomicInteger attempts = new AtomicInteger();
+
+		assertFailsAfter(policy, WRITE, attempts, new ServiceException("ServiceFault"));
+		assertEquals(1, attempts.get());
+	}
+
+	@Test
+	public void neverRetriesPermanentFailures() {
+		RetryPolicy policy = policy(3, 10);
+		AtomicInteger attempts = new AtomicInteger();
+
+		assertFailsAfter(policy, READ, attempts, fault("6240", "Duplicate Name Exists Error"));
+		assertEquals(1, attempts.get());
+	}
+
+	@Test
+	public void stopsRetryingWhenTheBudgetIsSpent() {
+		// no deposits and no refill, the budget holds its minimum of a single retry
+		RetryPolicy policy = policy(3, 0);
+		AtomicInteger attempts = new AtomicInteger();
+
+		assertFailsAfter(policy, READ, attempts, new ServiceException("ServiceFault"));
+		assertEquals(2, attempts.get());
+		assertEquals(1, policy.getBudgetExhausted());
+
+		attempts.set(0);
+		assertFailsAfter(policy, READ, attempts, new ServiceException("ServiceFault"));
+		assertEquals(1, attempts.get());
+		assertEquals(2, policy.getBudgetExhausted());
+	}
+
+	@Test
+	public void doesNotHoldCallsLongerThanTheMaxDelay() {
+		RetryPolicy policy = policy(3, 10);
+		Error error = new Error();
+		error.setCode("3001");
+		error.setDetail("Retry-After: 60");
+		AtomicInteger attempts = new AtomicInteger();
+
+		assertFailsAfter(policy, READ, attempts, new FMSException(Collections.singletonList(error)));
+		assertEquals(1, attempts.get());
+	}
+
+	@Test
+	public void keepsTheBudgetOfCallsNotRetriedForTheirDelay() {
+		// no deposits and no refill, the budget holds its minimum of a single retry
+		RetryPolicy policy = policy(3, 0);
+		Error error = new Error();
+		error.setCode("3001");
+		error.setDetail("Retry-After: 60");
+		AtomicInteger attempts = new AtomicInteger();
+		assertFailsAfter(policy, READ, attempts, new FMSException(Collections.singletonList(error)));
+
+		attempts.set(0);
+		assertFailsAfter(policy, READ, attempts, new ServiceException("ServiceFault"));
+		assertEquals(2, attempts.get());
+		assertEquals(1, policy.getBudgetExhausted());
+	}
+
+	private static void assertFailsAfter(RetryPolicy policy, QBOCall call, AtomicInteger attempts, FMSException failure) {
+		try {
+			policy.intercept(call, () -> {
+				attempts.incrementAndGet();
+				throw failure;
+			});
+			fail("expected the exception of the call");
+		} catch (FMSException e) {
+			assertSame(failure, e);
+		}
+	}
+
+	private static FMSException fault(String code, String message) {
+		Error error = new Error();
+		error.setCode(code);
+		error.setMessage(message);
+		return new FMSException(Collections.singletonList(error));
+	}
+
+	private static RetryPolicy policy(int maxAttempts, int budgetPerSecond) {
+		OAuth2PlatformClientFactory factory = mock(OAuth2PlatformClientFactory.class);
+		when(factory.getPropertyValue("QBORetryMaxAttempts")).thenReturn(Integer.toString(maxAttempts));
+		when(factory.getPropertyValue("QBORetryBaseDelayMillis")).thenReturn("1");
+		when(factory.getPropertyValue("QBORetryMaxDelayMillis")).thenReturn("100");
+		when(factory.getPropertyValue("QBORetryThrottleDelayMillis")).thenReturn("1");
+		when(factory.getPropertyValue("QBORetryBudgetRatio")).thenReturn(budgetPerSecond == 0 ? "0" : "0.1");
+		when(factory.getPropertyValue("QBORetryBudgetPerSecond")).thenReturn(Integer.toString(budgetPerSecond));
+		RetryPolicy policy = new RetryPolicy();
+		policy.factory = factory;
+		policy.init();
+		return policy;
+	}
+}
@@ -0,0 +1,151 @@
+package com.intuit.developer.tutorials.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.intuit.ipp.exception.FMSException;
+
+public class SingleFlightTest {
+
+	private static final int CALLERS = 8;
+
+	private final SingleFlight<String, String> flights = new SingleFlight<String, String>();
+	private final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void runsConcurrentCallsForAKeyOnce() throws Exception {
+		AtomicInteger calls = new AtomicInteger();
+		List<Future<String>> results = callConcurrently("account", () -> {
+			calls.incrementAndGet();
+			return "found";
+		});
+
+		for (Future<String> result : results) {
+			assertEquals("found", result.get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(1, calls.get());
+		assertEquals(CALLERS - 1, flights.getCoalesced());
+	}
+
+	@Test
+	public void sharesTheExceptionOfTheCall() throws Exception {
+		FMSException failure = new FMSException("throttled");
+		List<Future<String>> results = callConcurrently("account", () -> {
+			throw failure;
+		});
+
+		for (Future<String> result : results) {
+			assertSame(failure, causeOf(result));
+		}
+	}
+
+	@Test
+	public void releasesWaitersWhenTheCallFailsWithAnError() throws Exception {
+		List<Future<String>> results = callConcurrently("account", () -> {
+			throw new StackOverflowError();
+		});
+
+		int errors = 0;
+		for (Future<String> result : results) {
+			Throwable cause = causeOf(result);
+			if (cause instanceof StackOverflowError) {
+				errors++;
+			} else {
+				assertTrue(cause instanceof FMSException);
+				assertTrue(cause.getCause() instanceof StackOverflowError);
+			}
+		}
+		assertEquals(1, errors);
+	}
+
+	@Test
+	public void runsTheCallAgainOnceTheFlightIsOver() throws FMSException {
+		AtomicInteger calls = new AtomicInteger();
+		flights.execute("account", () -> "v" + calls.incrementAndGet());
+
+		assertEquals("v2", flights.execute("account", () -> "v" + calls.incrementAndGet()));
+		assertEquals(0, flights.getCoalesced());
+	}
+
+	@Test
+	public void runsCallsForDifferentKeysIndependently() throws Exception {
+		CountDownLatch bothRunning = new CountDownLatch(2);
+		Future<String> first = executor.submit(() -> flights.execute("income", () -> {
+			bothRunning.countDown();
+			await(bothRunning);
+			return "income";
+		}));
+		Future<String> second = executor.submit(() -> flights.execute("expense", () -> {
+			bothRunning.countDown();
+			await(bothRunning);
+			return "expense";
+		}));
+
+		assertEquals("income", first.get(5, TimeUnit.SECONDS));
+		assertEquals("expense", second.get(5, TimeUnit.SECONDS));
+	}
+
+	// starts CALLERS calls for the key and holds the first one until all others wait for it
+	private List<Future<String>> callConcurrently(String key, SingleFlight.Call<String> call) throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		List<Future<String>> results = new ArrayList<Future<String>>();
+		results.add(executor.submit(() -> flights.execute(key, () -> {
+			started.countDown();
+			await(release);
+			return call.call();
+		})));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		for (int i = 1; i < CALLERS; i++) {
+			results.add(executor.submit(() -> flights.execute(key, call)));
+		}
+		// the other callers find the flight in progress almost at once, but cannot signal it
+		long deadline = System.currentTimeMillis() + 5000;
+		while (flights.getCoalesced() < CALLERS - 1 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		release.countDown();
+		return results;
+	}
+
+	private static Throwable causeOf(Future<String> result) throws InterruptedException {
+		try {
+			result.get(5, TimeUnit.SECONDS);
+			fail("expected the call to fail");
+			return null;
+		} catch (ExecutionException e) {
+			return e.getCause();
+		} catch (TimeoutException e) {
+			throw new AssertionError("caller still waiting for the flight", e);
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			assertTrue(latch.await(5, TimeUnit.SECONDS));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package com.intuit.developer.tutorials.helper;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TimerWheelTest {
+
+	private static final long TICK_MILLIS = 10;
+
+	private TimerWheel wheel;
+
+	@After
+	public void tearDown() {
+		if (wheel != null) {
+			wheel.stop();
+		}
+	}
+
+	@Test
+	public void runsATaskNoEarlierThanItsDelay() throws InterruptedException {
+		wheel = new TimerWheel("test-wheel", TICK_MILLIS, 64, Runnable::run);
+		CountDownLatch ran = new CountDownLatch(1);
+		AtomicLong ranAt = new AtomicLong();
+		long scheduledAt = System.currentTimeMillis();
+		wheel.schedule(() -> {
+			ranAt.set(System.currentTimeMillis());
+			ran.countDown();
+		}, 100, TimeUnit.MILLISECONDS);
+
+		assertTrue(ran.await(2, TimeUnit.SECONDS));
+		assertTrue(ranAt.get() - scheduledAt >= 100);
+	}
+
+	@Test
+	public void runsTasksDueAfterSeveralRotations() throws InterruptedException {
+		// 4 buckets of 10ms make a 40ms rotation
+		wheel = new TimerWheel("test-wheel", TICK_MILLIS, 4, Runnable::run);
+		CountDownLatch ran = new CountDownLatch(1);
+		AtomicLong ranAt = new AtomicLong();
+		long scheduledAt = System.currentTimeMillis();
+		wheel.schedule(() -> {
+			ranAt.set(System.currentTimeMillis());
+			ran.countDown();
+		}, 150, TimeUnit.MILLISECONDS);
+
+		assertTrue(ran.await(2, TimeUnit.SECONDS));
+		assertTrue(ranAt.get() - scheduledAt >= 150);
+	}
+
+	@Test
+	public void neverRunsACancelledTask() throws InterruptedException {
+		wheel = new TimerWheel("test-wheel", TICK_MILLIS, 64, Runnable::run);
+		AtomicBoolean cancelledRan = new AtomicBoolean();
+		CountDownLatch later = new CountDownLatch(1);
+		TimerWheel.Timeout timeout = wheel.schedule(() -> cancelledRan.set(true), 30, TimeUnit.MILLISECONDS);
+		wheel.schedule(later::countDown, 100, TimeUnit.MILLISECONDS);
+		timeout.cancel();
+
+		assertTrue(later.await(2, TimeUnit.SECONDS));
+		assertFalse(cancelledRan.get());
+	}
+
+	@Test
+	public void runsEveryScheduledTask() throws InterruptedException {
+		wheel = new TimerWheel("test-wheel", TICK_MILLIS, 8, Runnable::run);
+		int tasks = 1000;
+		CountDownLatch ran = new CountDownLatch(tasks);
+		for (int i = 0; i < tasks; i++) {
+			wheel.schedule(ran::countDown, ThreadLocalRandom.current().nextLong(200), TimeUnit.MILLISECONDS);
+		}
+
+		assertTrue(ran.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void keepsRunningWhenTheExecutorRejectsATask() throws InterruptedException {
+		AtomicBoolean rejectNext = new AtomicBoolean(true);
+		Executor executor = task -> {
+			if (rejectNext.getAndSet(false)) {
+				throw new RejectedExecutionException("full");
+			}
+			task.run();
+		};
+		wheel = new TimerWheel("test-wheel", TICK_MILLIS, 64, executor);
+		CountDownLatch ran = new CountDownLatch(1);
+		wheel.schedule(() -> {
+		}, 10, TimeUnit.MILLISECONDS);
+		wheel.schedule(ran::countDown, 60, TimeUnit.MILLISECONDS);
+
+		assertTrue(ran.await(2, TimeUnit.SECONDS));
+		assertFalse(rejectNext.get());
+	}
+
+	@Test
+	public void keepsTheDeadlineOfATask() {
+		wheel = new TimerWheel("test-wheel", TICK_MILLIS, 64, Runnable::run);
+		long before = System.currentTimeMillis();
+		TimerWheel.Timeout timeout = wheel.schedule(() -> {
+		}, 5, TimeUnit.SECONDS);
+
+		long delay = timeout.getDeadline() - before;
+		assertTrue(delay >= 5000 && delay <= 5000 + 1000);
+		timeout.cancel();
+	}
+}
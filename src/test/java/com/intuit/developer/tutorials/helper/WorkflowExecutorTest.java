@@ -0,0 +1,116 @@
+package com.intuit.developer.tutorials.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.intuit.developer.tutorials.client.OAuth2PlatformClientFactory;
+
+public class WorkflowExecutorTest {
+
+	private final WorkflowExecutor executor = new WorkflowExecutor();
+	private final CountDownLatch running = new CountDownLatch(1);
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@Before
+	public void setUp() {
+		OAuth2PlatformClientFactory factory = mock(OAuth2PlatformClientFactory.class);
+		when(factory.getPropertyValue("QBOWorkflowThreads")).thenReturn("2");
+		when(factory.getPropertyValue("QBOWorkflowQueueSize")).thenReturn("1");
+		when(factory.getPropertyValue("QBOWorkflowRetryAfterMillis")).thenReturn("2000");
+		when(factory.getPropertyValue("QBOAdaptiveInitialLimit")).thenReturn("1");
+		when(factory.getPropertyValue("QBOAdaptiveMinLimit")).thenReturn("1");
+		when(factory.getPropertyValue("QBOAdaptiveMaxLimit")).thenReturn("1");
+		executor.factory = factory;
+		executor.concurrencyLimit = new AdaptiveConcurrencyLimit();
+		executor.concurrencyLimit.factory = factory;
+		executor.concurrencyLimit.init();
+		executor.init();
+	}
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		executor.destroy();
+	}
+
+	@Test
+	public void queuesTasksOverTheConcurrencyLimit() throws Exception {
+		CompletableFuture<String> first = executor.submit(this::block);
+		assertTrue(running.await(5, TimeUnit.SECONDS));
+		CompletableFuture<String> second = executor.submit(() -> "second");
+
+		assertEquals(1, executor.getQueueSize());
+		assertFalse(second.isDone());
+		release.countDown();
+		assertEquals("first", first.get(5, TimeUnit.SECONDS));
+		assertEquals("second", second.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void rejectsTasksWhenTheQueueIsFull() throws Exception {
+		executor.submit(this::block);
+		assertTrue(running.await(5, TimeUnit.SECONDS));
+		executor.submit(() -> "queued");
+		AtomicBoolean ran = new AtomicBoolean();
+
+		CompletableFuture<String> rejected = executor.submit(() -> {
+			ran.set(true);
+			return "rejected";
+		});
+		QBOUnavailableException e = unavailable(rejected);
+		assertEquals(2000, e.getRetryAfterMillis());
+		assertFalse(ran.get());
+		assertEquals(1, executor.getRejectedCount());
+	}
+
+	@Test
+	public void failsTheWorkflowStepsItRejects() throws Exception {
+		executor.submit(this::block);
+		assertTrue(running.await(5, TimeUnit.SECONDS));
+		executor.submit(() -> "queued");
+		AtomicBoolean ran = new AtomicBoolean();
+
+		Workflow workflow = executor.newWorkflow("test", "123");
+		Workflow.Step<String> step = workflow.step("rejected", () -> {
+			ran.set(true);
+			return "rejected";
+		});
+		unavailable(workflow.completion(step));
+		assertFalse(ran.get());
+	}
+
+	private String block() {
+		running.countDown();
+		try {
+			release.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return "first";
+	}
+
+	private static QBOUnavailableException unavailable(CompletableFuture<?> future) throws Exception {
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail("expected the task to be rejected");
+			return null;
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof QBOUnavailableException);
+			return (QBOUnavailableException) e.getCause();
+		}
+	}
+}
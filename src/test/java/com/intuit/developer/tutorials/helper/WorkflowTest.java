@@ -0,0 +1,134 @@
+package com.intuit.developer.tutorials.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.intuit.ipp.exception.FMSException;
+
+public class WorkflowTest {
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+	private final Workflow workflow = new Workflow("test", "123", executor, null);
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void runsStepsAfterTheirDependencies() throws Exception {
+		List<String> order = new CopyOnWriteArrayList<String>();
+		Workflow.Step<String> vendor = workflow.step("vendor", () -> record(order, "vendor"));
+		Workflow.Step<String> account = workflow.step("account", () -> record(order, "account"));
+		Workflow.Step<String> bill = workflow.step("bill", () -> record(order, "bill:" + vendor.get() + "," + account.get()), vendor, account);
+		Workflow.Step<String> payment = workflow.step("payment", () -> record(order, "payment:" + bill.get()), bill);
+
+		assertEquals("payment:bill:vendor,account", workflow.completion(payment).get(5, TimeUnit.SECONDS));
+		assertEquals(4, order.size());
+		assertTrue(order.indexOf("bill:vendor,account") > order.indexOf("vendor"));
+		assertTrue(order.indexOf("bill:vendor,account") > order.indexOf("account"));
+		assertEquals("payment:bill:vendor,account", order.get(3));
+		assertEquals(Arrays.asList("vendor", "account", "bill", "payment"), Arrays.asList(workflow.getTimings().keySet().toArray()));
+	}
+
+	@Test
+	public void runsIndependentStepsConcurrently() throws Exception {
+		// each step waits for the other one, they only complete if they run at the same time
+		CyclicBarrier barrier = new CyclicBarrier(2);
+		Workflow.Step<Integer> first = workflow.step("first", () -> await(barrier));
+		Workflow.Step<Integer> second = workflow.step("second", () -> await(barrier));
+		Workflow.Step<Integer> sum = workflow.step("sum", () -> first.get() + second.get(), first, second);
+
+		assertEquals(Integer.valueOf(2), workflow.completion(sum).get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void doesNotRunTheStepsDependingOnAFailedStep() throws Exception {
+		FMSException failure = new FMSException("Duplicate Name Exists Error");
+		AtomicBoolean ran = new AtomicBoolean();
+		Workflow.Step<String> vendor = workflow.step("vendor", () -> {
+			throw failure;
+		});
+		Workflow.Step<String> bill = workflow.step("bill", () -> {
+			ran.set(true);
+			return "bill:" + vendor.get();
+		}, vendor);
+
+		try {
+			workflow.completion(bill).get(5, TimeUnit.SECONDS);
+			fail("expected the workflow to fail");
+		} catch (ExecutionException e) {
+			assertSame(failure, e.getCause());
+		}
+		assertFalse(ran.get());
+	}
+
+	@Test
+	public void completesOnceAllStepsHaveCompleted() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		Workflow.Step<String> result = workflow.step("result", () -> "result");
+		workflow.step("email", () -> await(release));
+
+		CompletableFuture<String> completion = workflow.completion(result);
+		assertEquals("result", result.get());
+		assertFalse(completion.isDone());
+		release.countDown();
+		assertEquals("result", completion.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void failsWithTheUncheckedExceptionOfAStep() throws Exception {
+		IllegalStateException failure = new IllegalStateException("over budget");
+		Workflow.Step<String> step = workflow.step("step", () -> {
+			throw failure;
+		});
+
+		try {
+			workflow.completion(step).get(5, TimeUnit.SECONDS);
+			fail("expected the workflow to fail");
+		} catch (ExecutionException e) {
+			assertSame(failure, e.getCause());
+		}
+	}
+
+	private static String record(List<String> order, String value) {
+		order.add(value);
+		return value;
+	}
+
+	private static String await(CountDownLatch latch) {
+		try {
+			assertTrue(latch.await(5, TimeUnit.SECONDS));
+			return "sent";
+		} catch (InterruptedException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private static int await(CyclicBarrier barrier) {
+		try {
+			barrier.await(5, TimeUnit.SECONDS);
+			return 1;
+		} catch (Exception e) {
+			throw new AssertionError("the steps did not run concurrently", e);
+		}
+	}
+}